@@ -0,0 +1,136 @@
+package com.devtest.matcher;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/***
+ * Helper class to generate the data sets used by the benchmarks. Input files are written once to the 
+ * directory given by the matcher.bench.dir system property (the temp directory by default) and reused by
+ * later runs, since the largest data sets take longer to write than to match.
+ */
+class BenchmarkData 
+{
+	public static final String DATADIR_PROPERTY = "matcher.bench.dir";
+	
+	// Seed used for every data set so each run of the benchmarks is against the same numbers
+	private static final long SEED = 20240601L;
+	
+	/***
+	 * Called to return an input file of numbers in the given distribution, writing it if it doesn't
+	 * already exist.
+	 * 
+	 * @param pDistribution The distribution of the numbers.
+	 * @param pCount The count of numbers in the file.
+	 * @return The input file.
+	 * @throws IOException Error thrown on file access.
+	 */
+	public static File getInputFile(BenchmarkDistribution pDistribution, long pCount) throws IOException
+	{
+		File dataDir = new File(System.getProperty(DATADIR_PROPERTY, System.getProperty("java.io.tmpdir")), "numbermatcher-bench");
+		dataDir.mkdirs();
+		File inputFile = new File(dataDir, pDistribution.name().toLowerCase() + "_" + pCount + ".txt");
+		if (inputFile.exists())
+			return inputFile;
+		
+		// Write to a partial file first so an interrupted run doesn't leave a short data set behind
+		File partialFile = new File(dataDir, inputFile.getName() + ".part");
+		Random rnd = new Random(SEED);
+		BufferedWriter fileBufferOutputWriter = new BufferedWriter(new FileWriter(partialFile), 1024 * 1024);
+		try
+		{
+			for (long i=0; i<pCount; i++)
+			{
+				fileBufferOutputWriter.write(Long.toString(pDistribution.getNumber(rnd, i, pCount)));
+				fileBufferOutputWriter.newLine();
+			}
+		}
+		finally {
+			fileBufferOutputWriter.close();
+		}
+		
+		if (!partialFile.renameTo(inputFile))
+			throw new IOException("Unable to rename benchmark data file " + partialFile);
+		return inputFile;
+	}
+	
+	/***
+	 * Called to return an array of numbers in the given distribution.
+	 * 
+	 * @param pDistribution The distribution of the numbers.
+	 * @param pCount The count of numbers in the array.
+	 * @return The numbers.
+	 */
+	public static long[] getNumbers(BenchmarkDistribution pDistribution, int pCount)
+	{
+		Random rnd = new Random(SEED);
+		long[] numbers = new long[pCount];
+		for (int i=0; i<pCount; i++)
+			numbers[i] = pDistribution.getNumber(rnd, i, pCount);
+		return numbers;
+	}
+	
+	/***
+	 * Called to split an array of numbers into the given count of sorted runs of near equal size and write 
+	 * each to its own split file.
+	 * 
+	 * @param pNumbers The numbers to split.
+	 * @param pRunCount The count of runs.
+	 * @param pRunFileFormat The format used to store the split files.
+	 * @return The list of split files.
+	 * @throws IOException Error thrown on file access.
+	 */
+	public static List<File> writeRuns(long[] pNumbers, int pRunCount, RunFileFormat pRunFileFormat) throws IOException
+	{
+		ArrayList<File> splitFileList = new ArrayList<File>();
+		for (int run=0; run<pRunCount; run++)
+		{
+			int from = (int) ((long) pNumbers.length * run / pRunCount);
+			int to = (int) ((long) pNumbers.length * (run + 1) / pRunCount);
+			long[] runNumbers = Arrays.copyOfRange(pNumbers, from, to);
+			Arrays.sort(runNumbers);
+			
+			File splitFile = File.createTempFile("benchRun_" + run, pRunFileFormat.getFileExtension());
+			splitFileList.add(splitFile);
+			writeNumbers(splitFile, runNumbers, pRunFileFormat);
+		}
+		return splitFileList;
+	}
+	
+	/***
+	 * Called to write an array of numbers to a file in the given format.
+	 * 
+	 * @param pFile The file to write.
+	 * @param pNumbers The numbers, in ascending order for the binary formats.
+	 * @param pRunFileFormat The format of the file.
+	 * @throws IOException Error thrown on file access.
+	 */
+	public static void writeNumbers(File pFile, long[] pNumbers, RunFileFormat pRunFileFormat) throws IOException
+	{
+		RunFileWriter fileRunWriter = pRunFileFormat.createWriter(pFile);
+		try
+		{
+			for (long number : pNumbers)
+				fileRunWriter.write(number);
+		}
+		finally {
+			fileRunWriter.close();
+		}
+	}
+	
+	/***
+	 * Called to delete a list of files.
+	 * 
+	 * @param pFileList The files to delete.
+	 */
+	public static void deleteFiles(List<File> pFileList)
+	{
+		for (File file : pFileList)
+			file.delete();
+	}
+}
@@ -0,0 +1,82 @@
+package com.devtest.matcher;
+
+import java.util.Random;
+
+/***
+ * The distributions of numbers the benchmarks are run against. Each distribution gives the number at a
+ * position of a data set of a given count, so data sets of any size are generated the same way whether 
+ * they're held in memory or written to a file.
+ */
+public enum BenchmarkDistribution 
+{
+	// Numbers spread evenly over twice the count, so about a fifth of the numbers are duplicated
+	UNIFORM
+	{
+		@Override
+		public long getNumber(Random pRandom, long pIndex, long pCount)
+		{
+			return 1 + (long) (pRandom.nextDouble() * 2 * pCount);
+		}
+	},
+	
+	// Numbers crowded towards the low end of the range, so a few values are repeated very often
+	SKEWED
+	{
+		@Override
+		public long getNumber(Random pRandom, long pIndex, long pCount)
+		{
+			double random = pRandom.nextDouble();
+			return 1 + (long) (random * random * random * 2 * pCount);
+		}
+	},
+	
+	// Numbers in ascending order with every hundredth number repeated
+	SORTED
+	{
+		@Override
+		public long getNumber(Random pRandom, long pIndex, long pCount)
+		{
+			return sortedNumber(pIndex);
+		}
+	},
+	
+	// Numbers in descending order with every hundredth number repeated
+	REVERSE_SORTED
+	{
+		@Override
+		public long getNumber(Random pRandom, long pIndex, long pCount)
+		{
+			return sortedNumber(pCount - 1 - pIndex);
+		}
+	},
+	
+	// Numbers spread evenly over a hundredth of the count, so each value appears about a hundred times
+	DUPLICATE_HEAVY
+	{
+		@Override
+		public long getNumber(Random pRandom, long pIndex, long pCount)
+		{
+			return 1 + (long) (pRandom.nextDouble() * Math.max(pCount / 100, 1));
+		}
+	};
+	
+	/***
+	 * Called to return the number at the given position of a data set.
+	 * 
+	 * @param pRandom The random generator shared by the whole data set.
+	 * @param pIndex The position of the number in the data set.
+	 * @param pCount The count of numbers in the data set.
+	 * @return The number.
+	 */
+	public abstract long getNumber(Random pRandom, long pIndex, long pCount);
+	
+	/***
+	 * Helper method to return the number at a position of an ascending data set, where every hundredth
+	 * number repeats the number before it.
+	 */
+	private static long sortedNumber(long pIndex)
+	{
+		long number = pIndex + 1;
+		return (number % 100 == 0) ? number - 1 : number;
+	}
+}
@@ -0,0 +1,58 @@
+package com.devtest.matcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/***
+ * Benchmark of the full job, rendering an input file and reporting its duplicates, for each detection 
+ * strategy. Each invocation is a single timed job. The larger data sets are left out of the defaults and
+ * are run by overriding the count, for example -p mCount=100000000,1000000000.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class EndToEndBenchmark 
+{
+	@Param({"100000", "10000000"})
+	public long mCount;
+	
+	@Param({"UNIFORM", "SKEWED", "SORTED", "REVERSE_SORTED", "DUPLICATE_HEAVY"})
+	public BenchmarkDistribution mDistribution;
+	
+	@Param({"EXTERNAL_SORT", "BITMAP", "HASH_PARTITION"})
+	public DetectionStrategy mDetectionStrategy;
+	
+	private File mInputFile;
+	
+	@Setup
+	public void setup() throws IOException
+	{
+		mInputFile = BenchmarkData.getInputFile(mDistribution, mCount);
+	}
+	
+	@Benchmark
+	public void matchDuplicateNumbers() throws IOException
+	{
+		NumberController controller = new NumberController(mInputFile.getPath(), MatcherConfig.fromSystemProperties());
+		controller.setDetectionStrategy(mDetectionStrategy);
+		controller.setFusedDuplicateScan(true);
+		controller.renderInputNumbers();
+		controller.validateAndPrintDuplicateNumbers(false, true);
+	}
+}
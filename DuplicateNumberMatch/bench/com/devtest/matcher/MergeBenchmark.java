@@ -0,0 +1,89 @@
+package com.devtest.matcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/***
+ * Benchmark of merging a set of sorted split files with the priority queue of SplitBufferFileWrapper
+ * ordered by SplitFileQueueComparator and with the tournament tree of losers. The split files are written
+ * once per trial and the merged numbers are only summed, so the merge is measured on its own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MergeBenchmark 
+{
+	@Param({"4000000"})
+	public int mCount;
+	
+	@Param({"16", "128"})
+	public int mRunCount;
+	
+	@Param({"UNIFORM", "DUPLICATE_HEAVY"})
+	public BenchmarkDistribution mDistribution;
+	
+	@Param({"PRIORITY_QUEUE", "LOSER_TREE"})
+	public MergeEngine mMergeEngine;
+	
+	private List<File> mSplitFileList;
+	private ExternalSortPlan mPlan;
+	private NumberController mController;
+	private long mSum;
+	
+	@Setup
+	public void setup() throws IOException
+	{
+		long[] numbers = BenchmarkData.getNumbers(mDistribution, mCount);
+		mSplitFileList = BenchmarkData.writeRuns(numbers, mRunCount, RunFileFormat.BINARY_DELTA);
+		
+		// Allow enough open files and merge memory that every run is merged in a single pass, as an 
+		// intermediate pass would delete the runs before the next invocation
+		long memoryBudget = Math.max(MatcherConfig.fromSystemProperties().getMemoryBudget(), 
+				(long) (mRunCount + 1) * ExternalSortPlan.MINMERGEMEMORYPERRUN);
+		MatcherConfig config = new MatcherConfig(memoryBudget, mRunCount + 1);
+		mPlan = ExternalSortPlan.create(0, config);
+		if (mPlan.getFanIn() < mRunCount)
+			throw new IllegalStateException("Fan-in " + mPlan.getFanIn() + " can't merge " + mRunCount + " runs in one pass");
+		mController = new NumberController("", config);
+		mController.setMergeEngine(mMergeEngine);
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		BenchmarkData.deleteFiles(mSplitFileList);
+	}
+	
+	@Benchmark
+	public long mergeRuns() throws IOException
+	{
+		mSum = 0;
+		mController.mergeSplitFiles(mSplitFileList, mPlan, new NumberSink()
+		{
+			@Override
+			public void write(long pNumber)
+			{
+				mSum += pNumber;
+			}
+		});
+		return mSum;
+	}
+}
@@ -0,0 +1,60 @@
+package com.devtest.matcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/***
+ * Benchmark of parsing the numbers from an input file, with no sorting or duplicate detection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParseBenchmark 
+{
+	@Param({"100000", "10000000"})
+	public long mCount;
+	
+	@Param({"UNIFORM", "SORTED"})
+	public BenchmarkDistribution mDistribution;
+	
+	private File mInputFile;
+	
+	@Setup
+	public void setup() throws IOException
+	{
+		mInputFile = BenchmarkData.getInputFile(mDistribution, mCount);
+	}
+	
+	@Benchmark
+	public long parseInput() throws IOException
+	{
+		// Sum the numbers so the parsing can't be optimized away
+		long sum = 0;
+		NumberScanner numberInput = NumberScanner.openFile(mInputFile);
+		try
+		{
+			while (numberInput.hasNext())
+				sum += numberInput.next();
+		}
+		finally {
+			numberInput.close();
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,82 @@
+package com.devtest.matcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/***
+ * Benchmark of sorting one chunk of numbers in the run buffer, on its own and together with writing the
+ * sorted chunk to a split file as sortBufferNumberList does. The buffer is refilled with the unsorted
+ * numbers before each invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SortBenchmark 
+{
+	@Param({"100000", "1000000"})
+	public int mCount;
+	
+	@Param({"UNIFORM", "SKEWED", "SORTED", "REVERSE_SORTED", "DUPLICATE_HEAVY"})
+	public BenchmarkDistribution mDistribution;
+	
+	private long[] mNumbers;
+	private NumberRunBuffer mRunBuffer;
+	private ChunkSortRunGenerator mRunGenerator;
+	private File mSplitFile;
+	
+	@Setup
+	public void setup()
+	{
+		mNumbers = BenchmarkData.getNumbers(mDistribution, mCount);
+		mRunBuffer = new NumberRunBuffer((long) mCount * NumberRunBuffer.BYTESPERNUMBER);
+		mRunGenerator = new ChunkSortRunGenerator(RunFileFormat.BINARY_DELTA, (long) mCount * NumberRunBuffer.BYTESPERNUMBER);
+	}
+	
+	@Setup(Level.Invocation)
+	public void fillBuffer()
+	{
+		mRunBuffer.clear();
+		for (long number : mNumbers)
+			mRunBuffer.add(number);
+	}
+	
+	@TearDown(Level.Invocation)
+	public void deleteSplitFile()
+	{
+		if (mSplitFile != null)
+			mSplitFile.delete();
+		mSplitFile = null;
+	}
+	
+	@Benchmark
+	public long sortBuffer()
+	{
+		mRunBuffer.sort();
+		return mRunBuffer.get(0);
+	}
+	
+	@Benchmark
+	public File sortBufferNumberList() throws IOException
+	{
+		mSplitFile = mRunGenerator.sortBufferNumberList(mRunBuffer, 0);
+		return mSplitFile;
+	}
+}
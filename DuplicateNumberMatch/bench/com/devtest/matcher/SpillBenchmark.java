@@ -0,0 +1,92 @@
+package com.devtest.matcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/***
+ * Benchmark of spilling a sorted run to a split file and reading it back in each run file format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SpillBenchmark 
+{
+	@Param({"1000000"})
+	public int mCount;
+	
+	@Param({"UNIFORM", "DUPLICATE_HEAVY"})
+	public BenchmarkDistribution mDistribution;
+	
+	@Param({"TEXT", "BINARY_FIXED", "BINARY_DELTA", "BINARY_COMPRESSED"})
+	public RunFileFormat mRunFileFormat;
+	
+	private NumberRunBuffer mRunBuffer;
+	private File mSplitFile;
+	
+	@Setup
+	public void setup() throws IOException
+	{
+		long[] numbers = BenchmarkData.getNumbers(mDistribution, mCount);
+		Arrays.sort(numbers);
+		mRunBuffer = new NumberRunBuffer((long) mCount * NumberRunBuffer.BYTESPERNUMBER);
+		for (long number : numbers)
+			mRunBuffer.add(number);
+		
+		mSplitFile = File.createTempFile("benchSpill", mRunFileFormat.getFileExtension());
+		spillRun();
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		mSplitFile.delete();
+	}
+	
+	@Benchmark
+	public long spillRun() throws IOException
+	{
+		RunFileWriter fileRunWriter = mRunFileFormat.createWriter(mSplitFile);
+		try
+		{
+			mRunBuffer.writeTo(fileRunWriter);
+		}
+		finally {
+			fileRunWriter.close();
+		}
+		return fileRunWriter.getCount();
+	}
+	
+	@Benchmark
+	public long readRun() throws IOException
+	{
+		long sum = 0;
+		RunFileReader fileRunReader = mRunFileFormat.openReader(mSplitFile);
+		try
+		{
+			while (fileRunReader.hasNext())
+				sum += fileRunReader.next();
+		}
+		finally {
+			fileRunReader.close();
+		}
+		return sum;
+	}
+}
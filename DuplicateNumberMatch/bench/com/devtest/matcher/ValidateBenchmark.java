@@ -0,0 +1,64 @@
+package com.devtest.matcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/***
+ * Benchmark of scanning the final sorted file for duplicates with validateAndPrintDuplicateNumbers. The
+ * sorted file is deleted by each scan, so it's written again before each invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ValidateBenchmark 
+{
+	@Param({"1000000"})
+	public int mCount;
+	
+	@Param({"UNIFORM", "SORTED", "DUPLICATE_HEAVY"})
+	public BenchmarkDistribution mDistribution;
+	
+	private long[] mSortedNumbers;
+	private NumberController mController;
+	
+	@Setup
+	public void setup()
+	{
+		mSortedNumbers = BenchmarkData.getNumbers(mDistribution, mCount);
+		Arrays.sort(mSortedNumbers);
+		mController = new NumberController("");
+	}
+	
+	@Setup(Level.Invocation)
+	public void writeSortedFile() throws IOException
+	{
+		File sortedOutputFile = File.createTempFile("benchSorted", RunFileFormat.BINARY_DELTA.getFileExtension());
+		BenchmarkData.writeNumbers(sortedOutputFile, mSortedNumbers, RunFileFormat.BINARY_DELTA);
+		mController.setSortedOutputFile(sortedOutputFile);
+	}
+	
+	@Benchmark
+	public ArrayList<String> validateDuplicateNumbers() throws IOException
+	{
+		return mController.validateAndPrintDuplicateNumbers(true, true);
+	}
+}
@@ -0,0 +1,480 @@
+package com.devtest.matcher;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/***
+ * Run reader to read back a sorted run stored by the {@link BinaryRunFileWriter}. The encoded numbers are
+ * read from disk in blocks into a reusable buffer and decoded directly into primitive values. The checksum
+ * in the header is validated once the last number in the run has been read.
+ * 
+ * A reader can also start part way through a run at a segment of its index, in which case the checksum
+ * of each segment is validated as its bytes are read instead.
+ * 
+ * Runs with the compressed delta encoding are read a block at a time, the checksums are updated with the
+ * compressed bytes as they are read from disk and the block is then inflated into the buffer the numbers 
+ * are decoded from. The buffer grows to the size of the largest block.
+ * 
+ * The copies of each number in a counted run are returned from the count stored after the number without
+ * reading anything more from the buffer.
+ */
+class BinaryRunFileReader implements RunFileReader
+{
+	public static final int BUFFERSIZE = 64 * 1024;
+	
+	// Max size in bytes of a compressed block accepted before the run is reported as corrupt
+	private static final int MAXBLOCKSIZE = 16 * 1024 * 1024;
+	
+	private File mFile;
+	private InputStream mInputStream;
+	private BinaryRunHeader mHeader;
+	private CRC32 mChecksum;
+	private byte[] mBuffer;
+	private int mPosition;
+	private int mLimit;
+	private long mRemaining;
+	private long mOrdinal;
+	private long mPrevious;
+	private long mBytesLeft;
+	private BinaryRunIndex mIndex;
+	private int mSegment;
+	private long mSegmentBytesLeft;
+	private Inflater mInflater;
+	private byte[] mBlockHeader;
+	private byte[] mCompressedBlock;
+	private long mRepeatCount;
+	
+	/***
+	 * Constructor to create a new binary run reader using the default buffer size.
+	 * 
+	 * @param pFile The file to read the run from.
+	 * @throws IOException Error thrown on file access or if the file is not a valid run.
+	 */
+	public BinaryRunFileReader(File pFile) throws IOException
+	{
+		this(pFile, BUFFERSIZE);
+	}
+	
+	/***
+	 * Constructor to create a new binary run reader.
+	 * 
+	 * @param pFile The file to read the run from.
+	 * @param pBufferSize The size in bytes of the block read from disk at a time.
+	 * @throws IOException Error thrown on file access or if the file is not a valid run.
+	 */
+	public BinaryRunFileReader(File pFile, int pBufferSize) throws IOException
+	{
+		mFile = pFile;
+		mInputStream = new FileInputStream(pFile);
+		try
+		{
+			mHeader = BinaryRunHeader.read(mInputStream, pFile);
+		}
+		catch (IOException ex)
+		{
+			close();
+			throw ex;
+		}
+		
+		mChecksum = new CRC32();
+		mBuffer = new byte[Math.max(pBufferSize, 16)];
+		mPosition = 0;
+		mLimit = 0;
+		mRemaining = mHeader.mCount;
+		mOrdinal = 0;
+		mBytesLeft = mHeader.getNumbersEnd() - mHeader.getHeaderSize();
+		initInflater();
+		if (mRemaining == 0)
+			validateChecksum();
+	}
+	
+	/***
+	 * Constructor to create a new binary run reader starting at the given segment of the run's index.
+	 * 
+	 * @param pIndex The index of the run.
+	 * @param pSegment The segment to start reading at.
+	 * @param pBufferSize The size in bytes of the block read from disk at a time.
+	 * @throws IOException Error thrown on file access.
+	 */
+	public BinaryRunFileReader(BinaryRunIndex pIndex, int pSegment, int pBufferSize) throws IOException
+	{
+		mFile = pIndex.getFile();
+		mInputStream = new FileInputStream(mFile);
+		try
+		{
+			((FileInputStream) mInputStream).getChannel().position(pIndex.getOffset(pSegment));
+		}
+		catch (IOException ex)
+		{
+			close();
+			throw ex;
+		}
+		
+		mHeader = pIndex.getHeader();
+		mIndex = pIndex;
+		mSegment = pSegment;
+		mSegmentBytesLeft = pIndex.getEnd(pSegment) - pIndex.getOffset(pSegment);
+		mChecksum = new CRC32();
+		mBuffer = new byte[Math.max(pBufferSize, 16)];
+		mPosition = 0;
+		mLimit = 0;
+		mOrdinal = (long) pSegment * mHeader.mIndexInterval;
+		mRemaining = mHeader.mCount - mOrdinal;
+		mBytesLeft = mHeader.getNumbersEnd() - pIndex.getOffset(pSegment);
+		initInflater();
+	}
+	
+	/***
+	 * @return The header of the run holding the count, min and max of the numbers.
+	 */
+	public BinaryRunHeader getHeader()
+	{
+		return mHeader;
+	}
+	
+	@Override
+	public boolean hasNext()
+	{
+		return mRemaining > 0;
+	}
+	
+	@Override
+	public long next() throws IOException
+	{
+		if (mRemaining <= 0)
+			throw new EOFException("No numbers left to read in run file: " + mFile);
+		
+		long number;
+		if (mRepeatCount > 0)
+		{
+			mRepeatCount--;
+			number = mPrevious;
+		}
+		else
+		{
+			switch (mHeader.mEncoding)
+			{
+				case BinaryRunHeader.ENCODING_FIXED32:
+					number = (int) readFixed(4);
+					break;
+				case BinaryRunHeader.ENCODING_FIXED64:
+					number = readFixed(8);
+					break;
+				default:
+					if (mHeader.isSegmentStart(mOrdinal))
+					{
+						long zigzag = readVarLong();
+						number = (zigzag >>> 1) ^ -(zigzag & 1);
+					}
+					else {
+						number = mPrevious + readVarLong();
+					}
+					if (mHeader.isCounted())
+						readRepeatCount();
+					break;
+			}
+		}
+		
+		mPrevious = number;
+		mOrdinal++;
+		if (--mRemaining == 0)
+			validateChecksum();
+		return number;
+	}
+	
+	@Override
+	public int read(long[] pBuffer, int pOffset, int pLength) throws IOException
+	{
+		int count = 0;
+		while (count < pLength && mRemaining > 0)
+		{
+			// The copies of a counted number are filled in one go, leaving the last number of the run to 
+			// next so the checksum is still validated
+			long copies = Math.min(Math.min(mRepeatCount, pLength - count), mRemaining - 1);
+			if (copies > 0)
+			{
+				Arrays.fill(pBuffer, pOffset + count, pOffset + count + (int) copies, mPrevious);
+				count += (int) copies;
+				mRepeatCount -= copies;
+				mRemaining -= copies;
+				mOrdinal += copies;
+				continue;
+			}
+			pBuffer[pOffset + count++] = next();
+		}
+		return count;
+	}
+	
+	@Override
+	public File getFile()
+	{
+		return mFile;
+	}
+	
+	@Override
+	public void close()
+	{
+		try 
+		{
+			mInputStream.close();
+		} 
+		catch(IOException ex) {} 
+		if (mInflater != null)
+			mInflater.end();
+	}
+	
+	/***
+	 * Helper method to create the inflater and block buffers when the run is compressed. The buffer the
+	 * numbers are decoded from starts small since it only needs to hold one inflated block.
+	 */
+	private void initInflater()
+	{
+		if (mHeader.mEncoding == BinaryRunHeader.ENCODING_DELTA_DEFLATE)
+		{
+			mInflater = new Inflater();
+			mBlockHeader = new byte[BinaryRunFileWriter.BLOCKHEADERSIZE];
+			mCompressedBlock = new byte[Math.min(mBuffer.length, 4096)];
+			mBuffer = new byte[Math.min(mBuffer.length, 4096)];
+		}
+	}
+	
+	/***
+	 * Helper method to read the count of further copies stored after a number of a counted run. Only a
+	 * number followed by a copy in the same segment can have a count, which is marked by a zero byte where 
+	 * the next delta would be. The count may not run past the end of the run or of the segment.
+	 */
+	private void readRepeatCount() throws IOException
+	{
+		long nextOrdinal = mOrdinal + 1;
+		if (nextOrdinal >= mHeader.mCount || mHeader.isSegmentStart(nextOrdinal) || peekByte() != 0)
+			return;
+		
+		readByte();
+		long repeatCount = readVarLong();
+		long segmentLeft = mRemaining - 1;
+		if (mHeader.mIndexInterval > 0)
+			segmentLeft = Math.min(segmentLeft, mHeader.mIndexInterval - 1 - mOrdinal % mHeader.mIndexInterval);
+		if (repeatCount < 1 || repeatCount > segmentLeft)
+			throw new IOException("Malformed count in run file: " + mFile);
+		mRepeatCount = repeatCount;
+	}
+	
+	/***
+	 * Helper method to read a fixed width big endian value from the buffer.
+	 */
+	private long readFixed(int pWidth) throws IOException
+	{
+		long value = 0;
+		for (int i=0; i<pWidth; i++)
+			value = (value << 8) | (readByte() & 0xFF);
+		return value;
+	}
+	
+	/***
+	 * Helper method to read an unsigned variable length value from the buffer.
+	 */
+	private long readVarLong() throws IOException
+	{
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7)
+		{
+			byte b = readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed number in run file: " + mFile);
+	}
+	
+	/***
+	 * Helper method to return the next byte from the buffer reading the next block from disk as required.
+	 */
+	private byte readByte() throws IOException
+	{
+		if (mPosition == mLimit)
+		{
+			if (!fillBuffer())
+				throw new EOFException("Binary run file is truncated: " + mFile);
+		}
+		return mBuffer[mPosition++];
+	}
+	
+	/***
+	 * Helper method to return the next byte from the buffer without moving past it.
+	 */
+	private byte peekByte() throws IOException
+	{
+		if (mPosition == mLimit)
+		{
+			if (!fillBuffer())
+				throw new EOFException("Binary run file is truncated: " + mFile);
+		}
+		return mBuffer[mPosition];
+	}
+	
+	/***
+	 * Helper method to read the next block of encoded numbers from disk into the buffer.
+	 * 
+	 * @return True if any bytes were read, False if the end of the file was reached.
+	 */
+	private boolean fillBuffer() throws IOException
+	{
+		if (mInflater != null)
+			return fillBlock();
+		
+		int count = readStored(mBuffer, 0, mBuffer.length);
+		if (count <= 0)
+			return false;
+		
+		mPosition = 0;
+		mLimit = count;
+		return true;
+	}
+	
+	/***
+	 * Helper method to read the next compressed block from disk and inflate it into the buffer.
+	 * 
+	 * @return True if a block was read, False if the end of the numbers was reached.
+	 */
+	private boolean fillBlock() throws IOException
+	{
+		if (mBytesLeft <= 0)
+			return false;
+		
+		readStoredFully(mBlockHeader, mBlockHeader.length);
+		int rawLength = getInt(mBlockHeader, 0);
+		int compressedLength = getInt(mBlockHeader, 4);
+		if (rawLength <= 0 || rawLength > MAXBLOCKSIZE || compressedLength <= 0 || compressedLength > mBytesLeft)
+			throw new IOException("Malformed compressed block in run file: " + mFile);
+		
+		if (compressedLength > mCompressedBlock.length)
+			mCompressedBlock = new byte[compressedLength];
+		if (rawLength > mBuffer.length)
+			mBuffer = new byte[rawLength];
+		readStoredFully(mCompressedBlock, compressedLength);
+		
+		mInflater.reset();
+		mInflater.setInput(mCompressedBlock, 0, compressedLength);
+		int count = 0;
+		try
+		{
+			while (count < rawLength)
+			{
+				int inflated = mInflater.inflate(mBuffer, count, rawLength - count);
+				if (inflated == 0)
+					break;
+				count += inflated;
+			}
+		}
+		catch (DataFormatException ex)
+		{
+			throw new IOException("Corrupt compressed block in run file: " + mFile + ", " + ex.getMessage());
+		}
+		if (count != rawLength)
+			throw new IOException("Compressed block has the wrong length in run file: " + mFile);
+		
+		mPosition = 0;
+		mLimit = rawLength;
+		return true;
+	}
+	
+	/***
+	 * Helper method to read the next bytes stored in the file up to the end of the numbers, adding them to
+	 * the checksum of the run or of the segments they belong to.
+	 * 
+	 * @return The count of bytes read, or -1 if the end of the numbers was reached.
+	 */
+	private int readStored(byte[] pBuffer, int pOffset, int pLength) throws IOException
+	{
+		if (mBytesLeft <= 0)
+			return -1;
+		
+		int count = mInputStream.read(pBuffer, pOffset, (int) Math.min(pLength, mBytesLeft));
+		if (count <= 0)
+			return -1;
+		
+		if (mIndex == null)
+			mChecksum.update(pBuffer, pOffset, count);
+		else
+			updateSegmentChecksums(pBuffer, pOffset, count);
+		mBytesLeft -= count;
+		return count;
+	}
+	
+	/***
+	 * Helper method to read the given count of bytes stored in the file.
+	 */
+	private void readStoredFully(byte[] pBuffer, int pLength) throws IOException
+	{
+		int read = 0;
+		while (read < pLength)
+		{
+			int count = readStored(pBuffer, read, pLength - read);
+			if (count < 0)
+				throw new EOFException("Binary run file is truncated: " + mFile);
+			read += count;
+		}
+	}
+	
+	/***
+	 * Helper method to read a big endian int from the given array.
+	 */
+	private static int getInt(byte[] pBytes, int pOffset)
+	{
+		return ((pBytes[pOffset] & 0xFF) << 24) | ((pBytes[pOffset + 1] & 0xFF) << 16) 
+				| ((pBytes[pOffset + 2] & 0xFF) << 8) | (pBytes[pOffset + 3] & 0xFF);
+	}
+	
+	/***
+	 * Helper method to add the bytes just read to the checksum of the segment they belong to, validating 
+	 * the checksum of each segment as its last byte is read.
+	 */
+	private void updateSegmentChecksums(byte[] pBuffer, int pOffset, int pCount) throws IOException
+	{
+		int position = 0;
+		while (position < pCount)
+		{
+			int length = (int) Math.min(pCount - position, mSegmentBytesLeft);
+			mChecksum.update(pBuffer, pOffset + position, length);
+			position += length;
+			mSegmentBytesLeft -= length;
+			if (mSegmentBytesLeft == 0)
+			{
+				if (mChecksum.getValue() != mIndex.getChecksum(mSegment))
+					throw new IOException("Checksum mismatch in segment " + mSegment + " of run file: " + mFile);
+				
+				mChecksum.reset();
+				mSegment++;
+				if (mSegment == mIndex.getSegmentCount())
+				{
+					if (position < pCount)
+						throw new IOException("Binary run file has data past its last segment: " + mFile);
+					return;
+				}
+				mSegmentBytesLeft = mIndex.getEnd(mSegment) - mIndex.getOffset(mSegment);
+			}
+		}
+	}
+	
+	/***
+	 * Helper method to validate the checksum once all numbers have been read. Any bytes left over after
+	 * the last number are included so trailing data is also detected as corruption. When reading from a
+	 * segment the remaining bytes of the last segment are read so its checksum is validated.
+	 */
+	private void validateChecksum() throws IOException
+	{
+		mPosition = mLimit;
+		while (fillBuffer())
+			mPosition = mLimit;
+		
+		if (mIndex == null && mChecksum.getValue() != mHeader.mChecksum)
+			throw new IOException("Checksum mismatch in run file: " + mFile);
+	}
+}
@@ -0,0 +1,300 @@
+package com.devtest.matcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/***
+ * Run writer to store a sorted run in a compact binary format. Numbers are encoded into an internal buffer
+ * which is written to disk in blocks, and the header is written to the start of the file once the run is
+ * closed and the count, min, max and checksum are known. A sparse index of the run's segments is written
+ * after the last number, see {@link BinaryRunIndex}.
+ * 
+ * With the compressed delta encoding the encoded numbers of each segment are compressed with a Deflater at
+ * its fastest level as they are flushed, and stored as a block of raw length (4), compressed length (4) 
+ * and compressed bytes. A new block is started at every segment so a reader can still seek to any segment.
+ * The checksums cover the compressed bytes as stored in the file.
+ * 
+ * A delta encoded run can also be written counted, where each number is stored once followed by a count
+ * of the further copies of it, so a number repeated a million times takes up a few bytes. The numbers of a
+ * counted run are all different so no delta is zero, and a count is stored as a zero byte followed by the
+ * count where the next delta would be, so numbers without copies take no more space. A count never runs
+ * past the end of a segment, the copies carrying on into the next segment are stored again at its start, 
+ * so every segment still holds the same count of numbers.
+ */
+class BinaryRunFileWriter implements RunFileWriter
+{
+	public static final int BUFFERSIZE = 64 * 1024;
+	
+	// Max number of bytes a single encoded number can take up
+	private static final int MAXENCODEDSIZE = 10;
+	
+	// Size in bytes of the lengths stored before each compressed block
+	public static final int BLOCKHEADERSIZE = 8;
+	
+	private RandomAccessFile mRandomAccessFile;
+	private BinaryRunHeader mHeader;
+	private CRC32 mChecksum;
+	private byte[] mBuffer;
+	private int mPosition;
+	private long mPrevious;
+	private long mBytesFlushed;
+	private BinaryRunIndex mIndex;
+	private CRC32 mSegmentChecksum;
+	private int mSegmentPosition;
+	private Deflater mDeflater;
+	private byte[] mCompressedBuffer;
+	private long mRepeatCount;
+	
+	/***
+	 * Constructor to create a new binary run writer.
+	 * 
+	 * @param pFile The file to write the run to.
+	 * @param pEncoding The encoding to use for the numbers, one of the BinaryRunHeader encodings.
+	 * @throws IOException Error thrown on file access.
+	 */
+	public BinaryRunFileWriter(File pFile, byte pEncoding) throws IOException
+	{
+		this(pFile, pEncoding, false);
+	}
+	
+	/***
+	 * Constructor to create a new binary run writer, optionally storing the copies of each number as a count.
+	 * 
+	 * @param pFile The file to write the run to.
+	 * @param pEncoding The encoding to use for the numbers, one of the BinaryRunHeader encodings.
+	 * @param pCounted True to store the copies of each number as a count, only used by the delta encodings.
+	 * @throws IOException Error thrown on file access.
+	 */
+	public BinaryRunFileWriter(File pFile, byte pEncoding, boolean pCounted) throws IOException
+	{
+		mRandomAccessFile = new RandomAccessFile(pFile, "rw");
+		mRandomAccessFile.setLength(0);
+		mRandomAccessFile.seek(BinaryRunHeader.HEADER_SIZE);
+		mHeader = new BinaryRunHeader(pEncoding);
+		if (pCounted && pEncoding >= BinaryRunHeader.ENCODING_DELTA)
+			mHeader.mFlags = BinaryRunHeader.FLAG_COUNTED;
+		mChecksum = new CRC32();
+		mBuffer = new byte[BUFFERSIZE];
+		mPosition = 0;
+		mBytesFlushed = 0;
+		mIndex = new BinaryRunIndex();
+		mHeader.mIndexInterval = BinaryRunIndex.DEFAULTINTERVAL;
+		mSegmentChecksum = new CRC32();
+		mSegmentPosition = 0;
+		if (pEncoding == BinaryRunHeader.ENCODING_DELTA_DEFLATE)
+		{
+			mDeflater = new Deflater(Deflater.BEST_SPEED);
+			mCompressedBuffer = new byte[BLOCKHEADERSIZE + BUFFERSIZE / 2];
+		}
+	}
+	
+	@Override
+	public void write(long pNumber) throws IOException
+	{
+		if (mHeader.mCount > 0 && pNumber < mPrevious)
+			throw new IOException("Numbers must be written to a run in sorted order");
+		
+		boolean segmentStart = mHeader.isSegmentStart(mHeader.mCount);
+		if (mHeader.isCounted() && mHeader.mCount > 0)
+		{
+			// A copy of the last number only adds to its count, unless it starts a new segment
+			if (pNumber == mPrevious && !segmentStart)
+			{
+				mRepeatCount++;
+				mHeader.mCount++;
+				return;
+			}
+			endRecord();
+		}
+		
+		if (mPosition + MAXENCODEDSIZE > mBuffer.length)
+			flushBuffer();
+		
+		if (segmentStart)
+		{
+			// Each segment starts a new compressed block so it can be read on its own
+			if (mDeflater != null)
+				flushBuffer();
+			startSegment(pNumber);
+		}
+		
+		switch (mHeader.mEncoding)
+		{
+			case BinaryRunHeader.ENCODING_FIXED32:
+				if (pNumber < Integer.MIN_VALUE || pNumber > Integer.MAX_VALUE)
+					throw new IOException("Number too large for fixed 32 bit run: " + pNumber);
+				putFixed(pNumber, 4);
+				break;
+			case BinaryRunHeader.ENCODING_FIXED64:
+				putFixed(pNumber, 8);
+				break;
+			default:
+				if (segmentStart)
+					putVarLong((pNumber << 1) ^ (pNumber >> 63));
+				else
+					putVarLong(pNumber - mPrevious);
+				break;
+		}
+		
+		if (mHeader.mCount == 0)
+			mHeader.mMin = pNumber;
+		mHeader.mMax = pNumber;
+		mHeader.mCount++;
+		mPrevious = pNumber;
+	}
+	
+	@Override
+	public long getCount()
+	{
+		return mHeader.mCount;
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			if (mHeader.isCounted() && mHeader.mCount > 0)
+				endRecord();
+			flushBuffer();
+			if (mIndex.getSegmentCount() > 0)
+				mIndex.setLastChecksum(mSegmentChecksum.getValue());
+			mHeader.mChecksum = mChecksum.getValue();
+			mHeader.mIndexOffset = BinaryRunHeader.HEADER_SIZE + mBytesFlushed;
+			mHeader.mIndexSegmentCount = mIndex.getSegmentCount();
+			mIndex.write(mRandomAccessFile);
+			mRandomAccessFile.seek(0);
+			mRandomAccessFile.write(mHeader.toBytes());
+		}
+		finally {
+			mRandomAccessFile.close();
+			if (mDeflater != null)
+				mDeflater.end();
+		}
+	}
+	
+	/***
+	 * Helper method to store the count of further copies of the last number written to a counted run, if
+	 * it has any.
+	 */
+	private void endRecord() throws IOException
+	{
+		if (mRepeatCount > 0)
+		{
+			if (mPosition + MAXENCODEDSIZE + 1 > mBuffer.length)
+				flushBuffer();
+			mBuffer[mPosition++] = 0;
+			putVarLong(mRepeatCount);
+			mRepeatCount = 0;
+		}
+	}
+	
+	/***
+	 * Helper method to close the current segment of the index and start a new one at the given number.
+	 */
+	private void startSegment(long pNumber)
+	{
+		if (mIndex.getSegmentCount() > 0)
+		{
+			updateSegmentChecksum();
+			mIndex.setLastChecksum(mSegmentChecksum.getValue());
+			mSegmentChecksum.reset();
+		}
+		mIndex.addSegment(pNumber, BinaryRunHeader.HEADER_SIZE + mBytesFlushed + mPosition);
+	}
+	
+	/***
+	 * Helper method to add the bytes encoded since the last update to the checksum of the current segment.
+	 */
+	private void updateSegmentChecksum()
+	{
+		mSegmentChecksum.update(mBuffer, mSegmentPosition, mPosition - mSegmentPosition);
+		mSegmentPosition = mPosition;
+	}
+	
+	/***
+	 * Helper method to store a number as a fixed width big endian value in the buffer.
+	 */
+	private void putFixed(long pNumber, int pWidth)
+	{
+		for (int shift = (pWidth - 1) * 8; shift >= 0; shift -= 8)
+			mBuffer[mPosition++] = (byte) (pNumber >>> shift);
+	}
+	
+	/***
+	 * Helper method to store an unsigned number as a variable length value in the buffer using 7 bits
+	 * per byte.
+	 */
+	private void putVarLong(long pNumber)
+	{
+		while ((pNumber & ~0x7FL) != 0)
+		{
+			mBuffer[mPosition++] = (byte) ((pNumber & 0x7F) | 0x80);
+			pNumber >>>= 7;
+		}
+		mBuffer[mPosition++] = (byte) pNumber;
+	}
+	
+	/***
+	 * Helper method to write the encoded numbers held in the buffer to the file.
+	 */
+	private void flushBuffer() throws IOException
+	{
+		if (mPosition > 0)
+		{
+			if (mDeflater != null)
+			{
+				writeCompressedBlock();
+			}
+			else
+			{
+				updateSegmentChecksum();
+				mChecksum.update(mBuffer, 0, mPosition);
+				mRandomAccessFile.write(mBuffer, 0, mPosition);
+				mBytesFlushed += mPosition;
+			}
+			mPosition = 0;
+			mSegmentPosition = 0;
+		}
+	}
+	
+	/***
+	 * Helper method to compress the encoded numbers held in the buffer and write them to the file as one
+	 * block, preceded by the raw and compressed lengths.
+	 */
+	private void writeCompressedBlock() throws IOException
+	{
+		mDeflater.reset();
+		mDeflater.setInput(mBuffer, 0, mPosition);
+		mDeflater.finish();
+		int length = BLOCKHEADERSIZE;
+		while (!mDeflater.finished())
+		{
+			if (length == mCompressedBuffer.length)
+				mCompressedBuffer = Arrays.copyOf(mCompressedBuffer, mCompressedBuffer.length * 2);
+			length += mDeflater.deflate(mCompressedBuffer, length, mCompressedBuffer.length - length);
+		}
+		putInt(mCompressedBuffer, 0, mPosition);
+		putInt(mCompressedBuffer, 4, length - BLOCKHEADERSIZE);
+		
+		mSegmentChecksum.update(mCompressedBuffer, 0, length);
+		mChecksum.update(mCompressedBuffer, 0, length);
+		mRandomAccessFile.write(mCompressedBuffer, 0, length);
+		mBytesFlushed += length;
+	}
+	
+	/***
+	 * Helper method to store an int as a big endian value in the given array.
+	 */
+	private static void putInt(byte[] pBytes, int pOffset, int pValue)
+	{
+		pBytes[pOffset] = (byte) (pValue >>> 24);
+		pBytes[pOffset + 1] = (byte) (pValue >>> 16);
+		pBytes[pOffset + 2] = (byte) (pValue >>> 8);
+		pBytes[pOffset + 3] = (byte) pValue;
+	}
+}
@@ -0,0 +1,203 @@
+package com.devtest.matcher;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/***
+ * Header stored at the start of every binary run file. The header records how the numbers in the run are
+ * encoded along with the count, min and max of the numbers and a checksum over the encoded numbers so a
+ * corrupt or truncated run is detected when it is read back.
+ * 
+ * Layout (big endian): magic (4), version (1), encoding (1), flags (2), count (8), min (8), max (8), 
+ * checksum (8), index offset (8), index segment count (4), index interval (4).
+ * 
+ * The flags were reserved and always 0 before FLAG_COUNTED was added, so older runs read as uncounted.
+ * 
+ * Version 2 added the last three fields, which locate the sparse index of the run stored after the encoded
+ * numbers (see {@link BinaryRunIndex}). Version 1 runs have a 40 byte header and no index, and are still read.
+ */
+class BinaryRunHeader 
+{
+	// Magic number identifying a binary run file, "NRUN" in ascii
+	public static final int MAGIC = 0x4E52554E;
+	
+	public static final byte VERSION = 2;
+	
+	// Version of the runs written before the sparse index was added
+	public static final byte VERSION_NOINDEX = 1;
+	
+	// Size in bytes of the header at the start of the file
+	public static final int HEADER_SIZE = 56;
+	
+	// Size in bytes of the header of a version 1 run, which is also the part common to all versions
+	public static final int HEADER_SIZE_NOINDEX = 40;
+	
+	// Each number stored as a fixed width 4 byte value
+	public static final byte ENCODING_FIXED32 = 0;
+	
+	// Each number stored as a fixed width 8 byte value
+	public static final byte ENCODING_FIXED64 = 1;
+	
+	// First number stored as a zigzag varint, then the difference to the previous number as a varint
+	public static final byte ENCODING_DELTA = 2;
+	
+	// Numbers delta encoded as for ENCODING_DELTA, with each segment of the index compressed into blocks
+	public static final byte ENCODING_DELTA_DEFLATE = 3;
+	
+	// Flag set when each distinct number of a delta encoded run is stored once followed by its count of 
+	// further copies, so the repeated copies of a number take up no space in the run
+	public static final short FLAG_COUNTED = 1;
+	
+	public byte mVersion;
+	public byte mEncoding;
+	public short mFlags;
+	public long mCount;
+	public long mMin;
+	public long mMax;
+	public long mChecksum;
+	public long mIndexOffset;
+	public int mIndexSegmentCount;
+	public int mIndexInterval;
+	
+	/***
+	 * Constructor to create a new empty header for the given encoding.
+	 * 
+	 * @param pEncoding The encoding of the numbers stored in the run.
+	 */
+	public BinaryRunHeader(byte pEncoding)
+	{
+		mVersion = VERSION;
+		mEncoding = pEncoding;
+	}
+	
+	/***
+	 * @return True if the copies of each number are stored as a count after the number.
+	 */
+	public boolean isCounted()
+	{
+		return (mFlags & FLAG_COUNTED) != 0;
+	}
+	
+	/***
+	 * @return The size in bytes of the header at the start of the file for the version of the run.
+	 */
+	public int getHeaderSize()
+	{
+		return mVersion == VERSION_NOINDEX ? HEADER_SIZE_NOINDEX : HEADER_SIZE;
+	}
+	
+	/***
+	 * @return The offset in the file just past the last encoded number of the run.
+	 */
+	public long getNumbersEnd()
+	{
+		return mVersion == VERSION_NOINDEX ? Long.MAX_VALUE : mIndexOffset;
+	}
+	
+	/***
+	 * Called to check if the number at the given position in the run starts a new index segment, in which 
+	 * case the delta encoding is restarted and the number is stored in full.
+	 * 
+	 * @param pOrdinal The position of the number in the run.
+	 * @return True if the number starts a segment, False otherwise.
+	 */
+	public boolean isSegmentStart(long pOrdinal)
+	{
+		return pOrdinal == 0 || (mIndexInterval > 0 && pOrdinal % mIndexInterval == 0);
+	}
+	
+	/***
+	 * @return The header encoded as an array of bytes ready to write to the start of the file.
+	 */
+	public byte[] toBytes()
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+		buffer.putInt(MAGIC);
+		buffer.put(VERSION);
+		buffer.put(mEncoding);
+		buffer.putShort(mFlags);
+		buffer.putLong(mCount);
+		buffer.putLong(mMin);
+		buffer.putLong(mMax);
+		buffer.putLong(mChecksum);
+		buffer.putLong(mIndexOffset);
+		buffer.putInt(mIndexSegmentCount);
+		buffer.putInt(mIndexInterval);
+		return buffer.array();
+	}
+	
+	/***
+	 * Called to read and decode the header from the start of a run file of any version.
+	 * 
+	 * @param pInputStream The stream positioned at the start of the run file.
+	 * @param pFile The run file, used to report errors.
+	 * @return The decoded header.
+	 * @throws IOException Error thrown on file access or if the file is not a valid run.
+	 */
+	public static BinaryRunHeader read(InputStream pInputStream, File pFile) throws IOException
+	{
+		byte[] headerBytes = new byte[HEADER_SIZE];
+		readFully(pInputStream, headerBytes, 0, HEADER_SIZE_NOINDEX, pFile);
+		if (headerBytes[4] != VERSION_NOINDEX)
+			readFully(pInputStream, headerBytes, HEADER_SIZE_NOINDEX, HEADER_SIZE - HEADER_SIZE_NOINDEX, pFile);
+		return fromBytes(headerBytes);
+	}
+	
+	/***
+	 * Called to decode a header that was read from the start of a run file.
+	 * 
+	 * @param pBytes The bytes read from the start of the file, the full header size for the version.
+	 * @return The decoded header.
+	 * @throws IOException Error thrown if the bytes are not a valid run header.
+	 */
+	public static BinaryRunHeader fromBytes(byte[] pBytes) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.wrap(pBytes);
+		if (buffer.getInt() != MAGIC)
+			throw new IOException("Not a binary run file");
+		
+		byte version = buffer.get();
+		if (version != VERSION && version != VERSION_NOINDEX)
+			throw new IOException("Unsupported binary run file version: " + version);
+		
+		BinaryRunHeader header = new BinaryRunHeader(buffer.get());
+		if (header.mEncoding < ENCODING_FIXED32 || header.mEncoding > ENCODING_DELTA_DEFLATE)
+			throw new IOException("Unsupported binary run file encoding: " + header.mEncoding);
+		
+		header.mVersion = version;
+		header.mFlags = buffer.getShort();
+		if ((header.mFlags & ~FLAG_COUNTED) != 0 || (header.isCounted() && header.mEncoding < ENCODING_DELTA))
+			throw new IOException("Unsupported binary run file flags: " + header.mFlags);
+		header.mCount = buffer.getLong();
+		header.mMin = buffer.getLong();
+		header.mMax = buffer.getLong();
+		header.mChecksum = buffer.getLong();
+		if (version != VERSION_NOINDEX)
+		{
+			header.mIndexOffset = buffer.getLong();
+			header.mIndexSegmentCount = buffer.getInt();
+			header.mIndexInterval = buffer.getInt();
+			if (header.mIndexOffset < HEADER_SIZE || header.mIndexSegmentCount < 0 || header.mIndexInterval < 0)
+				throw new IOException("Invalid binary run file index");
+		}
+		return header;
+	}
+	
+	/***
+	 * Helper method to read the given count of bytes from the stream.
+	 */
+	private static void readFully(InputStream pInputStream, byte[] pBytes, int pOffset, int pLength, File pFile) throws IOException
+	{
+		int read = 0;
+		while (read < pLength)
+		{
+			int count = pInputStream.read(pBytes, pOffset + read, pLength - read);
+			if (count < 0)
+				throw new EOFException("Binary run file header is truncated: " + pFile);
+			read += count;
+		}
+	}
+}
@@ -0,0 +1,231 @@
+package com.devtest.matcher;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/***
+ * Sparse index of a binary run, stored after the encoded numbers. The run is cut into segments of a fixed
+ * count of numbers, and the delta encoding is restarted at the start of each segment so a reader can seek
+ * straight to any segment. For each segment the index holds its first number, its offset in the file and
+ * a checksum of its encoded bytes, so a part of the run can be read and validated on its own.
+ *
+ * The first numbers of the segments are an even sample of the run, which is used to pick the splitters
+ * of a partitioned merge.
+ *
+ * Layout of each segment (big endian): first number (8), offset (8), checksum (8).
+ */
+class BinaryRunIndex
+{
+	// Default count of numbers in each segment of the index
+	public static final int DEFAULTINTERVAL = 4096;
+
+	// Size in bytes of each segment stored in the index
+	public static final int SEGMENTSIZE = 24;
+
+	private File mFile;
+	private BinaryRunHeader mHeader;
+	private long[] mFirstNumbers;
+	private long[] mOffsets;
+	private long[] mChecksums;
+	private int mSize;
+
+	/***
+	 * Constructor to create a new empty index, built up as a run is written.
+	 */
+	public BinaryRunIndex()
+	{
+		mFirstNumbers = new long[16];
+		mOffsets = new long[16];
+		mChecksums = new long[16];
+		mSize = 0;
+	}
+
+	/***
+	 * Called to read the index stored in a binary run file.
+	 *
+	 * @param pFile The run file.
+	 * @return The index of the run, or null if the run was written before the index was added.
+	 * @throws IOException Error thrown on file access or if the file is not a valid run.
+	 */
+	public static BinaryRunIndex load(File pFile) throws IOException
+	{
+		FileInputStream inputStream = new FileInputStream(pFile);
+		try
+		{
+			BinaryRunHeader header = BinaryRunHeader.read(inputStream, pFile);
+			if (header.mVersion == BinaryRunHeader.VERSION_NOINDEX)
+				return null;
+
+			long interval = Math.max(header.mIndexInterval, 1);
+			if (header.mIndexSegmentCount != (header.mCount + interval - 1) / interval)
+				throw new IOException("Binary run file index does not match the count of numbers: " + pFile);
+			
+			BinaryRunIndex index = new BinaryRunIndex();
+			index.mFile = pFile;
+			index.mHeader = header;
+			byte[] indexBytes = new byte[header.mIndexSegmentCount * SEGMENTSIZE];
+			inputStream.getChannel().position(header.mIndexOffset);
+			int read = 0;
+			while (read < indexBytes.length)
+			{
+				int count = inputStream.read(indexBytes, read, indexBytes.length - read);
+				if (count < 0)
+					throw new EOFException("Binary run file index is truncated: " + pFile);
+				read += count;
+			}
+
+			ByteBuffer buffer = ByteBuffer.wrap(indexBytes);
+			for (int i=0; i<header.mIndexSegmentCount; i++)
+			{
+				index.addSegment(buffer.getLong(), buffer.getLong());
+				index.mChecksums[i] = buffer.getLong();
+			}
+			return index;
+		}
+		finally {
+			inputStream.close();
+		}
+	}
+
+	/***
+	 * Called to add the next segment of the run as it is written.
+	 *
+	 * @param pFirstNumber The first number of the segment.
+	 * @param pOffset The offset in the file of the first encoded number of the segment.
+	 */
+	public void addSegment(long pFirstNumber, long pOffset)
+	{
+		if (mSize == mFirstNumbers.length)
+		{
+			mFirstNumbers = Arrays.copyOf(mFirstNumbers, mSize * 2);
+			mOffsets = Arrays.copyOf(mOffsets, mSize * 2);
+			mChecksums = Arrays.copyOf(mChecksums, mSize * 2);
+		}
+		mFirstNumbers[mSize] = pFirstNumber;
+		mOffsets[mSize] = pOffset;
+		mSize++;
+	}
+
+	/***
+	 * Called to set the checksum of the last segment added once all its numbers are written.
+	 *
+	 * @param pChecksum The checksum of the encoded bytes of the segment.
+	 */
+	public void setLastChecksum(long pChecksum)
+	{
+		mChecksums[mSize - 1] = pChecksum;
+	}
+
+	/***
+	 * Called to write the index to the run file at the current position of the file.
+	 *
+	 * @param pRandomAccessFile The run file being written.
+	 * @throws IOException Error thrown on file access.
+	 */
+	public void write(RandomAccessFile pRandomAccessFile) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(mSize * SEGMENTSIZE);
+		for (int i=0; i<mSize; i++)
+		{
+			buffer.putLong(mFirstNumbers[i]);
+			buffer.putLong(mOffsets[i]);
+			buffer.putLong(mChecksums[i]);
+		}
+		pRandomAccessFile.write(buffer.array());
+	}
+
+	/***
+	 * Called to find the segment a reader of the numbers not less than the given number should start at.
+	 * The segment before the first segment starting with the number is picked, since equal numbers may
+	 * carry on from the end of the previous segment.
+	 *
+	 * @param pNumber The least number to be read.
+	 * @return The index of the last segment whose first number is less than the given number, or 0.
+	 */
+	public int findSegment(long pNumber)
+	{
+		int low = 0;
+		int high = mSize - 1;
+		int segment = 0;
+		while (low <= high)
+		{
+			int middle = (low + high) >>> 1;
+			if (mFirstNumbers[middle] < pNumber)
+			{
+				segment = middle;
+				low = middle + 1;
+			}
+			else {
+				high = middle - 1;
+			}
+		}
+		return segment;
+	}
+
+	/***
+	 * @return The run file the index was read from.
+	 */
+	public File getFile()
+	{
+		return mFile;
+	}
+
+	/***
+	 * @return The header of the run the index was read from.
+	 */
+	public BinaryRunHeader getHeader()
+	{
+		return mHeader;
+	}
+
+	/***
+	 * @return The count of segments in the index.
+	 */
+	public int getSegmentCount()
+	{
+		return mSize;
+	}
+
+	/***
+	 * @param pSegment The index of the segment.
+	 * @return The first number of the segment.
+	 */
+	public long getFirstNumber(int pSegment)
+	{
+		return mFirstNumbers[pSegment];
+	}
+
+	/***
+	 * @param pSegment The index of the segment.
+	 * @return The offset in the file of the first encoded number of the segment.
+	 */
+	public long getOffset(int pSegment)
+	{
+		return mOffsets[pSegment];
+	}
+
+	/***
+	 * @param pSegment The index of the segment.
+	 * @return The offset in the file just past the last encoded number of the segment.
+	 */
+	public long getEnd(int pSegment)
+	{
+		if (pSegment + 1 < mSize)
+			return mOffsets[pSegment + 1];
+		return mHeader.mIndexOffset;
+	}
+
+	/***
+	 * @param pSegment The index of the segment.
+	 * @return The checksum of the encoded bytes of the segment.
+	 */
+	public long getChecksum(int pSegment)
+	{
+		return mChecksums[pSegment];
+	}
+}
@@ -0,0 +1,136 @@
+package com.devtest.matcher;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/***
+ * Duplicate detection strategy for input numbers that fall within a bounded range of values. A bitmap
+ * holding two bits per value records if each value has been seen once or more than once, so duplicates
+ * are found in a single streaming pass with no sorting and no temp files. Since the bitmap is read in
+ * value order the duplicates are reported from least to most.
+ * 
+ * When the bitmap for the full range does not fit within the memory allowed, the range is split into
+ * slices that each fit and the input is read once per slice.
+ */
+class BitmapDuplicateDetector 
+{
+	// Number of values tracked in each long word of the bitmap at two bits per value
+	private static final int VALUESPERWORD = 32;
+	
+	// Mask of the high bit of every two bit value, set once a value has been seen more than once
+	private static final long SEENTWICEMASK = 0xAAAAAAAAAAAAAAAAL;
+	
+	private NumberSource mNumberSource;
+	private long mValuesPerPass;
+	
+	/***
+	 * Constructor to create a new bitmap detector.
+	 * 
+	 * @param pNumberSource The source of the input numbers.
+	 * @param pMemoryBudget The number of bytes of memory the bitmap is allowed to use.
+	 */
+	public BitmapDuplicateDetector(NumberSource pNumberSource, long pMemoryBudget)
+	{
+		mNumberSource = pNumberSource;
+		mValuesPerPass = calculateValuesPerPass(pMemoryBudget);
+	}
+	
+	/***
+	 * Helper method to calculate the number of passes over the input needed to cover the given range.
+	 * 
+	 * @param pNumberRange The range of values of the input numbers.
+	 * @param pMemoryBudget The number of bytes of memory the bitmap is allowed to use.
+	 * @return The number of passes needed.
+	 */
+	public static long calculatePassCount(NumberRange pNumberRange, long pMemoryBudget)
+	{
+		// The span is one less than the width so it never overflows, and ceil(width / n) is span / n + 1
+		return Long.divideUnsigned(pNumberRange.getSpan(), calculateValuesPerPass(pMemoryBudget)) + 1;
+	}
+	
+	/***
+	 * Called to find the duplicate numbers within the given range of values.
+	 * 
+	 * @param pNumberRange The range all the input numbers fall within.
+	 * @param pDuplicateNumberListener The listener the duplicate numbers are passed to from least to most,
+	 * as each slice of the range is completed.
+	 * @throws IOException Error thrown on access or if a number falls outside the range.
+	 */
+	public void detectDuplicates(NumberRange pNumberRange, DuplicateNumberListener pDuplicateNumberListener) throws IOException
+	{
+		if (pNumberRange.mCount == 0)
+			return;
+		
+		long span = pNumberRange.getSpan();
+		long passCount = Long.divideUnsigned(span, mValuesPerPass) + 1;
+		long passWidth = (Long.compareUnsigned(span, mValuesPerPass) < 0) ? span + 1 : mValuesPerPass;
+		long[] bitmap = new long[(int) ((passWidth + VALUESPERWORD - 1) / VALUESPERWORD)];
+		
+		for (long pass = 0; pass < passCount; pass++)
+		{
+			// The last slice ends at the top of the range, the offsets wrap around past Long.MAX_VALUE
+			long passMin = pNumberRange.mMin + pass * passWidth;
+			long passMax = (pass == passCount - 1) ? pNumberRange.mMax : passMin + passWidth - 1;
+			
+			Arrays.fill(bitmap, 0);
+			markNumbers(pNumberRange, passMin, passMax, bitmap);
+			collectDuplicates(passMin, bitmap, pDuplicateNumberListener);
+		}
+	}
+	
+	/***
+	 * Helper method to read through the input once, marking each number in the slice of the range 
+	 * covered by this pass.
+	 */
+	private void markNumbers(NumberRange pNumberRange, long pPassMin, long pPassMax, long[] pBitmap) throws IOException
+	{
+		NumberInput numberInput = mNumberSource.open();
+		try 
+		{
+			while (numberInput.hasNext())
+			{
+				long number = numberInput.next();
+				if (number < pNumberRange.mMin || number > pNumberRange.mMax)
+					throw new IOException("Number " + number + " is outside the expected range " + pNumberRange.mMin + " - " + pNumberRange.mMax);
+				if (number < pPassMin || number > pPassMax)
+					continue;
+				
+				long offset = number - pPassMin;
+				int wordIndex = (int) (offset >>> 5);
+				int shift = (int) (offset & (VALUESPERWORD - 1)) << 1;
+				long state = (pBitmap[wordIndex] >>> shift) & 3;
+				if (state < 2)
+					pBitmap[wordIndex] += 1L << shift;
+			}
+		}
+		finally {
+			numberInput.close();
+		}
+	}
+	
+	/***
+	 * Helper method to walk the bitmap in value order and pass on every value seen more than once.
+	 */
+	private void collectDuplicates(long pPassMin, long[] pBitmap, DuplicateNumberListener pDuplicateNumberListener) throws IOException
+	{
+		for (int wordIndex = 0; wordIndex < pBitmap.length; wordIndex++)
+		{
+			long seenTwice = pBitmap[wordIndex] & SEENTWICEMASK;
+			while (seenTwice != 0)
+			{
+				int bit = Long.numberOfTrailingZeros(seenTwice);
+				pDuplicateNumberListener.duplicateFound(pPassMin + (long) wordIndex * VALUESPERWORD + (bit >>> 1));
+				seenTwice &= seenTwice - 1;
+			}
+		}
+	}
+	
+	/***
+	 * Helper method to calculate the number of values the bitmap can cover in one pass.
+	 */
+	private static long calculateValuesPerPass(long pMemoryBudget)
+	{
+		long words = Math.min(Math.max(pMemoryBudget / 8, 1), Integer.MAX_VALUE - 8);
+		return words * VALUESPERWORD;
+	}
+}
@@ -0,0 +1,121 @@
+package com.devtest.matcher;
+
+/***
+ * Bloom filter of long values split into blocks of 512 bits, the size of a cache line. Each value sets
+ * and tests all of its bits within one block picked by its hash, so adding or testing a value touches a
+ * single cache line however many bits it uses, where a plain Bloom filter misses the cache once per bit
+ * on a filter much larger than the cache. The false positive rate is a little higher than a plain filter
+ * of the same size, and there are never false negatives.
+ */
+class BlockedBloomFilter
+{
+	// Number of longs in each block, 512 bits
+	private static final int BLOCKLONGS = 8;
+
+	// Number of bits of the hash used to pick each bit within a block
+	private static final int BITINDEXBITS = 9;
+
+	// Most bits set per value, as many 9 bit indexes as fit in a 64 bit hash
+	private static final int MAXHASHCOUNT = 64 / BITINDEXBITS;
+
+	// Least number of blocks in a filter
+	private static final int MINBLOCKCOUNT = 1;
+
+	private long[] mWords;
+	private int mBlockMask;
+	private int mHashCount;
+
+	/***
+	 * Constructor to create a new empty filter using about the given memory, with the number of bits set
+	 * per value picked for the expected count of values.
+	 *
+	 * @param pByteBudget The number of bytes of memory the filter is allowed, rounded down to a power of 2
+	 * count of blocks.
+	 * @param pExpectedCount The count of values expected to be added.
+	 */
+	public BlockedBloomFilter(long pByteBudget, long pExpectedCount)
+	{
+		long blockCount = MINBLOCKCOUNT;
+		while (blockCount * 2 * BLOCKLONGS * 8 <= pByteBudget && blockCount * 2 * BLOCKLONGS <= Integer.MAX_VALUE / 2)
+			blockCount <<= 1;
+		mWords = new long[(int) blockCount * BLOCKLONGS];
+		mBlockMask = (int) blockCount - 1;
+
+		// The optimal count of bits per value is ln 2 times the bits available per value
+		double bitsPerValue = (double) mWords.length * 64 / Math.max(pExpectedCount, 1);
+		mHashCount = (int) Math.max(1, Math.min(MAXHASHCOUNT, Math.round(bitsPerValue * Math.log(2))));
+	}
+
+	/***
+	 * Called to add a value to the filter.
+	 *
+	 * @param pValue The value to add.
+	 * @return True if every bit of the value was already set, so the value may have been added before,
+	 * False if the value was certainly not added before.
+	 */
+	public boolean add(long pValue)
+	{
+		long hash = LongOpenHashSet.mix(pValue);
+		int block = ((int) (hash >>> 32) & mBlockMask) * BLOCKLONGS;
+		long bitHash = mixAgain(hash);
+		boolean present = true;
+		for (int i=0; i<mHashCount; i++)
+		{
+			int bit = (int) (bitHash >>> (i * BITINDEXBITS)) & ((1 << BITINDEXBITS) - 1);
+			int word = block + (bit >>> 6);
+			long mask = 1L << bit;
+			if ((mWords[word] & mask) == 0)
+			{
+				present = false;
+				mWords[word] |= mask;
+			}
+		}
+		return present;
+	}
+
+	/***
+	 * Called to test if a value may have been added to the filter.
+	 *
+	 * @param pValue The value to test.
+	 * @return True if the value may have been added, False if it was certainly not added.
+	 */
+	public boolean mightContain(long pValue)
+	{
+		long hash = LongOpenHashSet.mix(pValue);
+		int block = ((int) (hash >>> 32) & mBlockMask) * BLOCKLONGS;
+		long bitHash = mixAgain(hash);
+		for (int i=0; i<mHashCount; i++)
+		{
+			int bit = (int) (bitHash >>> (i * BITINDEXBITS)) & ((1 << BITINDEXBITS) - 1);
+			if ((mWords[block + (bit >>> 6)] & (1L << bit)) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/***
+	 * @return The number of bytes of memory used by the filter.
+	 */
+	public long getByteSize()
+	{
+		return (long) mWords.length * 8;
+	}
+
+	/***
+	 * @return The number of bits set per value.
+	 */
+	public int getHashCount()
+	{
+		return mHashCount;
+	}
+
+	/***
+	 * Helper method to derive the hash picking the bits within the block from the hash picking the block,
+	 * so the bits don't depend on the block index.
+	 */
+	private static long mixAgain(long pHash)
+	{
+		long hash = pHash * 0x94D049BB133111EBL;
+		return hash ^ (hash >>> 31);
+	}
+}
@@ -0,0 +1,199 @@
+package com.devtest.matcher;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+/***
+ * Two pass pre-filter that keeps values that can't be duplicates out of the external sort. The first pass
+ * streams the input through a Bloom filter of the values seen, and every value the filter may have seen
+ * before is added to a second, smaller filter of candidates. The second pass only passes on the values in
+ * the candidate filter. Every occurrence of a duplicate after the first is in the seen filter, so every
+ * duplicate is a candidate and all of its occurrences pass, while a unique value only passes when both
+ * filters give a false positive for it. The duplicates and their counts found among the candidates are
+ * therefore exactly those of the whole input.
+ *
+ * The memory allowed is shared by both filters in the first pass. Only the candidate filter is kept for
+ * the second pass, so the sort gets the rest of the memory.
+ *
+ * -Dmatcher.prefilter=false  True to pre-filter the input of the external sort for candidate duplicates.
+ */
+class BloomPrefilter
+{
+	public static final String PREFILTER_PROPERTY = "matcher.prefilter";
+
+	// Least memory worth sharing between the filters, less gives too many false positives to filter anything
+	public static final long MINMEMORYBUDGET = 64 * 1024;
+
+	// Share of the memory used by the candidate filter, the seen filter uses the rest in the first pass
+	private static final int CANDIDATEMEMORYDIVISOR = 4;
+
+	// Share of the numbers above which the candidates are too many for the second pass to be worth filtering
+	private static final double MAXCANDIDATESHARE = 0.5;
+
+	private long mMemoryBudget;
+	private long mExpectedCount;
+	private BlockedBloomFilter mCandidateFilter;
+	private long mNumberCount;
+	private long mCandidateCount;
+
+	/***
+	 * Constructor to create a new pre-filter.
+	 *
+	 * @param pMemoryBudget The number of bytes of memory allowed for both filters.
+	 * @param pExpectedCount The count of numbers expected in the input.
+	 */
+	public BloomPrefilter(long pMemoryBudget, long pExpectedCount)
+	{
+		mMemoryBudget = pMemoryBudget;
+		mExpectedCount = pExpectedCount;
+	}
+
+	/***
+	 * Called to make the first pass over the input, building the filter of candidate duplicates.
+	 *
+	 * @param pNumberInput The input numbers, which is read to the end but not closed.
+	 * @throws IOException Error thrown on access or if the input holds a malformed number.
+	 */
+	public void scan(NumberInput pNumberInput) throws IOException
+	{
+		long candidateMemory = mMemoryBudget / CANDIDATEMEMORYDIVISOR;
+		BlockedBloomFilter seenFilter = new BlockedBloomFilter(mMemoryBudget - candidateMemory, mExpectedCount);
+
+		// Few values are expected to repeat, the filter is sized for a tenth of them doing so
+		BlockedBloomFilter candidateFilter = new BlockedBloomFilter(candidateMemory, Math.max(mExpectedCount / 10, 1));
+		long numberCount = 0;
+		long candidateCount = 0;
+		while (pNumberInput.hasNext())
+		{
+			long number = pNumberInput.next();
+			numberCount++;
+			if (seenFilter.add(number))
+			{
+				candidateFilter.add(number);
+				candidateCount++;
+			}
+		}
+		mCandidateFilter = candidateFilter;
+		mNumberCount = numberCount;
+		mCandidateCount = candidateCount;
+	}
+
+	/***
+	 * @return True if enough of the numbers were found to not be candidates for the second pass to be
+	 * worth filtering.
+	 */
+	public boolean isSelective()
+	{
+		return mCandidateCount <= mNumberCount * MAXCANDIDATESHARE;
+	}
+
+	/***
+	 * @return The count of numbers read in the first pass.
+	 */
+	public long getNumberCount()
+	{
+		return mNumberCount;
+	}
+
+	/***
+	 * @return The count of numbers the seen filter may have seen before in the first pass, which is about
+	 * the count of repeat occurrences plus the false positives.
+	 */
+	public long getCandidateCount()
+	{
+		return mCandidateCount;
+	}
+
+	/***
+	 * @return The number of bytes of memory held by the candidate filter for the second pass.
+	 */
+	public long getMemoryBytes()
+	{
+		return (mCandidateFilter != null) ? mCandidateFilter.getByteSize() : 0;
+	}
+
+	/***
+	 * Called to wrap a source so its inputs only pass on the candidate duplicates. Should only be called
+	 * once the first pass is complete.
+	 *
+	 * @param pNumberSource The source of the input numbers.
+	 * @return The filtered source.
+	 */
+	public NumberSource filter(final NumberSource pNumberSource)
+	{
+		final BlockedBloomFilter candidateFilter = mCandidateFilter;
+		return new NumberSource() {
+			@Override
+			public NumberInput open() throws IOException
+			{
+				return new CandidateNumberInput(pNumberSource.open(), candidateFilter);
+			}
+
+			@Override
+			public boolean isRepeatable()
+			{
+				return pNumberSource.isRepeatable();
+			}
+
+			@Override
+			public long getLength()
+			{
+				return pNumberSource.getLength();
+			}
+
+			@Override
+			public String toString()
+			{
+				return pNumberSource.toString();
+			}
+		};
+	}
+
+	/***
+	 * Input passing on only the numbers of another input that are in the candidate filter.
+	 */
+	private static class CandidateNumberInput implements NumberInput
+	{
+		private NumberInput mNumberInput;
+		private BlockedBloomFilter mCandidateFilter;
+		private boolean mHasNextNumber;
+		private long mNextNumber;
+
+		public CandidateNumberInput(NumberInput pNumberInput, BlockedBloomFilter pCandidateFilter)
+		{
+			mNumberInput = pNumberInput;
+			mCandidateFilter = pCandidateFilter;
+		}
+
+		@Override
+		public boolean hasNext() throws IOException
+		{
+			while (!mHasNextNumber && mNumberInput.hasNext())
+			{
+				long number = mNumberInput.next();
+				if (mCandidateFilter.mightContain(number))
+				{
+					mNextNumber = number;
+					mHasNextNumber = true;
+				}
+			}
+			return mHasNextNumber;
+		}
+
+		@Override
+		public long next() throws IOException
+		{
+			if (!hasNext())
+				throw new EOFException("No numbers left to read in the input");
+
+			mHasNextNumber = false;
+			return mNextNumber;
+		}
+
+		@Override
+		public void close()
+		{
+			mNumberInput.close();
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package com.devtest.matcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * Run generator that reads the input numbers a chunk at a time into a primitive buffer, sorts each full
+ * chunk and writes it to its own split file. Reading, sorting and writing each run are done in turn on 
+ * the calling thread.
+ */
+class ChunkSortRunGenerator implements RunGenerator
+{
+	private RunFileFactory mRunFileFactory;
+	private long mRunMemory;
+	
+	/***
+	 * Constructor to create a new chunk sort run generator of long keys.
+	 * 
+	 * @param pRunFileFormat The format used to store the split files.
+	 * @param pRunMemory The number of bytes of memory used to hold each chunk.
+	 */
+	public ChunkSortRunGenerator(RunFileFormat pRunFileFormat, long pRunMemory)
+	{
+		this(new RunFileFactory(pRunFileFormat), pRunMemory);
+	}
+	
+	/***
+	 * Constructor to create a new chunk sort run generator.
+	 * 
+	 * @param pRunFileFactory The factory of the split files, holding their format and key type.
+	 * @param pRunMemory The number of bytes of memory used to hold each chunk.
+	 */
+	public ChunkSortRunGenerator(RunFileFactory pRunFileFactory, long pRunMemory)
+	{
+		mRunFileFactory = pRunFileFactory;
+		mRunMemory = pRunMemory;
+	}
+	
+	@Override
+	public List<File> generateRuns(NumberInput pNumberInput) throws IOException
+	{
+		ArrayList<File> splitFileListArray = new ArrayList<File>();
+		boolean completed = false;
+		try
+		{
+			NumberRunBuffer bufferNumberList = new NumberRunBuffer(mRunMemory, mRunFileFactory.getKeyType());
+			int fileCountIndex = 0;
+			while(pNumberInput.hasNext()) 
+			{
+				bufferNumberList.add(pNumberInput.next());
+				if (bufferNumberList.isFull())
+				{
+					// We've reached the max size we allow per file, sort and save this data
+					splitFileListArray.add(sortBufferNumberList(bufferNumberList, fileCountIndex++));
+					bufferNumberList.clear();
+				}
+			}
+			
+			if (!bufferNumberList.isEmpty())
+				splitFileListArray.add(sortBufferNumberList(bufferNumberList, fileCountIndex++));
+			completed = true;
+		}
+		finally
+		{
+			if (!completed)
+			{
+				for (File splitFile : splitFileListArray)
+					splitFile.delete();
+			}
+		}
+		return splitFileListArray;
+	}
+	
+    /***
+     * Called to perform a primitive sort on a buffer of numbers and to write the new sorted list to a temp
+     * output file.
+     * 
+     * @param bufferNumberList The buffer of numbers to sort.
+     * @param pIndex A unique file index number to help identify sequence of creation and uniqueness.
+     * 
+     * @return A file object reference to the sorted and created file.
+     * @throws IOException Error reported on file access.
+     */
+    File sortBufferNumberList(NumberRunBuffer bufferNumberList, int pIndex) throws IOException  
+    {
+    	bufferNumberList.sort();
+        File splitFile = mRunFileFactory.createFile("splitFile_" + String.valueOf(pIndex));
+        RunFileWriter fileRunWriter = mRunFileFactory.createWriter(splitFile);
+        try 
+        {
+        	bufferNumberList.writeTo(fileRunWriter);
+        } 
+        finally {
+        	fileRunWriter.close();
+        }
+        return splitFile;
+    }	
+}
@@ -0,0 +1,22 @@
+package com.devtest.matcher;
+
+/***
+ * The strategies available to detect the duplicate numbers in the input.
+ * 
+ * EXTERNAL_SORT splits the input into sorted runs and merges them back so duplicates appear in sequence.
+ * BITMAP marks each value in a two bit per value bitmap over the range of the input, making one pass of
+ * the input per slice of the range that fits in memory. HASH_PARTITION splits the input by a hash of the
+ * value into buckets that fit in memory and checks each bucket with a hash set, in parallel and without
+ * a merge. AUTO picks the bitmap when the range of values 
+ * is narrow enough to be covered in a few passes and the external sort otherwise.
+ * 
+ * A range too wide for even a set BITMAP strategy to cover in a bounded number of passes, such as random 
+ * longs, falls back to the external sort with a warning.
+ */
+public enum DetectionStrategy 
+{
+	AUTO,
+	EXTERNAL_SORT,
+	BITMAP,
+	HASH_PARTITION
+}
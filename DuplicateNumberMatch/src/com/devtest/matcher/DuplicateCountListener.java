@@ -0,0 +1,19 @@
+package com.devtest.matcher;
+
+import java.io.IOException;
+
+/***
+ * Callback the duplicate numbers are delivered to along with the count of times each occurs in the input.
+ * Each duplicate number is delivered once, in order from least to most.
+ */
+public interface DuplicateCountListener
+{
+	/***
+	 * Called when a duplicate number and its count of occurrences are found.
+	 *
+	 * @param pNumber The duplicate number.
+	 * @param pCount The count of times the number occurs in the input, always more than 1.
+	 * @throws IOException Error thrown if the duplicate can't be handled, which stops the job.
+	 */
+	void duplicateCounted(long pNumber, long pCount) throws IOException;
+}
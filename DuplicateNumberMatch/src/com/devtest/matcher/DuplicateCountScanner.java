@@ -0,0 +1,79 @@
+package com.devtest.matcher;
+
+import java.io.IOException;
+
+/***
+ * Number sink that aggregates a sorted stream of numbers into runs of equal numbers. Since the stream is
+ * sorted every occurrence of a number is in one run, so the length of the run is the count of times the
+ * number occurs. Each number whose run is longer than one is passed on with its count when the run ends,
+ * so finish must be called after the last number to pass on the final run.
+ *
+ * -Dmatcher.counts=false     True to report the count of times each duplicate occurs.
+ */
+class DuplicateCountScanner implements NumberSink
+{
+	public static final String COUNTS_PROPERTY = "matcher.counts";
+
+	private boolean mHasPrevNumber;
+	private long mPrevNumber;
+	private long mRunLength;
+	private long mDuplicateCount;
+	private DuplicateCountListener mDuplicateCountListener;
+
+	/***
+	 * Constructor to create a new scanner with no numbers seen.
+	 *
+	 * @param pDuplicateCountListener The listener the duplicate numbers and their counts are passed to.
+	 */
+	public DuplicateCountScanner(DuplicateCountListener pDuplicateCountListener)
+	{
+		mDuplicateCountListener = pDuplicateCountListener;
+	}
+
+	@Override
+	public void write(long pNumber) throws IOException
+	{
+		if (mHasPrevNumber && mPrevNumber == pNumber)
+		{
+			mRunLength++;
+			return;
+		}
+
+		endRun();
+		mPrevNumber = pNumber;
+		mHasPrevNumber = true;
+		mRunLength = 1;
+	}
+
+	/***
+	 * Called once the last number of the stream has been written to pass on the final run.
+	 *
+	 * @throws IOException Error thrown by the listener.
+	 */
+	public void finish() throws IOException
+	{
+		endRun();
+		mHasPrevNumber = false;
+		mRunLength = 0;
+	}
+
+	/***
+	 * @return The count of duplicate numbers passed on so far.
+	 */
+	public long getDuplicateCount()
+	{
+		return mDuplicateCount;
+	}
+
+	/***
+	 * Helper method to pass on the number of the current run if it occurred more than once.
+	 */
+	private void endRun() throws IOException
+	{
+		if (mRunLength > 1)
+		{
+			mDuplicateCountListener.duplicateCounted(mPrevNumber, mRunLength);
+			mDuplicateCount++;
+		}
+	}
+}
@@ -0,0 +1,417 @@
+package com.devtest.matcher;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/***
+ * Persistent index of an input file that only grows by appends. The index directory holds the sorted run
+ * of every number in the input up to a byte offset, the sorted set of the duplicates among them, and a
+ * properties file recording the offset covered. Each later job only needs to sort the numbers appended
+ * after the offset, merge them with the sorted run and report the duplicates that are new.
+ * 
+ * A fingerprint of the bytes at the start of the input and just before the offset is kept, so an input
+ * that was rewritten rather than appended to is detected and the index is rebuilt from the start. The properties file is replaced last,
+ * so a job that fails part way leaves the previous index in place.
+ */
+class DuplicateIndex 
+{
+	public static final String INDEXDIR_PROPERTY = "matcher.indexDir";
+	
+	// Format the sorted run and duplicate set are stored in
+	public static final RunFileFormat INDEXFORMAT = RunFileFormat.BINARY_DELTA;
+	
+	// Name of the properties file recording the state of the index
+	private static final String PROPERTIESFILE = "index.properties";
+	
+	// Version of the index layout
+	private static final int VERSION = 1;
+	
+	// Number of bytes at the start of the input and before the covered offset used to fingerprint it
+	private static final int FINGERPRINTSIZE = 64 * 1024;
+	
+	// Size of each block read when searching back for the last line ending
+	private static final int SEARCHBLOCKSIZE = 8 * 1024;
+	
+	private static final Logger LOGGER = Logger.getLogger(DuplicateIndex.class.getName());
+	
+	private File mIndexDirectory;
+	private NumberKeyType mKeyType;
+	private long mGeneration;
+	private long mCoveredOffset;
+	private long mNumberCount;
+	private long mDuplicateCount;
+	private File mSortedFile;
+	private File mDuplicateFile;
+	
+	/***
+	 * Constructor to create an index kept in the given directory.
+	 * 
+	 * @param pIndexDirectory The directory holding the index files, created if it doesn't exist.
+	 * @param pKeyType The type of key the input numbers are read as.
+	 */
+	public DuplicateIndex(File pIndexDirectory, NumberKeyType pKeyType)
+	{
+		mIndexDirectory = pIndexDirectory;
+		mKeyType = pKeyType;
+	}
+	
+	/***
+	 * Called to load the state of the index for the given input file. If the index is missing, was built
+	 * for another file or key type or the input no longer matches the covered bytes, the index starts empty.
+	 * 
+	 * @param pInputFile The input file.
+	 * @throws IOException Error thrown on file access.
+	 */
+	public void load(File pInputFile) throws IOException
+	{
+		mCoveredOffset = 0;
+		mNumberCount = 0;
+		mDuplicateCount = 0;
+		mSortedFile = null;
+		mDuplicateFile = null;
+		
+		if (!mIndexDirectory.isDirectory() && !mIndexDirectory.mkdirs())
+			throw new IOException("Unable to create the index directory " + mIndexDirectory);
+		
+		File propertiesFile = new File(mIndexDirectory, PROPERTIESFILE);
+		if (!propertiesFile.exists())
+			return;
+		
+		Properties properties = new Properties();
+		InputStream propertiesStream = new FileInputStream(propertiesFile);
+		try 
+		{
+			properties.load(propertiesStream);
+		}
+		finally {
+			propertiesStream.close();
+		}
+		
+		try
+		{
+			mGeneration = Long.parseLong(properties.getProperty("generation", "0"));
+			if (Integer.parseInt(properties.getProperty("version", "0")) != VERSION)
+			{
+				LOGGER.info("Duplicate index has an unknown version, rebuilding it");
+				return;
+			}
+			if (!pInputFile.getCanonicalPath().equals(properties.getProperty("input")))
+			{
+				LOGGER.info("Duplicate index was built for " + properties.getProperty("input") + ", rebuilding it");
+				return;
+			}
+			// Indexes written before key types were added always read the numbers as longs
+			if (!mKeyType.toString().equals(properties.getProperty("keyType", NumberKeyType.LONG.toString())))
+			{
+				LOGGER.info("Duplicate index was built for key type " + properties.getProperty("keyType") + ", rebuilding it");
+				return;
+			}
+			
+			long coveredOffset = Long.parseLong(properties.getProperty("offset"));
+			long fingerprint = Long.parseLong(properties.getProperty("fingerprint"));
+			if (pInputFile.length() < coveredOffset || calculateFingerprint(pInputFile, coveredOffset) != fingerprint)
+			{
+				LOGGER.info("Input " + pInputFile + " was changed before the indexed offset " + coveredOffset + ", rebuilding the duplicate index");
+				return;
+			}
+			
+			File sortedFile = new File(mIndexDirectory, properties.getProperty("sorted"));
+			File duplicateFile = new File(mIndexDirectory, properties.getProperty("duplicates"));
+			if (!sortedFile.exists() || !duplicateFile.exists())
+			{
+				LOGGER.info("Duplicate index files are missing, rebuilding it");
+				return;
+			}
+			
+			mCoveredOffset = coveredOffset;
+			mNumberCount = Long.parseLong(properties.getProperty("numbers"));
+			mDuplicateCount = Long.parseLong(properties.getProperty("duplicateCount"));
+			mSortedFile = sortedFile;
+			mDuplicateFile = duplicateFile;
+		}
+		catch (RuntimeException ex)
+		{
+			LOGGER.info("Duplicate index properties are invalid, rebuilding it: " + ex);
+		}
+	}
+	
+	/***
+	 * @return The byte offset of the input covered by the index.
+	 */
+	public long getCoveredOffset()
+	{
+		return mCoveredOffset;
+	}
+	
+	/***
+	 * @return The count of numbers covered by the index.
+	 */
+	public long getNumberCount()
+	{
+		return mNumberCount;
+	}
+	
+	/***
+	 * @return The count of distinct duplicate numbers covered by the index.
+	 */
+	public long getDuplicateCount()
+	{
+		return mDuplicateCount;
+	}
+	
+	/***
+	 * @return The count of bytes of the index files.
+	 */
+	public long getIndexBytes()
+	{
+		long indexBytes = 0;
+		if (mSortedFile != null)
+			indexBytes += mSortedFile.length() + mDuplicateFile.length();
+		return indexBytes;
+	}
+	
+	/***
+	 * Called to merge the sorted numbers appended to the input into the index, passing each duplicate that
+	 * wasn't already a duplicate to the listener from least to most, then to commit the index as covering 
+	 * the input up to the new offset.
+	 * 
+	 * @param pInputFile The input file.
+	 * @param pAppendedFile The sorted run of the numbers appended after the covered offset.
+	 * @param pCoveredOffset The byte offset of the input the appended numbers cover up to.
+	 * @param pDuplicateNumberListener The listener the new duplicate numbers are passed to.
+	 * @throws IOException Error thrown on file access or by the listener.
+	 */
+	public void update(File pInputFile, File pAppendedFile, long pCoveredOffset, DuplicateNumberListener pDuplicateNumberListener) throws IOException
+	{
+		long generation = mGeneration + 1;
+		File sortedFile = new File(mIndexDirectory, "sorted_" + generation + INDEXFORMAT.getFileExtension());
+		File duplicateFile = new File(mIndexDirectory, "duplicates_" + generation + INDEXFORMAT.getFileExtension());
+		
+		ArrayList<RunFileReader> runReaderList = new ArrayList<RunFileReader>();
+		RunFileReader oldDuplicateReader = null;
+		RunFileWriter sortedWriter = null;
+		RunFileWriter duplicateWriter = null;
+		LoserTreeMerger merger = null;
+		boolean completed = false;
+		try
+		{
+			if (mSortedFile != null)
+			{
+				runReaderList.add(INDEXFORMAT.openReader(mSortedFile));
+				oldDuplicateReader = INDEXFORMAT.openReader(mDuplicateFile);
+			}
+			runReaderList.add(INDEXFORMAT.openReader(pAppendedFile));
+			merger = new LoserTreeMerger(runReaderList);
+			runReaderList.clear();
+			
+			sortedWriter = INDEXFORMAT.createWriter(sortedFile);
+			duplicateWriter = INDEXFORMAT.createWriter(duplicateFile);
+			NewDuplicateFilter newDuplicateFilter = new NewDuplicateFilter(oldDuplicateReader, duplicateWriter, pDuplicateNumberListener);
+			DuplicateNumberScanner duplicateNumberScanner = new DuplicateNumberScanner(newDuplicateFilter);
+			long[] block = new long[LoserTreeMerger.BLOCKSIZE];
+			int count;
+			while ((count = merger.read(block, 0, block.length)) > 0)
+			{
+				for (int i=0; i<count; i++)
+					sortedWriter.write(block[i]);
+				duplicateNumberScanner.write(block, 0, count);
+			}
+			sortedWriter.close();
+			duplicateWriter.close();
+			
+			commit(pInputFile, generation, pCoveredOffset, sortedWriter.getCount(), duplicateWriter.getCount(), sortedFile, duplicateFile);
+			completed = true;
+		}
+		finally
+		{
+			for (RunFileReader runReader : runReaderList)
+				runReader.close();
+			if (merger != null)
+				merger.close();
+			if (oldDuplicateReader != null)
+				oldDuplicateReader.close();
+			if (!completed)
+			{
+				closeQuietly(sortedWriter);
+				closeQuietly(duplicateWriter);
+				sortedFile.delete();
+				duplicateFile.delete();
+			}
+		}
+	}
+	
+	/***
+	 * Helper method to record the new state of the index, replacing the properties file in one step and
+	 * then deleting the files of the previous generation.
+	 */
+	private void commit(File pInputFile, long pGeneration, long pCoveredOffset, long pNumberCount, long pDuplicateCount, 
+			File pSortedFile, File pDuplicateFile) throws IOException
+	{
+		Properties properties = new Properties();
+		properties.setProperty("version", String.valueOf(VERSION));
+		properties.setProperty("generation", String.valueOf(pGeneration));
+		properties.setProperty("input", pInputFile.getCanonicalPath());
+		properties.setProperty("keyType", mKeyType.toString());
+		properties.setProperty("offset", String.valueOf(pCoveredOffset));
+		properties.setProperty("fingerprint", String.valueOf(calculateFingerprint(pInputFile, pCoveredOffset)));
+		properties.setProperty("numbers", String.valueOf(pNumberCount));
+		properties.setProperty("duplicateCount", String.valueOf(pDuplicateCount));
+		properties.setProperty("sorted", pSortedFile.getName());
+		properties.setProperty("duplicates", pDuplicateFile.getName());
+		
+		File newPropertiesFile = new File(mIndexDirectory, PROPERTIESFILE + ".new");
+		OutputStream propertiesStream = new FileOutputStream(newPropertiesFile);
+		try 
+		{
+			properties.store(propertiesStream, "Duplicate number index");
+		}
+		finally {
+			propertiesStream.close();
+		}
+		Files.move(newPropertiesFile.toPath(), new File(mIndexDirectory, PROPERTIESFILE).toPath(), 
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		
+		if (mSortedFile != null)
+		{
+			mSortedFile.delete();
+			mDuplicateFile.delete();
+		}
+		mGeneration = pGeneration;
+		mCoveredOffset = pCoveredOffset;
+		mNumberCount = pNumberCount;
+		mDuplicateCount = pDuplicateCount;
+		mSortedFile = pSortedFile;
+		mDuplicateFile = pDuplicateFile;
+	}
+	
+	/***
+	 * Called to find the offset just after the last line ending of a file. A last line without a line 
+	 * ending is left out, since a later append may still extend it.
+	 * 
+	 * @param pFile The file to search.
+	 * @param pFromOffset The offset to search back to.
+	 * @return The offset after the last line ending, or pFromOffset if there is none after it.
+	 * @throws IOException Error thrown on file access.
+	 */
+	public static long findLastLineEnd(File pFile, long pFromOffset) throws IOException
+	{
+		RandomAccessFile randomAccessFile = new RandomAccessFile(pFile, "r");
+		try
+		{
+			byte[] block = new byte[SEARCHBLOCKSIZE];
+			long blockEnd = randomAccessFile.length();
+			while (blockEnd > pFromOffset)
+			{
+				int length = (int) Math.min(SEARCHBLOCKSIZE, blockEnd - pFromOffset);
+				long blockStart = blockEnd - length;
+				randomAccessFile.seek(blockStart);
+				randomAccessFile.readFully(block, 0, length);
+				for (int i = length - 1; i >= 0; i--)
+				{
+					if (block[i] == '\n' || block[i] == '\r')
+						return blockStart + i + 1;
+				}
+				blockEnd = blockStart;
+			}
+			return pFromOffset;
+		}
+		finally {
+			randomAccessFile.close();
+		}
+	}
+	
+	/***
+	 * Called to calculate a checksum of the bytes at the start of the input and just before the given 
+	 * offset, used to detect an input that was rewritten rather than appended to.
+	 * 
+	 * @param pFile The input file.
+	 * @param pOffset The offset of the input covered.
+	 * @return The checksum.
+	 * @throws IOException Error thrown on file access.
+	 */
+	static long calculateFingerprint(File pFile, long pOffset) throws IOException
+	{
+		CRC32 checksum = new CRC32();
+		RandomAccessFile randomAccessFile = new RandomAccessFile(pFile, "r");
+		try
+		{
+			int length = (int) Math.min(FINGERPRINTSIZE, pOffset);
+			byte[] bytes = new byte[length];
+			randomAccessFile.seek(0);
+			randomAccessFile.readFully(bytes);
+			checksum.update(bytes);
+			
+			randomAccessFile.seek(pOffset - length);
+			randomAccessFile.readFully(bytes);
+			checksum.update(bytes);
+		}
+		finally {
+			randomAccessFile.close();
+		}
+		return checksum.getValue();
+	}
+	
+	/***
+	 * Helper method to close a writer after an error, ignoring any further error.
+	 */
+	private static void closeQuietly(RunFileWriter pRunFileWriter)
+	{
+		try 
+		{
+			if (pRunFileWriter != null)
+				pRunFileWriter.close();
+		}
+		catch (IOException ex) {}
+	}
+	
+	/***
+	 * Listener recording every duplicate in the new duplicate set and passing on only the duplicates that
+	 * aren't in the old set. Both sets are in order, so the old set is read alongside the new one.
+	 */
+	private static class NewDuplicateFilter implements DuplicateNumberListener
+	{
+		private RunFileReader mOldDuplicateReader;
+		private RunFileWriter mDuplicateWriter;
+		private DuplicateNumberListener mDuplicateNumberListener;
+		private boolean mHasOldDuplicate;
+		private long mOldDuplicate;
+		
+		public NewDuplicateFilter(RunFileReader pOldDuplicateReader, RunFileWriter pDuplicateWriter, 
+				DuplicateNumberListener pDuplicateNumberListener) throws IOException
+		{
+			mOldDuplicateReader = pOldDuplicateReader;
+			mDuplicateWriter = pDuplicateWriter;
+			mDuplicateNumberListener = pDuplicateNumberListener;
+			readOldDuplicate();
+		}
+		
+		@Override
+		public void duplicateFound(long pNumber) throws IOException
+		{
+			mDuplicateWriter.write(pNumber);
+			while (mHasOldDuplicate && mOldDuplicate < pNumber)
+				readOldDuplicate();
+			
+			if (!mHasOldDuplicate || mOldDuplicate != pNumber)
+				mDuplicateNumberListener.duplicateFound(pNumber);
+		}
+		
+		private void readOldDuplicate() throws IOException
+		{
+			mHasOldDuplicate = mOldDuplicateReader != null && mOldDuplicateReader.hasNext();
+			if (mHasOldDuplicate)
+				mOldDuplicate = mOldDuplicateReader.next();
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package com.devtest.matcher;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/***
+ * Growable list of the duplicate numbers found, held as primitive values in the order they were found.
+ */
+class DuplicateNumberList implements DuplicateNumberListener
+{
+	private long[] mNumbers;
+	private int mSize;
+	
+	/***
+	 * Constructor to create a new empty list.
+	 */
+	public DuplicateNumberList()
+	{
+		mNumbers = new long[16];
+		mSize = 0;
+	}
+	
+	@Override
+	public void duplicateFound(long pNumber)
+	{
+		add(pNumber);
+	}
+	
+	/***
+	 * Called to pass every duplicate number in the list to a listener in the order they are held.
+	 * 
+	 * @param pDuplicateNumberListener The listener.
+	 * @throws IOException Error thrown by the listener.
+	 */
+	public void deliverTo(DuplicateNumberListener pDuplicateNumberListener) throws IOException
+	{
+		for (int i=0; i<mSize; i++)
+			pDuplicateNumberListener.duplicateFound(mNumbers[i]);
+	}
+	
+	/***
+	 * Called to add a duplicate number to the end of the list.
+	 * 
+	 * @param pNumber The duplicate number.
+	 */
+	public void add(long pNumber)
+	{
+		if (mSize == mNumbers.length)
+			mNumbers = Arrays.copyOf(mNumbers, mSize * 2);
+		mNumbers[mSize++] = pNumber;
+	}
+	
+	/***
+	 * Called to add all the duplicate numbers of another list to the end of this list.
+	 * 
+	 * @param pDuplicateNumberList The list of duplicate numbers to add.
+	 */
+	public void addAll(DuplicateNumberList pDuplicateNumberList)
+	{
+		for (int i=0; i<pDuplicateNumberList.mSize; i++)
+			add(pDuplicateNumberList.mNumbers[i]);
+	}
+	
+	/***
+	 * Sort the duplicate numbers in the list from least to most.
+	 */
+	public void sort()
+	{
+		Arrays.sort(mNumbers, 0, mSize);
+	}
+	
+	/***
+	 * Called to return the duplicate number at the given position in the list.
+	 * 
+	 * @param pIndex The position of the duplicate number.
+	 * @return The duplicate number.
+	 */
+	public long get(int pIndex)
+	{
+		return mNumbers[pIndex];
+	}
+	
+	/***
+	 * @return The count of duplicate numbers in the list.
+	 */
+	public int size()
+	{
+		return mSize;
+	}
+}
@@ -0,0 +1,18 @@
+package com.devtest.matcher;
+
+import java.io.IOException;
+
+/***
+ * Callback the duplicate numbers are delivered to as they are found, so the duplicates never need to be
+ * held in memory or in a file. Each duplicate number is delivered once.
+ */
+public interface DuplicateNumberListener 
+{
+	/***
+	 * Called when a duplicate number is found.
+	 * 
+	 * @param pNumber The duplicate number.
+	 * @throws IOException Error thrown if the duplicate can't be handled, which stops the job.
+	 */
+	void duplicateFound(long pNumber) throws IOException;
+}
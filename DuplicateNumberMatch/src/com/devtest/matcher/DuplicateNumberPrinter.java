@@ -0,0 +1,103 @@
+package com.devtest.matcher;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/***
+ * Listener printing the duplicate numbers, with their counts when known, through a large buffer. Printing
+ * each duplicate with System.out.println flushes the console on every line, which takes longer than
+ * finding the duplicates when there are many of them, so the lines are only written out as the buffer
+ * fills and when flush is called.
+ */
+class DuplicateNumberPrinter implements DuplicateNumberListener, DuplicateCountListener
+{
+	// Size in characters of the buffer the lines are gathered in before being written out
+	private static final int BUFFERSIZE = 64 * 1024;
+
+	// Text printed before each duplicate number by default
+	private static final String DUPLICATELINEPREFIX = "Duplicate number found: ";
+
+	private Writer mWriter;
+	private NumberKeyType mKeyType;
+	private String mLinePrefix;
+
+	/***
+	 * Constructor to create a new printer writing to the given stream.
+	 *
+	 * @param pOutputStream The stream the lines are written to, which is flushed but never closed.
+	 * @param pKeyType The type of key the numbers are printed as.
+	 */
+	public DuplicateNumberPrinter(OutputStream pOutputStream, NumberKeyType pKeyType)
+	{
+		this(pOutputStream, pKeyType, DUPLICATELINEPREFIX);
+	}
+
+	/***
+	 * Constructor to create a new printer writing to the given stream with the given text before each number.
+	 *
+	 * @param pOutputStream The stream the lines are written to, which is flushed but never closed.
+	 * @param pKeyType The type of key the numbers are printed as.
+	 * @param pLinePrefix The text printed before each number.
+	 */
+	public DuplicateNumberPrinter(OutputStream pOutputStream, NumberKeyType pKeyType, String pLinePrefix)
+	{
+		mWriter = new BufferedWriter(new OutputStreamWriter(pOutputStream), BUFFERSIZE);
+		mKeyType = pKeyType;
+		mLinePrefix = pLinePrefix;
+	}
+
+	@Override
+	public void duplicateFound(long pNumber) throws IOException
+	{
+		mWriter.write(mLinePrefix);
+		mWriter.write(mKeyType.format(pNumber));
+		mWriter.write(System.lineSeparator());
+	}
+
+	@Override
+	public void duplicateCounted(long pNumber, long pCount) throws IOException
+	{
+		mWriter.write(mLinePrefix);
+		mWriter.write(mKeyType.format(pNumber));
+		mWriter.write(" (count ");
+		mWriter.write(Long.toString(pCount));
+		mWriter.write(")");
+		mWriter.write(System.lineSeparator());
+	}
+
+	/***
+	 * Called to print the duplicates that occur most often, from the most frequent to the least.
+	 *
+	 * @param pTopDuplicateCounts The most frequent duplicates.
+	 * @throws IOException Error thrown on writing the lines.
+	 */
+	public void printTopCounts(TopDuplicateCounts pTopDuplicateCounts) throws IOException
+	{
+		mWriter.write("Top " + pTopDuplicateCounts.size() + " duplicate numbers by count:");
+		mWriter.write(System.lineSeparator());
+		pTopDuplicateCounts.deliverTo(new DuplicateCountListener() {
+			@Override
+			public void duplicateCounted(long pNumber, long pCount) throws IOException
+			{
+				mWriter.write(mKeyType.format(pNumber));
+				mWriter.write(" occurs ");
+				mWriter.write(Long.toString(pCount));
+				mWriter.write(" times");
+				mWriter.write(System.lineSeparator());
+			}
+		});
+	}
+
+	/***
+	 * Called to write out the lines gathered in the buffer.
+	 *
+	 * @throws IOException Error thrown on writing the lines.
+	 */
+	public void flush() throws IOException
+	{
+		mWriter.flush();
+	}
+}
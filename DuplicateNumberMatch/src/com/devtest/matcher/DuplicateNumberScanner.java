@@ -0,0 +1,96 @@
+package com.devtest.matcher;
+
+import java.io.IOException;
+
+/***
+ * Number sink that checks a sorted stream of numbers for duplicates. Since the stream is sorted any 
+ * duplicates will be present in sequence so only the current and previous number need to be compared.
+ * Only the first occurrence of a matched number is recorded, so a number repeated many times is reported
+ * once.
+ * 
+ * A block of numbers can be written at once, in which case the adjacent pairs are compared 4 at a time 
+ * without branching and only a group holding a match is checked number by number. Duplicates are rare in
+ * most inputs, so nearly every group costs one branch rather than four.
+ */
+class DuplicateNumberScanner implements NumberSink
+{
+	private boolean mHasPrevNumber;
+	private long mPrevNumber;
+	private boolean mHasMatchedNo;
+	private long mPrevMatchedNo;
+	private DuplicateNumberListener mDuplicateNumberListener;
+	
+	/***
+	 * Constructor to create a new scanner with no numbers seen.
+	 * 
+	 * @param pDuplicateNumberListener The listener the duplicate numbers are passed to as they are found.
+	 */
+	public DuplicateNumberScanner(DuplicateNumberListener pDuplicateNumberListener)
+	{
+		mDuplicateNumberListener = pDuplicateNumberListener;
+	}
+	
+	/***
+	 * Called to pass on a block of numbers of the stream, which must be in sorted order following the
+	 * numbers passed on before.
+	 * 
+	 * @param pNumbers The array holding the block.
+	 * @param pOffset The position in the array of the first number of the block.
+	 * @param pLength The count of numbers in the block.
+	 * @throws IOException Error thrown by the listener.
+	 */
+	public void write(long[] pNumbers, int pOffset, int pLength) throws IOException
+	{
+		if (pLength <= 0)
+			return;
+		
+		// The first number is compared to the last of the previous block
+		write(pNumbers[pOffset]);
+		int end = pOffset + pLength;
+		int i = pOffset + 1;
+		for (; i + 4 <= end; i += 4)
+		{
+			long prevNumber = pNumbers[i - 1];
+			long number1 = pNumbers[i];
+			long number2 = pNumbers[i + 1];
+			long number3 = pNumbers[i + 2];
+			long number4 = pNumbers[i + 3];
+			
+			// Non short circuit ors so the four compares are made without a branch each
+			if ((prevNumber == number1) | (number1 == number2) | (number2 == number3) | (number3 == number4))
+			{
+				write(number1);
+				write(number2);
+				write(number3);
+				write(number4);
+			}
+			else {
+				mPrevNumber = number4;
+			}
+		}
+		for (; i < end; i++)
+			write(pNumbers[i]);
+	}
+	
+	@Override
+	public void write(long pNumber) throws IOException
+	{
+		// Condition to skip the very first read since we've nothing to compare it to
+		if (!mHasPrevNumber)
+		{
+			mPrevNumber = pNumber;
+			mHasPrevNumber = true;
+			return;
+		}
+		
+		// Check previous number against next number for duplicate match, only recording it once
+		if (mPrevNumber == pNumber && (!mHasMatchedNo || mPrevMatchedNo != pNumber))
+		{
+			mDuplicateNumberListener.duplicateFound(pNumber);
+			
+			mPrevMatchedNo = pNumber;
+			mHasMatchedNo = true;
+		}
+		mPrevNumber = pNumber;
+	}
+}
@@ -0,0 +1,163 @@
+package com.devtest.matcher;
+
+/***
+ * Plan of how the external sort will use the memory and open files allowed. The plan picks the memory
+ * used to sort each run and the merge fan-in, the max number of runs merged at once, and estimates how
+ * many runs and merge passes the input will need. When there are more runs than the fan-in, the runs are
+ * merged in several passes so inputs of any size are sorted within the same memory.
+ */
+class ExternalSortPlan 
+{
+	// Least memory used per run when merging, shared between the disk read buffer and decoded blocks
+	public static final int MINMERGEMEMORYPERRUN = 8 * 1024;
+	
+	// Smallest disk read buffer allowed per run when merging
+	private static final int MINREADBUFFERSIZE = 1024;
+	
+	// Largest disk read buffer used per run when merging, 1MB
+	private static final int MAXREADBUFFERSIZE = 1024 * 1024;
+	
+	// Largest count of decoded numbers held in each block of a run when merging
+	private static final int MAXBLOCKSIZE = 64 * 1024;
+	
+	// Typical size in bytes of each number in the input used to estimate the count of numbers
+	private static final int ESTIMATEDBYTESPERNUMBER = 8;
+	
+	private long mMemoryBudget;
+	private long mRunMemory;
+	private int mFanIn;
+	private long mEstimatedRunCount;
+	private int mEstimatedMergePasses;
+	
+	/***
+	 * Called to create the plan for sorting an input of the given size.
+	 * 
+	 * @param pInputLength The length in bytes of the input.
+	 * @param pConfig The configuration of the memory and open files allowed.
+	 * @return The plan.
+	 */
+	public static ExternalSortPlan create(long pInputLength, MatcherConfig pConfig)
+	{
+		ExternalSortPlan plan = new ExternalSortPlan();
+		plan.mMemoryBudget = pConfig.getMemoryBudget();
+		
+		// Run generation and merging don't overlap so each can use the full memory allowed
+		plan.mRunMemory = plan.mMemoryBudget;
+		
+		// One file is kept free for the output of each merge
+		long fanIn = Math.min(pConfig.getMaxOpenFiles() - 1, plan.mMemoryBudget / MINMERGEMEMORYPERRUN);
+		plan.mFanIn = (int) Math.max(fanIn, 2);
+		
+		long estimatedNumbers = pInputLength / ESTIMATEDBYTESPERNUMBER;
+		long numbersPerRun = Math.max(plan.mRunMemory / NumberRunBuffer.BYTESPERNUMBER, 1);
+		plan.mEstimatedRunCount = Math.max((estimatedNumbers + numbersPerRun - 1) / numbersPerRun, 1);
+		plan.mEstimatedMergePasses = calculateMergePasses(plan.mEstimatedRunCount, plan.mFanIn);
+		return plan;
+	}
+	
+	/***
+	 * Helper method to calculate the number of merge passes needed for the given count of runs.
+	 * 
+	 * @param pRunCount The count of runs to merge.
+	 * @param pFanIn The max number of runs merged at once.
+	 * @return The number of merge passes.
+	 */
+	public static int calculateMergePasses(long pRunCount, int pFanIn)
+	{
+		int passes = 1;
+		for (long runs = pRunCount; runs > pFanIn; runs = (runs + pFanIn - 1) / pFanIn)
+			passes++;
+		return passes;
+	}
+	
+	/***
+	 * @return The number of bytes of memory used to hold the numbers of each run while sorting.
+	 */
+	public long getRunMemory()
+	{
+		return mRunMemory;
+	}
+	
+	/***
+	 * @return The max number of runs merged at once.
+	 */
+	public int getFanIn()
+	{
+		return mFanIn;
+	}
+	
+	/***
+	 * Called to return the size of the disk read buffer for each run when merging the given count of runs.
+	 * 
+	 * @param pRunCount The count of runs being merged at once.
+	 * @return The size in bytes of the read buffer.
+	 */
+	public int getReadBufferSize(int pRunCount)
+	{
+		return getReadBufferSize(pRunCount, false);
+	}
+	
+	/***
+	 * Called to return the size of the disk read buffer for each run when merging the given count of runs.
+	 * 
+	 * @param pRunCount The count of runs being merged at once.
+	 * @param pReadAhead True if two more blocks of each run are held to read ahead of the merge.
+	 * @return The size in bytes of the read buffer.
+	 */
+	public int getReadBufferSize(int pRunCount, boolean pReadAhead)
+	{
+		long memoryShare = getMemoryPerRun(pRunCount) / getMemorySharesPerRun(pReadAhead);
+		return (int) Math.min(Math.max(memoryShare, MINREADBUFFERSIZE), MAXREADBUFFERSIZE);
+	}
+	
+	/***
+	 * Called to return the count of decoded numbers held in memory for each run when merging the given 
+	 * count of runs.
+	 * 
+	 * @param pRunCount The count of runs being merged at once.
+	 * @return The count of numbers in each run's block.
+	 */
+	public int getBlockSize(int pRunCount)
+	{
+		return getBlockSize(pRunCount, false);
+	}
+	
+	/***
+	 * Called to return the count of decoded numbers held in each block of a run when merging the given 
+	 * count of runs.
+	 * 
+	 * @param pRunCount The count of runs being merged at once.
+	 * @param pReadAhead True if two more blocks of each run are held to read ahead of the merge.
+	 * @return The count of numbers in each of the run's blocks.
+	 */
+	public int getBlockSize(int pRunCount, boolean pReadAhead)
+	{
+		long memoryShare = getMemoryPerRun(pRunCount) / getMemorySharesPerRun(pReadAhead);
+		return (int) Math.min(Math.max(memoryShare / NumberRunBuffer.BYTESPERNUMBER, 1), MAXBLOCKSIZE);
+	}
+	
+	/***
+	 * Helper method to return the memory allowed for each run when merging the given count of runs.
+	 */
+	private long getMemoryPerRun(int pRunCount)
+	{
+		return mMemoryBudget / Math.max(pRunCount, 1);
+	}
+	
+	/***
+	 * Helper method to return the number of equal shares the memory of each run is split into, one for the
+	 * disk read buffer and one for each block of decoded numbers.
+	 */
+	private int getMemorySharesPerRun(boolean pReadAhead)
+	{
+		return pReadAhead ? 4 : 2;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "External sort plan: memory " + (mMemoryBudget / 1024) + "KB, run size " + (mRunMemory / 1024) 
+				+ "KB, merge fan-in " + mFanIn + ", estimated runs " + mEstimatedRunCount 
+				+ ", estimated merge passes " + mEstimatedMergePasses;
+	}
+}
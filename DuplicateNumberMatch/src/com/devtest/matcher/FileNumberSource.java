@@ -0,0 +1,55 @@
+package com.devtest.matcher;
+
+import java.io.File;
+import java.io.IOException;
+
+/***
+ * Number source reading the input numbers from a file, one number per line. The file is memory mapped 
+ * and can be read any number of times.
+ */
+public class FileNumberSource implements NumberSource
+{
+	private File mFile;
+	
+	/***
+	 * Constructor to create a new file number source.
+	 * 
+	 * @param pFile The file holding the input numbers.
+	 */
+	public FileNumberSource(File pFile)
+	{
+		mFile = pFile;
+	}
+	
+	/***
+	 * @return The file holding the input numbers.
+	 */
+	public File getFile()
+	{
+		return mFile;
+	}
+	
+	@Override
+	public NumberInput open() throws IOException
+	{
+		return NumberScanner.openFile(mFile);
+	}
+	
+	@Override
+	public boolean isRepeatable()
+	{
+		return true;
+	}
+	
+	@Override
+	public long getLength()
+	{
+		return mFile.length();
+	}
+	
+	@Override
+	public String toString()
+	{
+		return mFile.getPath();
+	}
+}
@@ -0,0 +1,433 @@
+package com.devtest.matcher;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***
+ * Duplicate detection strategy that avoids sorting the full input. The input numbers are split by a hash
+ * of their value into bucket files sized so each bucket's distinct values fit in memory, then each bucket
+ * is checked for duplicates on its own with a primitive hash set. Since equal values always land in the
+ * same bucket, the buckets can be checked in parallel and no merge is needed. If the duplicates should be
+ * reported in order only the duplicates found are sorted at the end.
+ * 
+ * A bucket that turns out to hold more distinct values than fit in memory, for example due to skew, is
+ * split again with a different hash.
+ * 
+ * Checking a bucket holds a set of the values seen, a set of the values already found to repeat and the
+ * list of duplicates found, and the two duplicate structures can grow as large as the set of values seen
+ * when nearly every value repeats. The share of the memory of each checking thread is therefore split 
+ * three ways, with the values seen sized to a third of it. The duplicates of each bucket are passed on as
+ * soon as the bucket is checked, in whatever order the buckets finish, so no bucket holds on to its
+ * duplicates waiting for the buckets before it.
+ */
+class HashPartitionDuplicateDetector 
+{
+	// Max number of bucket files written at the same time
+	public static final int MAXBUCKETS = 512;
+	
+	// Bounds of the write buffer used for each bucket file
+	private static final int MINBUCKETBUFFERSIZE = 4 * 1024;
+	private static final int MAXBUCKETBUFFERSIZE = 64 * 1024;
+	
+	// Number of bytes each number takes in a bucket file
+	private static final int BYTESPERNUMBER = 8;
+	
+	// Size of the read buffer used when checking a bucket file
+	private static final int READBUFFERSIZE = 64 * 1024;
+	
+	// Count of structures sharing the memory of a checking thread, the values seen and the two of duplicates
+	private static final int BUCKETSTRUCTURES = 3;
+	
+	// Max number of times a bucket is split again before it is checked regardless of its size
+	private static final int MAXPARTITIONDEPTH = 4;
+	
+	// Number of buckets a bucket that is too large is split into
+	private static final int SPLITBUCKETCOUNT = 16;
+	
+	private NumberSource mNumberSource;
+	private long mMemoryBudget;
+	private int mMaxBuckets;
+	private int mThreadCount;
+	private int mMaxValuesPerBucket;
+	private File mTempDirectory;
+	private AtomicLong mBucketBytesWritten = new AtomicLong();
+	private AtomicLong mBucketBytesRead = new AtomicLong();
+	
+	/***
+	 * Constructor to create a new hash partition detector.
+	 * 
+	 * @param pNumberSource The source of the input numbers.
+	 * @param pConfig The configuration of the memory shared between the threads checking buckets and the
+	 * max number of bucket files open at once.
+	 * @param pThreadCount The number of threads used to check the buckets.
+	 */
+	public HashPartitionDuplicateDetector(NumberSource pNumberSource, MatcherConfig pConfig, int pThreadCount)
+	{
+		mNumberSource = pNumberSource;
+		mMemoryBudget = pConfig.getMemoryBudget();
+		mMaxBuckets = Math.min(pConfig.getMaxOpenFiles(), MAXBUCKETS);
+		mTempDirectory = pConfig.getTempDirectory();
+		mThreadCount = Math.max(pThreadCount, 1);
+		mMaxValuesPerBucket = (int) Math.min(Math.max(mMemoryBudget / mThreadCount / BUCKETSTRUCTURES / LongOpenHashSet.BYTESPERVALUE, 
+				1024), 1 << 29);
+	}
+	
+	/***
+	 * @return The count of bytes written to bucket files.
+	 */
+	public long getBucketBytesWritten()
+	{
+		return mBucketBytesWritten.get();
+	}
+	
+	/***
+	 * @return The count of bytes read back from bucket files.
+	 */
+	public long getBucketBytesRead()
+	{
+		return mBucketBytesRead.get();
+	}
+	
+	/***
+	 * Called to find the duplicate numbers in the input.
+	 * 
+	 * @param pCountEstimate The expected count of input numbers, used to size the buckets.
+	 * @param pSortDuplicates True to report the duplicates from least to most once all are found, False 
+	 * to report the duplicates of each bucket as soon as the bucket is checked, in no particular order.
+	 * @param pDuplicateNumberListener The listener the duplicate numbers are passed to.
+	 * @throws IOException Error thrown on file access.
+	 */
+	public void detectDuplicates(long pCountEstimate, boolean pSortDuplicates, DuplicateNumberListener pDuplicateNumberListener) throws IOException
+	{
+		// Only hold on to the duplicates found when they need to be sorted
+		DuplicateNumberList sortedDuplicateList = null;
+		DuplicateNumberListener duplicateNumberListener = pDuplicateNumberListener;
+		if (pSortDuplicates)
+		{
+			sortedDuplicateList = new DuplicateNumberList();
+			duplicateNumberListener = sortedDuplicateList;
+		}
+		
+		long bucketCount = (pCountEstimate + mMaxValuesPerBucket - 1) / mMaxValuesPerBucket;
+		
+		// Try checking the whole input in memory first if it's expected to fit
+		boolean foundDuplicates = false;
+		if (bucketCount <= 1)
+		{
+			NumberInput numberInput = mNumberSource.open();
+			try 
+			{
+				foundDuplicates = checkBucket(numberInput, mMaxValuesPerBucket, duplicateNumberListener);
+			}
+			finally {
+				numberInput.close();
+			}
+			bucketCount = SPLITBUCKETCOUNT;
+		}
+		
+		if (!foundDuplicates)
+		{
+			List<HashBucket> bucketList;
+			NumberInput numberInput = mNumberSource.open();
+			try 
+			{
+				bucketList = partition(numberInput, (int) Math.min(bucketCount, mMaxBuckets), 0);
+			}
+			finally {
+				numberInput.close();
+			}
+			checkBuckets(bucketList, duplicateNumberListener);
+		}
+		
+		if (pSortDuplicates)
+		{
+			sortedDuplicateList.sort();
+			sortedDuplicateList.deliverTo(pDuplicateNumberListener);
+		}
+	}
+	
+	/***
+	 * Helper method to check all the buckets for duplicates using the pool of threads, passing on the 
+	 * duplicates of each bucket straight to the listener as soon as the bucket is checked. The listener is 
+	 * only called by one thread at a time.
+	 */
+	private void checkBuckets(List<HashBucket> pBucketList, final DuplicateNumberListener pDuplicateNumberListener) throws IOException
+	{
+		// Once the check has ended no bucket still running may pass on its duplicates
+		final AtomicBoolean checkEnded = new AtomicBoolean(false);
+		final DuplicateNumberListener sharedListener = new DuplicateNumberListener() {
+			@Override
+			public synchronized void duplicateFound(long pNumber) throws IOException
+			{
+				if (checkEnded.get())
+					throw new IOException("Bucket check was stopped");
+				pDuplicateNumberListener.duplicateFound(pNumber);
+			}
+		};
+		
+		ExecutorService checkerService = Executors.newFixedThreadPool(mThreadCount);
+		ArrayList<Future<Void>> resultFutureList = new ArrayList<Future<Void>>();
+		try
+		{
+			for (final HashBucket bucket : pBucketList)
+			{
+				resultFutureList.add(checkerService.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException 
+					{
+						checkBucketFile(bucket, 1, sharedListener);
+						return null;
+					}
+				}));
+			}
+			
+			for (Future<Void> resultFuture : resultFutureList)
+				waitForResult(resultFuture);
+		}
+		finally
+		{
+			synchronized (sharedListener)
+			{
+				checkEnded.set(true);
+			}
+			checkerService.shutdownNow();
+			for (HashBucket bucket : pBucketList)
+				bucket.mFile.delete();
+		}
+	}
+	
+	/***
+	 * Helper method to check a bucket file for duplicates, splitting it again with a different hash if
+	 * it holds too many distinct values to fit in memory.
+	 */
+	private void checkBucketFile(HashBucket pBucket, int pDepth, DuplicateNumberListener pDuplicateNumberListener) throws IOException
+	{
+		try
+		{
+			// Once the bucket has been split too many times check it regardless of its size
+			int maxDistinctValues = (pDepth > MAXPARTITIONDEPTH) ? Integer.MAX_VALUE : mMaxValuesPerBucket;
+			boolean foundDuplicates = false;
+			BucketInput bucketInput = new BucketInput(pBucket, mBucketBytesRead);
+			try 
+			{
+				foundDuplicates = checkBucket(bucketInput, maxDistinctValues, pDuplicateNumberListener);
+			}
+			finally {
+				bucketInput.close();
+			}
+			
+			if (!foundDuplicates)
+			{
+				List<HashBucket> splitBucketList;
+				bucketInput = new BucketInput(pBucket, mBucketBytesRead);
+				try 
+				{
+					splitBucketList = partition(bucketInput, Math.min(SPLITBUCKETCOUNT, mMaxBuckets), pDepth);
+				}
+				finally {
+					bucketInput.close();
+				}
+				
+				try
+				{
+					for (HashBucket splitBucket : splitBucketList)
+						checkBucketFile(splitBucket, pDepth + 1, pDuplicateNumberListener);
+				}
+				finally
+				{
+					for (HashBucket splitBucket : splitBucketList)
+						splitBucket.mFile.delete();
+				}
+			}
+		}
+		finally {
+			pBucket.mFile.delete();
+		}
+	}
+	
+	/***
+	 * Helper method to check a set of numbers for duplicates in memory. Only the first repeat of each
+	 * number is added to the list.
+	 * 
+	 * @return True if the check completed, False if the numbers held more than the max distinct values,
+	 * in which case nothing is passed on.
+	 */
+	private boolean checkBucket(NumberInput pNumberInput, int pMaxDistinctValues, DuplicateNumberListener pDuplicateNumberListener) throws IOException
+	{
+		LongOpenHashSet seenNumberSet = new LongOpenHashSet(Math.min(mMaxValuesPerBucket, 1 << 16));
+		LongOpenHashSet duplicateNumberSet = new LongOpenHashSet(16);
+		DuplicateNumberList bucketDuplicateList = new DuplicateNumberList();
+		while (pNumberInput.hasNext())
+		{
+			long number = pNumberInput.next();
+			if (!seenNumberSet.add(number))
+			{
+				if (duplicateNumberSet.add(number))
+					bucketDuplicateList.add(number);
+			}
+			else if (seenNumberSet.size() > pMaxDistinctValues) {
+				return false;
+			}
+		}
+		bucketDuplicateList.deliverTo(pDuplicateNumberListener);
+		return true;
+	}
+	
+	/***
+	 * Helper method to split the numbers into bucket files by a hash of their value. The write buffers of
+	 * all the buckets share the memory allowed.
+	 * 
+	 * @param pNumberInput The numbers to split.
+	 * @param pBucketCount The number of buckets to split the numbers into.
+	 * @param pSeed Seed mixed into the hash so each level of splitting spreads values differently.
+	 * @return The list of bucket files written.
+	 */
+	private List<HashBucket> partition(NumberInput pNumberInput, int pBucketCount, long pSeed) throws IOException
+	{
+		int bufferSize = (int) Math.max(Math.min(mMemoryBudget / pBucketCount, MAXBUCKETBUFFERSIZE), MINBUCKETBUFFERSIZE);
+		ArrayList<HashBucket> bucketList = new ArrayList<HashBucket>();
+		DataOutputStream[] bucketWriters = new DataOutputStream[pBucketCount];
+		boolean completed = false;
+		try
+		{
+			for (int i=0; i<pBucketCount; i++)
+			{
+				HashBucket bucket = new HashBucket(File.createTempFile("hashBucket_" + String.valueOf(i), ".bin", mTempDirectory));
+				bucketList.add(bucket);
+				bucketWriters[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(bucket.mFile), bufferSize));
+			}
+			
+			long seed = LongOpenHashSet.mix(pSeed + 1);
+			while (pNumberInput.hasNext())
+			{
+				long number = pNumberInput.next();
+				int bucketIndex = (int) ((LongOpenHashSet.mix(number ^ seed) >>> 1) % pBucketCount);
+				bucketWriters[bucketIndex].writeLong(number);
+				bucketList.get(bucketIndex).mCount++;
+			}
+			
+			for (int i=0; i<pBucketCount; i++)
+			{
+				bucketWriters[i].close();
+				bucketWriters[i] = null;
+				mBucketBytesWritten.addAndGet(bucketList.get(i).mCount * BYTESPERNUMBER);
+			}
+			completed = true;
+		}
+		finally
+		{
+			for (DataOutputStream bucketWriter : bucketWriters)
+			{
+				try 
+				{
+					if (bucketWriter != null)
+						bucketWriter.close();
+				}
+				catch (IOException ex) {}
+			}
+			if (!completed)
+			{
+				for (HashBucket bucket : bucketList)
+					bucket.mFile.delete();
+			}
+		}
+		return bucketList;
+	}
+	
+	/***
+	 * Helper method to wait for a bucket check to finish, passing on any error it reported.
+	 */
+	private void waitForResult(Future<Void> pResultFuture) throws IOException
+	{
+		try 
+		{
+			pResultFuture.get();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a bucket to be checked");
+		}
+		catch (ExecutionException ex)
+		{
+			if (ex.getCause() instanceof IOException)
+				throw (IOException) ex.getCause();
+			if (ex.getCause() instanceof RuntimeException)
+				throw (RuntimeException) ex.getCause();
+			throw new IOException("Error checking bucket: " + ex.getCause());
+		}
+	}
+	
+	/***
+	 * A bucket file along with the count of numbers written to it.
+	 */
+	private static class HashBucket
+	{
+		public File mFile;
+		public long mCount;
+		
+		public HashBucket(File pFile)
+		{
+			mFile = pFile;
+		}
+	}
+	
+	/***
+	 * Number input reading back the numbers written to a bucket file.
+	 */
+	private static class BucketInput implements NumberInput
+	{
+		private DataInputStream mInputStream;
+		private long mRemaining;
+		private long mCount;
+		private AtomicLong mBytesRead;
+		
+		public BucketInput(HashBucket pBucket, AtomicLong pBytesRead) throws IOException
+		{
+			mInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(pBucket.mFile), READBUFFERSIZE));
+			mRemaining = pBucket.mCount;
+			mCount = pBucket.mCount;
+			mBytesRead = pBytesRead;
+		}
+		
+		@Override
+		public boolean hasNext()
+		{
+			return mRemaining > 0;
+		}
+		
+		@Override
+		public long next() throws IOException
+		{
+			mRemaining--;
+			return mInputStream.readLong();
+		}
+		
+		@Override
+		public void close()
+		{
+			mBytesRead.addAndGet((mCount - mRemaining) * BYTESPERNUMBER);
+			mCount = mRemaining;
+			try 
+			{
+				mInputStream.close();
+			}
+			catch (IOException ex) {}
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package com.devtest.matcher;
+
+import java.io.IOException;
+import java.util.PrimitiveIterator;
+
+/***
+ * Number source reading the input numbers from a primitive iterator, so numbers already held or produced
+ * in memory are matched without being written out as text first. The iterator is read once.
+ */
+public class IteratorNumberSource implements NumberSource
+{
+	private PrimitiveIterator.OfLong mLongIterator;
+	private PrimitiveIterator.OfInt mIntIterator;
+	private String mName;
+	private boolean mOpened;
+	
+	/***
+	 * Constructor to create a new source reading the numbers from an iterator of longs.
+	 * 
+	 * @param pIterator The iterator of the input numbers.
+	 * @param pName The name of the input reported in the logs and metrics.
+	 */
+	public IteratorNumberSource(PrimitiveIterator.OfLong pIterator, String pName)
+	{
+		mLongIterator = pIterator;
+		mName = pName;
+	}
+	
+	/***
+	 * Constructor to create a new source reading the numbers from an iterator of ints.
+	 * 
+	 * @param pIterator The iterator of the input numbers.
+	 * @param pName The name of the input reported in the logs and metrics.
+	 */
+	public IteratorNumberSource(PrimitiveIterator.OfInt pIterator, String pName)
+	{
+		mIntIterator = pIterator;
+		mName = pName;
+	}
+	
+	@Override
+	public synchronized NumberInput open() throws IOException
+	{
+		if (mOpened)
+			throw new IOException("The input " + mName + " can only be read once");
+		
+		mOpened = true;
+		if (mLongIterator != null)
+			return new LongIteratorInput(mLongIterator);
+		return new IntIteratorInput(mIntIterator);
+	}
+	
+	@Override
+	public boolean isRepeatable()
+	{
+		return false;
+	}
+	
+	@Override
+	public long getLength()
+	{
+		return -1;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return mName;
+	}
+	
+	/***
+	 * Number input reading from an iterator of longs.
+	 */
+	private static class LongIteratorInput implements NumberInput
+	{
+		private PrimitiveIterator.OfLong mIterator;
+		
+		public LongIteratorInput(PrimitiveIterator.OfLong pIterator)
+		{
+			mIterator = pIterator;
+		}
+		
+		@Override
+		public boolean hasNext()
+		{
+			return mIterator.hasNext();
+		}
+		
+		@Override
+		public long next()
+		{
+			return mIterator.nextLong();
+		}
+		
+		@Override
+		public void close() {}
+	}
+	
+	/***
+	 * Number input reading from an iterator of ints.
+	 */
+	private static class IntIteratorInput implements NumberInput
+	{
+		private PrimitiveIterator.OfInt mIterator;
+		
+		public IntIteratorInput(PrimitiveIterator.OfInt pIterator)
+		{
+			mIterator = pIterator;
+		}
+		
+		@Override
+		public boolean hasNext()
+		{
+			return mIterator.hasNext();
+		}
+		
+		@Override
+		public long next()
+		{
+			return mIterator.nextInt();
+		}
+		
+		@Override
+		public void close() {}
+	}
+}
@@ -0,0 +1,408 @@
+package com.devtest.matcher;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/***
+ * Checkpoint of the sorted runs of a long running job kept in a directory of its own. The input is split
+ * a slice at a time, and once the runs of a slice are written they are recorded in a manifest along with
+ * their checksums and the byte offset of the input reached. A job restarted after a crash checks the runs
+ * of the manifest, reuses those that are still valid and carries on splitting the input from where they
+ * end, so only the slice being split when the job died is read again.
+ *
+ * The manifest is replaced in one step, so it always describes complete runs. Any split file in the
+ * directory that the manifest doesn't list was being written when the job died and is deleted when the
+ * checkpoint is opened. The directory is locked while a job uses it, so two jobs never share it and the
+ * orphaned files deleted are never those of a running job.
+ *
+ * -Dmatcher.checkpointDir=dir  Directory the runs and manifest of a restartable job are kept in.
+ */
+class JobCheckpoint
+{
+	public static final String CHECKPOINTDIR_PROPERTY = "matcher.checkpointDir";
+
+	// Name of the manifest recording the runs and the offset of the input covered
+	private static final String MANIFESTFILE = "checkpoint.properties";
+
+	// Name of the file locked while a job uses the checkpoint
+	private static final String LOCKFILE = "checkpoint.lock";
+
+	// Prefix of the names of the split files written by the run generators
+	private static final String SPLITFILEPREFIX = "splitFile_";
+
+	// Version of the manifest layout
+	private static final int VERSION = 1;
+
+	// Size of the buffer used to read back a run for its checksum
+	private static final int CHECKSUMBUFFERSIZE = 64 * 1024;
+
+	private static final Logger LOGGER = Logger.getLogger(JobCheckpoint.class.getName());
+
+	private File mCheckpointDirectory;
+	private NumberKeyType mKeyType;
+	private RunFileFormat mRunFileFormat;
+	private boolean mCollapseDuplicates;
+	private File mInputFile;
+	private long mInputLength;
+	private long mInputFingerprint;
+	private RandomAccessFile mLockFile;
+	private FileLock mLock;
+	private long mCoveredOffset;
+	private ArrayList<File> mRunFileList = new ArrayList<File>();
+	private ArrayList<Long> mRunChecksumList = new ArrayList<Long>();
+	private ArrayList<Long> mRunOffsetList = new ArrayList<Long>();
+
+	/***
+	 * Constructor to create a checkpoint kept in the given directory.
+	 *
+	 * @param pCheckpointDirectory The directory holding the runs and manifest, created if it doesn't exist.
+	 * @param pKeyType The type of key the input numbers are read as.
+	 * @param pRunFileFormat The format the runs are stored in.
+	 * @param pCollapseDuplicates True if the copies of each number in a run are stored as a count.
+	 */
+	public JobCheckpoint(File pCheckpointDirectory, NumberKeyType pKeyType, RunFileFormat pRunFileFormat, boolean pCollapseDuplicates)
+	{
+		mCheckpointDirectory = pCheckpointDirectory;
+		mKeyType = pKeyType;
+		mRunFileFormat = pRunFileFormat;
+		mCollapseDuplicates = pCollapseDuplicates;
+	}
+
+	/***
+	 * Called to lock the checkpoint directory and load the runs still valid for the given input. If the
+	 * manifest is missing, was written for another input or settings or the input has changed since, the
+	 * checkpoint starts empty. Split files not in the manifest are deleted.
+	 *
+	 * @param pInputFile The input file.
+	 * @throws IOException Error thrown on file access or if another job holds the checkpoint.
+	 */
+	public void open(File pInputFile) throws IOException
+	{
+		if (!mCheckpointDirectory.isDirectory() && !mCheckpointDirectory.mkdirs())
+			throw new IOException("Unable to create the checkpoint directory " + mCheckpointDirectory);
+
+		mLockFile = new RandomAccessFile(new File(mCheckpointDirectory, LOCKFILE), "rw");
+		try
+		{
+			mLock = mLockFile.getChannel().tryLock();
+		}
+		catch (OverlappingFileLockException ex)
+		{
+			// Another job of the same JVM holds the lock
+			mLock = null;
+		}
+		catch (IOException ex)
+		{
+			mLockFile.close();
+			throw ex;
+		}
+		if (mLock == null)
+		{
+			mLockFile.close();
+			throw new IOException("Checkpoint directory " + mCheckpointDirectory + " is in use by another job");
+		}
+
+		mInputFile = pInputFile;
+		mInputLength = pInputFile.length();
+		mInputFingerprint = DuplicateIndex.calculateFingerprint(pInputFile, mInputLength);
+		load();
+		deleteOrphanedFiles();
+		if (!mRunFileList.isEmpty())
+			LOGGER.info("Resuming from checkpoint with " + mRunFileList.size() + " runs covering " + mCoveredOffset
+					+ " of " + mInputLength + " bytes");
+		commit();
+	}
+
+	/***
+	 * @return The byte offset of the input covered by the runs of the checkpoint.
+	 */
+	public long getCoveredOffset()
+	{
+		return mCoveredOffset;
+	}
+
+	/***
+	 * @return The directory the runs of the checkpoint are created in.
+	 */
+	public File getCheckpointDirectory()
+	{
+		return mCheckpointDirectory;
+	}
+
+	/***
+	 * Called to split the rest of the input into runs a slice at a time, recording the runs of each slice
+	 * in the manifest as soon as they are written. The run generator must create its runs in the checkpoint
+	 * directory.
+	 *
+	 * @param pNumberScanner The scanner of the input, opened at the covered offset.
+	 * @param pRunGenerator The run generator.
+	 * @param pSliceCount The count of numbers in each slice.
+	 * @return The runs of the whole input, those reused from the checkpoint first.
+	 * @throws IOException Error thrown on file access.
+	 */
+	public List<File> generateRuns(NumberScanner pNumberScanner, RunGenerator pRunGenerator, long pSliceCount) throws IOException
+	{
+		long startOffset = mCoveredOffset;
+		while (pNumberScanner.hasNext())
+		{
+			List<File> runFileList = pRunGenerator.generateRuns(new SliceNumberInput(pNumberScanner, pSliceCount));
+			try
+			{
+				long coveredOffset = startOffset + pNumberScanner.getBytesRead();
+				for (File runFile : runFileList)
+				{
+					mRunFileList.add(runFile);
+					mRunChecksumList.add(Long.valueOf(calculateChecksum(runFile)));
+					mRunOffsetList.add(Long.valueOf(coveredOffset));
+				}
+				mCoveredOffset = coveredOffset;
+				commit();
+			}
+			catch (IOException ex)
+			{
+				for (File runFile : runFileList)
+					runFile.delete();
+				throw ex;
+			}
+		}
+		return new ArrayList<File>(mRunFileList);
+	}
+
+	/***
+	 * Called once the job completes to delete the runs and the manifest, so the next job starts afresh.
+	 */
+	public void complete()
+	{
+		for (File runFile : mRunFileList)
+			runFile.delete();
+		mRunFileList.clear();
+		mRunChecksumList.clear();
+		mRunOffsetList.clear();
+		mCoveredOffset = 0;
+		new File(mCheckpointDirectory, MANIFESTFILE).delete();
+	}
+
+	/***
+	 * Called to release the lock on the checkpoint directory. The runs are kept unless the job completed.
+	 */
+	public void close()
+	{
+		try
+		{
+			if (mLock != null)
+				mLock.release();
+			if (mLockFile != null)
+				mLockFile.close();
+		}
+		catch (IOException ex) {}
+		mLock = null;
+		mLockFile = null;
+	}
+
+	/***
+	 * Helper method to load the runs of the manifest, keeping those up to the first run that is missing or
+	 * doesn't match its checksum. The runs of a slice are only kept if all of them are valid.
+	 */
+	private void load() throws IOException
+	{
+		mCoveredOffset = 0;
+		mRunFileList.clear();
+		mRunChecksumList.clear();
+		mRunOffsetList.clear();
+
+		File manifestFile = new File(mCheckpointDirectory, MANIFESTFILE);
+		if (!manifestFile.exists())
+			return;
+
+		Properties properties = new Properties();
+		InputStream manifestStream = new FileInputStream(manifestFile);
+		try
+		{
+			properties.load(manifestStream);
+		}
+		finally {
+			manifestStream.close();
+		}
+
+		try
+		{
+			if (Integer.parseInt(properties.getProperty("version", "0")) != VERSION
+					|| !mInputFile.getCanonicalPath().equals(properties.getProperty("input"))
+					|| !mKeyType.toString().equals(properties.getProperty("keyType"))
+					|| !mRunFileFormat.name().equals(properties.getProperty("runFormat"))
+					|| mCollapseDuplicates != Boolean.parseBoolean(properties.getProperty("collapseDuplicates")))
+			{
+				LOGGER.info("Checkpoint was written for another input or settings, starting afresh");
+				return;
+			}
+			if (mInputLength != Long.parseLong(properties.getProperty("inputLength"))
+					|| mInputFingerprint != Long.parseLong(properties.getProperty("fingerprint")))
+			{
+				LOGGER.info("Input " + mInputFile + " has changed since the checkpoint, starting afresh");
+				return;
+			}
+
+			int runCount = Integer.parseInt(properties.getProperty("runs"));
+			for (int i=0; i<runCount; i++)
+			{
+				File runFile = new File(mCheckpointDirectory, properties.getProperty("run." + i + ".name"));
+				long checksum = Long.parseLong(properties.getProperty("run." + i + ".checksum"));
+				long offset = Long.parseLong(properties.getProperty("run." + i + ".offset"));
+				if (!runFile.isFile() || calculateChecksum(runFile) != checksum)
+				{
+					LOGGER.info("Checkpoint run " + runFile.getName() + " is missing or corrupt, splitting again from it");
+
+					// Drop the runs of the same slice, so the slice is split again as a whole
+					while (!mRunOffsetList.isEmpty() && mRunOffsetList.get(mRunOffsetList.size() - 1).longValue() == offset)
+					{
+						mRunFileList.remove(mRunFileList.size() - 1);
+						mRunChecksumList.remove(mRunChecksumList.size() - 1);
+						mRunOffsetList.remove(mRunOffsetList.size() - 1);
+					}
+					break;
+				}
+				mRunFileList.add(runFile);
+				mRunChecksumList.add(Long.valueOf(checksum));
+				mRunOffsetList.add(Long.valueOf(offset));
+			}
+
+			if (!mRunOffsetList.isEmpty())
+				mCoveredOffset = mRunOffsetList.get(mRunOffsetList.size() - 1).longValue();
+		}
+		catch (RuntimeException ex)
+		{
+			LOGGER.info("Checkpoint manifest is invalid, starting afresh: " + ex);
+			mRunFileList.clear();
+			mRunChecksumList.clear();
+			mRunOffsetList.clear();
+		}
+	}
+
+	/***
+	 * Helper method to delete the split files left in the directory by a job that died while writing them,
+	 * along with any runs of the manifest that are no longer used.
+	 */
+	private void deleteOrphanedFiles()
+	{
+		HashSet<String> runNameSet = new HashSet<String>();
+		for (File runFile : mRunFileList)
+			runNameSet.add(runFile.getName());
+
+		File[] files = mCheckpointDirectory.listFiles();
+		if (files == null)
+			return;
+
+		int deletedCount = 0;
+		for (File file : files)
+		{
+			if (file.getName().startsWith(SPLITFILEPREFIX) && !runNameSet.contains(file.getName()) && file.delete())
+				deletedCount++;
+		}
+		if (deletedCount > 0)
+			LOGGER.info("Deleted " + deletedCount + " orphaned split files from " + mCheckpointDirectory);
+	}
+
+	/***
+	 * Helper method to record the runs and covered offset in the manifest, replacing it in one step.
+	 */
+	private void commit() throws IOException
+	{
+		Properties properties = new Properties();
+		properties.setProperty("version", String.valueOf(VERSION));
+		properties.setProperty("input", mInputFile.getCanonicalPath());
+		properties.setProperty("inputLength", String.valueOf(mInputLength));
+		properties.setProperty("fingerprint", String.valueOf(mInputFingerprint));
+		properties.setProperty("keyType", mKeyType.toString());
+		properties.setProperty("runFormat", mRunFileFormat.name());
+		properties.setProperty("collapseDuplicates", String.valueOf(mCollapseDuplicates));
+		properties.setProperty("offset", String.valueOf(mCoveredOffset));
+		properties.setProperty("runs", String.valueOf(mRunFileList.size()));
+		for (int i=0; i<mRunFileList.size(); i++)
+		{
+			properties.setProperty("run." + i + ".name", mRunFileList.get(i).getName());
+			properties.setProperty("run." + i + ".checksum", String.valueOf(mRunChecksumList.get(i)));
+			properties.setProperty("run." + i + ".offset", String.valueOf(mRunOffsetList.get(i)));
+		}
+
+		File newManifestFile = new File(mCheckpointDirectory, MANIFESTFILE + ".new");
+		OutputStream manifestStream = new FileOutputStream(newManifestFile);
+		try
+		{
+			properties.store(manifestStream, "Job checkpoint");
+		}
+		finally {
+			manifestStream.close();
+		}
+		Files.move(newManifestFile.toPath(), new File(mCheckpointDirectory, MANIFESTFILE).toPath(),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/***
+	 * Helper method to calculate the checksum of the whole of a run file.
+	 */
+	private static long calculateChecksum(File pFile) throws IOException
+	{
+		CRC32 checksum = new CRC32();
+		byte[] buffer = new byte[CHECKSUMBUFFERSIZE];
+		InputStream inputStream = new FileInputStream(pFile);
+		try
+		{
+			int count;
+			while ((count = inputStream.read(buffer)) > 0)
+				checksum.update(buffer, 0, count);
+		}
+		finally {
+			inputStream.close();
+		}
+		return checksum.getValue();
+	}
+
+	/***
+	 * Input passing on at most the given count of numbers of another input, which is left open so the next
+	 * slice carries on from where this one stopped.
+	 */
+	private static class SliceNumberInput implements NumberInput
+	{
+		private NumberInput mNumberInput;
+		private long mRemainingCount;
+
+		public SliceNumberInput(NumberInput pNumberInput, long pCount)
+		{
+			mNumberInput = pNumberInput;
+			mRemainingCount = pCount;
+		}
+
+		@Override
+		public boolean hasNext() throws IOException
+		{
+			return mRemainingCount > 0 && mNumberInput.hasNext();
+		}
+
+		@Override
+		public long next() throws IOException
+		{
+			mRemainingCount--;
+			return mNumberInput.next();
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+}
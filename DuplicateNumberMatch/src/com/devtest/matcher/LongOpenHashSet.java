@@ -0,0 +1,114 @@
+package com.devtest.matcher;
+
+import java.util.Arrays;
+
+/***
+ * Primitive hash set of long values using open addressing with linear probing. Values are held directly
+ * in a long array so no objects are created per value added. The zero value marks an empty slot, so 
+ * whether zero itself is in the set is tracked separately.
+ */
+class LongOpenHashSet 
+{
+	// Number of bytes of memory used per value held, allowing for the set being at most half full
+	public static final int BYTESPERVALUE = 16;
+	
+	private long[] mSlots;
+	private int mMask;
+	private int mSize;
+	private boolean mContainsZero;
+	
+	/***
+	 * Constructor to create a new set sized to hold the given count of values without growing.
+	 * 
+	 * @param pExpectedSize The count of values expected to be added.
+	 */
+	public LongOpenHashSet(int pExpectedSize)
+	{
+		int capacity = 16;
+		while (capacity < pExpectedSize * 2L && capacity < (1 << 30))
+			capacity <<= 1;
+		mSlots = new long[capacity];
+		mMask = capacity - 1;
+	}
+	
+	/***
+	 * Helper method to spread the bits of a value so nearby values land in different slots.
+	 * 
+	 * @param pValue The value to hash.
+	 * @return The mixed hash of the value.
+	 */
+	public static long mix(long pValue)
+	{
+		long hash = pValue * 0x9E3779B97F4A7C15L;
+		hash ^= hash >>> 32;
+		hash *= 0xBF58476D1CE4E5B9L;
+		return hash ^ (hash >>> 29);
+	}
+	
+	/***
+	 * Called to add a value to the set.
+	 * 
+	 * @param pValue The value to add.
+	 * @return True if the value was added, False if it was already in the set.
+	 */
+	public boolean add(long pValue)
+	{
+		if (pValue == 0)
+		{
+			if (mContainsZero)
+				return false;
+			mContainsZero = true;
+			mSize++;
+			return true;
+		}
+		
+		int slot = (int) mix(pValue) & mMask;
+		while (mSlots[slot] != 0)
+		{
+			if (mSlots[slot] == pValue)
+				return false;
+			slot = (slot + 1) & mMask;
+		}
+		mSlots[slot] = pValue;
+		if (++mSize * 2 > mSlots.length)
+			grow();
+		return true;
+	}
+	
+	/***
+	 * @return The count of values in the set.
+	 */
+	public int size()
+	{
+		return mSize;
+	}
+	
+	/***
+	 * Clear the set so the memory can be reused.
+	 */
+	public void clear()
+	{
+		Arrays.fill(mSlots, 0);
+		mSize = 0;
+		mContainsZero = false;
+	}
+	
+	/***
+	 * Helper method to double the slots of the set, placing every value again.
+	 */
+	private void grow()
+	{
+		long[] oldSlots = mSlots;
+		mSlots = new long[oldSlots.length * 2];
+		mMask = mSlots.length - 1;
+		for (long value : oldSlots)
+		{
+			if (value == 0)
+				continue;
+			int slot = (int) mix(value) & mMask;
+			while (mSlots[slot] != 0)
+				slot = (slot + 1) & mMask;
+			mSlots[slot] = value;
+		}
+	}
+}
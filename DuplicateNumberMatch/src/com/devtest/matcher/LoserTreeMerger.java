@@ -0,0 +1,198 @@
+package com.devtest.matcher;
+
+import java.io.IOException;
+import java.util.List;
+
+/***
+ * K-way merge engine used to merge a set of sorted runs back into one sorted sequence of numbers. The 
+ * engine keeps a tournament tree of losers over the current head number of each run, so selecting the
+ * next number takes O(log k) comparisons of primitive values. Each run is read through its own reusable
+ * block of decoded numbers so no objects are created per number merged.
+ * 
+ * Numbers are pulled from the merger one at a time using {@link #hasNext()} and {@link #next()}, or a
+ * block at a time using {@link #read(long[], int, int)}. Equal
+ * numbers are returned in order of the index of their run, so {@link #getLastRun()} can be used to tag 
+ * each number with the source its run was read from.
+ */
+class LoserTreeMerger 
+{
+	// Default number of decoded numbers held in memory for each run
+	public static final int BLOCKSIZE = 1024;
+	
+	private RunFileReader[] mRunReaders;
+	private long[][] mBlocks;
+	private int[] mBlockPositions;
+	private int[] mBlockLengths;
+	private long[] mHeads;
+	private boolean[] mExhausted;
+	
+	// Tree of losers, mTree[0] holds the index of the run with the least current number 
+	private int[] mTree;
+	private int mRunCount;
+	private int mLastRun;
+	
+	/***
+	 * Constructor to create a new merger over the given runs using the default block size.
+	 * 
+	 * @param pRunReaders The readers of the sorted runs to merge.
+	 * @throws IOException Error thrown on file access.
+	 */
+	public LoserTreeMerger(List<RunFileReader> pRunReaders) throws IOException
+	{
+		this(pRunReaders, BLOCKSIZE);
+	}
+	
+	/***
+	 * Constructor to create a new merger over the given runs.
+	 * 
+	 * @param pRunReaders The readers of the sorted runs to merge.
+	 * @param pBlockSize The number of decoded numbers to hold in memory for each run.
+	 * @throws IOException Error thrown on file access.
+	 */
+	public LoserTreeMerger(List<RunFileReader> pRunReaders, int pBlockSize) throws IOException
+	{
+		mRunCount = pRunReaders.size();
+		mRunReaders = pRunReaders.toArray(new RunFileReader[mRunCount]);
+		mBlocks = new long[mRunCount][Math.max(pBlockSize, 1)];
+		mBlockPositions = new int[mRunCount];
+		mBlockLengths = new int[mRunCount];
+		mHeads = new long[mRunCount];
+		mExhausted = new boolean[mRunCount];
+		mTree = new int[Math.max(mRunCount, 1)];
+		mLastRun = -1;
+		
+		try
+		{
+			for (int i=0; i<mRunCount; i++)
+				advance(i);
+		}
+		catch (IOException ex)
+		{
+			close();
+			throw ex;
+		}
+		
+		// Build the tree by playing every run against a virtual run that beats all others
+		for (int i=0; i<mRunCount; i++)
+			mTree[i] = mRunCount;
+		for (int i=mRunCount-1; i>=0; i--)
+			adjust(i);
+	}
+	
+	/***
+	 * @return True if any of the runs have numbers left to merge, False otherwise.
+	 */
+	public boolean hasNext()
+	{
+		return mRunCount > 0 && !mExhausted[mTree[0]];
+	}
+	
+	/***
+	 * Called to return the least number across all the runs and move that run on to its next number.
+	 * Should only be called when {@link #hasNext()} is true.
+	 * 
+	 * @return The next number in sorted order.
+	 * @throws IOException Error thrown on file access or if a run is corrupt.
+	 */
+	public long next() throws IOException
+	{
+		int winner = mTree[0];
+		long number = mHeads[winner];
+		mLastRun = winner;
+		advance(winner);
+		adjust(winner);
+		return number;
+	}
+	
+	/***
+	 * Called to read a block of the next numbers in sorted order into the given buffer.
+	 * 
+	 * @param pBuffer The buffer to store the numbers in.
+	 * @param pOffset The position in the buffer to store the first number.
+	 * @param pLength The max count of numbers to read.
+	 * @return The count of numbers read, 0 if there are no numbers left in any of the runs.
+	 * @throws IOException Error thrown on file access or if a run is corrupt.
+	 */
+	public int read(long[] pBuffer, int pOffset, int pLength) throws IOException
+	{
+		int count = 0;
+		while (count < pLength && hasNext())
+			pBuffer[pOffset + count++] = next();
+		return count;
+	}
+	
+	/***
+	 * @return The index of the run the last number returned by {@link #next()} was read from.
+	 */
+	public int getLastRun()
+	{
+		return mLastRun;
+	}
+	
+	/***
+	 * Perform some cleanup of the run readers.
+	 */
+	public void close()
+	{
+		for (RunFileReader runReader : mRunReaders)
+			runReader.close();
+	}
+	
+	/***
+	 * Helper method to move the given run on to its next number, refilling the run's block of decoded
+	 * numbers when it has been used up.
+	 */
+	private void advance(int pRun) throws IOException
+	{
+		if (mBlockPositions[pRun] == mBlockLengths[pRun])
+		{
+			mBlockLengths[pRun] = mRunReaders[pRun].read(mBlocks[pRun], 0, mBlocks[pRun].length);
+			mBlockPositions[pRun] = 0;
+			if (mBlockLengths[pRun] <= 0)
+			{
+				mBlockLengths[pRun] = 0;
+				mExhausted[pRun] = true;
+				mRunReaders[pRun].close();
+				return;
+			}
+		}
+		mHeads[pRun] = mBlocks[pRun][mBlockPositions[pRun]++];
+	}
+	
+	/***
+	 * Helper method to replay the matches on the path from the given run's leaf up to the root of the
+	 * tree, storing the loser of each match and the overall winner at the root.
+	 */
+	private void adjust(int pRun)
+	{
+		int winner = pRun;
+		for (int node = (pRun + mRunCount) >> 1; node > 0; node >>= 1)
+		{
+			if (beats(mTree[node], winner))
+			{
+				int loser = winner;
+				winner = mTree[node];
+				mTree[node] = loser;
+			}
+		}
+		mTree[0] = winner;
+	}
+	
+	/***
+	 * Helper method to check if the first run's head should be merged before the second run's head.
+	 * Exhausted runs lose to every other run and the virtual run used to build the tree wins against all.
+	 */
+	private boolean beats(int pRun1, int pRun2)
+	{
+		if (pRun1 == mRunCount)
+			return true;
+		if (pRun2 == mRunCount)
+			return false;
+		if (mExhausted[pRun1])
+			return false;
+		if (mExhausted[pRun2])
+			return true;
+		
+		return mHeads[pRun1] < mHeads[pRun2] || (mHeads[pRun1] == mHeads[pRun2] && pRun1 < pRun2);
+	}
+}
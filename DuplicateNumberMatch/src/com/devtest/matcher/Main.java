@@ -1,7 +1,11 @@
 package com.devtest.matcher;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /***
  * Application to detect and print out duplicate numbers stored in an input file based on limited memory 
@@ -16,11 +20,43 @@ import java.util.*;
  * Run against a given passed in file of numbers
  * java -jar build/jar/NumberMatcher.jar numbers.txt
  * 
+ * Run against a file that only grows by appends, reporting only the duplicates new since the last run
+ * java -Dmatcher.indexDir=numbers.idx -jar build/jar/NumberMatcher.jar numbers.txt
+ * 
+ * Run against a given file printing the count of each duplicate and the 10 that occur most often
+ * java -Dmatcher.counts=true -Dmatcher.topN=10 -jar build/jar/NumberMatcher.jar numbers.txt
+ * 
+ * Run against a batch of files in one JVM, 4 at a time, writing the duplicates of each to <file>.duplicates
+ * java -Dmatcher.maxJobs=4 -jar build/jar/NumberMatcher.jar batch a.txt b.txt c.txt
+ * 
+ * Run against several files, printing the numbers found in more than one of them, in all of them 
+ * (INTERSECTION) or in the first file and none of the others (DIFFERENCE)
+ * java -Dmatcher.setOperation=CROSS_FILE_DUPLICATES -jar build/jar/NumberMatcher.jar a.txt b.txt c.txt
+ * 
+ * Run a long job that can be restarted after a crash, reusing the runs sorted before it died
+ * java -Dmatcher.checkpointDir=numbers.ckpt -jar build/jar/NumberMatcher.jar numbers.txt
+ * 
+ * Run against numbers piped to standard input
+ * gunzip -c numbers.txt.gz | java -jar build/jar/NumberMatcher.jar -
+ * 
  * Run a test scenario against a small and large number set.
  * java -jar build/jar/NumberMatcher.jar runtest
+ * 
+ * Run a benchmark comparing the run generation strategies against random, reverse and partially sorted 
+ * number sets.
+ * java -jar build/jar/NumberMatcher.jar runbenchmark
  */
 public class Main 
 {
+	// Merge fan in used to report the merge passes needed for the runs of each benchmark
+	private static final int BENCHMARKFANIN = 16;
+	
+	// Memory allowed in the test scenarios, small enough that the large number set is split into several runs
+	private static final long TESTMEMORYBUDGET = 256 * 1024;
+	
+	// Open files allowed in the test scenarios
+	private static final int TESTMAXOPENFILES = 64;
+	
     public static void main(String[] args) 
     {
     	try  
@@ -29,6 +65,29 @@ public class Main
 	    	{
 	    		runTestScenarioA();
 	    		runTestScenarioB();
+	    		runDetectionStrategyTestScenario();
+	    		runMergeTestScenario();
+	    		runIndexTestScenario();
+	    		runParallelMergeTestScenario();
+	    		runRunFormatTestScenario();
+	    		runCollapseDuplicatesTestScenario();
+	    		runSetOperationTestScenario();
+	    		runCheckpointTestScenario();
+	    		runPrefilterTestScenario();
+	    		runMatcherServiceTestScenario();
+	    		runKeyTypeTestScenario();
+	    		runDuplicateCountTestScenario();
+	    		runReplacementSelectionTestScenario();
+	    		runInputFormatTestScenario();
+	    		runOneShotSourceTestScenario();
+	    	}
+	    	else if (args.length > 0  && args[0].equalsIgnoreCase("runbenchmark"))
+	    	{
+	    		runBenchmarkScenario();
+	    	}
+	    	else if (args.length > 0  && args[0].equalsIgnoreCase("batch"))
+	    	{
+	    		runBatchScenario(Arrays.copyOfRange(args, 1, args.length));
 	    	}
 	    	else
 	    	{
@@ -40,6 +99,11 @@ public class Main
         	System.out.println("File location or access error occured: " + ex.getMessage());
         	System.exit(0);    		    		
     	}
+    	catch (IllegalArgumentException ex)
+    	{
+        	System.out.println("Invalid setting: " + ex.getMessage());
+        	System.exit(0);
+    	}
     }
     
     public static void runReleaseScenario(String[] args) throws IOException
@@ -55,9 +119,166 @@ public class Main
         	generateRandomTestNumberSet(dataFile, 100000);
         }
         
-        NumberController controller = new NumberController(dataFile);
-        controller.renderInputNumbers();
-        controller.validateAndPrintDuplicateNumbers(false, false);    	
+        // Numbers piped to standard input are matched as they are read without being staged on disk
+        NumberController controller;
+        if (dataFile.equals("-"))
+        	controller = new NumberController(StreamNumberSource.standardInput(), MatcherConfig.fromSystemProperties());
+        else
+        	controller = new NumberController(dataFile);
+        
+        controller.setFusedDuplicateScan(true);
+        controller.setRunFileFormat(RunFileFormat.valueOf(System.getProperty(RunFileFormat.RUNFORMAT_PROPERTY, 
+        		RunFileFormat.BINARY_DELTA.name()).trim().toUpperCase()));
+        controller.setCollapseDuplicates(Boolean.getBoolean(RunFileFormat.COLLAPSEDUPLICATES_PROPERTY));
+        controller.setBloomPrefilter(Boolean.getBoolean(BloomPrefilter.PREFILTER_PROPERTY));
+        controller.setIoThreadCount(Integer.getInteger(RunIoService.IOTHREADS_PROPERTY, RunIoService.DEFAULTTHREADCOUNT));
+        final NumberKeyType keyType = NumberKeyType.parse(System.getProperty(NumberKeyType.KEYTYPE_PROPERTY, NumberKeyType.LONG.toString()));
+        controller.setKeyType(keyType);
+        controller.setMetricsMBeanEnabled(Boolean.getBoolean(MatcherMetrics.JMX_PROPERTY));
+        String metricsFile = System.getProperty(MatcherMetrics.METRICSFILE_PROPERTY);
+        if (metricsFile != null)
+        	controller.setMetricsSummaryFile(new File(metricsFile));
+        String checkpointDirectory = System.getProperty(JobCheckpoint.CHECKPOINTDIR_PROPERTY);
+        if (checkpointDirectory != null)
+        	controller.setCheckpointDirectory(new File(checkpointDirectory));
+        String indexDirectory = System.getProperty(DuplicateIndex.INDEXDIR_PROPERTY);
+        if (indexDirectory != null)
+        	controller.setIndexDirectory(new File(indexDirectory));
+        
+        // Several files are matched against each other with a set operation in a single merge
+        if (args.length > 1)
+        {
+        	SetOperation setOperation = SetOperation.valueOf(System.getProperty(SetOperation.SETOPERATION_PROPERTY, 
+        			SetOperation.CROSS_FILE_DUPLICATES.name()).trim().toUpperCase());
+        	ArrayList<NumberSource> otherSourceList = new ArrayList<NumberSource>();
+        	for (int i=1; i<args.length; i++)
+        		otherSourceList.add(new FileNumberSource(new File(args[i])));
+        	
+        	DuplicateNumberPrinter setOperationPrinter = new DuplicateNumberPrinter(System.out, keyType, setOperation.getLinePrefix());
+        	try
+        	{
+        		controller.findSetOperation(otherSourceList, setOperation, setOperationPrinter);
+        	}
+        	finally {
+        		setOperationPrinter.flush();
+        	}
+        	return;
+        }
+        
+        // The duplicates are printed through a buffer, with their counts and the most frequent if asked for
+        final DuplicateNumberPrinter duplicateNumberPrinter = new DuplicateNumberPrinter(System.out, keyType);
+        final boolean printCounts = Boolean.getBoolean(DuplicateCountScanner.COUNTS_PROPERTY);
+        int topCount = Integer.getInteger(TopDuplicateCounts.TOPN_PROPERTY, 0);
+        try
+        {
+        	if (printCounts || topCount > 0)
+        	{
+        		final TopDuplicateCounts topDuplicateCounts = (topCount > 0) ? new TopDuplicateCounts(topCount) : null;
+        		controller.findDuplicateCounts(new DuplicateCountListener() {
+        			@Override
+        			public void duplicateCounted(long pNumber, long pCount) throws IOException
+        			{
+        				if (printCounts)
+        					duplicateNumberPrinter.duplicateCounted(pNumber, pCount);
+        				else
+        					duplicateNumberPrinter.duplicateFound(pNumber);
+        				if (topDuplicateCounts != null)
+        					topDuplicateCounts.duplicateCounted(pNumber, pCount);
+        			}
+        		});
+        		if (topDuplicateCounts != null)
+        			duplicateNumberPrinter.printTopCounts(topDuplicateCounts);
+        	}
+        	else
+        	{
+        		controller.findDuplicateNumbers(duplicateNumberPrinter);
+        	}
+        }
+        finally {
+        	duplicateNumberPrinter.flush();
+        }
+    }
+    
+    /***
+     * Called to match a batch of files as concurrent jobs of a single matcher service, writing the 
+     * duplicates of each file to a file of the same name with a .duplicates extension and printing a 
+     * summary line per file as its job completes. A file that fails is reported and the batch carries on.
+     * 
+     * @param pFileNames The names of the files to match.
+     * @throws IOException Error thrown if interrupted while queueing a job.
+     */
+    public static void runBatchScenario(String[] pFileNames) throws IOException
+    {
+    	MatcherService service = MatcherService.fromSystemProperties();
+    	service.setRunFileFormat(RunFileFormat.valueOf(System.getProperty(RunFileFormat.RUNFORMAT_PROPERTY, 
+        		RunFileFormat.BINARY_DELTA.name()).trim().toUpperCase()));
+    	NumberKeyType keyType = NumberKeyType.parse(System.getProperty(NumberKeyType.KEYTYPE_PROPERTY, NumberKeyType.LONG.toString()));
+    	service.setKeyType(keyType);
+    	int maxPendingJobs = Integer.getInteger(MatcherService.MAXJOBS_PROPERTY, MatcherService.DEFAULTMAXJOBS)
+    			+ Integer.getInteger(MatcherService.JOBQUEUE_PROPERTY, MatcherService.DEFAULTJOBQUEUE);
+    	
+    	// Jobs are completed in the order submitted, so the output files open at once stay bounded
+    	ArrayDeque<BatchJob> pendingJobs = new ArrayDeque<BatchJob>();
+    	try
+    	{
+	    	for (String fileName : pFileNames)
+	    	{
+	    		OutputStream outputStream = new FileOutputStream(fileName + ".duplicates");
+	    		DuplicateNumberPrinter printer = new DuplicateNumberPrinter(outputStream, keyType);
+	    		Future<MatcherMetrics> future;
+	    		try
+	    		{
+	    			future = service.submit(new FileNumberSource(new File(fileName)), printer);
+	    		}
+	    		catch (IOException ex)
+	    		{
+	    			outputStream.close();
+	    			throw ex;
+	    		}
+	    		pendingJobs.add(new BatchJob(fileName, future, outputStream, printer));
+	    		
+	    		while (!pendingJobs.isEmpty() && (pendingJobs.peek().mFuture.isDone() || pendingJobs.size() > maxPendingJobs))
+	    			completeBatchJob(pendingJobs.poll());
+	    	}
+	    	
+	    	while (!pendingJobs.isEmpty())
+	    		completeBatchJob(pendingJobs.poll());
+    	}
+    	finally {
+    		for (BatchJob batchJob : pendingJobs)
+    			batchJob.mOutputStream.close();
+    		service.shutdown();
+    	}
+    }
+    
+    /***
+     * Helper method to wait for a batch job to complete, writing out its duplicates and printing its 
+     * summary line.
+     * 
+     * @param pBatchJob The batch job.
+     * @throws IOException Error thrown if interrupted while waiting.
+     */
+    private static void completeBatchJob(BatchJob pBatchJob) throws IOException
+    {
+    	try
+    	{
+    		MatcherMetrics metrics = pBatchJob.mFuture.get();
+    		pBatchJob.mPrinter.flush();
+    		System.out.println(pBatchJob.mFileName + ": " + metrics.getDuplicateCount() + " duplicates, " 
+    				+ metrics.getJobTimeMillis() + " ms");
+    	}
+    	catch (InterruptedException ex)
+    	{
+    		Thread.currentThread().interrupt();
+    		throw new IOException("Interrupted while waiting for a batch job");
+    	}
+    	catch (ExecutionException ex)
+    	{
+    		System.out.println(pBatchJob.mFileName + ": failed: " + ex.getCause().getMessage());
+    	}
+    	finally {
+    		pBatchJob.mOutputStream.close();
+    	}
     }
     
     /**
@@ -162,7 +383,924 @@ public class Main
         else
         	System.out.println("Test Case D (Correct numbers present, large number set): Failed");
     }
+    
+    /**
+     * Called to run a test scenario against the large number set with each detection strategy set in turn,
+     * since the default picks the bitmap for the narrow range of the other test scenarios.
+     * 
+     * @throws IOException Error thrown on file access.
+     */
+    public static void runDetectionStrategyTestScenario() throws IOException
+    {
+    	String dataFile = "numberstest.txt";
+    	String[] dup = new String[] { "8", "9", "144", "325", "438", "9999" };
+    	generateLargeTestNumberSet(dataFile, dup, 200000);
+    	
+    	NumberController controller = createTestController(dataFile);
+    	controller.setDetectionStrategy(DetectionStrategy.EXTERNAL_SORT);
+    	printTestResult("E (External sort, large number set)", findsDuplicates(controller, dup));
+    	
+    	controller = createTestController(dataFile);
+    	controller.setDetectionStrategy(DetectionStrategy.BITMAP);
+    	printTestResult("F (Bitmap, large number set)", findsDuplicates(controller, dup));
+    	
+    	controller = createTestController(dataFile);
+    	controller.setDetectionStrategy(DetectionStrategy.HASH_PARTITION);
+    	printTestResult("G (Hash partition, large number set)", findsDuplicates(controller, dup));
+    }
+    
+    /**
+     * Called to run a test scenario against a random number set with each merge engine, including a merge
+     * limited to so few open files that it takes several passes.
+     * 
+     * @throws IOException Error thrown on file access.
+     */
+    public static void runMergeTestScenario() throws IOException
+    {
+    	String dataFile = "numberstest.txt";
+    	String[] dup = generateRandomDuplicateTestNumberSet(dataFile, 200000, 2000000);
+    	
+    	NumberController controller = createTestController(dataFile);
+    	controller.setDetectionStrategy(DetectionStrategy.EXTERNAL_SORT);
+    	controller.setMergeEngine(MergeEngine.PRIORITY_QUEUE);
+    	printTestResult("H (Priority queue merge, random number set)", findsDuplicates(controller, dup));
+    	
+    	controller = createTestController(dataFile);
+    	controller.setDetectionStrategy(DetectionStrategy.EXTERNAL_SORT);
+    	controller.setMergeEngine(MergeEngine.LOSER_TREE);
+    	printTestResult("I (Tree of losers merge, random number set)", findsDuplicates(controller, dup));
+    	
+    	controller = new NumberController(new FileNumberSource(new File(dataFile)), new MatcherConfig(TESTMEMORYBUDGET, 3));
+    	controller.setDetectionStrategy(DetectionStrategy.EXTERNAL_SORT);
+    	printTestResult("J (Merge in several passes, random number set)", findsDuplicates(controller, dup));
+    }
+    
+    /**
+     * Called to run a test scenario against a file that grows by appends with a duplicate index, checking
+     * the first job reports every duplicate and the job after the appends only the new duplicates.
+     * 
+     * @throws IOException Error thrown on file access.
+     */
+    public static void runIndexTestScenario() throws IOException
+    {
+    	String dataFile = "numberstest.txt";
+    	String[] dup = new String[] { "8", "9", "144", "325", "438", "9999" };
+    	generateLargeTestNumberSet(dataFile, dup, 200000);
+    	File indexDirectory = Files.createTempDirectory("matcher-test-").toFile();
+    	try
+    	{
+    		NumberController controller = createTestController(dataFile);
+    		controller.setIndexDirectory(indexDirectory);
+    		printTestResult("K (Index of every duplicate, large number set)", findsDuplicates(controller, dup));
+    		
+    		// A number seen once before and a new number repeated are new duplicates, a third copy of 8 isn't
+    		BufferedWriter fileBufferOutputWriter = new BufferedWriter(new FileWriter(dataFile, true));
+    		for (String num : new String[] { "300001", "8", "150000", "300001" })
+    		{
+    			fileBufferOutputWriter.write(num);
+    			fileBufferOutputWriter.newLine();
+    		}
+    		fileBufferOutputWriter.close();
+    		
+    		controller = createTestController(dataFile);
+    		controller.setIndexDirectory(indexDirectory);
+    		printTestResult("L (Index of appended duplicates, large number set)", 
+    				findsDuplicates(controller, new String[] { "150000", "300001" }));
+    	}
+    	finally {
+    		deleteTestDirectory(indexDirectory);
+    	}
+    }
+    
+    /**
+     * Called to run a test scenario against a random number set with several threads, so the runs are 
+     * split into ranges of values that are merged in parallel.
+     * 
+     * @throws IOException Error thrown on file access.
+     */
+    public static void runParallelMergeTestScenario() throws IOException
+    {
+    	String dataFile = "numberstest.txt";
+    	String[] dup = generateRandomDuplicateTestNumberSet(dataFile, 200000, 2000000);
+    	
+    	// Every range opens every run, so the memory and open files allow a fan-in of at least 4 times the runs
+    	NumberController controller = new NumberController(new FileNumberSource(new File(dataFile)), 
+    			new MatcherConfig(4 * TESTMEMORYBUDGET, TESTMAXOPENFILES * 4));
+    	controller.setDetectionStrategy(DetectionStrategy.EXTERNAL_SORT);
+    	controller.setThreadCount(4);
+    	printTestResult("M (Merge of value ranges in parallel, random number set)", findsDuplicates(controller, dup));
+    }
+    
+    /**
+     * Called to run a test scenario for each run file format, writing a run of edge values and reading it
+     * back, then matching a random number set with the runs and sorted file stored in the format.
+     * 
+     * @throws IOException Error thrown on file access.
+     */
+    public static void runRunFormatTestScenario() throws IOException
+    {
+    	String dataFile = "numberstest.txt";
+    	String[] dup = generateRandomDuplicateTestNumberSet(dataFile, 200000, 2000000);
+    	
+    	char testCase = 'N';
+    	for (RunFileFormat runFileFormat : RunFileFormat.values())
+    	{
+    		NumberController controller = createTestController(dataFile);
+    		controller.setDetectionStrategy(DetectionStrategy.EXTERNAL_SORT);
+    		controller.setRunFileFormat(runFileFormat);
+    		controller.renderInputNumbers();
+    		ArrayList<String> dupResultList = controller.validateAndPrintDuplicateNumbers(true, true);
+    		boolean passed = roundTripsRun(runFileFormat, false) && Arrays.asList(dup).equals(dupResultList);
+    		printTestResult(testCase++ + " (" + runFileFormat + " run format round trip, random number set)", passed);
+    	}
+    }
+    
+    /**
+     * Called to run a test scenario for each delta run format with the copies of each number collapsed into
+     * a count, writing a run with repeats and reading it back, then counting the duplicates of a duplicate 
+     * heavy number set with and without collapsing them.
+     * 
+     * @throws IOException Error thrown on file access.
+     */
+    public static void runCollapseDuplicatesTestScenario() throws IOException
+    {
+    	String dataFile = "numberstest.txt";
+    	String[] dup = generateRandomDuplicateTestNumberSet(dataFile, 200000, 1000);
+    	
+    	NumberController controller = createTestController(dataFile);
+    	String expectedCounts = findDuplicateCounts(controller);
+    	
+    	char testCase = 'R';
+    	for (RunFileFormat runFileFormat : new RunFileFormat[] { RunFileFormat.BINARY_DELTA, RunFileFormat.BINARY_COMPRESSED })
+    	{
+    		controller = createTestController(dataFile);
+    		controller.setRunFileFormat(runFileFormat);
+    		controller.setCollapseDuplicates(true);
+    		String counts = findDuplicateCounts(controller);
+    		
+    		// Every value of the small range repeats, so the counts add up to every number of the set
+    		long countTotal = 0;
+    		for (String count : counts.split(","))
+    			countTotal += Long.parseLong(count.substring(count.indexOf(':') + 1));
+    		boolean passed = roundTripsRun(runFileFormat, true) && counts.equals(expectedCounts) 
+    				&& counts.split(",").length == dup.length && countTotal == 200000;
+    		printTestResult(testCase++ + " (" + runFileFormat + " runs with duplicates collapsed, duplicate heavy number set)", passed);
+    	}
+    }
+    
+    /**
+     * Called to run a test scenario for each set operation across the large number set, split into several
+     * runs, and two small files of their own.
+     * 
+     * @throws IOException Error thrown on file access.
+     */
+    public static void runSetOperationTestScenario() throws IOException
+    {
+    	String dataFile = "numberstest.txt";
+    	String secondFile = "numberstest2.txt";
+    	String thirdFile = "numberstest3.txt";
+    	generateLargeTestNumberSet(dataFile, new String[] { "8", "9" }, 200000);
+    	generateSmallTestNumberSet(secondFile, new String[] { "150000", "5", "300001", "150000" });
+    	generateSmallTestNumberSet(thirdFile, new String[] { "300001", "7", "5" });
+    	
+    	try
+    	{
+    		// 8 and 9 repeat in the first file only, so are found in one file
+    		DuplicateNumberList duplicateNumberList = findSetOperation(dataFile, secondFile, thirdFile, SetOperation.CROSS_FILE_DUPLICATES);
+    		printTestResult("T (Numbers in more than one file, three files)", 
+    				matchesDuplicates(duplicateNumberList, new String[] { "5", "7", "150000", "300001" }));
+    		
+    		duplicateNumberList = findSetOperation(dataFile, secondFile, thirdFile, SetOperation.INTERSECTION);
+    		printTestResult("U (Numbers in every file, three files)", matchesDuplicates(duplicateNumberList, new String[] { "5" }));
+    		
+    		duplicateNumberList = findSetOperation(dataFile, secondFile, thirdFile, SetOperation.DIFFERENCE);
+    		boolean passed = duplicateNumberList.size() == 200000 - 3;
+    		for (int i=0; i<duplicateNumberList.size() && passed; i++)
+    		{
+    			long number = duplicateNumberList.get(i);
+    			passed = (i == 0 || number > duplicateNumberList.get(i - 1)) && number != 5 && number != 7 && number != 150000;
+    		}
+    		printTestResult("V (Numbers only in the first file, three files)", passed);
+    	}
+    	finally {
+    		new File(secondFile).delete();
+    		new File(thirdFile).delete();
+    	}
+    }
+    
+    /**
+     * Called to run a test scenario resuming a job from a partial checkpoint. A job that dies after its 
+     * first slices of runs are recorded is simulated, then a full job over the same checkpoint must carry
+     * on from where they end and find the same duplicates as a job from scratch.
+     * 
+     * @throws IOException Error thrown on file access.
+     */
+    public static void runCheckpointTestScenario() throws IOException
+    {
+    	String dataFile = "numberstest.txt";
+    	String[] dup = generateRandomDuplicateTestNumberSet(dataFile, 200000, 2000000);
+    	File inputFile = new File(dataFile);
+    	File checkpointDirectory = Files.createTempDirectory("matcher-test-").toFile();
+    	try
+    	{
+    		// The run generator fails on the third slice, after the runs of the first two are recorded
+    		final RunGenerator runGenerator = new ChunkSortRunGenerator(new RunFileFactory(RunFileFormat.BINARY_DELTA, 
+    				NumberKeyType.LONG, false, checkpointDirectory), TESTMEMORYBUDGET);
+    		RunGenerator failingRunGenerator = new RunGenerator() {
+    			private int mSliceCount;
+    			
+    			@Override
+    			public List<File> generateRuns(NumberInput pNumberInput) throws IOException
+    			{
+    				if (++mSliceCount > 2)
+    					throw new IOException("Simulated failure part way through the split");
+    				return runGenerator.generateRuns(pNumberInput);
+    			}
+    		};
+    		
+    		JobCheckpoint checkpoint = new JobCheckpoint(checkpointDirectory, NumberKeyType.LONG, RunFileFormat.BINARY_DELTA, false);
+    		checkpoint.open(inputFile);
+    		NumberScanner numberScanner = NumberScanner.openFile(inputFile);
+    		try
+    		{
+    			checkpoint.generateRuns(numberScanner, failingRunGenerator, 50000);
+    		}
+    		catch (IOException ex) {}
+    		finally {
+    			numberScanner.close();
+    			checkpoint.close();
+    		}
+    		
+    		checkpoint = new JobCheckpoint(checkpointDirectory, NumberKeyType.LONG, RunFileFormat.BINARY_DELTA, false);
+    		checkpoint.open(inputFile);
+    		long coveredOffset = checkpoint.getCoveredOffset();
+    		checkpoint.close();
+    		
+    		NumberController controller = createTestController(dataFile);
+    		controller.setDetectionStrategy(DetectionStrategy.EXTERNAL_SORT);
+    		controller.setCheckpointDirectory(checkpointDirectory);
+    		boolean passed = coveredOffset > 0 && coveredOffset < inputFile.length() && findsDuplicates(controller, dup);
+    		printTestResult("W (Resume from a partial checkpoint, random number set)", passed);
+    	}
+    	finally {
+    		deleteTestDirectory(checkpointDirectory);
+    	}
+    }
+    
+    /**
+     * Called to run a test scenario matching a random number set with the Bloom pre-filter off and on, 
+     * checking both find the same duplicates and the pre-filter leaves less to sort.
+     * 
+     * @throws IOException Error thrown on file access.
+     */
+    public static void runPrefilterTestScenario() throws IOException
+    {
+    	String dataFile = "numberstest.txt";
+    	String[] dup = generateRandomDuplicateTestNumberSet(dataFile, 200000, 2000000);
+    	
+    	// The filter only uses the memory above the least the sort needs, so more than the minimum is allowed
+    	MatcherConfig config = new MatcherConfig(4 * TESTMEMORYBUDGET, TESTMAXOPENFILES);
+    	NumberController controller = new NumberController(new FileNumberSource(new File(dataFile)), config);
+    	controller.setDetectionStrategy(DetectionStrategy.EXTERNAL_SORT);
+    	boolean passed = findsDuplicates(controller, dup);
+    	long runBytes = controller.getMetrics().getTotalRunBytes();
+    	
+    	controller = new NumberController(new FileNumberSource(new File(dataFile)), config);
+    	controller.setDetectionStrategy(DetectionStrategy.EXTERNAL_SORT);
+    	controller.setBloomPrefilter(true);
+    	passed = passed && findsDuplicates(controller, dup);
+    	
+    	boolean prefiltered = false;
+    	for (PhaseMetrics phaseMetrics : controller.getMetrics().getPhases())
+    		prefiltered |= phaseMetrics.getPhase().equals(MatcherPhase.PREFILTER.name());
+    	passed = passed && prefiltered && controller.getMetrics().getTotalRunBytes() < runBytes;
+    	printTestResult("X (Bloom pre-filter off and on, random number set)", passed);
+    }
         
+    /**
+     * Called to run a test scenario against the matcher service. The jobs run at once must be limited so
+     * their shares fit in the budget, a job must be refused once the queue is full, every job must find 
+     * the duplicates of its input and every job workspace must be deleted once the jobs end.
+     * 
+     * @throws IOException Error thrown on file access.
+     */
+    public static void runMatcherServiceTestScenario() throws IOException
+    {
+    	String dataFile = "numberstest.txt";
+    	String[] dup = generateRandomDuplicateTestNumberSet(dataFile, 200000, 2000000);
+    	File tempDirectory = Files.createTempDirectory("matcher-test-").toFile();
+    	try
+    	{
+    		// A budget of twice the least memory a job needs only lets two of the four jobs asked for run at once
+    		MatcherConfig config = new MatcherConfig(2 * MatcherConfig.MINMEMORYBUDGET, TESTMAXOPENFILES);
+    		config.setTempDirectory(tempDirectory);
+    		MatcherService service = new MatcherService(config, 4, 1);
+    		boolean passed = service.getMaxActiveJobs() == 2
+    				&& service.getMaxActiveJobs() * service.getJobConfig().getMemoryBudget() <= config.getMemoryBudget();
+    		
+    		// The jobs are held before reading their input, so the two running jobs and one queued fill the service
+    		CountDownLatch releaseLatch = new CountDownLatch(1);
+    		ArrayList<Future<MatcherMetrics>> futureList = new ArrayList<Future<MatcherMetrics>>();
+    		ArrayList<DuplicateNumberList> duplicateNumberLists = new ArrayList<DuplicateNumberList>();
+    		try
+    		{
+    			for (int i=0; i<3; i++)
+    			{
+    				DuplicateNumberList duplicateNumberList = new DuplicateNumberList();
+    				futureList.add(service.submit(createHeldNumberSource(dataFile, releaseLatch), duplicateNumberList));
+    				duplicateNumberLists.add(duplicateNumberList);
+    			}
+    			passed = passed && service.trySubmit(new FileNumberSource(new File(dataFile)), new DuplicateNumberList()) == null;
+    		}
+    		finally {
+    			releaseLatch.countDown();
+    			service.shutdown();
+    		}
+    		
+    		for (int i=0; i<futureList.size(); i++)
+    		{
+    			try
+    			{
+    				futureList.get(i).get();
+    				passed = passed && matchesDuplicates(duplicateNumberLists.get(i), dup);
+    			}
+    			catch (InterruptedException ex)
+    			{
+    				Thread.currentThread().interrupt();
+    				throw new IOException("Interrupted while waiting for a service job");
+    			}
+    			catch (ExecutionException ex)
+    			{
+    				passed = false;
+    			}
+    		}
+    		
+    		String[] workspaces = tempDirectory.list();
+    		passed = passed && workspaces != null && workspaces.length == 0;
+    		printTestResult("Y (Matcher service jobs within the budget, random number set)", passed);
+    	}
+    	finally {
+    		deleteTestDirectory(tempDirectory);
+    	}
+    }
+    
+    /**
+     * Called to run a test scenario against long keys beyond the range of an int and fixed width digit 
+     * string keys. The long keys must be matched, and rejected as out of range when read as int keys, and 
+     * the duplicate digit string keys must be printed with their leading zeros.
+     * 
+     * @throws IOException Error thrown on file access.
+     */
+    public static void runKeyTypeTestScenario() throws IOException
+    {
+    	String dataFile = "numberstest.txt";
+    	String[] dup = new String[] { String.valueOf(Long.MIN_VALUE), "-3000000000", "2147483648", "4294967296", 
+    			String.valueOf(Long.MAX_VALUE) };
+    	ArrayList<String> numberList = new ArrayList<String>();
+    	for (int i=20000; i>0; i--)
+    		numberList.add(String.valueOf(5000000000L + i * 7L));
+    	numberList.addAll(Arrays.asList(dup));
+    	numberList.addAll(Arrays.asList(dup));
+    	numberList.add("2147483647");
+    	generateSmallTestNumberSet(dataFile, numberList.toArray(new String[numberList.size()]));
+    	
+    	NumberController controller = createTestController(dataFile);
+    	controller.setKeyType(NumberKeyType.LONG);
+    	boolean passed = findsDuplicates(controller, dup);
+    	
+    	controller = createTestController(dataFile);
+    	controller.setKeyType(NumberKeyType.INT);
+    	try
+    	{
+    		controller.findDuplicateNumbers(new DuplicateNumberList());
+    		passed = false;
+    	}
+    	catch (MalformedNumberException ex) {}
+    	printTestResult("Z (Long keys beyond the int range, int keys rejected)", passed);
+    	
+    	// Ten digit keys with leading zeros, a few of them repeated
+    	String[] digitDup = new String[] { "0000000042", "0123456789", "0700000000" };
+    	numberList.clear();
+    	for (int i=0; i<20000; i++)
+    		numberList.add(String.format("07%08d", i * 3 + 1));
+    	numberList.addAll(Arrays.asList(digitDup));
+    	numberList.addAll(Arrays.asList(digitDup));
+    	generateSmallTestNumberSet(dataFile, numberList.toArray(new String[numberList.size()]));
+    	
+    	NumberKeyType digitKeyType = NumberKeyType.parse("digits:10");
+    	controller = createTestController(dataFile);
+    	controller.setKeyType(digitKeyType);
+    	ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    	DuplicateNumberPrinter duplicateNumberPrinter = new DuplicateNumberPrinter(outputStream, digitKeyType, "");
+    	controller.findDuplicateNumbers(duplicateNumberPrinter);
+    	duplicateNumberPrinter.flush();
+    	
+    	StringBuilder expectedOutput = new StringBuilder();
+    	for (String num : digitDup)
+    		expectedOutput.append(num).append(System.lineSeparator());
+    	printTestResult("AA (Digit string keys with leading zeros)", outputStream.toString().equals(expectedOutput.toString()));
+    }
+    
+    /**
+     * Called to run a test scenario against a number set with known counts of each duplicate, checking the
+     * count of every duplicate and the order of the most frequent, where equal counts rank from least to 
+     * most.
+     * 
+     * @throws IOException Error thrown on file access.
+     */
+    public static void runDuplicateCountTestScenario() throws IOException
+    {
+    	String dataFile = "numberstest.txt";
+    	long[] duplicates = new long[] { 5, -2, 40, 100, 9, 77 };
+    	int[] counts = new int[] { 7, 3, 7, 2, 5, 3 };
+    	ArrayList<String> numberList = new ArrayList<String>();
+    	for (int i=0; i<100000; i++)
+    		numberList.add(String.valueOf(1000 + i));
+    	for (int i=0; i<duplicates.length; i++)
+    	{
+    		for (int j=0; j<counts[i]; j++)
+    			numberList.add(String.valueOf(duplicates[i]));
+    	}
+    	Collections.shuffle(numberList, new Random(duplicates.length));
+    	generateSmallTestNumberSet(dataFile, numberList.toArray(new String[numberList.size()]));
+    	
+    	NumberController controller = createTestController(dataFile);
+    	printTestResult("AB (Count of each duplicate, shuffled number set)", 
+    			findDuplicateCounts(controller).equals("-2:3,5:7,9:5,40:7,77:3,100:2"));
+    	
+    	TopDuplicateCounts topDuplicateCounts = new TopDuplicateCounts(4);
+    	createTestController(dataFile).findDuplicateCounts(topDuplicateCounts);
+    	final StringBuilder topCounts = new StringBuilder();
+    	topDuplicateCounts.deliverTo(new DuplicateCountListener() {
+    		@Override
+    		public void duplicateCounted(long pNumber, long pCount)
+    		{
+    			if (topCounts.length() > 0)
+    				topCounts.append(',');
+    			topCounts.append(pNumber).append(':').append(pCount);
+    		}
+    	});
+    	printTestResult("AC (Most frequent duplicates with ties, shuffled number set)", 
+    			topCounts.toString().equals("5:7,40:7,9:5,-2:3"));
+    }
+    
+    /**
+     * Called to run a test scenario generating the runs by replacement selection against a random and a
+     * reverse sorted number set, checking the duplicates match and random input gives fewer runs than
+     * sorting chunks.
+     * 
+     * @throws IOException Error thrown on file access.
+     */
+    public static void runReplacementSelectionTestScenario() throws IOException
+    {
+    	String dataFile = "numberstest.txt";
+    	String[] dup = generateRandomDuplicateTestNumberSet(dataFile, 200000, 2000000);
+    	
+    	NumberController controller = createTestController(dataFile);
+    	controller.setDetectionStrategy(DetectionStrategy.EXTERNAL_SORT);
+    	boolean passed = findsDuplicates(controller, dup);
+    	int chunkRunCount = controller.getMetrics().getRunCount();
+    	
+    	controller = createTestController(dataFile);
+    	controller.setDetectionStrategy(DetectionStrategy.EXTERNAL_SORT);
+    	controller.setRunGenerationStrategy(RunGenerationStrategy.REPLACEMENT_SELECTION);
+    	passed = passed && findsDuplicates(controller, dup) && controller.getMetrics().getRunCount() < chunkRunCount;
+    	printTestResult("AD (Replacement selection runs, random number set)", passed);
+    	
+    	dup = new String[] { "8", "9", "144", "325", "438", "9999" };
+    	generateLargeTestNumberSet(dataFile, dup, 200000);
+    	controller = createTestController(dataFile);
+    	controller.setDetectionStrategy(DetectionStrategy.EXTERNAL_SORT);
+    	controller.setRunGenerationStrategy(RunGenerationStrategy.REPLACEMENT_SELECTION);
+    	printTestResult("AE (Replacement selection runs, reverse sorted number set)", findsDuplicates(controller, dup));
+    }
+    
+    /**
+     * Called to run a test scenario against input with CRLF line endings, checking the duplicates match and
+     * a malformed line is reported with its line number and the byte offset of the start of the line.
+     * 
+     * @throws IOException Error thrown on file access.
+     */
+    public static void runInputFormatTestScenario() throws IOException
+    {
+    	String dataFile = "numberstest.txt";
+    	String[] dup = new String[] { "-17", "8", "9", "144", "9999" };
+    	BufferedWriter fileBufferOutputWriter = new BufferedWriter(new FileWriter(dataFile));
+    	for (int i=100000; i>0; i--)
+    		fileBufferOutputWriter.write(i + "\r\n");
+    	for (String num : dup)
+    		fileBufferOutputWriter.write(num + "\r\n");
+    	
+    	// The last line is left without a line ending
+    	fileBufferOutputWriter.write("-17");
+    	fileBufferOutputWriter.close();
+    	printTestResult("AF (CRLF line endings, large number set)", findsDuplicates(createTestController(dataFile), dup));
+    	
+    	long badLineOffset = 0;
+    	fileBufferOutputWriter = new BufferedWriter(new FileWriter(dataFile));
+    	for (int i=1; i<50000; i++)
+    	{
+    		String line = i + "\r\n";
+    		fileBufferOutputWriter.write(line);
+    		badLineOffset += line.length();
+    	}
+    	fileBufferOutputWriter.write("12a4\r\n");
+    	fileBufferOutputWriter.write("50001\r\n");
+    	fileBufferOutputWriter.close();
+    	
+    	boolean passed = false;
+    	try
+    	{
+    		createTestController(dataFile).findDuplicateNumbers(new DuplicateNumberList());
+    	}
+    	catch (MalformedNumberException ex)
+    	{
+    		passed = ex.getLineNumber() == 50000 && ex.getByteOffset() == badLineOffset;
+    	}
+    	printTestResult("AG (Malformed line reported with its line and byte offset)", passed);
+    }
+    
+    /**
+     * Called to run a test scenario against sources that can only be read once, a stream and an iterator.
+     * The hash partition and a bitmap needing a pre-scan must fall back to the external sort, while a range
+     * hint lets the bitmap cover the iterator in a single pass.
+     * 
+     * @throws IOException Error thrown on file access.
+     */
+    public static void runOneShotSourceTestScenario() throws IOException
+    {
+    	String dataFile = "numberstest.txt";
+    	String[] dup = new String[] { "8", "9", "144", "325", "438", "9999" };
+    	generateLargeTestNumberSet(dataFile, dup, 200000);
+    	
+    	InputStream inputStream = new FileInputStream(dataFile);
+    	try
+    	{
+    		NumberController controller = new NumberController(new StreamNumberSource(inputStream, dataFile), 
+    				new MatcherConfig(TESTMEMORYBUDGET, TESTMAXOPENFILES));
+    		controller.setDetectionStrategy(DetectionStrategy.HASH_PARTITION);
+    		boolean passed = findsDuplicates(controller, dup) 
+    				&& DetectionStrategy.EXTERNAL_SORT.name().equals(controller.getMetrics().getDetectionStrategy());
+    		printTestResult("AH (Stream source, hash partition replaced with external sort)", passed);
+    	}
+    	finally {
+    		inputStream.close();
+    	}
+    	
+    	final long[] numbers = new long[200000 + dup.length];
+    	for (int i=0; i<200000; i++)
+    		numbers[i] = 200000 - i;
+    	for (int i=0; i<dup.length; i++)
+    		numbers[200000 + i] = Long.parseLong(dup[i]);
+    	
+    	NumberController controller = new NumberController(new IteratorNumberSource(createTestIterator(numbers), "numbers"), 
+    			new MatcherConfig(TESTMEMORYBUDGET, TESTMAXOPENFILES));
+    	controller.setDetectionStrategy(DetectionStrategy.BITMAP);
+    	boolean passed = findsDuplicates(controller, dup) 
+    			&& DetectionStrategy.EXTERNAL_SORT.name().equals(controller.getMetrics().getDetectionStrategy());
+    	
+    	controller = new NumberController(new IteratorNumberSource(createTestIterator(numbers), "numbers"), 
+    			new MatcherConfig(TESTMEMORYBUDGET, TESTMAXOPENFILES));
+    	controller.setDetectionStrategy(DetectionStrategy.BITMAP);
+    	controller.setValueRangeHint(1, 200000);
+    	passed = passed && findsDuplicates(controller, dup) 
+    			&& DetectionStrategy.BITMAP.name().equals(controller.getMetrics().getDetectionStrategy());
+    	printTestResult("AI (Iterator source, bitmap without and with a range hint)", passed);
+    }
+    
+    /**
+     * Called to benchmark the chunk sort and replacement selection run generation strategies against a 
+     * random, a reverse sorted and a partially sorted number set, using a small memory budget so that 
+     * many runs are generated.
+     * 
+     * @throws IOException Error thrown on file access.
+     */
+    public static void runBenchmarkScenario() throws IOException
+    {
+    	String dataFile = "numbersbenchmark.txt";
+    	int maxCount = 2000000;
+    	long runMemory = 512 * 1024;
+    	
+    	generateRandomTestNumberSet(dataFile, maxCount);
+    	runRunGenerationBenchmark("Random", dataFile, runMemory);
+    	
+    	generateLargeTestNumberSet(dataFile, new String[0], maxCount);
+    	runRunGenerationBenchmark("Reverse sorted", dataFile, runMemory);
+    	
+    	generatePartiallySortedTestNumberSet(dataFile, maxCount, 1000);
+    	runRunGenerationBenchmark("Partially sorted", dataFile, runMemory);
+    	
+    	new File(dataFile).delete();
+    }
+    
+    /***
+     * Helper method to time each run generation strategy against a number file and print the time taken 
+     * and the number of runs generated. The generated split files are deleted afterwards.
+     * 
+     * @param pName The name of the number set printed with the results.
+     * @param pFileName The name of the number file.
+     * @param pRunMemory The number of bytes of memory each strategy is allowed for its runs.
+     * 
+     * @throws IOException Error thrown on file access.
+     */
+    private static void runRunGenerationBenchmark(String pName, String pFileName, long pRunMemory) throws IOException
+    {
+    	for (RunGenerationStrategy strategy : RunGenerationStrategy.values())
+    	{
+    		RunGenerator runGenerator;
+    		if (strategy == RunGenerationStrategy.REPLACEMENT_SELECTION)
+    			runGenerator = new ReplacementSelectionRunGenerator(RunFileFormat.BINARY_DELTA, pRunMemory);
+    		else
+    			runGenerator = new ChunkSortRunGenerator(RunFileFormat.BINARY_DELTA, pRunMemory);
+    		
+    		long startTime = System.nanoTime();
+    		List<File> splitFileList;
+    		NumberScanner numberInput = NumberScanner.openFile(new File(pFileName));
+    		try 
+    		{
+    			splitFileList = runGenerator.generateRuns(numberInput);
+    		}
+    		finally {
+    			numberInput.close();
+    		}
+    		long elapsedMillis = (System.nanoTime() - startTime) / 1000000;
+    		
+    		System.out.println(pName + " (" + strategy + "): " + splitFileList.size() + " runs, " 
+    				+ ExternalSortPlan.calculateMergePasses(splitFileList.size(), BENCHMARKFANIN) + " merge passes, " + elapsedMillis + " ms");
+    		
+    		for (File splitFile : splitFileList)
+    			splitFile.delete();
+    	}
+    }
+    
+    /***
+     * Helper method to create a controller over a test number file with the small test memory budget.
+     * 
+     * @param pFileName The name of the number file.
+     * @return The controller.
+     */
+    private static NumberController createTestController(String pFileName)
+    {
+    	return new NumberController(new FileNumberSource(new File(pFileName)), new MatcherConfig(TESTMEMORYBUDGET, TESTMAXOPENFILES));
+    }
+    
+    /***
+     * Helper method to create a source over a test number file that holds the job reading it until released.
+     * 
+     * @param pFileName The name of the number file.
+     * @param pReleaseLatch The latch the job waits on before reading the file.
+     * @return The number source.
+     */
+    private static NumberSource createHeldNumberSource(String pFileName, final CountDownLatch pReleaseLatch)
+    {
+    	final FileNumberSource fileNumberSource = new FileNumberSource(new File(pFileName));
+    	return new NumberSource() {
+    		@Override
+    		public NumberInput open() throws IOException
+    		{
+    			try
+    			{
+    				pReleaseLatch.await();
+    			}
+    			catch (InterruptedException ex)
+    			{
+    				Thread.currentThread().interrupt();
+    				throw new IOException("Interrupted while waiting to be released");
+    			}
+    			return fileNumberSource.open();
+    		}
+    		
+    		@Override
+    		public boolean isRepeatable()
+    		{
+    			return fileNumberSource.isRepeatable();
+    		}
+    		
+    		@Override
+    		public long getLength()
+    		{
+    			return fileNumberSource.getLength();
+    		}
+    	};
+    }
+    
+    /***
+     * Helper method to create an iterator over an array of test numbers.
+     * 
+     * @param pNumbers The numbers.
+     * @return The iterator.
+     */
+    private static PrimitiveIterator.OfLong createTestIterator(final long[] pNumbers)
+    {
+    	return new PrimitiveIterator.OfLong() {
+    		private int mPosition = 0;
+    		
+    		@Override
+    		public boolean hasNext()
+    		{
+    			return mPosition < pNumbers.length;
+    		}
+    		
+    		@Override
+    		public long nextLong()
+    		{
+    			if (mPosition == pNumbers.length)
+    				throw new NoSuchElementException();
+    			return pNumbers[mPosition++];
+    		}
+    	};
+    }
+    
+    /***
+     * Helper method to find the duplicates of the input of a controller and check they are exactly the
+     * expected numbers in order.
+     * 
+     * @param pController The controller over the input.
+     * @param pDupList The expected duplicate numbers from least to most.
+     * @return True if the duplicates found match, False otherwise.
+     * 
+     * @throws IOException Error thrown on file access.
+     */
+    private static boolean findsDuplicates(NumberController pController, String[] pDupList) throws IOException
+    {
+    	DuplicateNumberList duplicateNumberList = new DuplicateNumberList();
+    	pController.findDuplicateNumbers(duplicateNumberList);
+    	return matchesDuplicates(duplicateNumberList, pDupList);
+    }
+    
+    /***
+     * Helper method to check a list of duplicates holds exactly the expected numbers in order.
+     * 
+     * @param pDuplicateNumberList The duplicates found.
+     * @param pDupList The expected duplicate numbers from least to most.
+     * @return True if the duplicates match, False otherwise.
+     */
+    private static boolean matchesDuplicates(DuplicateNumberList pDuplicateNumberList, String[] pDupList)
+    {
+    	if (pDuplicateNumberList.size() != pDupList.length)
+    		return false;
+    	for (int i=0; i<pDupList.length; i++)
+    	{
+    		if (!pDupList[i].equals(String.valueOf(pDuplicateNumberList.get(i))))
+    			return false;
+    	}
+    	return true;
+    }
+    
+    /***
+     * Helper method to apply a set operation across three test number files.
+     * 
+     * @param pFileName The name of the first number file.
+     * @param pSecondFileName The name of the second number file.
+     * @param pThirdFileName The name of the third number file.
+     * @param pSetOperation The set operation.
+     * @return The numbers picked by the set operation.
+     * 
+     * @throws IOException Error thrown on file access.
+     */
+    private static DuplicateNumberList findSetOperation(String pFileName, String pSecondFileName, String pThirdFileName, 
+    		SetOperation pSetOperation) throws IOException
+    {
+    	ArrayList<NumberSource> otherSourceList = new ArrayList<NumberSource>();
+    	otherSourceList.add(new FileNumberSource(new File(pSecondFileName)));
+    	otherSourceList.add(new FileNumberSource(new File(pThirdFileName)));
+    	
+    	DuplicateNumberList duplicateNumberList = new DuplicateNumberList();
+    	createTestController(pFileName).findSetOperation(otherSourceList, pSetOperation, duplicateNumberList);
+    	return duplicateNumberList;
+    }
+    
+    /***
+     * Helper method to count the duplicates of the input of a controller.
+     * 
+     * @param pController The controller over the input.
+     * @return The duplicates with their counts from least to most, as number:count separated by commas.
+     * 
+     * @throws IOException Error thrown on file access.
+     */
+    private static String findDuplicateCounts(NumberController pController) throws IOException
+    {
+    	final StringBuilder duplicateCounts = new StringBuilder();
+    	pController.findDuplicateCounts(new DuplicateCountListener() {
+    		@Override
+    		public void duplicateCounted(long pNumber, long pCount)
+    		{
+    			if (duplicateCounts.length() > 0)
+    				duplicateCounts.append(',');
+    			duplicateCounts.append(pNumber).append(':').append(pCount);
+    		}
+    	});
+    	return duplicateCounts.toString();
+    }
+    
+    /***
+     * Helper method to write a run of edge values in a format and check it reads back the same, both a
+     * number at a time and a block at a time. The run holds the extremes of a long, repeats, gaps too
+     * wide for a long and enough numbers to span several segments of a binary run.
+     * 
+     * @param pRunFileFormat The format of the run.
+     * @param pCollapseDuplicates True to store the copies of each number in the run as a count.
+     * @return True if the run read back matches, False otherwise.
+     * 
+     * @throws IOException Error thrown on file access.
+     */
+    private static boolean roundTripsRun(RunFileFormat pRunFileFormat, boolean pCollapseDuplicates) throws IOException
+    {
+    	long[] numbers = new long[10000];
+    	for (int i=0; i<numbers.length; i++)
+    		numbers[i] = (i / 3) * 7L - 5000;
+    	numbers[0] = Long.MIN_VALUE;
+    	numbers[1] = Long.MIN_VALUE;
+    	numbers[2] = Long.MIN_VALUE + 1;
+    	numbers[numbers.length - 3] = Long.MAX_VALUE - 1;
+    	numbers[numbers.length - 2] = Long.MAX_VALUE;
+    	numbers[numbers.length - 1] = Long.MAX_VALUE;
+    	
+    	File runFile = File.createTempFile("matcher-test-", pRunFileFormat.getFileExtension());
+    	try
+    	{
+    		RunFileWriter runFileWriter = pRunFileFormat.createWriter(runFile, NumberKeyType.LONG, pCollapseDuplicates);
+    		try
+    		{
+    			for (long number : numbers)
+    				runFileWriter.write(number);
+    		}
+    		finally {
+    			runFileWriter.close();
+    		}
+    		
+    		RunFileReader runFileReader = pRunFileFormat.openReader(runFile);
+    		try
+    		{
+    			for (long number : numbers)
+    			{
+    				if (!runFileReader.hasNext() || runFileReader.next() != number)
+    					return false;
+    			}
+    			if (runFileReader.hasNext())
+    				return false;
+    		}
+    		finally {
+    			runFileReader.close();
+    		}
+    		
+    		long[] block = new long[1000];
+    		int position = 0;
+    		int count;
+    		runFileReader = pRunFileFormat.openReader(runFile);
+    		try
+    		{
+    			while ((count = runFileReader.read(block, 0, block.length)) > 0)
+    			{
+    				for (int i=0; i<count; i++)
+    				{
+    					if (position == numbers.length || block[i] != numbers[position++])
+    						return false;
+    				}
+    			}
+    		}
+    		finally {
+    			runFileReader.close();
+    		}
+    		return position == numbers.length;
+    	}
+    	finally {
+    		runFile.delete();
+    	}
+    }
+    
+    /***
+     * Helper method to delete a directory created by a test scenario along with everything in it.
+     * 
+     * @param pDirectory The directory.
+     */
+    private static void deleteTestDirectory(File pDirectory)
+    {
+    	File[] files = pDirectory.listFiles();
+    	if (files != null)
+    	{
+    		for (File file : files)
+    		{
+    			if (file.isDirectory())
+    				deleteTestDirectory(file);
+    			else
+    				file.delete();
+    		}
+    	}
+    	pDirectory.delete();
+    }
+    
+    /***
+     * Helper method to print the result of a test case.
+     * 
+     * @param pTestCase The letter and description of the test case.
+     * @param pPassed True if the test case passed.
+     */
+    private static void printTestResult(String pTestCase, boolean pPassed)
+    {
+    	System.out.println("Test Case " + pTestCase + ": " + (pPassed ? "Passed" : "Failed"));
+    }
+    
     /***
      * Helper method to generate and write some array numbers to a text file for processing. All numbers 
      * written will be from the passed in array.
@@ -223,6 +1361,34 @@ public class Main
         fileBufferOutputWriter.close();		
 	} 	
     
+    /***
+     * Helper method to generate and write some numbers to a text file in ascending order from 1 - pMaxCount,
+     * where each number is displaced by up to pDisorder places so the file is only partially sorted.
+     *  
+     * @param pFileName The name of the output file.
+     * @param pMaxCount The max number range from 1 - pMaxCount that will be generated.
+     * @param pDisorder The max number of places a number is moved from its sorted position.
+     * 
+     * @throws IOException Error thrown on file access.
+     */
+	public static void generatePartiallySortedTestNumberSet(String pFileName, int pMaxCount, int pDisorder) throws IOException 
+	{
+        Random rnd = new Random();
+        File numbersFile = new File(pFileName);        
+        if (numbersFile.exists())
+        	numbersFile.delete();
+        numbersFile.createNewFile();
+        
+        BufferedWriter fileBufferOutputWriter = new BufferedWriter(new FileWriter(numbersFile));
+        for (int i=1; i<=pMaxCount; i++)
+        {
+        	int num = Math.max(1, i + rnd.nextInt(2 * pDisorder + 1) - pDisorder);
+			fileBufferOutputWriter.write(String.valueOf(num));
+			fileBufferOutputWriter.newLine();        	
+        }
+        fileBufferOutputWriter.close();		
+	}    
+	
     /***
      * Helper method to generate and write some random numbers to a text file for processing. All numbers 
      * will be between 1 - 9999999.
@@ -249,4 +1415,59 @@ public class Main
         }
         fileBufferOutputWriter.close();		
 	}    
+	
+    /***
+     * Helper method to generate and write some random numbers spread across positive and negative values 
+     * to a text file, returning the numbers that occur more than once. The numbers are picked from a fixed
+     * seed so every run of the tests matches the same set.
+     * 
+     * @param pFileName The name of the output file.
+     * @param pMaxCount The number of numbers in the output file.
+     * @param pRange The count of distinct values the numbers are picked from.
+     * @return The duplicate numbers from least to most.
+     * 
+     * @throws IOException Error thrown on file access.
+     */
+	public static String[] generateRandomDuplicateTestNumberSet(String pFileName, int pMaxCount, int pRange) throws IOException 
+	{
+        Random rnd = new Random(pRange);
+        long[] numbers = new long[pMaxCount];
+        BufferedWriter fileBufferOutputWriter = new BufferedWriter(new FileWriter(pFileName));
+        for (int i=0; i<pMaxCount; i++)
+        {
+        	numbers[i] = (rnd.nextInt(pRange) - pRange / 2) * 1000003L;
+			fileBufferOutputWriter.write(String.valueOf(numbers[i]));
+			fileBufferOutputWriter.newLine();        	
+        }
+        fileBufferOutputWriter.close();
+        
+        // The expected duplicates are found by sorting the whole set in memory
+        Arrays.sort(numbers);
+        ArrayList<String> dupList = new ArrayList<String>();
+        for (int i=1; i<numbers.length; i++)
+        {
+        	if (numbers[i] == numbers[i - 1] && (i == 1 || numbers[i] != numbers[i - 2]))
+        		dupList.add(String.valueOf(numbers[i]));
+        }
+        return dupList.toArray(new String[dupList.size()]);
+	}
+	
+	/***
+	 * Job of a batch along with the file its duplicates are written to.
+	 */
+	private static class BatchJob
+	{
+		private String mFileName;
+		private Future<MatcherMetrics> mFuture;
+		private OutputStream mOutputStream;
+		private DuplicateNumberPrinter mPrinter;
+		
+		public BatchJob(String pFileName, Future<MatcherMetrics> pFuture, OutputStream pOutputStream, DuplicateNumberPrinter pPrinter)
+		{
+			mFileName = pFileName;
+			mFuture = pFuture;
+			mOutputStream = pOutputStream;
+			mPrinter = pPrinter;
+		}
+	}
 }
\ No newline at end of file
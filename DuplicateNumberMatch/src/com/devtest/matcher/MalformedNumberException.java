@@ -0,0 +1,45 @@
+package com.devtest.matcher;
+
+import java.io.IOException;
+
+/***
+ * Error thrown when a line of the input does not hold a valid number. The error records the byte offset 
+ * of the start of the line and the line number so the bad data can be found in the input.
+ */
+public class MalformedNumberException extends IOException
+{
+	private static final long serialVersionUID = 1L;
+	
+	private long mByteOffset;
+	private long mLineNumber;
+	
+	/***
+	 * Constructor to create a new malformed number error.
+	 * 
+	 * @param pReason The reason the line is not a valid number.
+	 * @param pByteOffset The byte offset of the start of the line in the input.
+	 * @param pLineNumber The line number in the input, starting at 1.
+	 */
+	public MalformedNumberException(String pReason, long pByteOffset, long pLineNumber)
+	{
+		super(pReason + " at line " + pLineNumber + " (byte offset " + pByteOffset + ")");
+		mByteOffset = pByteOffset;
+		mLineNumber = pLineNumber;
+	}
+	
+	/***
+	 * @return The byte offset of the start of the malformed line in the input.
+	 */
+	public long getByteOffset()
+	{
+		return mByteOffset;
+	}
+	
+	/***
+	 * @return The line number of the malformed line in the input, starting at 1.
+	 */
+	public long getLineNumber()
+	{
+		return mLineNumber;
+	}
+}
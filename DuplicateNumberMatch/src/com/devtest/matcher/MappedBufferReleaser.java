@@ -0,0 +1,78 @@
+package com.devtest.matcher;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/***
+ * Helper to unmap a memory mapped buffer as soon as it is finished with. A mapped buffer is otherwise only
+ * unmapped when the garbage collector gets round to collecting it, which a small heap may not do for a
+ * long time, so the mappings of every window and every pass over a file would pile up outside the heap.
+ *
+ * There is no public API to unmap a buffer, so the cleaner of the buffer is run through reflection, with
+ * sun.misc.Unsafe.invokeCleaner on Java 9 and later and the cleaner of the buffer itself on Java 8. If
+ * neither is available the buffer is left to the garbage collector as before. A buffer must never be
+ * touched again once it has been released.
+ */
+class MappedBufferReleaser
+{
+	private static final Object UNSAFE;
+	private static final Method INVOKECLEANER;
+
+	static
+	{
+		Object unsafe = null;
+		Method invokeCleaner = null;
+		try
+		{
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+			unsafeField.setAccessible(true);
+			unsafe = unsafeField.get(null);
+		}
+		catch (Exception ex)
+		{
+			// Before Java 9, the cleaner of the buffer is used instead
+			invokeCleaner = null;
+		}
+		UNSAFE = unsafe;
+		INVOKECLEANER = invokeCleaner;
+	}
+
+	private MappedBufferReleaser()
+	{
+	}
+
+	/***
+	 * Called to unmap a buffer that was returned by FileChannel.map.
+	 *
+	 * @param pBuffer The mapped buffer, which must not be a slice or duplicate of another buffer.
+	 * @return True if the buffer was unmapped, False if it was left to the garbage collector.
+	 */
+	public static boolean release(ByteBuffer pBuffer)
+	{
+		if (pBuffer == null || !pBuffer.isDirect())
+			return false;
+
+		try
+		{
+			if (INVOKECLEANER != null)
+			{
+				INVOKECLEANER.invoke(UNSAFE, pBuffer);
+				return true;
+			}
+
+			Method cleanerMethod = pBuffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(pBuffer);
+			if (cleaner != null)
+			{
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+				return true;
+			}
+		}
+		catch (Exception ex) {}
+		return false;
+	}
+}
@@ -0,0 +1,150 @@
+package com.devtest.matcher;
+
+import java.io.File;
+
+/***
+ * Configuration of the resources the matcher is allowed to use. The values are read from system
+ * properties when present, otherwise the memory allowed is taken as a share of the max heap of the JVM.
+ * 
+ * -Dmatcher.memory=64m       Memory allowed in bytes, with an optional k, m or g suffix.
+ * -Dmatcher.maxOpenFiles=512 Max number of files allowed to be open at the same time when merging.
+ * -Dmatcher.tempDir=dir      Directory the temp files are created in, the system temp directory if not set.
+ */
+public class MatcherConfig 
+{
+	public static final String MEMORY_PROPERTY = "matcher.memory";
+	public static final String MAXOPENFILES_PROPERTY = "matcher.maxOpenFiles";
+	public static final String TEMPDIR_PROPERTY = "matcher.tempDir";
+	
+	// Default max number of files we will allow to be open at once when merging
+	public static final int DEFAULTMAXOPENFILES = 512;
+	
+	// Share of the max heap used as the memory allowed when no memory is configured
+	private static final int DEFAULTHEAPPERCENT = 25;
+	
+	// Least memory allowed to work within, 256KB
+	public static final long MINMEMORYBUDGET = 256 * 1024;
+	
+	// Least number of open files needed to merge, two inputs and an output
+	public static final int MINOPENFILES = 3;
+	
+	private long mMemoryBudget;
+	private int mMaxOpenFiles;
+	private File mTempDirectory;
+	
+	/***
+	 * Constructor to create a new configuration with the given limits.
+	 * 
+	 * @param pMemoryBudget The number of bytes of memory allowed.
+	 * @param pMaxOpenFiles The max number of files allowed to be open at once.
+	 */
+	public MatcherConfig(long pMemoryBudget, int pMaxOpenFiles)
+	{
+		setMemoryBudget(pMemoryBudget);
+		setMaxOpenFiles(pMaxOpenFiles);
+	}
+	
+	/***
+	 * Called to create the configuration from the system properties, falling back to a share of the
+	 * max heap of the JVM for the memory allowed.
+	 * 
+	 * @return The configuration.
+	 * @throws IllegalArgumentException Error thrown if a property holds an invalid value.
+	 */
+	public static MatcherConfig fromSystemProperties()
+	{
+		long memoryBudget = Runtime.getRuntime().maxMemory() / 100 * DEFAULTHEAPPERCENT;
+		String memoryProperty = System.getProperty(MEMORY_PROPERTY);
+		if (memoryProperty != null)
+			memoryBudget = parseByteSize(memoryProperty);
+		
+		int maxOpenFiles = DEFAULTMAXOPENFILES;
+		String maxOpenFilesProperty = System.getProperty(MAXOPENFILES_PROPERTY);
+		if (maxOpenFilesProperty != null)
+			maxOpenFiles = Integer.parseInt(maxOpenFilesProperty.trim());
+		
+		MatcherConfig config = new MatcherConfig(memoryBudget, maxOpenFiles);
+		String tempDirectoryProperty = System.getProperty(TEMPDIR_PROPERTY);
+		if (tempDirectoryProperty != null)
+			config.setTempDirectory(new File(tempDirectoryProperty));
+		return config;
+	}
+	
+	/***
+	 * Helper method to parse a size in bytes with an optional k, m or g suffix.
+	 * 
+	 * @param pValue The size to parse, for example 2m.
+	 * @return The size in bytes.
+	 * @throws IllegalArgumentException Error thrown if the size is not valid.
+	 */
+	public static long parseByteSize(String pValue)
+	{
+		String value = pValue.trim().toLowerCase();
+		long multiplier = 1;
+		if (value.endsWith("k"))
+			multiplier = 1024L;
+		else if (value.endsWith("m"))
+			multiplier = 1024L * 1024;
+		else if (value.endsWith("g"))
+			multiplier = 1024L * 1024 * 1024;
+		
+		if (multiplier > 1)
+			value = value.substring(0, value.length() - 1);
+		
+		try 
+		{
+			return Long.parseLong(value.trim()) * multiplier;
+		}
+		catch (NumberFormatException ex) {
+			throw new IllegalArgumentException("Invalid memory size: " + pValue);
+		}
+	}
+	
+	/***
+	 * @return The number of bytes of memory allowed.
+	 */
+	public long getMemoryBudget()
+	{
+		return mMemoryBudget;
+	}
+	
+	/***
+	 * @param pMemoryBudget The number of bytes of memory allowed, raised to 256KB if less.
+	 */
+	public void setMemoryBudget(long pMemoryBudget)
+	{
+		mMemoryBudget = Math.max(pMemoryBudget, MINMEMORYBUDGET);
+	}
+	
+	/***
+	 * @return The max number of files allowed to be open at once.
+	 */
+	public int getMaxOpenFiles()
+	{
+		return mMaxOpenFiles;
+	}
+	
+	/***
+	 * @param pMaxOpenFiles The max number of files allowed to be open at once, raised to 3 if less.
+	 */
+	public void setMaxOpenFiles(int pMaxOpenFiles)
+	{
+		mMaxOpenFiles = Math.max(pMaxOpenFiles, MINOPENFILES);
+	}
+	
+	/***
+	 * @return The directory the temp files are created in, null for the system temp directory.
+	 */
+	public File getTempDirectory()
+	{
+		return mTempDirectory;
+	}
+	
+	/***
+	 * @param pTempDirectory The directory the temp files are created in, null for the system temp directory.
+	 */
+	public void setTempDirectory(File pTempDirectory)
+	{
+		mTempDirectory = pTempDirectory;
+	}
+}
@@ -0,0 +1,384 @@
+package com.devtest.matcher;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/***
+ * Metrics of a job run by the NumberController. Each phase records its own timings and I/O, and the job
+ * records the runs generated, the merge fan-in and passes and the duplicates found. The metrics can be
+ * read while the job runs through JMX and written as a JSON summary once the job completes.
+ * 
+ * -Dmatcher.metricsFile=metrics.json Write the JSON summary of each job to the given file.
+ * -Dmatcher.jmx=true                 Register the metrics of each job as a JMX MBean.
+ */
+public class MatcherMetrics implements MatcherMetricsMXBean
+{
+	public static final String METRICSFILE_PROPERTY = "matcher.metricsFile";
+	public static final String JMX_PROPERTY = "matcher.jmx";
+	
+	// Domain of the object names the metrics MBeans are registered under
+	public static final String MBEANDOMAIN = "com.devtest.matcher";
+	
+	private String mInputFile;
+	private long mInputBytes;
+	private volatile DetectionStrategy mDetectionStrategy;
+	private long mStartTime;
+	private volatile long mJobTime;
+	private volatile boolean mCompleted;
+	private volatile long mDuplicateCount;
+	
+	private volatile int mRunCount;
+	private volatile long mMinRunBytes;
+	private volatile long mMaxRunBytes;
+	private volatile long mTotalRunBytes;
+	private volatile int mMergeFanIn;
+	private volatile int mMergePasses;
+	private volatile long mIntermediateMergeBytes;
+	
+	private ArrayList<PhaseMetrics> mPhaseList = new ArrayList<PhaseMetrics>();
+	private ObjectName mObjectName;
+	
+	/***
+	 * Constructor to create the metrics of a job and mark the job as started.
+	 * 
+	 * @param pInputFile The name of the input of the job.
+	 * @param pInputBytes The length in bytes of the input if known, -1 otherwise.
+	 */
+	public MatcherMetrics(String pInputFile, long pInputBytes)
+	{
+		mInputFile = pInputFile;
+		mInputBytes = pInputBytes;
+		mStartTime = System.nanoTime();
+	}
+	
+	/***
+	 * Called to mark a phase as started.
+	 * 
+	 * @param pPhase The phase.
+	 * @return The metrics of the phase, to be ended once the phase completes.
+	 */
+	PhaseMetrics startPhase(MatcherPhase pPhase)
+	{
+		PhaseMetrics phaseMetrics = new PhaseMetrics(pPhase);
+		synchronized (mPhaseList)
+		{
+			// The phases of a job run one after another, so any phase left running has failed
+			for (PhaseMetrics prevPhaseMetrics : mPhaseList)
+			{
+				if (!prevPhaseMetrics.isCompleted())
+					prevPhaseMetrics.stopSampling();
+			}
+			mPhaseList.add(phaseMetrics);
+		}
+		return phaseMetrics;
+	}
+	
+	/***
+	 * Called to mark the job as completed.
+	 * 
+	 * @param pDuplicateCount The count of duplicate numbers found.
+	 */
+	void endJob(long pDuplicateCount)
+	{
+		mDuplicateCount = pDuplicateCount;
+		mJobTime = System.nanoTime() - mStartTime;
+		mCompleted = true;
+	}
+	
+	/***
+	 * Called to set the strategy used to detect the duplicates.
+	 */
+	void setDetectionStrategy(DetectionStrategy pDetectionStrategy)
+	{
+		mDetectionStrategy = pDetectionStrategy;
+	}
+	
+	/***
+	 * Called to record the sizes of the sorted runs generated from the input.
+	 * 
+	 * @param pSplitFileList The list of sorted split files.
+	 */
+	void setRuns(List<File> pSplitFileList)
+	{
+		long minRunBytes = Long.MAX_VALUE;
+		long maxRunBytes = 0;
+		long totalRunBytes = 0;
+		for (File splitFile : pSplitFileList)
+		{
+			long runBytes = splitFile.length();
+			minRunBytes = Math.min(minRunBytes, runBytes);
+			maxRunBytes = Math.max(maxRunBytes, runBytes);
+			totalRunBytes += runBytes;
+		}
+		mRunCount = pSplitFileList.size();
+		mMinRunBytes = pSplitFileList.isEmpty() ? 0 : minRunBytes;
+		mMaxRunBytes = maxRunBytes;
+		mTotalRunBytes = totalRunBytes;
+	}
+	
+	/***
+	 * Called to set the max number of runs merged at once.
+	 */
+	void setMergeFanIn(int pMergeFanIn)
+	{
+		mMergeFanIn = pMergeFanIn;
+	}
+	
+	/***
+	 * Called to record a merge pass.
+	 * 
+	 * @param pIntermediateBytes The count of bytes written to intermediate files by the pass, zero for 
+	 * the final pass.
+	 */
+	void addMergePass(long pIntermediateBytes)
+	{
+		mMergePasses++;
+		mIntermediateMergeBytes += pIntermediateBytes;
+	}
+	
+	/***
+	 * @return The count of bytes written to intermediate files by the merge passes before the final pass.
+	 */
+	long getIntermediateMergeBytes()
+	{
+		return mIntermediateMergeBytes;
+	}
+	
+	@Override
+	public String getInputFile()
+	{
+		return mInputFile;
+	}
+	
+	@Override
+	public String getDetectionStrategy()
+	{
+		DetectionStrategy detectionStrategy = mDetectionStrategy;
+		return (detectionStrategy == null) ? null : detectionStrategy.name();
+	}
+	
+	@Override
+	public boolean isCompleted()
+	{
+		return mCompleted;
+	}
+	
+	@Override
+	public long getJobTimeMillis()
+	{
+		long jobTime = mCompleted ? mJobTime : System.nanoTime() - mStartTime;
+		return TimeUnit.NANOSECONDS.toMillis(jobTime);
+	}
+	
+	@Override
+	public long getInputBytes()
+	{
+		return mInputBytes;
+	}
+	
+	@Override
+	public long getDuplicateCount()
+	{
+		return mDuplicateCount;
+	}
+	
+	@Override
+	public int getRunCount()
+	{
+		return mRunCount;
+	}
+	
+	@Override
+	public long getMinRunBytes()
+	{
+		return mMinRunBytes;
+	}
+	
+	@Override
+	public long getMaxRunBytes()
+	{
+		return mMaxRunBytes;
+	}
+	
+	@Override
+	public long getTotalRunBytes()
+	{
+		return mTotalRunBytes;
+	}
+	
+	@Override
+	public int getMergeFanIn()
+	{
+		return mMergeFanIn;
+	}
+	
+	@Override
+	public int getMergePasses()
+	{
+		return mMergePasses;
+	}
+	
+	@Override
+	public long getPeakHeapBytes()
+	{
+		long peakHeapBytes = 0;
+		for (PhaseMetrics phaseMetrics : getPhases())
+			peakHeapBytes = Math.max(peakHeapBytes, phaseMetrics.getPeakHeapBytes());
+		return peakHeapBytes;
+	}
+	
+	@Override
+	public long getGcTimeMillis()
+	{
+		long gcTime = 0;
+		for (PhaseMetrics phaseMetrics : getPhases())
+			gcTime += phaseMetrics.getGcTimeMillis();
+		return gcTime;
+	}
+	
+	@Override
+	public List<PhaseMetrics> getPhases()
+	{
+		synchronized (mPhaseList)
+		{
+			return new ArrayList<PhaseMetrics>(mPhaseList);
+		}
+	}
+	
+	@Override
+	public String toJson()
+	{
+		StringBuilder json = new StringBuilder(1024);
+		json.append('{');
+		appendField(json, "inputFile", mInputFile).append(',');
+		appendField(json, "detectionStrategy", getDetectionStrategy()).append(',');
+		json.append("\"completed\":").append(mCompleted).append(',');
+		appendField(json, "jobTimeMillis", getJobTimeMillis()).append(',');
+		appendField(json, "inputBytes", mInputBytes).append(',');
+		appendField(json, "duplicateCount", mDuplicateCount).append(',');
+		appendField(json, "runCount", mRunCount).append(',');
+		appendField(json, "minRunBytes", mMinRunBytes).append(',');
+		appendField(json, "maxRunBytes", mMaxRunBytes).append(',');
+		appendField(json, "totalRunBytes", mTotalRunBytes).append(',');
+		appendField(json, "mergeFanIn", mMergeFanIn).append(',');
+		appendField(json, "mergePasses", mMergePasses).append(',');
+		appendField(json, "peakHeapBytes", getPeakHeapBytes()).append(',');
+		appendField(json, "gcTimeMillis", getGcTimeMillis()).append(',');
+		json.append("\"phases\":[");
+		List<PhaseMetrics> phaseList = getPhases();
+		for (int i=0; i<phaseList.size(); i++)
+		{
+			PhaseMetrics phaseMetrics = phaseList.get(i);
+			if (i > 0)
+				json.append(',');
+			json.append('{');
+			appendField(json, "phase", phaseMetrics.getPhase()).append(',');
+			json.append("\"completed\":").append(phaseMetrics.isCompleted()).append(',');
+			appendField(json, "wallTimeMillis", phaseMetrics.getWallTimeMillis()).append(',');
+			appendField(json, "numbersProcessed", phaseMetrics.getNumbersProcessed()).append(',');
+			appendField(json, "bytesRead", phaseMetrics.getBytesRead()).append(',');
+			appendField(json, "bytesWritten", phaseMetrics.getBytesWritten()).append(',');
+			appendField(json, "peakHeapBytes", phaseMetrics.getPeakHeapBytes()).append(',');
+			appendField(json, "gcTimeMillis", phaseMetrics.getGcTimeMillis());
+			json.append('}');
+		}
+		json.append("]}");
+		return json.toString();
+	}
+	
+	/***
+	 * Called to write the JSON summary of the metrics to a file.
+	 * 
+	 * @param pFile The file to write.
+	 * @throws IOException Error thrown on file access.
+	 */
+	public void writeSummary(File pFile) throws IOException
+	{
+		Writer summaryWriter = new OutputStreamWriter(new FileOutputStream(pFile), "UTF-8");
+		try
+		{
+			summaryWriter.write(toJson());
+			summaryWriter.write(System.getProperty("line.separator"));
+		}
+		finally {
+			summaryWriter.close();
+		}
+	}
+	
+	/***
+	 * Called to register the metrics as an MBean with the platform MBean server, named after the input
+	 * file. The metrics of an earlier job on the same input file are replaced.
+	 * 
+	 * @throws JMException Error thrown if the MBean can't be registered.
+	 */
+	public void registerMBean() throws JMException
+	{
+		MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		ObjectName objectName = new ObjectName(MBEANDOMAIN + ":type=MatcherMetrics,name=" + ObjectName.quote(mInputFile));
+		synchronized (MatcherMetrics.class)
+		{
+			if (mbeanServer.isRegistered(objectName))
+				mbeanServer.unregisterMBean(objectName);
+			mbeanServer.registerMBean(this, objectName);
+		}
+		mObjectName = objectName;
+	}
+	
+	/***
+	 * Called to unregister the metrics from the platform MBean server if they were registered.
+	 */
+	public void unregisterMBean()
+	{
+		if (mObjectName == null)
+			return;
+		
+		try 
+		{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(mObjectName);
+		}
+		catch (JMException ex) {}
+		mObjectName = null;
+	}
+	
+	/***
+	 * Helper method to append a JSON field with a number value.
+	 */
+	private static StringBuilder appendField(StringBuilder pJson, String pName, long pValue)
+	{
+		return pJson.append('"').append(pName).append("\":").append(pValue);
+	}
+	
+	/***
+	 * Helper method to append a JSON field with a string value, escaping the characters JSON requires.
+	 */
+	private static StringBuilder appendField(StringBuilder pJson, String pName, String pValue)
+	{
+		pJson.append('"').append(pName).append("\":");
+		if (pValue == null)
+			return pJson.append("null");
+		
+		pJson.append('"');
+		for (int i=0; i<pValue.length(); i++)
+		{
+			char c = pValue.charAt(i);
+			if (c == '"' || c == '\\')
+				pJson.append('\\').append(c);
+			else if (c < 0x20)
+				pJson.append(String.format("\\u%04x", (int) c));
+			else
+				pJson.append(c);
+		}
+		return pJson.append('"');
+	}
+}
@@ -0,0 +1,41 @@
+package com.devtest.matcher;
+
+import java.util.List;
+
+/***
+ * Management interface exposing the metrics of the latest job of a NumberController through JMX.
+ */
+public interface MatcherMetricsMXBean 
+{
+	String getInputFile();
+	
+	String getDetectionStrategy();
+	
+	boolean isCompleted();
+	
+	long getJobTimeMillis();
+	
+	long getInputBytes();
+	
+	long getDuplicateCount();
+	
+	int getRunCount();
+	
+	long getMinRunBytes();
+	
+	long getMaxRunBytes();
+	
+	long getTotalRunBytes();
+	
+	int getMergeFanIn();
+	
+	int getMergePasses();
+	
+	long getPeakHeapBytes();
+	
+	long getGcTimeMillis();
+	
+	List<PhaseMetrics> getPhases();
+	
+	String toJson();
+}
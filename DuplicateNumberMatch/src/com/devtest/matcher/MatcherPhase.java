@@ -0,0 +1,20 @@
+package com.devtest.matcher;
+
+/***
+ * The phases of a job that metrics are recorded for.
+ * 
+ * RANGE_SCAN reads the input to find the range of values. PREFILTER reads the input through a Bloom filter
+ * to find the candidate duplicates passed on to the external sort. DETECT finds the duplicates without sorting, 
+ * with the bitmap or hash partition strategy. SPLIT reads the input into sorted runs and MERGE merges the 
+ * runs back in one or more passes. VALIDATE reports the duplicates, scanning the sorted file for them 
+ * unless they were found while rendering.
+ */
+public enum MatcherPhase 
+{
+	RANGE_SCAN,
+	PREFILTER,
+	DETECT,
+	SPLIT,
+	MERGE,
+	VALIDATE
+}
@@ -0,0 +1,298 @@
+package com.devtest.matcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/***
+ * Service running many matcher jobs at once in the same JVM, so batches of small inputs don't pay the cost
+ * of starting a JVM per input. The memory and open files of the global configuration are divided evenly
+ * between the jobs allowed to run at the same time, so the total never exceeds the budget however many
+ * jobs are active. Every job needs at least the least memory and open files of a MatcherConfig, so fewer
+ * jobs are allowed to run at once than asked for when the budget can't give each of them that much. Each job creates its temp files in a workspace directory of its own, which is deleted
+ * with anything left in it once the job ends, so jobs never see each other's files.
+ *
+ * Admission is bounded: a job waits in a queue of fixed capacity when all the active slots are taken, and
+ * submit blocks (or trySubmit refuses the job) once the queue is full as well.
+ *
+ * -Dmatcher.maxJobs=4        Max number of jobs running at the same time.
+ * -Dmatcher.jobQueue=64      Max number of jobs waiting for a free slot.
+ */
+public class MatcherService
+{
+	public static final String MAXJOBS_PROPERTY = "matcher.maxJobs";
+	public static final String JOBQUEUE_PROPERTY = "matcher.jobQueue";
+
+	// Default max number of jobs running at the same time
+	public static final int DEFAULTMAXJOBS = 4;
+
+	// Default max number of jobs waiting for a free slot
+	public static final int DEFAULTJOBQUEUE = 64;
+
+	// Prefix of the workspace directory created for each job
+	private static final String WORKSPACEPREFIX = "matcher-job-";
+
+	// Logger used to report workspaces that couldn't be deleted and limits on the jobs run at once
+	private static final Logger LOGGER = Logger.getLogger(MatcherService.class.getName());
+
+	private MatcherConfig mJobConfig;
+	private File mTempDirectory;
+	private ExecutorService mExecutorService;
+	private Semaphore mAdmissionSemaphore;
+	private int mMaxActiveJobs;
+	private RunFileFormat mRunFileFormat = RunFileFormat.BINARY_DELTA;
+	private NumberKeyType mKeyType = NumberKeyType.LONG;
+
+	/***
+	 * Constructor to create a new service dividing the given resources between its active jobs.
+	 *
+	 * @param pConfig The memory and open files allowed across all the jobs and the directory the job
+	 * workspaces are created in.
+	 * @param pMaxActiveJobs The max number of jobs running at the same time.
+	 * @param pQueueCapacity The max number of jobs waiting for a free slot.
+	 */
+	public MatcherService(MatcherConfig pConfig, int pMaxActiveJobs, int pQueueCapacity)
+	{
+		int maxActiveJobs = limitActiveJobs(pConfig, Math.max(pMaxActiveJobs, 1));
+		mMaxActiveJobs = maxActiveJobs;
+		mJobConfig = new MatcherConfig(pConfig.getMemoryBudget() / maxActiveJobs, pConfig.getMaxOpenFiles() / maxActiveJobs);
+		mTempDirectory = pConfig.getTempDirectory();
+		mExecutorService = Executors.newFixedThreadPool(maxActiveJobs, new JobThreadFactory());
+		mAdmissionSemaphore = new Semaphore(maxActiveJobs + Math.max(pQueueCapacity, 0));
+	}
+
+	/***
+	 * Called to create the service from the system properties, with the global resources read by
+	 * MatcherConfig.fromSystemProperties.
+	 *
+	 * @return The service.
+	 * @throws IllegalArgumentException Error thrown if a property holds an invalid value.
+	 */
+	public static MatcherService fromSystemProperties()
+	{
+		return new MatcherService(MatcherConfig.fromSystemProperties(),
+				Integer.getInteger(MAXJOBS_PROPERTY, DEFAULTMAXJOBS), Integer.getInteger(JOBQUEUE_PROPERTY, DEFAULTJOBQUEUE));
+	}
+
+	/***
+	 * Called to set the format the runs of each job are stored in.
+	 *
+	 * @param pRunFileFormat The run file format, defaults to RunFileFormat.BINARY_DELTA.
+	 */
+	public void setRunFileFormat(RunFileFormat pRunFileFormat)
+	{
+		mRunFileFormat = pRunFileFormat;
+	}
+
+	/***
+	 * Called to set the type of key the numbers of each job are read as.
+	 *
+	 * @param pKeyType The key type, defaults to NumberKeyType.LONG.
+	 */
+	public void setKeyType(NumberKeyType pKeyType)
+	{
+		mKeyType = pKeyType;
+	}
+
+	/***
+	 * @return The max number of jobs running at the same time, which may be less than asked for.
+	 */
+	public int getMaxActiveJobs()
+	{
+		return mMaxActiveJobs;
+	}
+
+	/***
+	 * @return The memory and open files each job is allowed.
+	 */
+	public MatcherConfig getJobConfig()
+	{
+		return mJobConfig;
+	}
+
+	/***
+	 * Called to queue a job finding the duplicate numbers of a source, waiting for room in the queue if it
+	 * is full. The listener is called on the thread running the job.
+	 *
+	 * @param pNumberSource The source of the numbers to match.
+	 * @param pDuplicateNumberListener The listener the duplicate numbers are passed to.
+	 * @return The future metrics of the job, which reports any error the job failed with.
+	 * @throws IOException Error thrown if interrupted while waiting for room in the queue.
+	 * @throws RejectedExecutionException Error thrown if the service has been shut down.
+	 */
+	public Future<MatcherMetrics> submit(NumberSource pNumberSource, DuplicateNumberListener pDuplicateNumberListener) throws IOException
+	{
+		try
+		{
+			mAdmissionSemaphore.acquire();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting to queue a job");
+		}
+		return queueJob(pNumberSource, pDuplicateNumberListener);
+	}
+
+	/***
+	 * Called to queue a job finding the duplicate numbers of a source if there is room in the queue.
+	 *
+	 * @param pNumberSource The source of the numbers to match.
+	 * @param pDuplicateNumberListener The listener the duplicate numbers are passed to.
+	 * @return The future metrics of the job, or null if the queue is full.
+	 * @throws RejectedExecutionException Error thrown if the service has been shut down.
+	 */
+	public Future<MatcherMetrics> trySubmit(NumberSource pNumberSource, DuplicateNumberListener pDuplicateNumberListener)
+	{
+		if (!mAdmissionSemaphore.tryAcquire())
+			return null;
+		return queueJob(pNumberSource, pDuplicateNumberListener);
+	}
+
+	/***
+	 * Called to stop accepting jobs. The jobs already queued are still run.
+	 */
+	public void shutdown()
+	{
+		mExecutorService.shutdown();
+	}
+
+	/***
+	 * Called to wait for the queued jobs to complete after a shutdown.
+	 *
+	 * @param pTimeout The max time to wait.
+	 * @param pUnit The unit of the timeout.
+	 * @return True if all the jobs completed, false if the timeout elapsed first.
+	 * @throws InterruptedException Error thrown if interrupted while waiting.
+	 */
+	public boolean awaitTermination(long pTimeout, TimeUnit pUnit) throws InterruptedException
+	{
+		return mExecutorService.awaitTermination(pTimeout, pUnit);
+	}
+
+	/***
+	 * Helper method to hand an admitted job to the executor, giving back its place if it is refused.
+	 */
+	private Future<MatcherMetrics> queueJob(NumberSource pNumberSource, DuplicateNumberListener pDuplicateNumberListener)
+	{
+		try
+		{
+			return mExecutorService.submit(new MatcherJob(pNumberSource, pDuplicateNumberListener, mRunFileFormat, mKeyType));
+		}
+		catch (RejectedExecutionException ex)
+		{
+			mAdmissionSemaphore.release();
+			throw ex;
+		}
+	}
+
+	/***
+	 * Helper method to limit the jobs running at the same time so the share of each job is at least the
+	 * least memory and open files a job can work within. A budget smaller than that allows a single job.
+	 */
+	private static int limitActiveJobs(MatcherConfig pConfig, int pMaxActiveJobs)
+	{
+		long maxJobsInMemory = pConfig.getMemoryBudget() / MatcherConfig.MINMEMORYBUDGET;
+		int maxJobsInOpenFiles = pConfig.getMaxOpenFiles() / MatcherConfig.MINOPENFILES;
+		int maxActiveJobs = (int) Math.max(1, Math.min(pMaxActiveJobs, Math.min(maxJobsInMemory, maxJobsInOpenFiles)));
+		if (maxActiveJobs < pMaxActiveJobs)
+			LOGGER.warning("Running " + maxActiveJobs + " jobs at once rather than " + pMaxActiveJobs 
+					+ " to keep the share of each within " + pConfig.getMemoryBudget() + " bytes and " 
+					+ pConfig.getMaxOpenFiles() + " open files");
+		return maxActiveJobs;
+	}
+
+	/***
+	 * Helper method to delete a job workspace along with any temp files left in it.
+	 */
+	private static void deleteWorkspace(File pWorkspace)
+	{
+		File[] files = pWorkspace.listFiles();
+		if (files != null)
+		{
+			for (File file : files)
+				file.delete();
+		}
+
+		if (!pWorkspace.delete())
+			LOGGER.warning("Unable to delete job workspace " + pWorkspace);
+	}
+
+	/***
+	 * Task run by a job thread to match one source within the share of the resources of a job, in a
+	 * workspace of its own. The place of the job is given back when it ends.
+	 */
+	private class MatcherJob implements Callable<MatcherMetrics>
+	{
+		private NumberSource mNumberSource;
+		private DuplicateNumberListener mDuplicateNumberListener;
+		private RunFileFormat mRunFileFormat;
+		private NumberKeyType mKeyType;
+
+		public MatcherJob(NumberSource pNumberSource, DuplicateNumberListener pDuplicateNumberListener,
+				RunFileFormat pRunFileFormat, NumberKeyType pKeyType)
+		{
+			mNumberSource = pNumberSource;
+			mDuplicateNumberListener = pDuplicateNumberListener;
+			mRunFileFormat = pRunFileFormat;
+			mKeyType = pKeyType;
+		}
+
+		@Override
+		public MatcherMetrics call() throws IOException
+		{
+			try
+			{
+				File workspace;
+				if (mTempDirectory != null)
+					workspace = Files.createTempDirectory(mTempDirectory.toPath(), WORKSPACEPREFIX).toFile();
+				else
+					workspace = Files.createTempDirectory(WORKSPACEPREFIX).toFile();
+
+				try
+				{
+					MatcherConfig config = new MatcherConfig(mJobConfig.getMemoryBudget(), mJobConfig.getMaxOpenFiles());
+					config.setTempDirectory(workspace);
+
+					NumberController controller = new NumberController(mNumberSource, config);
+					controller.setFusedDuplicateScan(true);
+					controller.setRunFileFormat(mRunFileFormat);
+					controller.setKeyType(mKeyType);
+					controller.findDuplicateNumbers(mDuplicateNumberListener);
+					return controller.getMetrics();
+				}
+				finally {
+					deleteWorkspace(workspace);
+				}
+			}
+			finally {
+				mAdmissionSemaphore.release();
+			}
+		}
+	}
+
+	/***
+	 * Thread factory creating the daemon threads the jobs run on.
+	 */
+	private static class JobThreadFactory implements ThreadFactory
+	{
+		private int mThreadIndex = 0;
+
+		@Override
+		public synchronized Thread newThread(Runnable pRunnable)
+		{
+			Thread thread = new Thread(pRunnable, "matcher-job-" + (mThreadIndex++));
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
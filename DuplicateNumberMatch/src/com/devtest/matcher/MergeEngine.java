@@ -0,0 +1,14 @@
+package com.devtest.matcher;
+
+/***
+ * The engines available to merge the sorted split files back into one sorted sequence of numbers.
+ * 
+ * PRIORITY_QUEUE keeps a wrapper per split file on a java.util.PriorityQueue. LOSER_TREE keeps a 
+ * tournament tree of losers over the primitive head number of each split file and merges without
+ * creating any objects per number.
+ */
+public enum MergeEngine 
+{
+	PRIORITY_QUEUE,
+	LOSER_TREE
+}
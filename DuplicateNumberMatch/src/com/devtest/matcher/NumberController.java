@@ -1,34 +1,97 @@
 package com.devtest.matcher;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.PriorityQueue;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
 
 /***
  * Simple wrapper controller class to handle the rendering and validation of the input numbers.
  */
 public class NumberController 
 {
-	// Maximum number of files we will allow to be created for sorting
-	private static final int MAXNUMFILES = 512;
+	// Max passes over the input the bitmap strategy is picked automatically for
+	private static final int MAXBITMAPPASSES = 3;
+	
+	// Max passes over the input the bitmap strategy is used for when it is set, past which the range is 
+	// too wide for the bitmap to finish in any sensible time
+	private static final int MAXFORCEDBITMAPPASSES = 64;
+	
+	// Typical size in bytes of each number in the input used to estimate the count of numbers
+	private static final int ESTIMATEDBYTESPERNUMBER = 8;
+	
+	// Count of numbers read from the sorted file at a time while scanning it for duplicates
+	private static final int SCANBLOCKSIZE = 4096;
+	
+	// Logger used to report the plan chosen for each job
+	private static final Logger LOGGER = Logger.getLogger(NumberController.class.getName());
+	
+	// The source of the numbers to validate
+	private NumberSource mNumberSource = null;
+	
+	// The memory and open files allowed to work within
+	private MatcherConfig mConfig = null;
+	
+	// The format used to store the split files and the final sorted file
+	private RunFileFormat mRunFileFormat = RunFileFormat.BINARY_DELTA;
+	
+	// The engine used to merge the split files back into the final sorted file
+	private MergeEngine mMergeEngine = MergeEngine.LOSER_TREE;
+	
+	// Flag to check the merged numbers for duplicates directly instead of writing the sorted file
+	private boolean mFusedDuplicateScan = false;
+	
+	// The strategy used to split the input into sorted runs
+	private RunGenerationStrategy mRunGenerationStrategy = RunGenerationStrategy.CHUNK_SORT;
+	
+	// Number of threads used to sort the runs or check the hash buckets
+	private int mThreadCount = 1;
 	
-	// Max available memory allowed to work within when sorting 2MB 
-	private static final int MAXMEMORYAVAIL   = 1024*1024*2;
+	// Number of I/O threads used to read the runs ahead of the merge and write the merged runs behind it
+	private int mIoThreadCount = RunIoService.DEFAULTTHREADCOUNT;
 	
-	// Name of the final sorted file of numbers that's read to validate duplicates
-	private static final String SORTED_OUTPUT_TMPFILE = "sortedOutputFile.tmp";
+	// The type of key the input numbers are read as
+	private NumberKeyType mKeyType = NumberKeyType.LONG;
 	
-	// The name of the input data file containing the numbers to validate
-	private String mInputFile = null;
+	// Flag to store the copies of each number in the runs as a count rather than one by one
+	private boolean mCollapseDuplicates = false;
 	
-	private SimpleStringComparator mSimpleNumberComparator = null;
+	// Flag to report the duplicates from least to most when the strategy doesn't find them in order
+	private boolean mSortDuplicates = true;
+	
+	// The strategy used to detect the duplicate numbers
+	private DetectionStrategy mDetectionStrategy = DetectionStrategy.AUTO;
+	
+	// Range of values the input numbers fall within if given by the user, found by a pre-scan otherwise
+	private NumberRange mValueRangeHint = null;
+	
+	// Duplicates found while rendering when the duplicate scan is fused with the merge or no sort is needed
+	private DuplicateNumberList mDuplicateNumberList = null;
+	
+	// Directory of the persistent duplicate index of an appended input file if set
+	private File mIndexDirectory = null;
+	
+	// Directory the runs of the job are checkpointed in so a restarted job can resume if set
+	private File mCheckpointDirectory = null;
+	
+	// Flag to pass only the candidate duplicates found by a first pass through a Bloom filter to the external sort
+	private boolean mBloomPrefilter = false;
+	
+	// The final sorted temp file of numbers that's read to validate duplicates when the scan isn't fused
+	private File mSortedOutputFile = null;
+	
+	// Metrics of the latest job, replaced each time the input numbers are rendered
+	private MatcherMetrics mMetrics = null;
+	
+	// Flag to register the metrics of each job as a JMX MBean
+	private boolean mMetricsMBeanEnabled = false;
+	
+	// File the JSON summary of the metrics is written to at the end of each job if set
+	private File mMetricsSummaryFile = null;
 	
 	/***
 	 * Constructor method to create a simple controller class for number processing.
@@ -37,8 +100,358 @@ public class NumberController
 	 */
 	public NumberController(String pInputFile)
 	{
-		mInputFile = pInputFile;
-		mSimpleNumberComparator = new SimpleStringComparator();
+		this(pInputFile, MatcherConfig.fromSystemProperties());
+	}
+	
+	/***
+	 * Constructor method to create a simple controller class for number processing within the given
+	 * memory and open file limits.
+	 * 
+	 * @param pInputFile The string name of the file containing the numbers to validate.
+	 * @param pConfig The configuration of the memory and open files allowed.
+	 */
+	public NumberController(String pInputFile, MatcherConfig pConfig)
+	{
+		this(new FileNumberSource(new File(pInputFile)), pConfig);
+	}
+	
+	/***
+	 * Constructor method to create a controller matching the numbers read from any source, such as a 
+	 * stream or an iterator, within the given memory and open file limits.
+	 * 
+	 * @param pNumberSource The source of the numbers to validate.
+	 * @param pConfig The configuration of the memory and open files allowed.
+	 */
+	public NumberController(NumberSource pNumberSource, MatcherConfig pConfig)
+	{
+		mNumberSource = pNumberSource;
+		mConfig = pConfig;
+		mMetrics = new MatcherMetrics(pNumberSource.toString(), pNumberSource.getLength());
+	}
+	
+	/***
+	 * Called to set the format used to store the split files and the final sorted file of numbers. The
+	 * duplicate report is always printed as text regardless of this format.
+	 * 
+	 * @param pRunFileFormat The run file format, defaults to RunFileFormat.BINARY_DELTA.
+	 */
+	public void setRunFileFormat(RunFileFormat pRunFileFormat)
+	{
+		mRunFileFormat = pRunFileFormat;
+	}
+	
+	/***
+	 * Called to set the engine used to merge the split files back into the final sorted file.
+	 * 
+	 * @param pMergeEngine The merge engine, defaults to MergeEngine.LOSER_TREE.
+	 */
+	public void setMergeEngine(MergeEngine pMergeEngine)
+	{
+		mMergeEngine = pMergeEngine;
+	}
+	
+	/***
+	 * Called to set if the duplicate scan should run directly on the output of the merge. When set the 
+	 * fully sorted file is never written and read back, and validateAndPrintDuplicateNumbers reports the
+	 * duplicates found during renderInputNumbers.
+	 * 
+	 * @param pFusedDuplicateScan True to fuse the duplicate scan with the merge, defaults to False.
+	 */
+	public void setFusedDuplicateScan(boolean pFusedDuplicateScan)
+	{
+		mFusedDuplicateScan = pFusedDuplicateScan;
+	}
+	
+	/***
+	 * Called to set the number of I/O threads used when merging. The next block of each run is read and 
+	 * decoded on an I/O thread while the current block is merged, and the merged numbers are written to
+	 * the merge files behind the merge, so disk access and comparing numbers overlap.
+	 * 
+	 * @param pIoThreadCount The number of I/O threads, 0 to read and write on the merging thread, defaults to 2.
+	 */
+	public void setIoThreadCount(int pIoThreadCount)
+	{
+		mIoThreadCount = Math.max(pIoThreadCount, 0);
+	}
+	
+	/***
+	 * Called to set the type of key the input numbers are read as. Int keys are sorted as ints, so each run 
+	 * holds twice as many numbers, and digit string keys keep their leading zeros when reported. A number 
+	 * outside the range of the key type is reported as an error.
+	 * 
+	 * @param pKeyType The type of key, defaults to long.
+	 */
+	public void setKeyType(NumberKeyType pKeyType)
+	{
+		mKeyType = pKeyType;
+	}
+	
+	/***
+	 * @return The type of key the input numbers are read as.
+	 */
+	public NumberKeyType getKeyType()
+	{
+		return mKeyType;
+	}
+	
+	/***
+	 * Called to set if the copies of each number are collapsed into a count as the runs, merge files and
+	 * sorted file are written. Each number then crosses the disk once per run however many copies it has,
+	 * which makes the runs of duplicate heavy input far smaller. Only the delta formats collapse duplicates,
+	 * and the duplicates found are the same either way.
+	 * 
+	 * @param pCollapseDuplicates True to collapse the copies of each number, defaults to False.
+	 */
+	public void setCollapseDuplicates(boolean pCollapseDuplicates)
+	{
+		mCollapseDuplicates = pCollapseDuplicates;
+	}
+	
+	/***
+	 * Called to set the strategy used to detect the duplicate numbers.
+	 * 
+	 * @param pDetectionStrategy The detection strategy, defaults to DetectionStrategy.AUTO.
+	 */
+	public void setDetectionStrategy(DetectionStrategy pDetectionStrategy)
+	{
+		mDetectionStrategy = pDetectionStrategy;
+	}
+	
+	/***
+	 * Called to give the range of values the input numbers are known to fall within, which saves the
+	 * pre-scan of the input when choosing a detection strategy. Numbers found outside the range are
+	 * reported as an error by the bitmap strategy.
+	 * 
+	 * @param pMinValue The least value of the input numbers.
+	 * @param pMaxValue The most value of the input numbers.
+	 */
+	public void setValueRangeHint(long pMinValue, long pMaxValue)
+	{
+		mValueRangeHint = new NumberRange(pMinValue, pMaxValue, -1);
+	}
+	
+	/***
+	 * Called to set the number of threads used for the work that can run in parallel. With the external 
+	 * sort, when more than one thread is used the input is read on the calling thread while the sorter 
+	 * threads sort and write the runs at the same time, with the memory allowed divided between the chunks
+	 * in flight. When the duplicate scan is fused with the merge the binary runs are also split into ranges 
+	 * of values that are merged in parallel with the tree of losers, as far as the open files allowed let 
+	 * every range open every run. With the hash partition strategy the buckets are checked in parallel.
+	 * 
+	 * @param pThreadCount The number of threads, defaults to 1.
+	 */
+	public void setThreadCount(int pThreadCount)
+	{
+		mThreadCount = pThreadCount;
+	}
+	
+	/***
+	 * Called to set the strategy used to split the input into sorted runs. Replacement selection always
+	 * runs on a single thread.
+	 * 
+	 * @param pRunGenerationStrategy The run generation strategy, defaults to RunGenerationStrategy.CHUNK_SORT.
+	 */
+	public void setRunGenerationStrategy(RunGenerationStrategy pRunGenerationStrategy)
+	{
+		mRunGenerationStrategy = pRunGenerationStrategy;
+	}
+	
+	/***
+	 * Called to set if the duplicates should be reported from least to most by the strategies that don't
+	 * find them in order. Only the duplicates found are sorted.
+	 * 
+	 * @param pSortDuplicates True to sort the duplicates, defaults to True.
+	 */
+	public void setSortDuplicates(boolean pSortDuplicates)
+	{
+		mSortDuplicates = pSortDuplicates;
+	}
+	
+	/***
+	 * Called to set the directory of a persistent duplicate index for an input file that only grows by 
+	 * appends. Each job then only sorts the numbers appended since the last job, merges them into the 
+	 * sorted run kept in the index and reports only the duplicates that are new. The index always uses the
+	 * external sort whatever the detection strategy.
+	 * 
+	 * @param pIndexDirectory The index directory, or null to match the whole input each job which is the 
+	 * default.
+	 */
+	public void setIndexDirectory(File pIndexDirectory)
+	{
+		mIndexDirectory = pIndexDirectory;
+	}
+	
+	/***
+	 * Called to set the directory the sorted runs of an external sort of an input file are checkpointed in.
+	 * The runs of each slice of the input are recorded with their checksums and the offset reached as soon
+	 * as they are written, so a job restarted after a crash reuses the valid runs and only splits the rest 
+	 * of the input. The runs are kept until the job completes. Jobs matched without the external sort are
+	 * not checkpointed.
+	 * 
+	 * @param pCheckpointDirectory The checkpoint directory, or null to not checkpoint which is the default.
+	 */
+	public void setCheckpointDirectory(File pCheckpointDirectory)
+	{
+		mCheckpointDirectory = pCheckpointDirectory;
+	}
+	
+	/***
+	 * Called to set if the input of the external sort is pre-filtered. A first pass streams the input 
+	 * through a Bloom filter sized from the memory allowed to find the candidate duplicates, and the second
+	 * pass only sorts the candidates, so the values that are certainly unique are never spilled. The results
+	 * are exact. The filter only uses the memory above the least the sort needs, so inputs are not 
+	 * pre-filtered when the memory allowed is too small to leave room for it, nor are inputs that can only 
+	 * be read once and checkpointed jobs.
+	 * 
+	 * @param pBloomPrefilter True to pre-filter the input, defaults to False.
+	 */
+	public void setBloomPrefilter(boolean pBloomPrefilter)
+	{
+		mBloomPrefilter = pBloomPrefilter;
+	}
+	
+	/***
+	 * Called to set if the metrics of each job should be registered as a JMX MBean, named after the input
+	 * file, so they can be watched while the job runs.
+	 * 
+	 * @param pMetricsMBeanEnabled True to register the metrics, defaults to False.
+	 */
+	public void setMetricsMBeanEnabled(boolean pMetricsMBeanEnabled)
+	{
+		mMetricsMBeanEnabled = pMetricsMBeanEnabled;
+	}
+	
+	/***
+	 * Called to set the file the JSON summary of the metrics is written to at the end of each job.
+	 * 
+	 * @param pMetricsSummaryFile The summary file, or null to not write a summary which is the default.
+	 */
+	public void setMetricsSummaryFile(File pMetricsSummaryFile)
+	{
+		mMetricsSummaryFile = pMetricsSummaryFile;
+	}
+	
+	/***
+	 * @return The metrics of the latest job.
+	 */
+	public MatcherMetrics getMetrics()
+	{
+		return mMetrics;
+	}
+	
+	/***
+	 * Called to find the duplicate numbers in the input, passing each to the listener as it is found. No
+	 * duplicates are held in memory and no sorted file is written, except that the hash partition strategy
+	 * holds on to the duplicates to sort them when they should be reported in order.
+	 * 
+	 * A source that can only be read once, such as a stream, is matched with the external sort, or with the
+	 * bitmap when a value range hint lets it cover the range in a single pass.
+	 * 
+	 * @param pDuplicateNumberListener The listener the duplicate numbers are passed to.
+	 * @throws IOException Error thrown on access or by the listener.
+	 */
+	public void findDuplicateNumbers(DuplicateNumberListener pDuplicateNumberListener) throws IOException
+	{
+		mDuplicateNumberList = null;
+		startMetrics();
+		DuplicateNumberCounter duplicateNumberCounter = new DuplicateNumberCounter(pDuplicateNumberListener);
+		detectDuplicateNumbers(duplicateNumberCounter, false);
+		endMetrics(duplicateNumberCounter.mCount);
+	}
+	
+	/***
+	 * Called to find the duplicate numbers in the input along with the count of times each occurs, passing
+	 * each to the listener in order from least to most. The counts are taken from the lengths of the runs of
+	 * equal numbers as they come out of the merge, so the input is always matched with the external sort, 
+	 * the bitmap and hash strategies only knowing if a number was seen more than once. The duplicate index
+	 * only holds the duplicates themselves, so the full input is sorted even when it is set.
+	 * 
+	 * @param pDuplicateCountListener The listener the duplicate numbers and their counts are passed to.
+	 * @throws IOException Error thrown on access or by the listener.
+	 */
+	public void findDuplicateCounts(DuplicateCountListener pDuplicateCountListener) throws IOException
+	{
+		mDuplicateNumberList = null;
+		startMetrics();
+		DuplicateCountScanner duplicateCountScanner = new DuplicateCountScanner(pDuplicateCountListener);
+		renderWithExternalSort(new TrackedNumberSource(mNumberSource, mKeyType), null, duplicateCountScanner);
+		duplicateCountScanner.finish();
+		endMetrics(duplicateCountScanner.getDuplicateCount());
+	}
+	
+	/***
+	 * Called to apply a set operation across the input and other sources, such as finding the numbers in
+	 * more than one of the files or in the input but not the others. Each source is split into sorted runs
+	 * of its own, and the runs of every source are merged together in a single pass where each number is
+	 * tagged with the source it came from, so the sources are never concatenated or matched one by one.
+	 * The numbers picked are passed to the listener once each, from least to most. The input is always
+	 * the first source, and the tags are taken from the tree of losers whatever merge engine is set.
+	 * 
+	 * @param pOtherSources The sources the input is matched against.
+	 * @param pSetOperation The set operation picking the numbers to report.
+	 * @param pDuplicateNumberListener The listener the numbers picked are passed to.
+	 * @throws IOException Error thrown on access, by the listener, or if there are more sources than the 
+	 * open files allowed can merge at once.
+	 */
+	public void findSetOperation(List<NumberSource> pOtherSources, SetOperation pSetOperation, 
+			DuplicateNumberListener pDuplicateNumberListener) throws IOException
+	{
+		mDuplicateNumberList = null;
+		startMetrics();
+		ArrayList<NumberSource> sourceList = new ArrayList<NumberSource>();
+		sourceList.add(mNumberSource);
+		sourceList.addAll(pOtherSources);
+		
+		long totalLength = 0;
+		for (NumberSource numberSource : sourceList)
+			totalLength += Math.max(numberSource.getLength(), 0);
+		ExternalSortPlan plan = ExternalSortPlan.create(totalLength, mConfig);
+		if (sourceList.size() > plan.getFanIn())
+			throw new IOException("Only " + plan.getFanIn() + " sources can be merged at once within the open files allowed, not " 
+					+ sourceList.size());
+		
+		LOGGER.info("Set operation: " + pSetOperation + " over " + sourceList.size() + " sources. " + plan);
+		mMetrics.setDetectionStrategy(DetectionStrategy.EXTERNAL_SORT);
+		mMetrics.setMergeFanIn(plan.getFanIn());
+		
+		ArrayList<List<File>> sourceRunList = new ArrayList<List<File>>();
+		SourceSetScanner sourceSetScanner = new SourceSetScanner(pSetOperation, sourceList.size(), pDuplicateNumberListener);
+		try
+		{
+			PhaseMetrics splitMetrics = mMetrics.startPhase(MatcherPhase.SPLIT);
+			ArrayList<File> splitFileList = new ArrayList<File>();
+			long numberCount = 0;
+			long bytesRead = 0;
+			for (NumberSource numberSource : sourceList)
+			{
+				TrackedNumberSource trackedSource = new TrackedNumberSource(numberSource, mKeyType);
+				NumberInput numberInput = trackedSource.open();
+				try
+				{
+					List<File> runList = createRunGenerator(plan, createRunFileFactory()).generateRuns(numberInput);
+					sourceRunList.add(runList);
+					splitFileList.addAll(runList);
+				}
+				finally {
+					numberInput.close();
+				}
+				numberCount += trackedSource.getNumbersRead();
+				bytesRead += trackedSource.getBytesRead();
+			}
+			mMetrics.setRuns(splitFileList);
+			splitMetrics.end(numberCount, bytesRead, mMetrics.getTotalRunBytes());
+			
+			PhaseMetrics mergeMetrics = mMetrics.startPhase(MatcherPhase.MERGE);
+			mergeTaggedRuns(sourceRunList, plan, sourceSetScanner);
+			sourceSetScanner.finish();
+			long intermediateBytes = mMetrics.getIntermediateMergeBytes();
+			mergeMetrics.end(numberCount * mMetrics.getMergePasses(), mMetrics.getTotalRunBytes() + intermediateBytes, intermediateBytes);
+		}
+		finally {
+			for (List<File> runList : sourceRunList)
+				deleteFiles(runList);
+		}
+		endMetrics(sourceSetScanner.getMatchCount());
 	}
 	
 	/***
@@ -47,88 +460,393 @@ public class NumberController
 	 * split the final process will create a new file where all numbers are sorted back ready to be 
 	 * validated.
 	 * 
+	 * When the values of the input numbers fall within a narrow enough range the duplicates are instead
+	 * found directly with a bitmap over the range and no files are sorted.
+	 * 
 	 * @throws IOException Error thrown on file access.
 	 */
 	public void renderInputNumbers() throws IOException
+	{
+		mDuplicateNumberList = null;
+		startMetrics();
+		DuplicateNumberList duplicateNumberList = new DuplicateNumberList();
+		if (detectDuplicateNumbers(duplicateNumberList, !mFusedDuplicateScan))
+			mDuplicateNumberList = duplicateNumberList;
+	}
+	
+	/***
+	 * Called to find the duplicate numbers with the configured detection strategy, or to write the sorted
+	 * file for the duplicates to be found in later when the external sort is used without the fused scan.
+	 * 
+	 * @param pDuplicateNumberListener The listener the duplicate numbers are passed to.
+	 * @param pWriteSortedFile True to write the sorted file when the external sort is used.
+	 * @return True if the duplicates were passed to the listener, False if the sorted file was written.
+	 * @throws IOException Error thrown on access.
+	 */
+	private boolean detectDuplicateNumbers(DuplicateNumberListener pDuplicateNumberListener, boolean pWriteSortedFile) throws IOException
+	{
+		if (mIndexDirectory != null)
+		{
+			detectWithIndex(pDuplicateNumberListener);
+			return true;
+		}
+		
+		TrackedNumberSource numberSource = new TrackedNumberSource(mNumberSource, mKeyType);
+		DetectionStrategy detectionStrategy = mDetectionStrategy;
+		if (!numberSource.isRepeatable() && detectionStrategy != DetectionStrategy.EXTERNAL_SORT)
+		{
+			// A one-shot source can only use the bitmap when the range hint lets it make a single pass
+			boolean singlePassBitmap = mValueRangeHint != null 
+					&& BitmapDuplicateDetector.calculatePassCount(mValueRangeHint, mConfig.getMemoryBudget()) == 1;
+			if (detectionStrategy == DetectionStrategy.HASH_PARTITION || !singlePassBitmap)
+			{
+				LOGGER.info("Input " + numberSource + " can only be read once, " + detectionStrategy + " replaced with " 
+						+ DetectionStrategy.EXTERNAL_SORT);
+				detectionStrategy = DetectionStrategy.EXTERNAL_SORT;
+			}
+		}
+		
+		if (detectionStrategy == DetectionStrategy.HASH_PARTITION)
+		{
+			LOGGER.info("Detection strategy: " + DetectionStrategy.HASH_PARTITION);
+			mMetrics.setDetectionStrategy(DetectionStrategy.HASH_PARTITION);
+			PhaseMetrics detectMetrics = mMetrics.startPhase(MatcherPhase.DETECT);
+			HashPartitionDuplicateDetector detector = new HashPartitionDuplicateDetector(numberSource, mConfig, mThreadCount);
+			long countEstimate = Math.max(numberSource.getLength(), 0) / ESTIMATEDBYTESPERNUMBER;
+			detector.detectDuplicates(countEstimate, mSortDuplicates, pDuplicateNumberListener);
+			detectMetrics.end(numberSource.getNumbersRead(), numberSource.getBytesRead() + detector.getBucketBytesRead(), 
+					detector.getBucketBytesWritten());
+			return true;
+		}
+		
+		if (detectionStrategy != DetectionStrategy.EXTERNAL_SORT)
+		{
+			NumberRange numberRange = mValueRangeHint;
+			if (numberRange == null)
+			{
+				PhaseMetrics rangeScanMetrics = mMetrics.startPhase(MatcherPhase.RANGE_SCAN);
+				numberRange = NumberRange.scan(numberSource);
+				rangeScanMetrics.end(numberSource.getNumbersRead(), numberSource.getBytesRead(), 0);
+			}
+			
+			long passCount = BitmapDuplicateDetector.calculatePassCount(numberRange, mConfig.getMemoryBudget());
+			if (detectionStrategy == DetectionStrategy.BITMAP && passCount > MAXFORCEDBITMAPPASSES)
+			{
+				LOGGER.warning("Value range " + numberRange.mMin + " - " + numberRange.mMax + " needs " 
+						+ passCount + " bitmap passes, more than the " + MAXFORCEDBITMAPPASSES 
+						+ " allowed, " + DetectionStrategy.BITMAP + " replaced with " + DetectionStrategy.EXTERNAL_SORT);
+			}
+			else if (detectionStrategy == DetectionStrategy.BITMAP || passCount <= MAXBITMAPPASSES)
+			{
+				LOGGER.info("Detection strategy: " + DetectionStrategy.BITMAP + ", value range " + numberRange.mMin 
+						+ " - " + numberRange.mMax + ", passes " + passCount);
+				mMetrics.setDetectionStrategy(DetectionStrategy.BITMAP);
+				long scannedNumbers = numberSource.getNumbersRead();
+				long scannedBytes = numberSource.getBytesRead();
+				PhaseMetrics detectMetrics = mMetrics.startPhase(MatcherPhase.DETECT);
+				new BitmapDuplicateDetector(numberSource, mConfig.getMemoryBudget()).detectDuplicates(numberRange, pDuplicateNumberListener);
+				detectMetrics.end(numberSource.getNumbersRead() - scannedNumbers, numberSource.getBytesRead() - scannedBytes, 0);
+				return true;
+			}
+		}
+		
+		renderWithExternalSort(numberSource, pWriteSortedFile ? null : pDuplicateNumberListener, null);
+		return !pWriteSortedFile;
+	}
+	
+	/***
+	 * Called to split the input into sorted split files and merge them back into the sorted file, or 
+	 * straight into the duplicate scan or another sink when it is fused with the merge.
+	 * 
+	 * @param pNumberSource The source of the input numbers.
+	 * @param pDuplicateNumberListener The listener the duplicates are passed to when the scan is fused with 
+	 * the merge, or null to write the sorted file.
+	 * @param pNumberSink The sink the merged numbers are passed to in place of the sorted file, null to write
+	 * the sorted file. Only used when no listener is given.
+	 * @throws IOException Error thrown on file access.
+	 */
+	private void renderWithExternalSort(TrackedNumberSource pNumberSource, DuplicateNumberListener pDuplicateNumberListener,
+			NumberSink pNumberSink) throws IOException
+	{
+		// Only the candidate duplicates are sorted when pre-filtered, within the memory the filter leaves. The
+		// filters are sized from the memory above the least the sort needs, so the two never exceed the budget
+		TrackedNumberSource numberSource = pNumberSource;
+		MatcherConfig sortConfig = mConfig;
+		long prefilterMemory = mConfig.getMemoryBudget() - MatcherConfig.MINMEMORYBUDGET;
+		if (mBloomPrefilter && prefilterMemory < BloomPrefilter.MINMEMORYBUDGET)
+		{
+			LOGGER.info("Memory allowed leaves too little for the prefilter beside the sort, the input is not pre-filtered");
+		}
+		else if (mBloomPrefilter && mCheckpointDirectory == null && pNumberSource.isRepeatable())
+		{
+			BloomPrefilter prefilter = runPrefilter(pNumberSource, prefilterMemory);
+			if (prefilter.isSelective())
+			{
+				numberSource = new TrackedNumberSource(prefilter.filter(pNumberSource), mKeyType);
+				sortConfig = new MatcherConfig(mConfig.getMemoryBudget() - prefilter.getMemoryBytes(), mConfig.getMaxOpenFiles());
+				sortConfig.setTempDirectory(mConfig.getTempDirectory());
+			}
+		}
+		
+        ExternalSortPlan plan = ExternalSortPlan.create(Math.max(pNumberSource.getLength(), 0), sortConfig);
+        LOGGER.info("Detection strategy: " + DetectionStrategy.EXTERNAL_SORT + ". " + plan);
+        mMetrics.setDetectionStrategy(DetectionStrategy.EXTERNAL_SORT);
+        mMetrics.setMergeFanIn(plan.getFanIn());
+        
+        // The runs of a checkpointed job are kept until it completes so a restarted job can reuse them
+        JobCheckpoint checkpoint = openCheckpoint();
+        try
+        {
+        	renderWithExternalSort(numberSource, plan, checkpoint, pDuplicateNumberListener, pNumberSink);
+        	if (checkpoint != null)
+        		checkpoint.complete();
+        }
+        finally {
+        	if (checkpoint != null)
+        		checkpoint.close();
+        }
+	}
+	
+	/***
+	 * Called to split the input into sorted split files and merge them with the given plan, recording the
+	 * split files in the checkpoint when one is given.
+	 */
+	private void renderWithExternalSort(TrackedNumberSource pNumberSource, ExternalSortPlan pPlan, JobCheckpoint pCheckpoint, 
+			DuplicateNumberListener pDuplicateNumberListener, NumberSink pNumberSink) throws IOException
 	{
 		ArrayList<File> splitFileListArray = new ArrayList<File>();
-        File inputFile = new File(mInputFile);
      
         /***
          * Split and sort the input numbers into separate files
          */
-        BufferedReader fileInputReader = new BufferedReader(new FileReader(inputFile));        
-        long blocksize = calculatePotentialSplitFileLength(inputFile.length());
-        try
+        PhaseMetrics splitMetrics = mMetrics.startPhase(MatcherPhase.SPLIT);
+        long numberCount;
+        long bytesRead;
+        if (pCheckpoint != null)
         {
-        	ArrayList<String> bufferNumberList =  new ArrayList<String>();
-            String line = "";
-            int fileCountIndex = 0;
-            while(line != null) 
-            {
-                long currentblocksize = 0;
-                while((currentblocksize < blocksize) && ((line = fileInputReader.readLine()) != null) )
-                {
-                	bufferNumberList.add(line);
-                    currentblocksize += line.length();
-                }
-                
-                // We've reached the max size we allow per file, sort and save this data
-                File sortedFile = sortBufferNumberList(bufferNumberList, fileCountIndex++);
-                splitFileListArray.add(sortedFile);
-                bufferNumberList.clear();
-            }
-        } 
-        finally {
-        	fileInputReader.close();
+        	File inputFile = ((FileNumberSource) mNumberSource).getFile();
+        	NumberScanner numberScanner = NumberScanner.openFile(inputFile, pCheckpoint.getCoveredOffset(), -1);
+        	try
+        	{
+        		numberScanner.setKeyType(mKeyType);
+        		RunGenerator runGenerator = createRunGenerator(pPlan, new RunFileFactory(mRunFileFormat, mKeyType, 
+        				mCollapseDuplicates, pCheckpoint.getCheckpointDirectory()));
+        		splitFileListArray.addAll(pCheckpoint.generateRuns(numberScanner, runGenerator, 
+        				pPlan.getRunMemory() / mKeyType.getBytesPerNumber()));
+        	}
+        	finally {
+        		numberScanner.close();
+        	}
+        	numberCount = numberScanner.getNumberCount();
+        	bytesRead = numberScanner.getBytesRead();
+        }
+        else
+        {
+        	NumberInput numberInput = pNumberSource.open();        
+        	try
+        	{
+        		splitFileListArray.addAll(createRunGenerator(pPlan, createRunFileFactory()).generateRuns(numberInput));
+        	} 
+        	finally {
+        		numberInput.close();
+        	}
+        	numberCount = pNumberSource.getNumbersRead();
+        	bytesRead = pNumberSource.getBytesRead();
         }
+        mMetrics.setRuns(splitFileListArray);
+        splitMetrics.end(numberCount, bytesRead, mMetrics.getTotalRunBytes());
         
         /***
          * Merge the split files back into a new file where all the numbers are now in a sorted sequence from
-         * least to most significant.
+         * least to most significant. When the duplicate scan is fused with the merge the merged numbers are
+         * checked for duplicates as they are produced and the sorted file is never written.
          */
-        if (splitFileListArray.size() > 0)
+        PhaseMetrics mergeMetrics = mMetrics.startPhase(MatcherPhase.MERGE);
+        long sortedFileBytes = 0;
+        boolean retainSplitFiles = pCheckpoint != null;
+        if (pDuplicateNumberListener != null)
+        {
+        	try 
+        	{
+        		mergeSplitFiles(splitFileListArray, pPlan, null, pDuplicateNumberListener, retainSplitFiles);
+        	}
+        	finally {
+        		if (!retainSplitFiles)
+        			deleteFiles(splitFileListArray);
+        	}
+        }
+        else if (pNumberSink != null)
+        {
+        	try 
+        	{
+        		mergeSplitFiles(splitFileListArray, pPlan, pNumberSink, null, retainSplitFiles);
+        	}
+        	finally {
+        		if (!retainSplitFiles)
+        			deleteFiles(splitFileListArray);
+        	}
+        }
+        else
         {
-            PriorityQueue<SplitBufferFileWrapper> fileQueueManager = 
-            		new PriorityQueue<SplitBufferFileWrapper>(8, new SplitFileQueueComparator());
-            for (File file : splitFileListArray) {
-            	SplitBufferFileWrapper bfb = new SplitBufferFileWrapper(file);
-            	fileQueueManager.add(bfb);
-            }     
-            
-            BufferedWriter fileBufferOutputWriter = new BufferedWriter(new FileWriter(SORTED_OUTPUT_TMPFILE));
+        	RunFileFactory runFileFactory = createRunFileFactory();
+        	File sortedOutputFile = runFileFactory.createFile("sortedOutputFile");
+            RunFileWriter fileOutputWriter = runFileFactory.createWriter(sortedOutputFile);
+            boolean completed = false;
             try 
             {
-            	while(fileQueueManager.size() > 0) 
-            	{
-            		SplitBufferFileWrapper splitFileWrapper = fileQueueManager.poll();
-                    String r = splitFileWrapper.getCurrentAndReadNextLine();
-                    fileBufferOutputWriter.write(r);
-                    fileBufferOutputWriter.newLine();
-                    
-                    if(splitFileWrapper.isFileEmpty()) 
-                    {
-                    	splitFileWrapper.mFileBufferReader.close();
-                    	splitFileWrapper.mFile.delete();
-                    }                     
-                    else {
-                    	// Add the wrapper back to the queue so it can be sorted again for the next read.
-                    	fileQueueManager.add(splitFileWrapper);
-                    }
-                }
+            	mergeSplitFiles(splitFileListArray, pPlan, fileOutputWriter, null, retainSplitFiles);
+            	completed = true;
             } 
             finally { 
-            	fileBufferOutputWriter.close();
-                for(SplitBufferFileWrapper fileWrapper : fileQueueManager ) 
-                	fileWrapper.close();
+            	fileOutputWriter.close();
+            	if (!retainSplitFiles)
+            		deleteFiles(splitFileListArray);
+            	if (!completed)
+            		sortedOutputFile.delete();
             }
+            mSortedOutputFile = sortedOutputFile;
+            sortedFileBytes = sortedOutputFile.length();
         }
+        
+        // Each merge pass reads and writes every number once
+        long intermediateBytes = mMetrics.getIntermediateMergeBytes();
+        mergeMetrics.end(numberCount * mMetrics.getMergePasses(), mMetrics.getTotalRunBytes() + intermediateBytes, 
+        		intermediateBytes + sortedFileBytes);
+	}
+	
+	/***
+	 * Called to make the first pass of the pre-filter over the input, finding the candidate duplicates.
+	 * 
+	 * @param pNumberSource The source of the input numbers.
+	 * @param pMemoryBudget The number of bytes of memory allowed for the filters.
+	 * @return The pre-filter holding the candidate duplicates.
+	 * @throws IOException Error thrown on access.
+	 */
+	private BloomPrefilter runPrefilter(TrackedNumberSource pNumberSource, long pMemoryBudget) throws IOException
+	{
+		PhaseMetrics prefilterMetrics = mMetrics.startPhase(MatcherPhase.PREFILTER);
+		long countEstimate = Math.max(Math.max(pNumberSource.getLength(), 0) / ESTIMATEDBYTESPERNUMBER, 1);
+		BloomPrefilter prefilter = new BloomPrefilter(pMemoryBudget, countEstimate);
+		NumberInput numberInput = pNumberSource.open();
+		try
+		{
+			prefilter.scan(numberInput);
+		}
+		finally {
+			numberInput.close();
+		}
+		prefilterMetrics.end(pNumberSource.getNumbersRead(), pNumberSource.getBytesRead(), 0);
+		
+		LOGGER.info("Prefilter found " + prefilter.getCandidateCount() + " candidate repeats in " + prefilter.getNumberCount() 
+				+ " numbers" + (prefilter.isSelective() ? "" : ", too many to filter the sort"));
+		return prefilter;
+	}
+	
+	/***
+	 * Helper method to open the checkpoint of the job when a checkpoint directory is set.
+	 * 
+	 * @return The checkpoint, or null if the job isn't checkpointed.
+	 * @throws IOException Error thrown on file access, if the input isn't a file or if the checkpoint is in use.
+	 */
+	private JobCheckpoint openCheckpoint() throws IOException
+	{
+		if (mCheckpointDirectory == null)
+			return null;
+		if (!(mNumberSource instanceof FileNumberSource))
+			throw new IOException("The checkpoint needs a file input, not " + mNumberSource);
+		
+		JobCheckpoint checkpoint = new JobCheckpoint(mCheckpointDirectory, mKeyType, mRunFileFormat, mCollapseDuplicates);
+		checkpoint.open(((FileNumberSource) mNumberSource).getFile());
+		return checkpoint;
+	}
+	
+	/***
+	 * Called to find the duplicates created by the numbers appended to the input since the duplicate index
+	 * was last updated. The appended numbers are split into sorted runs and merged into one sorted file, 
+	 * which is then merged with the sorted run kept in the index.
+	 * 
+	 * @param pDuplicateNumberListener The listener the new duplicate numbers are passed to.
+	 * @throws IOException Error thrown on file access.
+	 */
+	private void detectWithIndex(DuplicateNumberListener pDuplicateNumberListener) throws IOException
+	{
+		if (!(mNumberSource instanceof FileNumberSource))
+			throw new IOException("The duplicate index needs a file input, not " + mNumberSource);
+		File inputFile = ((FileNumberSource) mNumberSource).getFile();
+		
+		DuplicateIndex duplicateIndex = new DuplicateIndex(mIndexDirectory, mKeyType);
+		duplicateIndex.load(inputFile);
+		long startOffset = duplicateIndex.getCoveredOffset();
+		long endOffset = DuplicateIndex.findLastLineEnd(inputFile, startOffset);
+		mMetrics.setDetectionStrategy(DetectionStrategy.EXTERNAL_SORT);
+		LOGGER.info("Duplicate index covers " + startOffset + " bytes and " + duplicateIndex.getNumberCount() 
+				+ " numbers, appended " + (endOffset - startOffset) + " bytes");
+		if (endOffset == startOffset)
+			return;
+		
+		ExternalSortPlan plan = ExternalSortPlan.create(endOffset - startOffset, mConfig);
+		mMetrics.setMergeFanIn(plan.getFanIn());
+		
+		PhaseMetrics splitMetrics = mMetrics.startPhase(MatcherPhase.SPLIT);
+		List<File> splitFileList;
+		NumberScanner numberInput = NumberScanner.openFile(inputFile, startOffset, endOffset);
+		numberInput.setKeyType(mKeyType);
+		try
+		{
+			splitFileList = createRunGenerator(plan, createRunFileFactory()).generateRuns(numberInput);
+		} 
+		finally {
+			numberInput.close();
+		}
+		mMetrics.setRuns(splitFileList);
+		long numberCount = numberInput.getNumberCount();
+		splitMetrics.end(numberCount, numberInput.getBytesRead(), mMetrics.getTotalRunBytes());
+		
+		PhaseMetrics mergeMetrics = mMetrics.startPhase(MatcherPhase.MERGE);
+		long indexBytes = duplicateIndex.getIndexBytes();
+		long appendedBytes = 0;
+		File appendedFile = File.createTempFile("appendedFile", DuplicateIndex.INDEXFORMAT.getFileExtension(), mConfig.getTempDirectory());
+		try
+		{
+			RunFileWriter appendedWriter = DuplicateIndex.INDEXFORMAT.createWriter(appendedFile);
+			try 
+			{
+				mergeSplitFiles(splitFileList, plan, appendedWriter);
+			}
+			finally 
+			{
+				appendedWriter.close();
+				deleteFiles(splitFileList);
+			}
+			appendedBytes = appendedFile.length();
+			duplicateIndex.update(inputFile, appendedFile, endOffset, pDuplicateNumberListener);
+		}
+		finally {
+			appendedFile.delete();
+		}
+		
+		// The appended numbers are merged into one file, which is then merged with the whole index
+		long intermediateBytes = mMetrics.getIntermediateMergeBytes() + appendedBytes;
+		mergeMetrics.end(numberCount * mMetrics.getMergePasses() + duplicateIndex.getNumberCount(), 
+				mMetrics.getTotalRunBytes() + intermediateBytes + indexBytes, intermediateBytes + duplicateIndex.getIndexBytes());
+	}
+	
+	/***
+	 * Called to set the sorted file of numbers read by the next validation, in place of the file written
+	 * when rendering the input numbers.
+	 * 
+	 * @param pSortedOutputFile The sorted file, which is deleted once validated.
+	 */
+	void setSortedOutputFile(File pSortedOutputFile)
+	{
+		mSortedOutputFile = pSortedOutputFile;
 	}
 	
 	/***
 	 * Called to validate the input numbers which are now in a new temp file sorted. If a sequence of any given number
 	 * repeats itself one after the other then a duplicate exists and output this request. This method will only print
-	 * out the first occurrence of a matched number once.
+	 * out the first occurrence of a matched number once. If the duplicate scan was fused with the merge or the duplicates
+	 * were found without sorting, the duplicates already found are reported instead.
 	 * 
 	 * @param pReturnDuplicateNumbers Boolean to flag if the duplicate numbers should be returned for further processing.
 	 * @param pSupressOutput Boolean to flag to indicate if we wish to display the output to the console.
@@ -139,110 +857,584 @@ public class NumberController
     public ArrayList<String> validateAndPrintDuplicateNumbers(boolean pReturnDuplicateNumbers, boolean pSupressOutput) throws IOException
     {
     	ArrayList<String> pReturnArray = new ArrayList<String>();    	
-		BufferedReader fileBufferReader = new BufferedReader(new FileReader(SORTED_OUTPUT_TMPFILE), 1024);
-		
-		String prevLine = null;
-		String nextLine = null;		
-		int prevMatchedNo = -1;
-		try 
-		{
-			while ((nextLine = fileBufferReader.readLine()) != null)
-			{
-				// Condition to skip the very first read since we've nothing to compare it to
-				if (prevLine == null)
-				{
-					prevLine = nextLine;
-					continue;
-				}
-				else 
-				{
-					// Check previous line against next line for duplicate match					
-					if (prevLine.equals(nextLine))
-					{						
-						// Simple check to ensure we only print out duplicate message once if more than one entry present 
-						int nextMatchedNo = Integer.valueOf(nextLine).intValue();						
-						if (prevMatchedNo != nextMatchedNo)
-						{
-							if (!pSupressOutput)
-								System.out.println("Duplicate number found: " + prevLine);
-							if (pReturnDuplicateNumbers)
-								pReturnArray.add(prevLine);								
-							
-							prevMatchedNo = Integer.valueOf(prevLine).intValue();
-						}
-					}
-					prevLine = nextLine;
-				}
-			}
-		} 
-        finally 
-        { 
-        	fileBufferReader.close();
-    		File sortedOutputFile = new File(SORTED_OUTPUT_TMPFILE);
-    		sortedOutputFile.delete();        	
-        }
-		
+    	PhaseMetrics validateMetrics = mMetrics.startPhase(MatcherPhase.VALIDATE);
+    	long numberCount = 0;
+    	long sortedFileBytes = 0;
+    	
+    	// Scan the sorted file for duplicates unless they were already found while rendering
+    	DuplicateNumberList duplicateNumberList = mDuplicateNumberList;
+    	mDuplicateNumberList = null;
+    	if (duplicateNumberList == null)
+    	{
+    		duplicateNumberList = new DuplicateNumberList();
+    		DuplicateNumberScanner duplicateNumberScanner = new DuplicateNumberScanner(duplicateNumberList);
+    		File sortedOutputFile = mSortedOutputFile;
+    		mSortedOutputFile = null;
+    		if (sortedOutputFile == null)
+    			throw new IOException("The input numbers have not been rendered");
+    		
+    		sortedFileBytes = sortedOutputFile.length();
+    		RunFileReader sortedFileReader = mRunFileFormat.openReader(sortedOutputFile);
+    		try 
+    		{
+    			// Read in blocks so the scanner compares the adjacent numbers of each block in groups
+    			long[] block = new long[SCANBLOCKSIZE];
+    			int count;
+    			while ((count = sortedFileReader.read(block, 0, block.length)) > 0)
+    			{
+    				duplicateNumberScanner.write(block, 0, count);
+    				numberCount += count;
+    			}
+    		} 
+    		finally 
+    		{ 
+    			sortedFileReader.close();
+    			sortedOutputFile.delete();        	
+    		}
+    	}
+    	
+    	// The lines are printed through a buffer rather than flushing the console for every duplicate
+    	if (!pSupressOutput)
+    	{
+    		DuplicateNumberPrinter duplicateNumberPrinter = new DuplicateNumberPrinter(System.out, mKeyType);
+    		duplicateNumberList.deliverTo(duplicateNumberPrinter);
+    		duplicateNumberPrinter.flush();
+    	}
+    	if (pReturnDuplicateNumbers)
+    	{
+    		for (int i=0; i<duplicateNumberList.size(); i++)
+    			pReturnArray.add(mKeyType.format(duplicateNumberList.get(i)));
+    	}
+    	
+    	validateMetrics.end(numberCount, sortedFileBytes, 0);
+    	endMetrics(duplicateNumberList.size());
 		return pReturnArray;
     }
 	
     /***
-     * Called to perform a simple sort on a list of numbers and to write the new sorted list to a temp
-     * output file.
+     * Helper method to start the metrics of a new job, registering them as an MBean if enabled.
+     */
+    private void startMetrics()
+    {
+    	mMetrics.unregisterMBean();
+    	mMetrics = new MatcherMetrics(mNumberSource.toString(), mNumberSource.getLength());
+    	if (mMetricsMBeanEnabled)
+    	{
+    		try 
+    		{
+    			mMetrics.registerMBean();
+    		}
+    		catch (JMException ex)
+    		{
+    			LOGGER.warning("Unable to register the metrics MBean: " + ex.getMessage());
+    		}
+    	}
+    }
+    
+    /***
+     * Helper method to complete the metrics of the job, logging them and writing the summary file if set.
+     * 
+     * @param pDuplicateCount The count of duplicate numbers found.
+     * @throws IOException Error thrown on access to the summary file.
+     */
+    private void endMetrics(long pDuplicateCount) throws IOException
+    {
+    	mMetrics.endJob(pDuplicateCount);
+    	LOGGER.info("Job metrics: " + mMetrics.toJson());
+    	if (mMetricsSummaryFile != null)
+    		mMetrics.writeSummary(mMetricsSummaryFile);
+    }
+    
+    /***
+     * Helper method to create the run generator for the configured run generation strategy and threads.
+     * 
+     * @param pPlan The plan of the memory to use for each run.
+     * @param pRunFileFactory The factory of the split files.
+     * @return The run generator.
+     */
+    private RunGenerator createRunGenerator(ExternalSortPlan pPlan, RunFileFactory pRunFileFactory)
+    {
+    	if (mRunGenerationStrategy == RunGenerationStrategy.REPLACEMENT_SELECTION)
+    		return new ReplacementSelectionRunGenerator(pRunFileFactory, pPlan.getRunMemory());
+    	
+    	// Read, sort and write the runs in a pipeline sharing the same memory budget
+    	if (mThreadCount > 1)
+    		return new ParallelRunGenerator(pRunFileFactory, pPlan.getRunMemory(), mThreadCount);
+    	
+    	return new ChunkSortRunGenerator(pRunFileFactory, pPlan.getRunMemory());
+    }
+    
+    /***
+     * Helper method to create the factory of the run files in the configured format and temp directory.
+     * 
+     * @return The run file factory.
+     */
+    private RunFileFactory createRunFileFactory()
+    {
+    	return new RunFileFactory(mRunFileFormat, mKeyType, mCollapseDuplicates, mConfig.getTempDirectory());
+    }
+	
+    /***
+     * Called to merge the sorted split files using the configured merge engine. When there are more split
+     * files than the plan allows to be merged at once, groups of split files are first merged into larger
+     * intermediate files until few enough remain for the final merge.
+     * 
+     * @param pSplitFileList The list of sorted split files to merge.
+     * @param pPlan The plan of the memory and merge fan-in to use.
+     * @param pNumberSink The sink the merged numbers are passed to in sorted order.
+     * @throws IOException Error reported on file access.
+     */
+    void mergeSplitFiles(List<File> pSplitFileList, ExternalSortPlan pPlan, NumberSink pNumberSink) throws IOException
+    {
+    	mergeSplitFiles(pSplitFileList, pPlan, pNumberSink, null, false);
+    }
+    
+    /***
+     * Called to merge the sorted split files, passing the merged numbers to the given sink or the duplicates
+     * found among them to the given listener. Only the duplicates are needed in the second case, so the
+     * final merge can be split into ranges that are merged in parallel.
+     * 
+     * @param pSplitFileList The list of sorted split files to merge.
+     * @param pPlan The plan of the memory and merge fan-in to use.
+     * @param pNumberSink The sink the merged numbers are passed to in sorted order, null if only the duplicates are needed.
+     * @param pDuplicateNumberListener The listener the duplicate numbers are passed to, null if a sink is given.
+     * @param pRetainSplitFiles True to keep the split files when they are merged into intermediate files.
+     * @throws IOException Error reported on file access.
+     */
+    private void mergeSplitFiles(List<File> pSplitFileList, ExternalSortPlan pPlan, NumberSink pNumberSink, 
+    		DuplicateNumberListener pDuplicateNumberListener, boolean pRetainSplitFiles) throws IOException
+    {
+    	if (pSplitFileList.size() == 0)
+    		return;
+    	
+    	// Read the runs ahead of the merge and write the merged runs behind it on a pool of I/O threads
+    	RunIoService runIoService = null;
+    	if (mIoThreadCount > 0)
+    		runIoService = new RunIoService(mIoThreadCount);
+    	
+    	List<File> mergeFileList = pSplitFileList;
+    	int passIndex = 0;
+    	try
+    	{
+    		while (mergeFileList.size() > pPlan.getFanIn())
+    		{
+    			boolean retainMergedFiles = pRetainSplitFiles && mergeFileList == pSplitFileList;
+    			mergeFileList = mergeIntermediatePass(mergeFileList, pPlan, passIndex++, retainMergedFiles, runIoService);
+    			
+    			long intermediateBytes = 0;
+    			for (File mergeFile : mergeFileList)
+    				intermediateBytes += mergeFile.length();
+    			mMetrics.addMergePass(intermediateBytes);
+    		}
+    		
+    		// Only run files are written behind the merge, other sinks are called on the merging thread
+    		if (pDuplicateNumberListener != null)
+    			mergeRunsForDuplicates(mergeFileList, pPlan, pDuplicateNumberListener, runIoService);
+    		else if (pNumberSink instanceof RunFileWriter)
+    			mergeRunsToFile(mergeFileList, pPlan, (RunFileWriter) pNumberSink, runIoService);
+    		else
+    			mergeRuns(mergeFileList, pPlan, pNumberSink, runIoService);
+    		mMetrics.addMergePass(0);
+    	}
+    	finally 
+    	{
+    		if (runIoService != null)
+    			runIoService.shutdown();
+    		if (mergeFileList != pSplitFileList)
+    			deleteFiles(mergeFileList);
+    	}
+    }
+    
+    /***
+     * Called to run one intermediate merge pass, merging each group of split files the size of the fan-in
+     * into a new larger sorted file. The merged split files are deleted as each group completes unless they
+     * are to be retained.
+     * 
+     * @param pSplitFileList The list of sorted split files to merge.
+     * @param pPlan The plan of the memory and merge fan-in to use.
+     * @param pPassIndex The index of the merge pass, used to name the new files.
+     * @param pRetainMergedFiles True to keep the split files once they are merged.
+     * @param pRunIoService The I/O threads used to read and write the files, null to use the merging thread.
+     * @return The list of merged files.
+     * @throws IOException Error reported on file access.
+     */
+    private List<File> mergeIntermediatePass(List<File> pSplitFileList, ExternalSortPlan pPlan, int pPassIndex, 
+    		boolean pRetainMergedFiles, RunIoService pRunIoService) throws IOException
+    {
+    	ArrayList<File> mergedFileList = new ArrayList<File>();
+    	RunFileFactory runFileFactory = createRunFileFactory();
+    	try
+    	{
+    		for (int i=0; i<pSplitFileList.size(); i+=pPlan.getFanIn())
+    		{
+    			List<File> groupFileList = pSplitFileList.subList(i, Math.min(i + pPlan.getFanIn(), pSplitFileList.size()));
+    			File mergedFile = runFileFactory.createFile("mergeFile_" + pPassIndex + "_" + mergedFileList.size());
+    			mergedFileList.add(mergedFile);
+    			
+    			RunFileWriter fileRunWriter = runFileFactory.createWriter(mergedFile);
+    			try 
+    			{
+    				mergeRunsToFile(groupFileList, pPlan, fileRunWriter, pRunIoService);
+    			}
+    			finally {
+    				fileRunWriter.close();
+    			}
+    			if (!pRetainMergedFiles)
+    				deleteFiles(groupFileList);
+    		}
+    	}
+    	catch (IOException ex)
+    	{
+    		deleteFiles(mergedFileList);
+    		throw ex;
+    	}
+    	return mergedFileList;
+    }
+    
+    /***
+     * Called to merge the sorted runs of several sources in one pass, passing each merged number to the
+     * scanner along with the index of its source. The fan-in is shared between the sources, so the runs of
+     * a source with more than its share are first merged into larger intermediate files on their own. The
+     * runs are merged in order of their source and the tree of losers takes equal numbers from the earlier
+     * run first, so the sources of equal numbers arrive in order.
+     * 
+     * @param pSourceRunList The list of sorted runs of each source, replaced by the intermediate files.
+     * @param pPlan The plan of the memory and merge fan-in to use.
+     * @param pSourceSetScanner The scanner the tagged numbers are passed to in sorted order.
+     * @throws IOException Error reported on file access.
+     */
+    private void mergeTaggedRuns(List<List<File>> pSourceRunList, ExternalSortPlan pPlan, SourceSetScanner pSourceSetScanner) 
+    		throws IOException
+    {
+    	RunIoService runIoService = null;
+    	if (mIoThreadCount > 0)
+    		runIoService = new RunIoService(mIoThreadCount);
+    	
+    	try
+    	{
+    		int sourceFanIn = Math.max(pPlan.getFanIn() / pSourceRunList.size(), 1);
+    		int passIndex = 0;
+    		boolean merging = true;
+    		while (merging)
+    		{
+    			merging = false;
+    			long intermediateBytes = 0;
+    			for (int i=0; i<pSourceRunList.size(); i++)
+    			{
+    				if (pSourceRunList.get(i).size() <= sourceFanIn)
+    					continue;
+    				
+    				List<File> mergeFileList = mergeIntermediatePass(pSourceRunList.get(i), pPlan, passIndex, false, runIoService);
+    				pSourceRunList.set(i, mergeFileList);
+    				for (File mergeFile : mergeFileList)
+    					intermediateBytes += mergeFile.length();
+    				merging = true;
+    			}
+    			
+    			if (merging)
+    			{
+    				mMetrics.addMergePass(intermediateBytes);
+    				passIndex++;
+    			}
+    		}
+    		
+    		ArrayList<File> runFileList = new ArrayList<File>();
+    		ArrayList<Integer> runSourceList = new ArrayList<Integer>();
+    		for (int i=0; i<pSourceRunList.size(); i++)
+    		{
+    			for (File runFile : pSourceRunList.get(i))
+    			{
+    				runFileList.add(runFile);
+    				runSourceList.add(Integer.valueOf(i));
+    			}
+    		}
+    		
+    		int[] runSources = new int[runSourceList.size()];
+    		for (int i=0; i<runSources.length; i++)
+    			runSources[i] = runSourceList.get(i).intValue();
+    		
+    		List<RunFileReader> runReaderList = openRunReaders(runFileList, pPlan, runIoService);
+    		LoserTreeMerger merger = new LoserTreeMerger(runReaderList, pPlan.getBlockSize(runFileList.size(), runIoService != null));
+    		try
+    		{
+    			while (merger.hasNext())
+    			{
+    				long number = merger.next();
+    				pSourceSetScanner.write(number, runSources[merger.getLastRun()]);
+    			}
+    		}
+    		finally {
+    			merger.close();
+    		}
+    		mMetrics.addMergePass(0);
+    	}
+    	finally 
+    	{
+    		if (runIoService != null)
+    			runIoService.shutdown();
+    	}
+    }
+    
+    /***
+     * Called to merge a set of sorted files no larger than the fan-in into a run file. When I/O threads are
+     * used the merged numbers are encoded and written to the file on an I/O thread behind the merge.
      * 
-     * @param bufferNumberList The list of numbers to sort.
-     * @param pIndex A unique file index number to help identify sequence of creation and uniqueness.
+     * @param pSplitFileList The list of sorted files to merge.
+     * @param pPlan The plan of the memory to use.
+     * @param pRunFileWriter The writer of the run file the merged numbers are stored in.
+     * @param pRunIoService The I/O threads used to read and write the files, null to use the merging thread.
+     * @throws IOException Error reported on file access.
+     */
+    private void mergeRunsToFile(List<File> pSplitFileList, ExternalSortPlan pPlan, RunFileWriter pRunFileWriter, 
+    		RunIoService pRunIoService) throws IOException
+    {
+    	if (pRunIoService == null)
+    	{
+    		mergeRuns(pSplitFileList, pPlan, pRunFileWriter, null);
+    		return;
+    	}
+    	
+    	WriteBehindNumberSink writeBehindSink = new WriteBehindNumberSink(pRunFileWriter, 
+    			pPlan.getBlockSize(pSplitFileList.size(), true), pRunIoService);
+    	try
+    	{
+    		mergeRuns(pSplitFileList, pPlan, writeBehindSink, pRunIoService);
+    		writeBehindSink.flush();
+    	}
+    	finally {
+    		writeBehindSink.discard();
+    	}
+    }
+    
+    /***
+     * Called to merge a set of sorted files no larger than the fan-in and find the duplicates among them. 
+     * When more than one thread is used and the files are binary runs with an index, the files are split 
+     * into as many ranges of values as there are threads and the open files allowed can hold, and each
+     * range is merged on its own thread.
      * 
-     * @return A file object reference to the sorted and created file.
+     * @param pSplitFileList The list of sorted files to merge.
+     * @param pPlan The plan of the memory and open files to use.
+     * @param pDuplicateNumberListener The listener the duplicate numbers are passed to.
+     * @param pRunIoService The I/O threads used to read the files ahead of the merge, null to use the merging thread.
      * @throws IOException Error reported on file access.
      */
-    private File sortBufferNumberList(List<String> bufferNumberList, int pIndex) throws IOException  
+    private void mergeRunsForDuplicates(List<File> pSplitFileList, ExternalSortPlan pPlan, 
+    		DuplicateNumberListener pDuplicateNumberListener, RunIoService pRunIoService) throws IOException
     {
-    	Collections.sort(bufferNumberList, mSimpleNumberComparator);
-        File splitFile = File.createTempFile("splitFile_" + String.valueOf(pIndex), ".txt");
-        BufferedWriter fileBufferWriter = new BufferedWriter(new FileWriter(splitFile));
+    	// Every range opens every file, so the ranges are limited by the files that can be merged at once
+    	int partitionCount = Math.min(mThreadCount, pPlan.getFanIn() / pSplitFileList.size());
+    	List<BinaryRunIndex> runIndexList = null;
+    	if (partitionCount > 1 && mRunFileFormat != RunFileFormat.TEXT)
+    		runIndexList = PartitionedMerger.loadIndexes(pSplitFileList);
+    	
+    	if (runIndexList == null)
+    	{
+    		DuplicateNumberScanner duplicateNumberScanner = new DuplicateNumberScanner(pDuplicateNumberListener);
+    		if (mMergeEngine == MergeEngine.PRIORITY_QUEUE)
+    		{
+    			mergeRuns(pSplitFileList, pPlan, duplicateNumberScanner, pRunIoService);
+    			return;
+    		}
+    		
+    		List<RunFileReader> runReaderList = openRunReaders(pSplitFileList, pPlan, pRunIoService);
+    		scanWithLoserTree(runReaderList, pPlan.getBlockSize(pSplitFileList.size(), pRunIoService != null), 
+    				duplicateNumberScanner);
+    		return;
+    	}
+    	
+    	int readerCount = pSplitFileList.size() * partitionCount;
+    	boolean readAhead = pRunIoService != null;
+    	PartitionedMerger merger = new PartitionedMerger(runIndexList, partitionCount, 
+    			pPlan.getReadBufferSize(readerCount, readAhead), pPlan.getBlockSize(readerCount, readAhead), pRunIoService);
+    	LOGGER.info("Merging " + pSplitFileList.size() + " runs in " + merger.getPartitionCount() + " ranges in parallel");
+    	merger.findDuplicates(pDuplicateNumberListener, createRunFileFactory());
+    }
+    
+    /***
+     * Called to merge a set of sorted files no larger than the fan-in with the configured merge engine.
+     * 
+     * @param pSplitFileList The list of sorted files to merge.
+     * @param pPlan The plan of the memory to use.
+     * @param pNumberSink The sink the merged numbers are passed to in sorted order.
+     * @param pRunIoService The I/O threads used to read the files ahead of the merge, null to use the merging thread.
+     * @throws IOException Error reported on file access.
+     */
+    private void mergeRuns(List<File> pSplitFileList, ExternalSortPlan pPlan, NumberSink pNumberSink, 
+    		RunIoService pRunIoService) throws IOException
+    {
+    	List<RunFileReader> runReaderList = openRunReaders(pSplitFileList, pPlan, pRunIoService);
+    	int blockSize = pPlan.getBlockSize(pSplitFileList.size(), pRunIoService != null);
+    	if (mMergeEngine == MergeEngine.PRIORITY_QUEUE)
+    		mergeWithPriorityQueue(runReaderList, pNumberSink);
+    	else
+    		mergeWithLoserTree(runReaderList, blockSize, pNumberSink);
+    }
+    
+    /***
+     * Called to open the readers of a set of sorted files no larger than the fan-in. The memory allowed is
+     * shared between the files for their read buffers, and when I/O threads are used each file is read 
+     * ahead of the merge into two blocks of decoded numbers.
+     * 
+     * @param pSplitFileList The list of sorted files to open.
+     * @param pPlan The plan of the memory to use.
+     * @param pRunIoService The I/O threads used to read the files ahead of the merge, null to use the merging thread.
+     * @return The list of run readers.
+     * @throws IOException Error reported on file access.
+     */
+    private List<RunFileReader> openRunReaders(List<File> pSplitFileList, ExternalSortPlan pPlan, 
+    		RunIoService pRunIoService) throws IOException
+    {
+    	boolean readAhead = pRunIoService != null;
+    	int readBufferSize = pPlan.getReadBufferSize(pSplitFileList.size(), readAhead);
+    	int blockSize = pPlan.getBlockSize(pSplitFileList.size(), readAhead);
+    	
+    	ArrayList<RunFileReader> runReaderList = new ArrayList<RunFileReader>();
+    	try
+    	{
+    		for (File file : pSplitFileList)
+    		{
+    			RunFileReader runReader = mRunFileFormat.openReader(file, readBufferSize);
+    			if (readAhead)
+    				runReader = new ReadAheadRunFileReader(runReader, blockSize, pRunIoService);
+    			runReaderList.add(runReader);
+    		}
+    	}
+    	catch (IOException ex)
+    	{
+    		closeRunReaders(runReaderList);
+    		throw ex;
+    	}
+    	return runReaderList;
+    }
+    
+    /***
+     * Called to merge the sorted split files into the output file using a priority queue ordered by the
+     * current number of each split file.
+     * 
+     * @param pRunReaderList The list of readers of the sorted split files to merge.
+     * @param pNumberSink The sink the merged numbers are passed to in sorted order.
+     * @throws IOException Error reported on file access.
+     */
+    private void mergeWithPriorityQueue(List<RunFileReader> pRunReaderList, NumberSink pNumberSink) throws IOException
+    {
+        PriorityQueue<SplitBufferFileWrapper> fileQueueManager = 
+        		new PriorityQueue<SplitBufferFileWrapper>(8, new SplitFileQueueComparator());
         try 
         {
-            for(String number : bufferNumberList) 
-            {
-            	fileBufferWriter.write(number);
-            	fileBufferWriter.newLine();
-            }
+        	for (RunFileReader runReader : pRunReaderList) {
+        		SplitBufferFileWrapper bfb = new SplitBufferFileWrapper(runReader);
+        		if (bfb.isFileEmpty())
+        			bfb.close();
+        		else
+        			fileQueueManager.add(bfb);
+        	}     
+        	
+        	while(fileQueueManager.size() > 0) 
+        	{
+        		SplitBufferFileWrapper splitFileWrapper = fileQueueManager.poll();
+        		pNumberSink.write(splitFileWrapper.getCurrentAndReadNextNumber());
+                
+        		if(splitFileWrapper.isFileEmpty()) {
+        			splitFileWrapper.close();
+        		}                     
+        		else {
+        			// Add the wrapper back to the queue so it can be sorted again for the next read.
+        			fileQueueManager.add(splitFileWrapper);
+        		}
+        	}
         } 
-        finally {
-        	fileBufferWriter.close();
+        finally { 
+        	closeRunReaders(pRunReaderList);
         }
-        return splitFile;
-    }	
-	
+    }
+    
     /***
-     * Helper method to try and determine the best possible size of data for each split file. At the 
-     * moment the memory allowed is a fixed size but this can be made more efficient if the memory size
-     * of the machine is not known to pull in the current free memory on the machine and make calculations 
-     * based on free memory at that time. Disk space may also need to be checked as a considerations if 
-     * the potential data input is large.
+     * Called to merge the sorted split files into the output file using a tree of losers over the
+     * current number of each split file.
      * 
-     * @param pDataLength The length of the data that will be processed in total.
-     * @return Returns the best possible split data size based on machine and memory environment data.
+     * @param pRunReaderList The list of readers of the sorted split files to merge.
+     * @param pBlockSize The count of decoded numbers the merger holds for each split file.
+     * @param pNumberSink The sink the merged numbers are passed to in sorted order.
+     * @throws IOException Error reported on file access.
      */
-    private long calculatePotentialSplitFileLength(long pDataLength) 
-    {    	
-        long dataSizePerFile = pDataLength / MAXNUMFILES ;
-        if( dataSizePerFile < MAXMEMORYAVAIL)
-        {
-        	/*
-        	 * If the data size comes out to be less, fix it to the amount of memory were allowed to have to 
-        	 * reduce the number of files being created.
-        	 */
-        	dataSizePerFile = MAXMEMORYAVAIL;
-        }
-        else 
-        {
-            if(dataSizePerFile >= MAXMEMORYAVAIL) 
-            {
-            	System.out.println("Potential memory error may occur with amount of data being processed. Unable to proceed.");
-            	System.exit(0);
-            }
-        }
-        return dataSizePerFile;
+    private void mergeWithLoserTree(List<RunFileReader> pRunReaderList, int pBlockSize, NumberSink pNumberSink) throws IOException
+    {
+    	LoserTreeMerger merger = new LoserTreeMerger(pRunReaderList, pBlockSize);
+    	try
+    	{
+    		while (merger.hasNext())
+    			pNumberSink.write(merger.next());
+    	}
+    	finally {
+    		merger.close();
+    	}
+    }
+    
+    /***
+     * Called to merge the sorted split files using a tree of losers and scan the merged numbers for 
+     * duplicates a block at a time, so the scanner compares the adjacent numbers of each block in groups.
+     * 
+     * @param pRunReaderList The list of readers of the sorted split files to merge.
+     * @param pBlockSize The count of decoded numbers the merger holds for each split file.
+     * @param pDuplicateNumberScanner The scanner the merged numbers are passed to in sorted order.
+     * @throws IOException Error reported on file access.
+     */
+    private void scanWithLoserTree(List<RunFileReader> pRunReaderList, int pBlockSize, 
+    		DuplicateNumberScanner pDuplicateNumberScanner) throws IOException
+    {
+    	LoserTreeMerger merger = new LoserTreeMerger(pRunReaderList, pBlockSize);
+    	try
+    	{
+    		long[] block = new long[SCANBLOCKSIZE];
+    		int count;
+    		while ((count = merger.read(block, 0, block.length)) > 0)
+    			pDuplicateNumberScanner.write(block, 0, count);
+    	}
+    	finally {
+    		merger.close();
+    	}
+    }
+    
+    /***
+     * Helper method to close the given run readers, including any already closed as their run ended.
+     * 
+     * @param pRunReaderList The list of run readers to close.
+     */
+    private void closeRunReaders(List<RunFileReader> pRunReaderList)
+    {
+    	for (RunFileReader runReader : pRunReaderList)
+    		runReader.close();
+    }
+    
+    /***
+     * Helper method to delete the given temp files once they are no longer needed.
+     * 
+     * @param pFileList The list of files to delete.
+     */
+    private void deleteFiles(List<File> pFileList)
+    {
+    	for (File file : pFileList)
+    		file.delete();
+    }
+    
+    /***
+     * Listener counting the duplicate numbers passed on to another listener.
+     */
+    private static class DuplicateNumberCounter implements DuplicateNumberListener
+    {
+    	private DuplicateNumberListener mDuplicateNumberListener;
+    	private long mCount;
+    	
+    	public DuplicateNumberCounter(DuplicateNumberListener pDuplicateNumberListener)
+    	{
+    		mDuplicateNumberListener = pDuplicateNumberListener;
+    	}
+    	
+    	@Override
+    	public void duplicateFound(long pNumber) throws IOException
+    	{
+    		mCount++;
+    		mDuplicateNumberListener.duplicateFound(pNumber);
+    	}
     }
 }
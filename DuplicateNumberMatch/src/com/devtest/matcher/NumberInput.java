@@ -0,0 +1,29 @@
+package com.devtest.matcher;
+
+import java.io.IOException;
+
+/***
+ * Source of the input numbers to validate, returning each number as a primitive value in the order they
+ * were read.
+ */
+public interface NumberInput 
+{
+	/***
+	 * @return True if there are more numbers left to read, False otherwise.
+	 * @throws IOException Error thrown on access or if the input holds a malformed number.
+	 */
+	boolean hasNext() throws IOException;
+	
+	/***
+	 * Called to read the next number. Should only be called when {@link #hasNext()} is true.
+	 * 
+	 * @return The next number.
+	 * @throws IOException Error thrown on access or if the input holds a malformed number.
+	 */
+	long next() throws IOException;
+	
+	/***
+	 * Perform some cleanup of the input.
+	 */
+	void close();
+}
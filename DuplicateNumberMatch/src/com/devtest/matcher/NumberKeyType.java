@@ -0,0 +1,146 @@
+package com.devtest.matcher;
+
+/***
+ * The types of key the input numbers can be read as. Every key is held as a primitive long while it is
+ * merged, so no key type falls back to boxed objects, and keys that fit in an int are sorted as ints so
+ * each run holds twice as many numbers in the same memory.
+ *
+ * INT keys are 32 bit signed numbers and LONG keys are 64 bit signed numbers. DIGITS keys are strings of a
+ * fixed count of digits, such as account or phone numbers, where leading zeros are kept. Since every key
+ * has the same count of digits, comparing the strings bytewise gives the same order as comparing their
+ * values, so each key is packed into a long and printed back with its leading zeros.
+ *
+ * -Dmatcher.keyType=long     One of int, long or digits:N for strings of N digits, N from 1 to 18.
+ */
+public final class NumberKeyType
+{
+	public static final String KEYTYPE_PROPERTY = "matcher.keyType";
+
+	// Max count of digits of a digit string key, the most that always fit in a long
+	public static final int MAXDIGITCOUNT = 18;
+
+	public static final NumberKeyType INT = new NumberKeyType("int", Integer.MIN_VALUE, Integer.MAX_VALUE, 0);
+	public static final NumberKeyType LONG = new NumberKeyType("long", Long.MIN_VALUE, Long.MAX_VALUE, 0);
+
+	private String mName;
+	private long mMinValue;
+	private long mMaxValue;
+	private int mDigitCount;
+
+	private NumberKeyType(String pName, long pMinValue, long pMaxValue, int pDigitCount)
+	{
+		mName = pName;
+		mMinValue = pMinValue;
+		mMaxValue = pMaxValue;
+		mDigitCount = pDigitCount;
+	}
+
+	/***
+	 * Called to create the key type of strings of a fixed count of digits.
+	 *
+	 * @param pDigitCount The count of digits of every key, from 1 to 18.
+	 * @return The key type.
+	 * @throws IllegalArgumentException Error thrown if the count of digits is not supported.
+	 */
+	public static NumberKeyType digits(int pDigitCount)
+	{
+		if (pDigitCount < 1 || pDigitCount > MAXDIGITCOUNT)
+			throw new IllegalArgumentException("Digit string keys must have 1 to " + MAXDIGITCOUNT + " digits: " + pDigitCount);
+
+		long maxValue = 1;
+		for (int i=0; i<pDigitCount; i++)
+			maxValue *= 10;
+		return new NumberKeyType("digits:" + pDigitCount, 0, maxValue - 1, pDigitCount);
+	}
+
+	/***
+	 * Called to parse a key type from its name, one of int, long or digits:N.
+	 *
+	 * @param pName The name of the key type.
+	 * @return The key type.
+	 * @throws IllegalArgumentException Error thrown if the name is not a valid key type.
+	 */
+	public static NumberKeyType parse(String pName)
+	{
+		String name = pName.trim().toLowerCase();
+		if (name.equals(INT.mName))
+			return INT;
+		if (name.equals(LONG.mName))
+			return LONG;
+
+		if (name.startsWith("digits:"))
+		{
+			try
+			{
+				return digits(Integer.parseInt(name.substring("digits:".length()).trim()));
+			}
+			catch (NumberFormatException ex) {}
+		}
+		throw new IllegalArgumentException("Invalid key type: " + pName);
+	}
+
+	/***
+	 * @return The least value of a key.
+	 */
+	public long getMinValue()
+	{
+		return mMinValue;
+	}
+
+	/***
+	 * @return The greatest value of a key.
+	 */
+	public long getMaxValue()
+	{
+		return mMaxValue;
+	}
+
+	/***
+	 * @return The count of digits every key must have, or 0 if the keys are numbers of any length.
+	 */
+	public int getDigitCount()
+	{
+		return mDigitCount;
+	}
+
+	/***
+	 * @return True if every key fits in an int, so the keys are sorted and stored as ints.
+	 */
+	public boolean isIntWidth()
+	{
+		return mMinValue >= Integer.MIN_VALUE && mMaxValue <= Integer.MAX_VALUE;
+	}
+
+	/***
+	 * @return The number of bytes of memory used to hold each key while the runs are sorted.
+	 */
+	public int getBytesPerNumber()
+	{
+		return isIntWidth() ? 4 : 8;
+	}
+
+	/***
+	 * Called to return the text of a key as it appeared in the input, with the leading zeros of a digit
+	 * string key.
+	 *
+	 * @param pNumber The key.
+	 * @return The text of the key.
+	 */
+	public String format(long pNumber)
+	{
+		String text = Long.toString(pNumber);
+		if (text.length() >= mDigitCount)
+			return text;
+
+		StringBuilder builder = new StringBuilder(mDigitCount);
+		for (int i=text.length(); i<mDigitCount; i++)
+			builder.append('0');
+		return builder.append(text).toString();
+	}
+
+	@Override
+	public String toString()
+	{
+		return mName;
+	}
+}
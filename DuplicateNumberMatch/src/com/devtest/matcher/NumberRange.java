@@ -0,0 +1,71 @@
+package com.devtest.matcher;
+
+import java.io.IOException;
+
+/***
+ * The range of values found in the input numbers along with the count of numbers, found with a quick
+ * pre-scan of the input or given as a hint by the user.
+ */
+class NumberRange 
+{
+	public long mMin;
+	public long mMax;
+	public long mCount;
+	
+	/***
+	 * Constructor to create a new number range.
+	 * 
+	 * @param pMin The least number in the range.
+	 * @param pMax The most number in the range.
+	 * @param pCount The count of numbers in the input, or -1 if not known.
+	 */
+	public NumberRange(long pMin, long pMax, long pCount)
+	{
+		mMin = pMin;
+		mMax = pMax;
+		mCount = pCount;
+	}
+	
+	/***
+	 * Called to find the range of values by reading through all the input numbers once.
+	 * 
+	 * @param pNumberSource The source of the input numbers.
+	 * @return The range of the input numbers, with a count of 0 if the input is empty.
+	 * @throws IOException Error thrown on access.
+	 */
+	public static NumberRange scan(NumberSource pNumberSource) throws IOException
+	{
+		long min = Long.MAX_VALUE;
+		long max = Long.MIN_VALUE;
+		long count = 0;
+		NumberInput numberInput = pNumberSource.open();
+		try 
+		{
+			while (numberInput.hasNext())
+			{
+				long number = numberInput.next();
+				if (number < min)
+					min = number;
+				if (number > max)
+					max = number;
+				count++;
+			}
+		}
+		finally {
+			numberInput.close();
+		}
+		
+		if (count == 0)
+			return new NumberRange(0, 0, 0);
+		return new NumberRange(min, max, count);
+	}
+	
+	/***
+	 * @return The count of distinct values in the range less one, as an unsigned value so the full range 
+	 * of longs, which holds one more value than a long can count, is still exact.
+	 */
+	public long getSpan()
+	{
+		return mMax - mMin;
+	}
+}
@@ -0,0 +1,161 @@
+package com.devtest.matcher;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/***
+ * Reusable primitive buffer holding one chunk of numbers while the sorted runs are generated. Each number
+ * is parsed only once when it is read from the input and is held as a primitive value, so sorting the chunk
+ * requires no string parsing or boxed objects per comparison.
+ *
+ * The capacity of the buffer is derived from a budget in real bytes rather than the length of the text
+ * that was read, so the same memory budget holds several times more numbers than a list of strings. Keys
+ * that fit in an int are held and sorted in an int array, so twice as many fit in the same budget.
+ */
+class NumberRunBuffer
+{
+	// Number of bytes of memory used to hold each long key in the buffer
+	public static final int BYTESPERNUMBER = 8;
+
+	// Largest array size the JVM will reliably allocate
+	private static final int MAXARRAYSIZE = Integer.MAX_VALUE - 8;
+
+	// Only one of the arrays is used, the int array when every key fits in an int
+	private long[] mNumbers;
+	private int[] mIntNumbers;
+	private int mCapacity;
+	private int mSize;
+
+	/***
+	 * Constructor to create a new run buffer of long keys sized to the given memory budget.
+	 *
+	 * @param pByteBudget The number of bytes of memory the buffer is allowed to use.
+	 */
+	public NumberRunBuffer(long pByteBudget)
+	{
+		this(pByteBudget, NumberKeyType.LONG);
+	}
+
+	/***
+	 * Constructor to create a new run buffer sized to the given memory budget.
+	 *
+	 * @param pByteBudget The number of bytes of memory the buffer is allowed to use.
+	 * @param pKeyType The type of the keys held, which must all fall within its range.
+	 */
+	public NumberRunBuffer(long pByteBudget, NumberKeyType pKeyType)
+	{
+		long capacity = pByteBudget / pKeyType.getBytesPerNumber();
+		if (capacity < 1)
+			capacity = 1;
+		else if (capacity > MAXARRAYSIZE)
+			capacity = MAXARRAYSIZE;
+
+		mCapacity = (int) capacity;
+		if (pKeyType.isIntWidth())
+			mIntNumbers = new int[mCapacity];
+		else
+			mNumbers = new long[mCapacity];
+		mSize = 0;
+	}
+
+	/***
+	 * Called to add a number to the end of the buffer.
+	 *
+	 * @param pNumber The number to add.
+	 * @return True if the number was added, False if the buffer is already full.
+	 */
+	public boolean add(long pNumber)
+	{
+		if (mSize == mCapacity)
+			return false;
+
+		if (mIntNumbers != null)
+			mIntNumbers[mSize++] = (int) pNumber;
+		else
+			mNumbers[mSize++] = pNumber;
+		return true;
+	}
+
+	/***
+	 * Sort the numbers currently held in the buffer from least to most in place.
+	 */
+	public void sort()
+	{
+		if (mIntNumbers != null)
+			Arrays.sort(mIntNumbers, 0, mSize);
+		else
+			Arrays.sort(mNumbers, 0, mSize);
+	}
+
+	/***
+	 * Called to write the numbers currently held in the buffer to a run in the order they are held.
+	 * 
+	 * @param pRunFileWriter The writer of the run.
+	 * @throws IOException Error thrown on file access.
+	 */
+	public void writeTo(RunFileWriter pRunFileWriter) throws IOException
+	{
+		if (mIntNumbers != null)
+		{
+			for (int i=0; i<mSize; i++)
+				pRunFileWriter.write(mIntNumbers[i]);
+		}
+		else {
+			for (int i=0; i<mSize; i++)
+				pRunFileWriter.write(mNumbers[i]);
+		}
+	}
+	
+	/***
+	 * Called to return the number stored at the given position in the buffer.
+	 *
+	 * @param pIndex The position of the number in the buffer.
+	 * @return The number at the given position.
+	 */
+	public long get(int pIndex)
+	{
+		if (mIntNumbers != null)
+			return mIntNumbers[pIndex];
+		return mNumbers[pIndex];
+	}
+
+	/***
+	 * @return The number of numbers currently held in the buffer.
+	 */
+	public int size()
+	{
+		return mSize;
+	}
+
+	/***
+	 * @return The maximum number of numbers the buffer can hold.
+	 */
+	public int capacity()
+	{
+		return mCapacity;
+	}
+
+	/***
+	 * @return True if the buffer cannot hold any more numbers, False otherwise.
+	 */
+	public boolean isFull()
+	{
+		return mSize == mCapacity;
+	}
+
+	/***
+	 * @return True if the buffer holds no numbers, False otherwise.
+	 */
+	public boolean isEmpty()
+	{
+		return mSize == 0;
+	}
+
+	/***
+	 * Clear the buffer contents so the memory can be reused for the next chunk of numbers.
+	 */
+	public void clear()
+	{
+		mSize = 0;
+	}
+}
@@ -0,0 +1,378 @@
+package com.devtest.matcher;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/***
+ * Byte level scanner to read the input numbers straight from the raw bytes of the input. The digits of
+ * each line are parsed directly into a primitive value, so no bytes are decoded to characters and no
+ * string is created per line.
+ * 
+ * Files are memory mapped a window at a time and parsed in place. Each window is unmapped as soon as it
+ * has been parsed, so the repeated passes of the multi-pass strategies don't pile up mappings. Any other
+ * channel is read through a reusable direct buffer. Lines may end with LF, CRLF or CR and empty lines are
+ * skipped. A line holding anything other than an optional sign followed by digits is reported with its
+ * line number and the byte offset of the start of the line, as is a number outside the range of the key
+ * type or a digit string key without the expected count of digits.
+ * 
+ * Runs of digits are parsed up to 8 at a time. The 8 bytes at a digit are read as one little endian long,
+ * the length of the leading run of digits is found with a few word wide operations, and the digits are
+ * combined into their value with three multiplies rather than one multiply per digit. Lines near the end
+ * of a buffer, and digits that could overflow, are parsed a byte at a time.
+ */
+class NumberScanner implements NumberInput
+{
+	// Size in bytes of each window of a file mapped into memory at a time
+	public static final int MAPWINDOWSIZE = 64 * 1024 * 1024;
+	
+	// Size in bytes of the direct buffer used to read from a channel
+	public static final int BUFFERSIZE = 64 * 1024;
+	
+	// Max count of digits that can never overflow a long when parsed
+	private static final int SAFEDIGITCOUNT = 18;
+	
+	// Count of bytes parsed at once by the word wide digit parse
+	private static final int WORDBYTES = 8;
+	
+	// Powers of 10 to shift the value accumulated by the count of digits parsed at once
+	private static final long[] POWERSOF10 = { 1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L };
+	
+	private FileChannel mFileChannel;
+	private ReadableByteChannel mReadableChannel;
+	private ByteBuffer mBuffer;
+	private long mBufferStart;
+	private long mMappedEnd;
+	private long mFileSize;
+	private long mStartOffset;
+	
+	private long mMinValue = Long.MIN_VALUE;
+	private long mMaxValue = Long.MAX_VALUE;
+	private int mKeyDigitCount = 0;
+	
+	// State of the line currently being parsed, the value is accumulated as a negative number
+	private long mAccumulator;
+	private int mDigitCount;
+	private boolean mHasSign;
+	private boolean mIsNegative;
+	private boolean mSkipLineFeed;
+	private long mLineStart;
+	private long mLineNumber;
+	
+	private boolean mHasNextNumber;
+	private long mNextNumber;
+	private long mNumberCount;
+	
+	/***
+	 * Called to open a scanner that memory maps the given file.
+	 * 
+	 * @param pFile The file holding the input numbers.
+	 * @return The scanner.
+	 * @throws IOException Error thrown on file access.
+	 */
+	public static NumberScanner openFile(File pFile) throws IOException
+	{
+		return openFile(pFile, 0, -1);
+	}
+	
+	/***
+	 * Called to open a scanner that memory maps a range of the given file. The range should start at the
+	 * start of a line, and the line numbers reported are counted from the start of the range.
+	 * 
+	 * @param pFile The file holding the input numbers.
+	 * @param pStartOffset The byte offset the range starts at.
+	 * @param pEndOffset The byte offset the range ends before, or -1 to read to the end of the file.
+	 * @return The scanner.
+	 * @throws IOException Error thrown on file access.
+	 */
+	public static NumberScanner openFile(File pFile, long pStartOffset, long pEndOffset) throws IOException
+	{
+		FileChannel fileChannel = new FileInputStream(pFile).getChannel();
+		try 
+		{
+			long endOffset = (pEndOffset < 0) ? fileChannel.size() : Math.min(pEndOffset, fileChannel.size());
+			return new NumberScanner(fileChannel, pStartOffset, endOffset);
+		}
+		catch (IOException ex)
+		{
+			fileChannel.close();
+			throw ex;
+		}
+	}
+	
+	/***
+	 * Constructor to create a new scanner reading from a channel through a direct buffer.
+	 * 
+	 * @param pReadableChannel The channel holding the input numbers.
+	 */
+	public NumberScanner(ReadableByteChannel pReadableChannel)
+	{
+		mReadableChannel = pReadableChannel;
+		mBuffer = ByteBuffer.allocateDirect(BUFFERSIZE).order(ByteOrder.LITTLE_ENDIAN);
+		mBuffer.limit(0);
+		mLineNumber = 1;
+	}
+	
+	/***
+	 * Constructor to create a new scanner memory mapping a range of a file channel.
+	 */
+	private NumberScanner(FileChannel pFileChannel, long pStartOffset, long pEndOffset)
+	{
+		mFileChannel = pFileChannel;
+		mFileSize = pEndOffset;
+		mStartOffset = pStartOffset;
+		mBufferStart = pStartOffset;
+		mMappedEnd = pStartOffset;
+		mLineStart = pStartOffset;
+		mBuffer = ByteBuffer.allocate(0);
+		mLineNumber = 1;
+	}
+	
+	/***
+	 * Called to set the type of key the numbers are read as. Numbers outside the range of the key type are
+	 * reported as malformed, and digit string keys must have exactly the count of digits of the key type
+	 * with no sign.
+	 * 
+	 * @param pKeyType The type of key, defaults to NumberKeyType.LONG.
+	 */
+	public void setKeyType(NumberKeyType pKeyType)
+	{
+		mMinValue = pKeyType.getMinValue();
+		mMaxValue = pKeyType.getMaxValue();
+		mKeyDigitCount = pKeyType.getDigitCount();
+	}
+	
+	@Override
+	public boolean hasNext() throws IOException
+	{
+		if (!mHasNextNumber)
+			mHasNextNumber = scanNextNumber();
+		return mHasNextNumber;
+	}
+	
+	@Override
+	public long next() throws IOException
+	{
+		if (!hasNext())
+			throw new EOFException("No numbers left to read in the input");
+		
+		mHasNextNumber = false;
+		return mNextNumber;
+	}
+	
+	/***
+	 * @return The count of numbers parsed from the input so far.
+	 */
+	public long getNumberCount()
+	{
+		return mNumberCount;
+	}
+	
+	/***
+	 * @return The count of bytes of the input parsed so far.
+	 */
+	public long getBytesRead()
+	{
+		return mBufferStart + mBuffer.position() - mStartOffset;
+	}
+	
+	@Override
+	public void close()
+	{
+		// Unmap the mapped window, keeping the count of bytes read
+		mBufferStart += mBuffer.position();
+		ByteBuffer buffer = mBuffer;
+		mBuffer = ByteBuffer.allocate(0);
+		if (mFileChannel != null)
+			MappedBufferReleaser.release(buffer);
+		try 
+		{
+			if (mFileChannel != null)
+				mFileChannel.close();
+			if (mReadableChannel != null)
+				mReadableChannel.close();
+		} 
+		catch(IOException ex) {} 
+	}
+	
+	/***
+	 * Helper method to parse bytes up to the end of the next line holding a number.
+	 * 
+	 * @return True if a number was found, False if the end of the input was reached.
+	 */
+	private boolean scanNextNumber() throws IOException
+	{
+		while (true)
+		{
+			ByteBuffer buffer = mBuffer;
+			int limit = buffer.limit();
+			for (int i = buffer.position(); i < limit; i++)
+			{
+				byte b = buffer.get(i);
+				if (b >= '0' && b <= '9')
+				{
+					mSkipLineFeed = false;
+					if (i + WORDBYTES <= limit && mDigitCount + WORDBYTES <= SAFEDIGITCOUNT)
+					{
+						// Parse the run of up to 8 digits starting here in one go
+						long word = buffer.getLong(i);
+						int count = leadingDigitCount(word);
+						mAccumulator = mAccumulator * POWERSOF10[count] - parseDigits(word << ((WORDBYTES - count) * 8));
+						mDigitCount += count;
+						i += count - 1;
+						continue;
+					}
+					
+					int digit = b - '0';
+					if (++mDigitCount > SAFEDIGITCOUNT && mAccumulator < (Long.MIN_VALUE + digit) / 10)
+						throw malformed("Number out of range");
+					mAccumulator = mAccumulator * 10 - digit;
+				}
+				else if (b == '\n' || b == '\r')
+				{
+					if (b == '\n' && mSkipLineFeed)
+					{
+						// Second half of a CRLF line ending
+						mSkipLineFeed = false;
+						mLineStart = mBufferStart + i + 1;
+						continue;
+					}
+					
+					mSkipLineFeed = (b == '\r');
+					boolean foundNumber = endLine();
+					mLineStart = mBufferStart + i + 1;
+					if (foundNumber)
+					{
+						buffer.position(i + 1);
+						return true;
+					}
+				}
+				else if ((b == '-' || b == '+') && !mHasSign && mDigitCount == 0)
+				{
+					mSkipLineFeed = false;
+					mHasSign = true;
+					mIsNegative = (b == '-');
+				}
+				else {
+					throw malformed("Invalid character 0x" + Integer.toHexString(b & 0xFF));
+				}
+			}
+			buffer.position(limit);
+			
+			if (!fillBuffer())
+				return endLine();
+		}
+	}
+	
+	/***
+	 * Helper method to count the digits at the start of 8 bytes read as a little endian long. A byte is a
+	 * digit if its high nibble is 3 and adding 6 to it leaves the high nibble at 3, so each digit byte is
+	 * cleared by the xor and the first byte left set is the first that isn't a digit. A carry out of a
+	 * byte can only come from a byte that isn't a digit, and only spoils the bytes after it.
+	 * 
+	 * @param pWord The bytes with the first at the lowest byte, which must be a digit.
+	 * @return The count of leading digits, 1 to 8.
+	 */
+	private static int leadingDigitCount(long pWord)
+	{
+		long nonDigits = ((pWord & 0xF0F0F0F0F0F0F0F0L) 
+			| (((pWord + 0x0606060606060606L) & 0xF0F0F0F0F0F0F0F0L) >>> 4)) ^ 0x3333333333333333L;
+		return (nonDigits == 0) ? WORDBYTES : Long.numberOfTrailingZeros(nonDigits) >>> 3;
+	}
+	
+	/***
+	 * Helper method to combine 8 digit bytes read as a little endian long into their value, pairing up
+	 * the digits, then the pairs, then the groups of 4 with one multiply each. Bytes of 0 are taken as 
+	 * leading zeros, so a shorter run of digits is parsed after being shifted up to the top bytes.
+	 * 
+	 * @param pWord The digit bytes with the most significant at the lowest byte.
+	 * @return The value of the digits.
+	 */
+	private static long parseDigits(long pWord)
+	{
+		long value = ((pWord & 0x0F0F0F0F0F0F0F0FL) * ((10 << 8) + 1)) >>> 8;
+		value = ((value & 0x00FF00FF00FF00FFL) * ((100 << 16) + 1)) >>> 16;
+		return ((value & 0x0000FFFF0000FFFFL) * ((10000L << 32) + 1)) >>> 32;
+	}
+	
+	/***
+	 * Helper method to complete the line being parsed and reset the parse state for the next line.
+	 * 
+	 * @return True if the line held a number, False if the line was empty.
+	 */
+	private boolean endLine() throws MalformedNumberException
+	{
+		boolean foundNumber = false;
+		if (mDigitCount > 0)
+		{
+			if (!mIsNegative && mAccumulator == Long.MIN_VALUE)
+				throw malformed("Number out of range");
+			
+			if (mKeyDigitCount > 0 && (mHasSign || mDigitCount != mKeyDigitCount))
+				throw malformed("Expected a key of " + mKeyDigitCount + " digits");
+			
+			long number = mIsNegative ? mAccumulator : -mAccumulator;
+			if (number < mMinValue || number > mMaxValue)
+				throw malformed("Number out of range");
+			
+			mNextNumber = number;
+			mNumberCount++;
+			foundNumber = true;
+		}
+		else if (mHasSign) {
+			throw malformed("Sign without any digits");
+		}
+		
+		mAccumulator = 0;
+		mDigitCount = 0;
+		mHasSign = false;
+		mIsNegative = false;
+		mLineNumber++;
+		return foundNumber;
+	}
+	
+	/***
+	 * Helper method to move the buffer on to the next block of bytes of the input, either by mapping 
+	 * the next window of the file or reading the next block from the channel.
+	 * 
+	 * @return True if more bytes are available, False if the end of the input was reached.
+	 */
+	private boolean fillBuffer() throws IOException
+	{
+		if (mFileChannel != null)
+		{
+			if (mMappedEnd >= mFileSize)
+				return false;
+			
+			// Unmap the window parsed before mapping the next, rather than leaving it to the GC
+			MappedBufferReleaser.release(mBuffer);
+			long windowSize = Math.min(MAPWINDOWSIZE, mFileSize - mMappedEnd);
+			mBuffer = mFileChannel.map(FileChannel.MapMode.READ_ONLY, mMappedEnd, windowSize);
+			mBuffer.order(ByteOrder.LITTLE_ENDIAN);
+			mBufferStart = mMappedEnd;
+			mMappedEnd += windowSize;
+			return true;
+		}
+		
+		mBufferStart += mBuffer.limit();
+		mBuffer.clear();
+		int count = 0;
+		while (count == 0)
+			count = mReadableChannel.read(mBuffer);
+		mBuffer.flip();
+		return count > 0;
+	}
+	
+	/***
+	 * Helper method to create the error reported for the line being parsed.
+	 */
+	private MalformedNumberException malformed(String pReason)
+	{
+		return new MalformedNumberException(pReason, mLineStart, mLineNumber);
+	}
+}
@@ -0,0 +1,17 @@
+package com.devtest.matcher;
+
+import java.io.IOException;
+
+/***
+ * Destination for a stream of numbers produced in sorted order, such as the output of the merge.
+ */
+interface NumberSink 
+{
+	/***
+	 * Called to pass on the next number of the stream.
+	 * 
+	 * @param pNumber The next number, must not be less than the previous number passed on.
+	 * @throws IOException Error thrown on file access or if the number is out of order.
+	 */
+	void write(long pNumber) throws IOException;
+}
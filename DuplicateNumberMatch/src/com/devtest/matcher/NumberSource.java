@@ -0,0 +1,29 @@
+package com.devtest.matcher;
+
+import java.io.IOException;
+
+/***
+ * Source of the input numbers. A repeatable source, such as a file, can be opened for reading more than
+ * once, which the detection strategies that need to make several passes over the input rely on. A source
+ * that can only be read once, such as a stream or pipe, is always matched in a single pass.
+ */
+public interface NumberSource 
+{
+	/***
+	 * Called to open a new pass over the input numbers from the start.
+	 * 
+	 * @return The input numbers.
+	 * @throws IOException Error thrown on access, or if a source that can only be read once is opened again.
+	 */
+	NumberInput open() throws IOException;
+	
+	/***
+	 * @return True if the source can be opened more than once, False if it can only be read once.
+	 */
+	boolean isRepeatable();
+	
+	/***
+	 * @return The length in bytes of the input if known, -1 otherwise.
+	 */
+	long getLength();
+}
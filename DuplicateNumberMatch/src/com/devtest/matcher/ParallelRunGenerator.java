@@ -0,0 +1,293 @@
+package com.devtest.matcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/***
+ * Pipelined run generator that splits the input numbers into sorted runs using several threads. The calling
+ * thread reads the input and fills chunk buffers, while a pool of sorter threads sort and write the filled
+ * chunks to split files at the same time.
+ * 
+ * The memory allowed is divided between a fixed pool of chunk buffers that are all allocated up front, one
+ * per sorter thread plus one for the reader. A buffer is only handed back to the reader once its run has 
+ * been written, so the memory in use never exceeds the budget no matter how far the reader gets ahead.
+ * The reader checks the finished runs each time it takes a free buffer and stops at the first run that
+ * failed, such as on a full disk, rather than reading the rest of the input into runs that will fail too.
+ */
+class ParallelRunGenerator implements RunGenerator
+{
+	private RunFileFactory mRunFileFactory;
+	private int mThreadCount;
+	private BlockingQueue<NumberRunBuffer> mFreeBufferQueue;
+	
+	/***
+	 * Constructor to create a new parallel run generator.
+	 * 
+	 * @param pRunFileFactory The factory of the split files, holding their format and key type.
+	 * @param pMemoryBudget The number of bytes of memory shared between all the chunk buffers.
+	 * @param pThreadCount The number of sorter threads to use.
+	 */
+	public ParallelRunGenerator(RunFileFactory pRunFileFactory, long pMemoryBudget, int pThreadCount)
+	{
+		mRunFileFactory = pRunFileFactory;
+		mThreadCount = Math.max(pThreadCount, 1);
+		
+		int bufferCount = mThreadCount + 1;
+		mFreeBufferQueue = new ArrayBlockingQueue<NumberRunBuffer>(bufferCount);
+		for (int i=0; i<bufferCount; i++)
+			mFreeBufferQueue.add(new NumberRunBuffer(pMemoryBudget / bufferCount, pRunFileFactory.getKeyType()));
+	}
+	
+	@Override
+	public List<File> generateRuns(NumberInput pNumberInput) throws IOException
+	{
+		ExecutorService sorterService = Executors.newFixedThreadPool(mThreadCount, new SorterThreadFactory());
+		ArrayList<Future<File>> splitFileFutureList = new ArrayList<Future<File>>();
+		ArrayList<SortRunTask> sortRunTaskList = new ArrayList<SortRunTask>();
+		ArrayList<File> splitFileListArray = new ArrayList<File>();
+		NumberRunBuffer bufferNumberList = null;
+		int checkedRunCount = 0;
+		boolean completed = false;
+		try
+		{
+			bufferNumberList = takeFreeBuffer();
+			while(pNumberInput.hasNext()) 
+			{
+				bufferNumberList.add(pNumberInput.next());
+				if (bufferNumberList.isFull())
+				{
+					// Hand the full chunk over to a sorter and carry on reading into the next free buffer
+					submitRun(sorterService, bufferNumberList, sortRunTaskList, splitFileFutureList);
+					bufferNumberList = null; // Now handed back by its task
+					bufferNumberList = takeFreeBuffer();
+					
+					// Stop reading as soon as a sorter has failed rather than at the end of the input
+					checkedRunCount = checkFinishedRuns(splitFileFutureList, checkedRunCount);
+				}
+			}
+			
+			if (!bufferNumberList.isEmpty())
+				submitRun(sorterService, bufferNumberList, sortRunTaskList, splitFileFutureList);
+			else
+				mFreeBufferQueue.add(bufferNumberList);
+			bufferNumberList = null;
+			
+			for (Future<File> splitFileFuture : splitFileFutureList)
+				splitFileListArray.add(waitForRun(splitFileFuture));
+			completed = true;
+		}
+		finally
+		{
+			if (!completed)
+			{
+				// Stop any chunks not yet started and hand their buffers back, as their tasks never will
+				if (bufferNumberList != null)
+					mFreeBufferQueue.add(bufferNumberList);
+				for (int i=0; i<splitFileFutureList.size(); i++)
+				{
+					SortRunTask sortRunTask = sortRunTaskList.get(i);
+					if (splitFileFutureList.get(i).cancel(false) && sortRunTask.claimBuffer())
+						mFreeBufferQueue.add(sortRunTask.mBufferNumberList);
+				}
+				
+				// Wait for the rest and clean up all runs written
+				sorterService.shutdown();
+				awaitTermination(sorterService);
+				for (SortRunTask sortRunTask : sortRunTaskList)
+				{
+					if (sortRunTask.mSplitFile != null)
+						sortRunTask.mSplitFile.delete();
+				}
+			}
+			else {
+				sorterService.shutdown();
+			}
+		}
+		return splitFileListArray;
+	}
+	
+	/***
+	 * Helper method to hand a full chunk buffer over to a sorter thread.
+	 */
+	private void submitRun(ExecutorService pSorterService, NumberRunBuffer pBufferNumberList, 
+			List<SortRunTask> pSortRunTaskList, List<Future<File>> pSplitFileFutureList)
+	{
+		SortRunTask sortRunTask = new SortRunTask(pBufferNumberList, pSplitFileFutureList.size());
+		pSortRunTaskList.add(sortRunTask);
+		pSplitFileFutureList.add(pSorterService.submit(sortRunTask));
+	}
+	
+	/***
+	 * Helper method to check the runs that have finished since the last check, passing on the error of the
+	 * first that failed. Only the runs after the given count of runs known to have succeeded are checked.
+	 * 
+	 * @return The count of runs from the first that are known to have succeeded.
+	 */
+	private int checkFinishedRuns(List<Future<File>> pSplitFileFutureList, int pCheckedRunCount) throws IOException
+	{
+		int checkedRunCount = pCheckedRunCount;
+		for (int i=pCheckedRunCount; i<pSplitFileFutureList.size(); i++)
+		{
+			Future<File> splitFileFuture = pSplitFileFutureList.get(i);
+			if (!splitFileFuture.isDone())
+				continue;
+			
+			waitForRun(splitFileFuture);
+			if (i == checkedRunCount)
+				checkedRunCount++;
+		}
+		return checkedRunCount;
+	}
+	
+	/***
+	 * Helper method to wait for a free chunk buffer to be handed back by a sorter.
+	 */
+	private NumberRunBuffer takeFreeBuffer() throws IOException
+	{
+		try 
+		{
+			NumberRunBuffer bufferNumberList = mFreeBufferQueue.take();
+			bufferNumberList.clear();
+			return bufferNumberList;
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a free chunk buffer");
+		}
+	}
+	
+	/***
+	 * Helper method to wait for the sorter threads to finish any chunks they have already started.
+	 */
+	private void awaitTermination(ExecutorService pSorterService)
+	{
+		try 
+		{
+			pSorterService.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException ex) 
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/***
+	 * Helper method to wait for a sorter to finish writing a run, passing on any error it reported.
+	 */
+	private File waitForRun(Future<File> pSplitFileFuture) throws IOException
+	{
+		try 
+		{
+			return pSplitFileFuture.get();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a run to be sorted");
+		}
+		catch (ExecutionException ex)
+		{
+			if (ex.getCause() instanceof IOException)
+				throw (IOException) ex.getCause();
+			if (ex.getCause() instanceof RuntimeException)
+				throw (RuntimeException) ex.getCause();
+			throw new IOException("Error sorting run: " + ex.getCause());
+		}
+	}
+	
+	/***
+	 * Task run by a sorter thread to sort a full chunk buffer and write it to a split file. The buffer
+	 * is handed back to the free pool once the run is written, or by the reader if the task is cancelled
+	 * before it starts.
+	 */
+	private class SortRunTask implements Callable<File>
+	{
+		private NumberRunBuffer mBufferNumberList;
+		private int mIndex;
+		private AtomicBoolean mBufferClaimed = new AtomicBoolean(false);
+		private volatile File mSplitFile = null;
+		
+		public SortRunTask(NumberRunBuffer pBufferNumberList, int pIndex)
+		{
+			mBufferNumberList = pBufferNumberList;
+			mIndex = pIndex;
+		}
+		
+		/***
+		 * Called to take over the buffer of the task, so that only one of the task and the reader hands 
+		 * it back to the free pool.
+		 * 
+		 * @return True if the buffer was taken over, False if it already was.
+		 */
+		public boolean claimBuffer()
+		{
+			return mBufferClaimed.compareAndSet(false, true);
+		}
+		
+		@Override
+		public File call() throws IOException
+		{
+			if (!claimBuffer())
+				throw new IOException("Run " + mIndex + " was cancelled");
+			
+			try
+			{
+				mBufferNumberList.sort();
+				File splitFile = mRunFileFactory.createFile("splitFile_" + String.valueOf(mIndex));
+				boolean written = false;
+				try 
+				{
+					RunFileWriter fileRunWriter = mRunFileFactory.createWriter(splitFile);
+					try 
+					{
+						mBufferNumberList.writeTo(fileRunWriter);
+					} 
+					finally {
+						fileRunWriter.close();
+					}
+					written = true;
+					mSplitFile = splitFile;
+				}
+				finally 
+				{
+					// A run that failed part way is never returned, so it is removed here
+					if (!written)
+						splitFile.delete();
+				}
+				return splitFile;
+			}
+			finally {
+				mFreeBufferQueue.add(mBufferNumberList);
+			}
+		}
+	}
+	
+	/***
+	 * Thread factory to create the sorter threads as daemon threads so they never hold up the JVM exiting.
+	 */
+	private static class SorterThreadFactory implements ThreadFactory
+	{
+		private int mThreadIndex = 0;
+		
+		@Override
+		public synchronized Thread newThread(Runnable pRunnable)
+		{
+			Thread thread = new Thread(pRunnable, "run-sorter-" + (mThreadIndex++));
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,323 @@
+package com.devtest.matcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Merge of a set of sorted binary runs split into disjoint ranges of values that are merged in parallel.
+ * The splitters between the ranges are picked from the first numbers of the segments in each run's index,
+ * which are an even sample of every run, so each range holds about the same count of numbers. Each range
+ * is merged on its own thread reading only its part of every run.
+ *
+ * Equal numbers always fall in the same range, so the duplicates of each range are found on their own and
+ * come out already in order. The duplicates of the ranges are passed on in the order of the ranges, with
+ * the duplicates of a range that finishes early held in a run file rather than in memory.
+ */
+class PartitionedMerger
+{
+	private List<BinaryRunIndex> mRunIndexList;
+	private long[] mSplitters;
+	private int mReadBufferSize;
+	private int mBlockSize;
+	private RunIoService mRunIoService;
+
+	/***
+	 * Constructor to create a new partitioned merge of the given runs.
+	 *
+	 * @param pRunIndexList The indexes of the sorted runs to merge.
+	 * @param pPartitionCount The count of ranges to split the runs into, each merged on its own thread.
+	 * @param pReadBufferSize The size in bytes of the disk read buffer of each run in each range.
+	 * @param pBlockSize The count of decoded numbers held in memory for each run in each range.
+	 * @param pRunIoService The I/O threads used to read the runs ahead of the merge, null to use the merging threads.
+	 */
+	public PartitionedMerger(List<BinaryRunIndex> pRunIndexList, int pPartitionCount, int pReadBufferSize, int pBlockSize,
+			RunIoService pRunIoService)
+	{
+		mRunIndexList = pRunIndexList;
+		mReadBufferSize = pReadBufferSize;
+		mBlockSize = pBlockSize;
+		mRunIoService = pRunIoService;
+		mSplitters = pickSplitters(pRunIndexList, Math.max(pPartitionCount, 1));
+	}
+
+	/***
+	 * Called to read the indexes of the given runs.
+	 *
+	 * @param pRunFileList The list of binary run files.
+	 * @return The list of indexes, or null if any of the runs was written without an index.
+	 * @throws IOException Error thrown on file access or if a run is not valid.
+	 */
+	public static List<BinaryRunIndex> loadIndexes(List<File> pRunFileList) throws IOException
+	{
+		ArrayList<BinaryRunIndex> runIndexList = new ArrayList<BinaryRunIndex>();
+		for (File runFile : pRunFileList)
+		{
+			BinaryRunIndex runIndex = BinaryRunIndex.load(runFile);
+			if (runIndex == null)
+				return null;
+			runIndexList.add(runIndex);
+		}
+		return runIndexList;
+	}
+
+	/***
+	 * @return The count of ranges the runs are split into, which may be less than asked for when the runs
+	 * hold few distinct numbers.
+	 */
+	public int getPartitionCount()
+	{
+		return mSplitters.length + 1;
+	}
+
+	/***
+	 * Called to merge each range of the runs on its own thread and pass on the duplicates found, in order
+	 * from least to most. The first range is merged on the calling thread straight into the listener, while
+	 * the duplicates of every later range are written to a run file of their own and read back once the
+	 * ranges before it have been passed on, so the duplicates are never held in memory.
+	 *
+	 * @param pDuplicateNumberListener The listener the duplicate numbers are passed to.
+	 * @param pRunFileFactory The factory of the files the duplicates of the later ranges are written to.
+	 * @throws IOException Error thrown on file access or if a run is corrupt.
+	 */
+	public void findDuplicates(DuplicateNumberListener pDuplicateNumberListener, RunFileFactory pRunFileFactory) throws IOException
+	{
+		int partitionCount = getPartitionCount();
+		File[] rangeFiles = new File[partitionCount];
+		ExecutorService mergeService = null;
+		ArrayList<Future<File>> partitionFutureList = new ArrayList<Future<File>>();
+		try
+		{
+			if (partitionCount > 1)
+				mergeService = Executors.newFixedThreadPool(partitionCount - 1, new MergeThreadFactory());
+			for (int i=1; i<partitionCount; i++)
+			{
+				rangeFiles[i] = pRunFileFactory.createFile("rangedups");
+				long max = (i == partitionCount - 1) ? Long.MAX_VALUE : mSplitters[i] - 1;
+				partitionFutureList.add(mergeService.submit(new MergePartitionTask(mSplitters[i - 1], max, 
+						rangeFiles[i], pRunFileFactory)));
+			}
+
+			long firstMax = (partitionCount == 1) ? Long.MAX_VALUE : mSplitters[0] - 1;
+			mergePartition(Long.MIN_VALUE, firstMax, new DuplicateNumberScanner(pDuplicateNumberListener));
+
+			// The ranges are in order so their duplicates are simply passed on one range after another
+			for (Future<File> partitionFuture : partitionFutureList)
+				replayDuplicates(waitForPartition(partitionFuture), pRunFileFactory, pDuplicateNumberListener);
+		}
+		finally
+		{
+			for (Future<File> partitionFuture : partitionFutureList)
+				partitionFuture.cancel(false);
+			if (mergeService != null)
+			{
+				mergeService.shutdown();
+				awaitTermination(mergeService);
+			}
+			for (File rangeFile : rangeFiles)
+			{
+				if (rangeFile != null)
+					rangeFile.delete();
+			}
+		}
+	}
+
+	/***
+	 * Helper method to merge the numbers of every run within one range and scan them for duplicates a block
+	 * at a time.
+	 */
+	private void mergePartition(long pMin, long pMax, DuplicateNumberScanner pDuplicateNumberScanner) throws IOException
+	{
+		ArrayList<RunFileReader> runReaderList = new ArrayList<RunFileReader>();
+		try
+		{
+			for (BinaryRunIndex runIndex : mRunIndexList)
+			{
+				// Runs with no numbers in the range are never opened
+				BinaryRunHeader header = runIndex.getHeader();
+				if (header.mCount == 0 || header.mMax < pMin || header.mMin > pMax)
+					continue;
+
+				RunFileReader runReader = new RangeRunFileReader(runIndex, pMin, pMax, mReadBufferSize);
+				if (mRunIoService != null)
+					runReader = new ReadAheadRunFileReader(runReader, mBlockSize, mRunIoService);
+				runReaderList.add(runReader);
+			}
+		}
+		catch (IOException ex)
+		{
+			for (RunFileReader runReader : runReaderList)
+				runReader.close();
+			throw ex;
+		}
+
+		LoserTreeMerger merger = new LoserTreeMerger(runReaderList, mBlockSize);
+		try
+		{
+			long[] block = new long[LoserTreeMerger.BLOCKSIZE];
+			int count;
+			while ((count = merger.read(block, 0, block.length)) > 0)
+				pDuplicateNumberScanner.write(block, 0, count);
+		}
+		finally {
+			merger.close();
+		}
+	}
+
+	/***
+	 * Helper method to read back the duplicates a range wrote to its file and pass them on to the listener.
+	 */
+	private void replayDuplicates(File pRangeFile, RunFileFactory pRunFileFactory, 
+			DuplicateNumberListener pDuplicateNumberListener) throws IOException
+	{
+		RunFileReader rangeReader = pRunFileFactory.getRunFileFormat().openReader(pRangeFile, mReadBufferSize);
+		try
+		{
+			long[] block = new long[mBlockSize];
+			int count;
+			while ((count = rangeReader.read(block, 0, block.length)) > 0)
+			{
+				for (int i=0; i<count; i++)
+					pDuplicateNumberListener.duplicateFound(block[i]);
+			}
+		}
+		finally {
+			rangeReader.close();
+		}
+	}
+
+	/***
+	 * Helper method to pick the splitters between the ranges from the first numbers of the segments of
+	 * every run. Each splitter is the least number of the range after it.
+	 */
+	private static long[] pickSplitters(List<BinaryRunIndex> pRunIndexList, int pPartitionCount)
+	{
+		int sampleCount = 0;
+		for (BinaryRunIndex runIndex : pRunIndexList)
+			sampleCount += runIndex.getSegmentCount();
+
+		long[] samples = new long[sampleCount];
+		int position = 0;
+		for (BinaryRunIndex runIndex : pRunIndexList)
+		{
+			for (int i=0; i<runIndex.getSegmentCount(); i++)
+				samples[position++] = runIndex.getFirstNumber(i);
+		}
+		Arrays.sort(samples);
+
+		// Repeated samples would give empty ranges so only splitters greater than the last are kept
+		long[] splitters = new long[pPartitionCount - 1];
+		int splitterCount = 0;
+		for (int i=1; i<pPartitionCount && sampleCount > 0; i++)
+		{
+			long splitter = samples[(int) ((long) i * sampleCount / pPartitionCount)];
+			if (splitter > Long.MIN_VALUE && (splitterCount == 0 || splitter > splitters[splitterCount - 1]))
+				splitters[splitterCount++] = splitter;
+		}
+		return Arrays.copyOf(splitters, splitterCount);
+	}
+
+	/***
+	 * Helper method to wait for a range to be merged, passing on any error it reported.
+	 */
+	private File waitForPartition(Future<File> pPartitionFuture) throws IOException
+	{
+		try
+		{
+			return pPartitionFuture.get();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a range to be merged");
+		}
+		catch (ExecutionException ex)
+		{
+			if (ex.getCause() instanceof IOException)
+				throw (IOException) ex.getCause();
+			if (ex.getCause() instanceof RuntimeException)
+				throw (RuntimeException) ex.getCause();
+			throw new IOException("Error merging range: " + ex.getCause());
+		}
+	}
+
+	/***
+	 * Helper method to wait for the merging threads to finish any ranges they have already started.
+	 */
+	private void awaitTermination(ExecutorService pMergeService)
+	{
+		try
+		{
+			pMergeService.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/***
+	 * Task run by a merging thread to merge the numbers of every run within one range and write the
+	 * duplicates among them to the file of the range.
+	 */
+	private class MergePartitionTask implements Callable<File>
+	{
+		private long mMin;
+		private long mMax;
+		private File mRangeFile;
+		private RunFileFactory mRunFileFactory;
+
+		public MergePartitionTask(long pMin, long pMax, File pRangeFile, RunFileFactory pRunFileFactory)
+		{
+			mMin = pMin;
+			mMax = pMax;
+			mRangeFile = pRangeFile;
+			mRunFileFactory = pRunFileFactory;
+		}
+
+		@Override
+		public File call() throws IOException
+		{
+			final RunFileWriter rangeWriter = mRunFileFactory.createWriter(mRangeFile);
+			try
+			{
+				mergePartition(mMin, mMax, new DuplicateNumberScanner(new DuplicateNumberListener() {
+					@Override
+					public void duplicateFound(long pNumber) throws IOException
+					{
+						rangeWriter.write(pNumber);
+					}
+				}));
+			}
+			finally {
+				rangeWriter.close();
+			}
+			return mRangeFile;
+		}
+	}
+
+	/***
+	 * Thread factory to create the merging threads as daemon threads so they never hold up the JVM exiting.
+	 */
+	private static class MergeThreadFactory implements ThreadFactory
+	{
+		private int mThreadIndex = 0;
+
+		@Override
+		public synchronized Thread newThread(Runnable pRunnable)
+		{
+			Thread thread = new Thread(pRunnable, "range-merger-" + (mThreadIndex++));
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
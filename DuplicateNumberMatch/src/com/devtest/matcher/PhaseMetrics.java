@@ -0,0 +1,210 @@
+package com.devtest.matcher;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Metrics recorded for one phase of a job: the wall time, numbers processed, bytes read and written, the
+ * peak heap used and the time spent in garbage collection while the phase ran.
+ * 
+ * The peak heap is JVM-wide: the heap in use is sampled while the phase runs and the most seen is kept,
+ * so when several jobs run at once it includes the heap used by the other jobs. The heap pool peaks are
+ * never reset, as that would wipe the peaks of every other job running in the JVM.
+ */
+public class PhaseMetrics 
+{
+	// Interval in milliseconds the heap in use is sampled at while a phase runs
+	public static final long SAMPLEINTERVAL = 20;
+	
+	private static final MemoryMXBean MEMORYBEAN = ManagementFactory.getMemoryMXBean();
+	private static final ScheduledExecutorService SAMPLER = Executors.newSingleThreadScheduledExecutor(new SamplerThreadFactory());
+	
+	private MatcherPhase mPhase;
+	private long mStartTime;
+	private long mStartGcTime;
+	private volatile boolean mCompleted;
+	private volatile long mWallTime;
+	private volatile long mNumbersProcessed;
+	private volatile long mBytesRead;
+	private volatile long mBytesWritten;
+	private volatile long mPeakHeapBytes;
+	private volatile long mGcTime;
+	private ScheduledFuture<?> mSamplerFuture;
+	
+	/***
+	 * Constructor to create the metrics of a phase and mark the phase as started.
+	 * 
+	 * @param pPhase The phase.
+	 */
+	PhaseMetrics(MatcherPhase pPhase)
+	{
+		mPhase = pPhase;
+		sampleHeap();
+		mSamplerFuture = SAMPLER.scheduleAtFixedRate(new HeapSampleTask(this), SAMPLEINTERVAL, SAMPLEINTERVAL, 
+				TimeUnit.MILLISECONDS);
+		mStartGcTime = getTotalGcTime();
+		mStartTime = System.nanoTime();
+	}
+	
+	/***
+	 * Called to mark the phase as completed and record what it processed.
+	 * 
+	 * @param pNumbersProcessed The count of numbers processed.
+	 * @param pBytesRead The count of bytes read from the input and temp files.
+	 * @param pBytesWritten The count of bytes written to temp files.
+	 */
+	void end(long pNumbersProcessed, long pBytesRead, long pBytesWritten)
+	{
+		mWallTime = System.nanoTime() - mStartTime;
+		mGcTime = getTotalGcTime() - mStartGcTime;
+		stopSampling();
+		sampleHeap();
+		mNumbersProcessed = pNumbersProcessed;
+		mBytesRead = pBytesRead;
+		mBytesWritten = pBytesWritten;
+		mCompleted = true;
+	}
+	
+	/***
+	 * Called to stop sampling the heap in use, such as when a phase that failed is followed by another.
+	 */
+	void stopSampling()
+	{
+		mSamplerFuture.cancel(false);
+	}
+	
+	/***
+	 * Helper method to record the heap in use by the JVM if it's the most seen during the phase.
+	 */
+	private synchronized void sampleHeap()
+	{
+		long usedHeapBytes = MEMORYBEAN.getHeapMemoryUsage().getUsed();
+		if (usedHeapBytes > mPeakHeapBytes)
+			mPeakHeapBytes = usedHeapBytes;
+	}
+	
+	/***
+	 * @return The name of the phase.
+	 */
+	public String getPhase()
+	{
+		return mPhase.name();
+	}
+	
+	/***
+	 * @return True once the phase has completed, False while it's running or if it failed.
+	 */
+	public boolean isCompleted()
+	{
+		return mCompleted;
+	}
+	
+	/***
+	 * @return The wall time the phase took in milliseconds.
+	 */
+	public long getWallTimeMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(mWallTime);
+	}
+	
+	/***
+	 * @return The count of numbers processed by the phase.
+	 */
+	public long getNumbersProcessed()
+	{
+		return mNumbersProcessed;
+	}
+	
+	/***
+	 * @return The count of bytes read by the phase.
+	 */
+	public long getBytesRead()
+	{
+		return mBytesRead;
+	}
+	
+	/***
+	 * @return The count of bytes written by the phase.
+	 */
+	public long getBytesWritten()
+	{
+		return mBytesWritten;
+	}
+	
+	/***
+	 * @return The most bytes of heap used by the JVM while the phase ran, as sampled.
+	 */
+	public long getPeakHeapBytes()
+	{
+		return mPeakHeapBytes;
+	}
+	
+	/***
+	 * @return The time spent in garbage collection while the phase ran in milliseconds.
+	 */
+	public long getGcTimeMillis()
+	{
+		return mGcTime;
+	}
+	
+	/***
+	 * Helper method to return the total time spent in garbage collection by the JVM in milliseconds.
+	 */
+	static long getTotalGcTime()
+	{
+		long gcTime = 0;
+		for (GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans())
+		{
+			long collectionTime = garbageCollector.getCollectionTime();
+			if (collectionTime > 0)
+				gcTime += collectionTime;
+		}
+		return gcTime;
+	}
+	
+	/***
+	 * Task run by the sampler thread to sample the heap for a running phase. The phase is only weakly held,
+	 * so a phase that failed and was dropped without being ended stops being sampled once collected.
+	 */
+	private static class HeapSampleTask implements Runnable
+	{
+		private WeakReference<PhaseMetrics> mPhaseMetricsRef;
+		
+		public HeapSampleTask(PhaseMetrics pPhaseMetrics)
+		{
+			mPhaseMetricsRef = new WeakReference<PhaseMetrics>(pPhaseMetrics);
+		}
+		
+		@Override
+		public void run()
+		{
+			PhaseMetrics phaseMetrics = mPhaseMetricsRef.get();
+			
+			// Throwing stops a fixed rate task from being run again
+			if (phaseMetrics == null)
+				throw new IllegalStateException("Phase metrics collected");
+			phaseMetrics.sampleHeap();
+		}
+	}
+	
+	/***
+	 * Thread factory to create the sampler thread as a daemon thread so it never holds up the JVM exiting.
+	 */
+	private static class SamplerThreadFactory implements ThreadFactory
+	{
+		@Override
+		public Thread newThread(Runnable pRunnable)
+		{
+			Thread thread = new Thread(pRunnable, "heap-sampler");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package com.devtest.matcher;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+
+/***
+ * Run reader returning only the numbers of a binary run that fall within a range of values. The reader
+ * seeks straight to the segment of the run's index the range starts in, skips the numbers less than the
+ * range and stops at the first number past it, so each part of a partitioned merge reads little more than
+ * its own share of the run.
+ */
+class RangeRunFileReader implements RunFileReader
+{
+	private BinaryRunFileReader mRunFileReader;
+	private long mMax;
+	private long mNext;
+	private boolean mHasNext;
+
+	/***
+	 * Constructor to create a new reader of the numbers of a run within the given range.
+	 *
+	 * @param pIndex The index of the run.
+	 * @param pMin The least number of the range.
+	 * @param pMax The greatest number of the range.
+	 * @param pBufferSize The size in bytes of the block read from disk at a time.
+	 * @throws IOException Error thrown on file access or if the run file is corrupt.
+	 */
+	public RangeRunFileReader(BinaryRunIndex pIndex, long pMin, long pMax, int pBufferSize) throws IOException
+	{
+		mRunFileReader = new BinaryRunFileReader(pIndex, pIndex.findSegment(pMin), pBufferSize);
+		mMax = pMax;
+		try
+		{
+			// Skip the numbers at the start of the segment that belong to the range before
+			mHasNext = false;
+			while (mRunFileReader.hasNext())
+			{
+				long number = mRunFileReader.next();
+				if (number >= pMin)
+				{
+					mNext = number;
+					mHasNext = number <= mMax;
+					break;
+				}
+			}
+		}
+		catch (IOException ex)
+		{
+			close();
+			throw ex;
+		}
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		return mHasNext;
+	}
+
+	@Override
+	public long next() throws IOException
+	{
+		if (!mHasNext)
+			throw new EOFException("No numbers left to read in range of run file: " + getFile());
+
+		long number = mNext;
+		mHasNext = false;
+		if (mRunFileReader.hasNext())
+		{
+			mNext = mRunFileReader.next();
+			mHasNext = mNext <= mMax;
+		}
+		return number;
+	}
+
+	@Override
+	public int read(long[] pBuffer, int pOffset, int pLength) throws IOException
+	{
+		int count = 0;
+		while (count < pLength && mHasNext)
+			pBuffer[pOffset + count++] = next();
+		return count;
+	}
+
+	@Override
+	public File getFile()
+	{
+		return mRunFileReader.getFile();
+	}
+
+	@Override
+	public void close()
+	{
+		mRunFileReader.close();
+	}
+}
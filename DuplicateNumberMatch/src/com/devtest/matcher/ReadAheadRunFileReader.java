@@ -0,0 +1,127 @@
+package com.devtest.matcher;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/***
+ * Run reader wrapping another run reader to read and decode the next block of numbers on an I/O thread
+ * while the current block is merged. Two blocks are kept per run, one being read by the merge and one
+ * being filled, so the merge only waits on the disk when it gets ahead of the read.
+ */
+class ReadAheadRunFileReader implements RunFileReader
+{
+	private RunFileReader mRunFileReader;
+	private RunIoService mRunIoService;
+	private long[] mBlock;
+	private long[] mSpareBlock;
+	private int mPosition;
+	private int mLength;
+	private Future<Integer> mPendingRead;
+
+	/***
+	 * Constructor to create a new read ahead reader, starting the read of the first block straight away.
+	 *
+	 * @param pRunFileReader The reader of the run to read ahead of.
+	 * @param pBlockSize The count of numbers in each block.
+	 * @param pRunIoService The I/O threads used to read the blocks.
+	 */
+	public ReadAheadRunFileReader(RunFileReader pRunFileReader, int pBlockSize, RunIoService pRunIoService)
+	{
+		mRunFileReader = pRunFileReader;
+		mRunIoService = pRunIoService;
+		mBlock = new long[Math.max(pBlockSize, 1)];
+		mSpareBlock = new long[mBlock.length];
+		mPosition = 0;
+		mLength = 0;
+		readAhead();
+	}
+
+	@Override
+	public boolean hasNext() throws IOException
+	{
+		return mPosition < mLength || nextBlock();
+	}
+
+	@Override
+	public long next() throws IOException
+	{
+		if (!hasNext())
+			throw new EOFException("No numbers left to read in run file: " + getFile());
+
+		return mBlock[mPosition++];
+	}
+
+	@Override
+	public int read(long[] pBuffer, int pOffset, int pLength) throws IOException
+	{
+		int count = 0;
+		while (count < pLength && hasNext())
+		{
+			int length = Math.min(pLength - count, mLength - mPosition);
+			System.arraycopy(mBlock, mPosition, pBuffer, pOffset + count, length);
+			mPosition += length;
+			count += length;
+		}
+		return count;
+	}
+
+	@Override
+	public File getFile()
+	{
+		return mRunFileReader.getFile();
+	}
+
+	@Override
+	public void close()
+	{
+		if (mPendingRead != null)
+		{
+			RunIoService.awaitQuietly(mPendingRead);
+			mPendingRead = null;
+		}
+		mRunFileReader.close();
+	}
+
+	/***
+	 * Helper method to wait for the block being read ahead and swap it in as the current block, then start
+	 * reading the following block into the block just used up.
+	 *
+	 * @return True if the block held any numbers, False if the end of the run was reached.
+	 */
+	private boolean nextBlock() throws IOException
+	{
+		if (mPendingRead == null)
+			return false;
+
+		int count = RunIoService.await(mPendingRead);
+		mPendingRead = null;
+		if (count <= 0)
+			return false;
+
+		long[] block = mBlock;
+		mBlock = mSpareBlock;
+		mSpareBlock = block;
+		mPosition = 0;
+		mLength = count;
+		readAhead();
+		return true;
+	}
+
+	/***
+	 * Helper method to start reading the next block of the run into the spare block on an I/O thread.
+	 */
+	private void readAhead()
+	{
+		final long[] block = mSpareBlock;
+		mPendingRead = mRunIoService.submit(new Callable<Integer>() {
+			@Override
+			public Integer call() throws IOException
+			{
+				return Integer.valueOf(mRunFileReader.read(block, 0, block.length));
+			}
+		});
+	}
+}
@@ -0,0 +1,188 @@
+package com.devtest.matcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * Run generator using replacement selection to produce runs longer than the memory allowed. A heap the
+ * size of memory holds numbers tagged with the run they belong to. The least number of the current run is
+ * written out and replaced by the next input number, which joins the current run if it is not less than
+ * the number just written and the next run otherwise. A run ends once the heap holds no more numbers for it.
+ * 
+ * On random input the runs come out about twice the size of memory, and input that is already mostly in
+ * ascending order produces far fewer, longer runs. Input in descending order is the worst case and gives
+ * runs the size of memory, the same as sorting fixed chunks.
+ * 
+ * The heap is held in primitive arrays of numbers and run tags, ordered by run tag then number. The numbers
+ * are always held as longs whatever the key type.
+ */
+class ReplacementSelectionRunGenerator implements RunGenerator
+{
+	// Number of bytes of memory used per heap entry, the number plus its run tag
+	public static final int BYTESPERENTRY = 12;
+	
+	private RunFileFactory mRunFileFactory;
+	private long[] mHeapNumbers;
+	private int[] mHeapRuns;
+	private int mHeapSize;
+	
+	/***
+	 * Constructor to create a new replacement selection run generator of long keys.
+	 * 
+	 * @param pRunFileFormat The format used to store the split files.
+	 * @param pRunMemory The number of bytes of memory used to hold the heap.
+	 */
+	public ReplacementSelectionRunGenerator(RunFileFormat pRunFileFormat, long pRunMemory)
+	{
+		this(new RunFileFactory(pRunFileFormat), pRunMemory);
+	}
+	
+	/***
+	 * Constructor to create a new replacement selection run generator.
+	 * 
+	 * @param pRunFileFactory The factory of the split files, holding their format and key type.
+	 * @param pRunMemory The number of bytes of memory used to hold the heap.
+	 */
+	public ReplacementSelectionRunGenerator(RunFileFactory pRunFileFactory, long pRunMemory)
+	{
+		mRunFileFactory = pRunFileFactory;
+		int capacity = (int) Math.min(Math.max(pRunMemory / BYTESPERENTRY, 1), Integer.MAX_VALUE - 8);
+		mHeapNumbers = new long[capacity];
+		mHeapRuns = new int[capacity];
+	}
+	
+	@Override
+	public List<File> generateRuns(NumberInput pNumberInput) throws IOException
+	{
+		ArrayList<File> splitFileListArray = new ArrayList<File>();
+		RunFileWriter fileRunWriter = null;
+		boolean completed = false;
+		try
+		{
+			// Fill the heap with the first numbers, all belonging to the first run
+			mHeapSize = 0;
+			while (mHeapSize < mHeapNumbers.length && pNumberInput.hasNext())
+			{
+				mHeapNumbers[mHeapSize] = pNumberInput.next();
+				mHeapRuns[mHeapSize] = 0;
+				siftUp(mHeapSize++);
+			}
+			
+			int currentRun = -1;
+			while (mHeapSize > 0)
+			{
+				int run = mHeapRuns[0];
+				long number = mHeapNumbers[0];
+				if (run != currentRun)
+				{
+					// The heap holds no more numbers for the current run, start the next split file
+					if (fileRunWriter != null)
+						fileRunWriter.close();
+					fileRunWriter = null;
+					File splitFile = mRunFileFactory.createFile("splitFile_" + String.valueOf(splitFileListArray.size()));
+					splitFileListArray.add(splitFile);
+					fileRunWriter = mRunFileFactory.createWriter(splitFile);
+					currentRun = run;
+				}
+				fileRunWriter.write(number);
+				
+				if (pNumberInput.hasNext())
+				{
+					long nextNumber = pNumberInput.next();
+					mHeapNumbers[0] = nextNumber;
+					mHeapRuns[0] = (nextNumber >= number) ? currentRun : currentRun + 1;
+				}
+				else 
+				{
+					mHeapSize--;
+					mHeapNumbers[0] = mHeapNumbers[mHeapSize];
+					mHeapRuns[0] = mHeapRuns[mHeapSize];
+				}
+				siftDown(0);
+			}
+			
+			if (fileRunWriter != null)
+				fileRunWriter.close();
+			fileRunWriter = null;
+			completed = true;
+		}
+		finally
+		{
+			if (!completed)
+			{
+				if (fileRunWriter != null)
+				{
+					try 
+					{
+						fileRunWriter.close();
+					}
+					catch (IOException ex) {}
+				}
+				for (File splitFile : splitFileListArray)
+					splitFile.delete();
+			}
+		}
+		return splitFileListArray;
+	}
+	
+	/***
+	 * Helper method to check if the first heap entry orders before the second, by run tag then number.
+	 */
+	private boolean isLess(int pIndex1, int pIndex2)
+	{
+		if (mHeapRuns[pIndex1] != mHeapRuns[pIndex2])
+			return mHeapRuns[pIndex1] < mHeapRuns[pIndex2];
+		return mHeapNumbers[pIndex1] < mHeapNumbers[pIndex2];
+	}
+	
+	/***
+	 * Helper method to move an entry up the heap until its parent orders before it.
+	 */
+	private void siftUp(int pIndex)
+	{
+		int index = pIndex;
+		while (index > 0)
+		{
+			int parent = (index - 1) >>> 1;
+			if (!isLess(index, parent))
+				break;
+			swap(index, parent);
+			index = parent;
+		}
+	}
+	
+	/***
+	 * Helper method to move an entry down the heap until it orders before both its children.
+	 */
+	private void siftDown(int pIndex)
+	{
+		int index = pIndex;
+		while (true)
+		{
+			int child = 2 * index + 1;
+			if (child >= mHeapSize)
+				break;
+			if (child + 1 < mHeapSize && isLess(child + 1, child))
+				child++;
+			if (!isLess(child, index))
+				break;
+			swap(index, child);
+			index = child;
+		}
+	}
+	
+	/***
+	 * Helper method to swap two entries of the heap.
+	 */
+	private void swap(int pIndex1, int pIndex2)
+	{
+		long number = mHeapNumbers[pIndex1];
+		mHeapNumbers[pIndex1] = mHeapNumbers[pIndex2];
+		mHeapNumbers[pIndex2] = number;
+		int run = mHeapRuns[pIndex1];
+		mHeapRuns[pIndex1] = mHeapRuns[pIndex2];
+		mHeapRuns[pIndex2] = run;
+	}
+}
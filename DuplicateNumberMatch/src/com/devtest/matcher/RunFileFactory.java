@@ -0,0 +1,91 @@
+package com.devtest.matcher;
+
+import java.io.File;
+import java.io.IOException;
+
+/***
+ * Factory of the temp files the sorted runs of a job are stored in. It holds the format, key type and
+ * duplicate collapsing the runs are written with, and the directory they are created in, so the run
+ * generators and the merge create every run of a job the same way and in the job's own workspace.
+ */
+class RunFileFactory
+{
+	private RunFileFormat mRunFileFormat;
+	private NumberKeyType mKeyType;
+	private boolean mCollapseDuplicates;
+	private File mTempDirectory;
+
+	/***
+	 * Constructor to create a factory of runs of long keys in the system temp directory.
+	 *
+	 * @param pRunFileFormat The format the runs are stored in.
+	 */
+	public RunFileFactory(RunFileFormat pRunFileFormat)
+	{
+		this(pRunFileFormat, NumberKeyType.LONG, false, null);
+	}
+
+	/***
+	 * Constructor to create a new factory of runs.
+	 *
+	 * @param pRunFileFormat The format the runs are stored in.
+	 * @param pKeyType The type of the keys stored in the runs.
+	 * @param pCollapseDuplicates True to store the copies of each number in a run as a count.
+	 * @param pTempDirectory The directory the runs are created in, null for the system temp directory.
+	 */
+	public RunFileFactory(RunFileFormat pRunFileFormat, NumberKeyType pKeyType, boolean pCollapseDuplicates, File pTempDirectory)
+	{
+		mRunFileFormat = pRunFileFormat;
+		mKeyType = pKeyType;
+		mCollapseDuplicates = pCollapseDuplicates;
+		mTempDirectory = pTempDirectory;
+	}
+
+	/***
+	 * Called to create a new empty temp file for a run.
+	 *
+	 * @param pPrefix The prefix of the file name.
+	 * @return The new file.
+	 * @throws IOException Error thrown on file access.
+	 */
+	public File createFile(String pPrefix) throws IOException
+	{
+		return File.createTempFile(pPrefix, mRunFileFormat.getFileExtension(), mTempDirectory);
+	}
+
+	/***
+	 * Called to create a new writer to store a sorted run.
+	 *
+	 * @param pFile The file to write the run to.
+	 * @return The run writer.
+	 * @throws IOException Error thrown on file access.
+	 */
+	public RunFileWriter createWriter(File pFile) throws IOException
+	{
+		return mRunFileFormat.createWriter(pFile, mKeyType, mCollapseDuplicates);
+	}
+
+	/***
+	 * @return The format the runs are stored in.
+	 */
+	public RunFileFormat getRunFileFormat()
+	{
+		return mRunFileFormat;
+	}
+
+	/***
+	 * @return The type of the keys stored in the runs.
+	 */
+	public NumberKeyType getKeyType()
+	{
+		return mKeyType;
+	}
+
+	/***
+	 * @return The directory the runs are created in, null for the system temp directory.
+	 */
+	public File getTempDirectory()
+	{
+		return mTempDirectory;
+	}
+}
@@ -0,0 +1,128 @@
+package com.devtest.matcher;
+
+import java.io.File;
+import java.io.IOException;
+
+/***
+ * The formats available to store the sorted runs and the merged sorted file of numbers.
+ * 
+ * TEXT stores one decimal number per line. BINARY_FIXED stores each number as a fixed width binary value
+ * and BINARY_DELTA stores the difference between each number and the previous one as a variable length 
+ * value, which is the most compact since the runs are sorted. BINARY_COMPRESSED stores the same deltas and
+ * compresses each segment of them with a Deflater at its fastest level, trading some CPU for less temp disk
+ * space and I/O. All binary formats carry a small header with the count, min, max and checksum of the 
+ * numbers in the run.
+ * 
+ * Runs in either delta format can also be written with duplicates collapsed, where each distinct number
+ * is stored once with a count of its further copies.
+ * 
+ * -Dmatcher.runFormat=BINARY_DELTA     The format the runs are stored in.
+ * -Dmatcher.collapseDuplicates=false   True to store the copies of each number in a run as a count.
+ */
+public enum RunFileFormat 
+{
+	TEXT(".txt"),
+	BINARY_FIXED(".run"),
+	BINARY_DELTA(".run"),
+	BINARY_COMPRESSED(".run");
+	
+	public static final String RUNFORMAT_PROPERTY = "matcher.runFormat";
+	public static final String COLLAPSEDUPLICATES_PROPERTY = "matcher.collapseDuplicates";
+	
+	private final String mFileExtension;
+	
+	private RunFileFormat(String pFileExtension)
+	{
+		mFileExtension = pFileExtension;
+	}
+	
+	/***
+	 * @return The file extension used for run files stored in this format.
+	 */
+	public String getFileExtension()
+	{
+		return mFileExtension;
+	}
+	
+	/***
+	 * Called to create a new writer to store a sorted run of long keys in this format.
+	 * 
+	 * @param pFile The file to write the run to.
+	 * @return The run writer.
+	 * @throws IOException Error thrown on file access.
+	 */
+	RunFileWriter createWriter(File pFile) throws IOException
+	{
+		return createWriter(pFile, NumberKeyType.LONG);
+	}
+	
+	/***
+	 * Called to create a new writer to store a sorted run in this format. The fixed width format stores
+	 * keys that fit in an int as 4 byte values and all other keys as 8 byte values.
+	 * 
+	 * @param pFile The file to write the run to.
+	 * @param pKeyType The type of the keys stored in the run.
+	 * @return The run writer.
+	 * @throws IOException Error thrown on file access.
+	 */
+	RunFileWriter createWriter(File pFile, NumberKeyType pKeyType) throws IOException
+	{
+		return createWriter(pFile, pKeyType, false);
+	}
+	
+	/***
+	 * Called to create a new writer to store a sorted run in this format, optionally collapsing the copies
+	 * of each number into a count. Only the delta formats can collapse duplicates, the others store every 
+	 * copy.
+	 * 
+	 * @param pFile The file to write the run to.
+	 * @param pKeyType The type of the keys stored in the run.
+	 * @param pCollapseDuplicates True to store the copies of each number as a count.
+	 * @return The run writer.
+	 * @throws IOException Error thrown on file access.
+	 */
+	RunFileWriter createWriter(File pFile, NumberKeyType pKeyType, boolean pCollapseDuplicates) throws IOException
+	{
+		switch (this)
+		{
+			case BINARY_FIXED:
+				if (pKeyType.isIntWidth())
+					return new BinaryRunFileWriter(pFile, BinaryRunHeader.ENCODING_FIXED32);
+				return new BinaryRunFileWriter(pFile, BinaryRunHeader.ENCODING_FIXED64);
+			case BINARY_DELTA:
+				return new BinaryRunFileWriter(pFile, BinaryRunHeader.ENCODING_DELTA, pCollapseDuplicates);
+			case BINARY_COMPRESSED:
+				return new BinaryRunFileWriter(pFile, BinaryRunHeader.ENCODING_DELTA_DEFLATE, pCollapseDuplicates);
+			default:
+				return new TextRunFileWriter(pFile);
+		}
+	}
+	
+	/***
+	 * Called to open a reader for a sorted run that was stored in this format.
+	 * 
+	 * @param pFile The file to read the run from.
+	 * @return The run reader.
+	 * @throws IOException Error thrown on file access.
+	 */
+	RunFileReader openReader(File pFile) throws IOException
+	{
+		return openReader(pFile, BinaryRunFileReader.BUFFERSIZE);
+	}
+	
+	/***
+	 * Called to open a reader for a sorted run that was stored in this format.
+	 * 
+	 * @param pFile The file to read the run from.
+	 * @param pBufferSize The size in bytes of the block read from disk at a time.
+	 * @return The run reader.
+	 * @throws IOException Error thrown on file access.
+	 */
+	RunFileReader openReader(File pFile, int pBufferSize) throws IOException
+	{
+		if (this == TEXT)
+			return new TextRunFileReader(pFile, pBufferSize);
+		
+		return new BinaryRunFileReader(pFile, pBufferSize);
+	}
+}
@@ -0,0 +1,46 @@
+package com.devtest.matcher;
+
+import java.io.File;
+import java.io.IOException;
+
+/***
+ * Reader used to read back a sorted run of numbers that was stored by a {@link RunFileWriter}. Numbers
+ * are returned as primitive values so no parsing or object creation is required by the caller.
+ */
+interface RunFileReader
+{
+	/***
+	 * @return True if there are more numbers left to read in the run, False otherwise.
+	 * @throws IOException Error thrown on file access.
+	 */
+	boolean hasNext() throws IOException;
+	
+	/***
+	 * Called to read the next number in the run. Should only be called when {@link #hasNext()} is true.
+	 * 
+	 * @return The next number in the run.
+	 * @throws IOException Error thrown on file access or if the run file is corrupt.
+	 */
+	long next() throws IOException;
+	
+	/***
+	 * Called to read a block of the next numbers in the run into the given buffer.
+	 * 
+	 * @param pBuffer The buffer to store the numbers in.
+	 * @param pOffset The position in the buffer to store the first number.
+	 * @param pLength The max count of numbers to read.
+	 * @return The count of numbers read, 0 if there are no numbers left in the run.
+	 * @throws IOException Error thrown on file access or if the run file is corrupt.
+	 */
+	int read(long[] pBuffer, int pOffset, int pLength) throws IOException;
+	
+	/***
+	 * @return The file the run is being read from.
+	 */
+	File getFile();
+	
+	/***
+	 * Perform some cleanup of the file buffer.
+	 */
+	void close();
+}
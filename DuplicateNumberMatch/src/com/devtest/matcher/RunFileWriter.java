@@ -0,0 +1,22 @@
+package com.devtest.matcher;
+
+import java.io.IOException;
+
+/***
+ * Writer used to store a sorted run of numbers to a file. Numbers must be written in order from least to
+ * most so the run can later be merged with the other runs.
+ */
+interface RunFileWriter extends NumberSink
+{
+	/***
+	 * @return The count of numbers written to the run so far.
+	 */
+	long getCount();
+	
+	/***
+	 * Flush any buffered numbers and close the run file.
+	 * 
+	 * @throws IOException Error thrown on file access.
+	 */
+	void close() throws IOException;
+}
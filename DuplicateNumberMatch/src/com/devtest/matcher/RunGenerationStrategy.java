@@ -0,0 +1,16 @@
+package com.devtest.matcher;
+
+/***
+ * The strategies available to split the input numbers into sorted runs.
+ * 
+ * CHUNK_SORT reads a chunk of numbers the size of the memory allowed, sorts it and writes it as a run, so
+ * every run is the size of memory. REPLACEMENT_SELECTION keeps a heap of numbers the size of memory and 
+ * writes the least number that can still extend the current run, reading a new number into its place.
+ * On random input the runs are about twice the size of memory and on input that is already mostly in
+ * ascending order the runs are much longer, so fewer runs need to be merged.
+ */
+public enum RunGenerationStrategy 
+{
+	CHUNK_SORT,
+	REPLACEMENT_SELECTION
+}
@@ -0,0 +1,22 @@
+package com.devtest.matcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/***
+ * Generator used to split the input numbers into a set of sorted runs stored in split files, ready to be
+ * merged back into one sorted sequence.
+ */
+interface RunGenerator 
+{
+	/***
+	 * Called to split the numbers read from the input into sorted split files. If an error occurs any
+	 * split files already written are deleted.
+	 * 
+	 * @param pNumberInput The input numbers.
+	 * @return The list of sorted split files.
+	 * @throws IOException Error thrown on file access.
+	 */
+	List<File> generateRuns(NumberInput pNumberInput) throws IOException;
+}
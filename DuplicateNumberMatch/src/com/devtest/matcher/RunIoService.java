@@ -0,0 +1,126 @@
+package com.devtest.matcher;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/***
+ * Pool of I/O threads shared by the runs of a merge to read the next block of each run ahead of the merge
+ * and write the merged numbers behind it. Each run has at most one block being read at a time, so a
+ * small pool serves any number of runs and the disk is kept busy while the merge compares numbers.
+ *
+ * -Dmatcher.ioThreads=2 Number of I/O threads, 0 to read and write the runs on the merging thread.
+ */
+class RunIoService
+{
+	public static final String IOTHREADS_PROPERTY = "matcher.ioThreads";
+
+	// Default number of I/O threads used when merging
+	public static final int DEFAULTTHREADCOUNT = 2;
+
+	private ExecutorService mExecutorService;
+
+	/***
+	 * Constructor to create a new pool of I/O threads.
+	 *
+	 * @param pThreadCount The number of I/O threads to use.
+	 */
+	public RunIoService(int pThreadCount)
+	{
+		mExecutorService = Executors.newFixedThreadPool(Math.max(pThreadCount, 1), new IoThreadFactory());
+	}
+
+	/***
+	 * Called to queue a block read or write to run on one of the I/O threads.
+	 *
+	 * @param pTask The task reading or writing the block, returning the count of numbers handled.
+	 * @return The future result of the task.
+	 */
+	public Future<Integer> submit(Callable<Integer> pTask)
+	{
+		return mExecutorService.submit(pTask);
+	}
+
+	/***
+	 * Called to stop the I/O threads once the merge is complete. Any queued tasks are still run.
+	 */
+	public void shutdown()
+	{
+		mExecutorService.shutdown();
+	}
+
+	/***
+	 * Called to wait for a block read or write to complete, passing on any error it reported.
+	 *
+	 * @param pFuture The future result of the task.
+	 * @return The count of numbers the task handled.
+	 * @throws IOException Error thrown on file access by the task.
+	 */
+	public static int await(Future<Integer> pFuture) throws IOException
+	{
+		try
+		{
+			return pFuture.get().intValue();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a run block");
+		}
+		catch (ExecutionException ex)
+		{
+			if (ex.getCause() instanceof IOException)
+				throw (IOException) ex.getCause();
+			if (ex.getCause() instanceof RuntimeException)
+				throw (RuntimeException) ex.getCause();
+			throw new IOException("Error accessing run block: " + ex.getCause());
+		}
+	}
+
+	/***
+	 * Called to wait for a block read or write to complete ignoring any error, used before a run file is
+	 * closed so it is never closed while an I/O thread is still using it.
+	 *
+	 * @param pFuture The future result of the task.
+	 */
+	public static void awaitQuietly(Future<Integer> pFuture)
+	{
+		boolean interrupted = false;
+		while (true)
+		{
+			try
+			{
+				pFuture.get();
+				break;
+			}
+			catch (InterruptedException ex) {
+				interrupted = true;
+			}
+			catch (ExecutionException ex) {
+				break;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/***
+	 * Thread factory to create the I/O threads as daemon threads so they never hold up the JVM exiting.
+	 */
+	private static class IoThreadFactory implements ThreadFactory
+	{
+		private int mThreadIndex = 0;
+
+		@Override
+		public synchronized Thread newThread(Runnable pRunnable)
+		{
+			Thread thread = new Thread(pRunnable, "run-io-" + (mThreadIndex++));
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package com.devtest.matcher;
+
+/***
+ * The set operations available across several input files, each picking the numbers to report from the
+ * count of files a number is found in. The first file is the one the controller was created over.
+ *
+ * CROSS_FILE_DUPLICATES reports the numbers found in more than one of the files. INTERSECTION reports the
+ * numbers found in every file. DIFFERENCE reports the numbers found in the first file and in none of the
+ * others. A number repeated within a single file counts as being found in that file once.
+ *
+ * -Dmatcher.setOperation=CROSS_FILE_DUPLICATES   The set operation used when more than one file is given.
+ */
+public enum SetOperation
+{
+	CROSS_FILE_DUPLICATES("Number found in more than one file: "),
+	INTERSECTION("Number found in every file: "),
+	DIFFERENCE("Number found only in the first file: ");
+
+	public static final String SETOPERATION_PROPERTY = "matcher.setOperation";
+
+	private String mLinePrefix;
+
+	private SetOperation(String pLinePrefix)
+	{
+		mLinePrefix = pLinePrefix;
+	}
+
+	/***
+	 * Called to check if a number is reported by this operation.
+	 *
+	 * @param pSourceCount The count of different files the number was found in.
+	 * @param pInFirstSource True if the number was found in the first file.
+	 * @param pTotalSources The count of files the operation is over.
+	 * @return True if the number is reported.
+	 */
+	public boolean matches(int pSourceCount, boolean pInFirstSource, int pTotalSources)
+	{
+		switch (this)
+		{
+			case INTERSECTION:
+				return pSourceCount == pTotalSources;
+			case DIFFERENCE:
+				return pInFirstSource && pSourceCount == 1;
+			default:
+				return pSourceCount > 1;
+		}
+	}
+
+	/***
+	 * @return The text printed before each number reported by this operation.
+	 */
+	public String getLinePrefix()
+	{
+		return mLinePrefix;
+	}
+}
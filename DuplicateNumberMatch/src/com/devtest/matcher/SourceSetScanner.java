@@ -0,0 +1,95 @@
+package com.devtest.matcher;
+
+import java.io.IOException;
+
+/***
+ * Scanner of a sorted stream of numbers tagged with the index of the source each was read from, picking
+ * the numbers reported by a set operation. Every occurrence of a number is in one run of equal numbers,
+ * and the runs of each source are merged in order of their source, so within a run the sources never go
+ * back and the count of different sources is the count of times the source changes. Each number is passed
+ * on when its run ends, so finish must be called after the last number to decide on the final run.
+ */
+class SourceSetScanner
+{
+	private SetOperation mSetOperation;
+	private int mTotalSources;
+	private DuplicateNumberListener mDuplicateNumberListener;
+	private boolean mHasPrevNumber;
+	private long mPrevNumber;
+	private int mPrevSource;
+	private int mSourceCount;
+	private boolean mInFirstSource;
+	private long mMatchCount;
+
+	/***
+	 * Constructor to create a new scanner with no numbers seen.
+	 *
+	 * @param pSetOperation The set operation picking the numbers to report.
+	 * @param pTotalSources The count of sources the numbers are read from.
+	 * @param pDuplicateNumberListener The listener the numbers picked are passed to.
+	 */
+	public SourceSetScanner(SetOperation pSetOperation, int pTotalSources, DuplicateNumberListener pDuplicateNumberListener)
+	{
+		mSetOperation = pSetOperation;
+		mTotalSources = pTotalSources;
+		mDuplicateNumberListener = pDuplicateNumberListener;
+	}
+
+	/***
+	 * Called with the next number of the sorted stream.
+	 *
+	 * @param pNumber The number.
+	 * @param pSource The index of the source the number was read from, 0 for the first.
+	 * @throws IOException Error thrown by the listener.
+	 */
+	public void write(long pNumber, int pSource) throws IOException
+	{
+		if (mHasPrevNumber && mPrevNumber == pNumber)
+		{
+			if (pSource != mPrevSource)
+			{
+				mPrevSource = pSource;
+				mSourceCount++;
+			}
+			return;
+		}
+
+		endRun();
+		mHasPrevNumber = true;
+		mPrevNumber = pNumber;
+		mPrevSource = pSource;
+		mSourceCount = 1;
+		mInFirstSource = pSource == 0;
+	}
+
+	/***
+	 * Called once the last number of the stream has been written to decide on the final run.
+	 *
+	 * @throws IOException Error thrown by the listener.
+	 */
+	public void finish() throws IOException
+	{
+		endRun();
+		mHasPrevNumber = false;
+	}
+
+	/***
+	 * @return The count of numbers passed on so far.
+	 */
+	public long getMatchCount()
+	{
+		return mMatchCount;
+	}
+
+	/***
+	 * Helper method to pass on the number of the current run if the set operation picks it.
+	 */
+	private void endRun() throws IOException
+	{
+		if (mHasPrevNumber && mSetOperation.matches(mSourceCount, mInFirstSource, mTotalSources))
+		{
+			mDuplicateNumberListener.duplicateFound(mPrevNumber);
+			mMatchCount++;
+		}
+	}
+}
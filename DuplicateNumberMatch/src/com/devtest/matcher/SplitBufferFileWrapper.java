@@ -1,71 +1,68 @@
 package com.devtest.matcher;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 
 /***
  * Class helper to wrap a split file when performing the final stage of sorting all the split files. 
- * Specifically used to perform a read line by line and store the current line number for access
- * before we read the next line number.
+ * Specifically used to read the run number by number and store the current number for access
+ * before we read the next number.
  * 
  * Used specifically in the PriorityQueue when trying to determine the sorting order of the first item
  * in each file that is the less of all numbers being checked.
  */
-public class SplitBufferFileWrapper 
+class SplitBufferFileWrapper 
 {
-    public  static final int BUFFERSIZE = 1024;    
-    public  BufferedReader mFileBufferReader;
-    public  File mFile;
-    private String mNumber;
+    private RunFileReader mRunFileReader;
+    private File mFile;
+    private long mNumber;
     private boolean mIsFileEmpty;
     
     /***
-     * Constructor to create a new file wrapper for processing.
+     * Constructor to create a new file wrapper over a run reader that was already opened, such as one
+     * reading the run ahead of the merge.
      * 
-     * @param pFile The file that is being wrapped for processing.
+     * @param pRunFileReader The reader of the run.
      * @throws IOException
      */
-    public SplitBufferFileWrapper(File pFile) throws IOException {
-    	mFile = pFile;
-    	mFileBufferReader = new BufferedReader(new FileReader(pFile), BUFFERSIZE);
-    	readNextLine();
+    public SplitBufferFileWrapper(RunFileReader pRunFileReader) throws IOException {
+    	mFile = pRunFileReader.getFile();
+    	mRunFileReader = pRunFileReader;
+    	readNextNumber();
     }
 
     /***
-     * Called to read the next line of data for processing and store the retrieved number internally for 
-     * later access.
+     * Called to read the next number from the run and store the retrieved number internally for 
+     * later access. Read errors are passed on so a corrupt run is never silently treated as finished.
+     * 
+     * @throws IOException Error thrown on file access or if the run is corrupt.
      */
-    private void readNextLine()
+    private void readNextNumber() throws IOException
     {
-    	try 
+    	if(!mRunFileReader.hasNext())
     	{
-    		if((this.mNumber = mFileBufferReader.readLine()) == null)
-    		{
-    			mIsFileEmpty = true;
-    			mNumber = null;
-    		}
-    		else {
-    			mIsFileEmpty = false;
-    		}
-    	} 
-        catch(IOException ex) 
-        {
-        	mIsFileEmpty = true;
-        	mNumber = null;
-        }
+    		mIsFileEmpty = true;
+    	}
+    	else {
+    		mNumber = mRunFileReader.next();
+    		mIsFileEmpty = false;
+    	}
+    }
+    
+    /***
+     * @return The file of the run being read.
+     */
+    public File getFile() {
+    	return mFile;
     }
     
     /***
-     * Called to return the number stored at the current line in the file we processing.
+     * Called to return the number stored at the current position in the file we processing. Should
+     * only be called when the file is not empty.
      *  
-     * @return The line number as a string or null if the file is empty or no number exists.
+     * @return The current number.
      */
-    public String currentLine() {
-    	if(mIsFileEmpty) 
-    		return null;
-    	
+    public long currentNumber() {
     	return mNumber;
     }    
     
@@ -79,26 +76,23 @@ public class SplitBufferFileWrapper
     }
             
     /***
-     * Called to take the current line number we have retrieved and progress the file buffer pointer
-     * to the next line in the file for processing.
+     * Called to take the current number we have retrieved and progress the file buffer pointer
+     * to the next number in the file for processing.
      * 
-     * @return The current line number before incrementing the file pointer to the next line.
+     * @return The current number before incrementing the file pointer to the next number.
+     * @throws IOException Error thrown on file access or if the run is corrupt.
      */
-    public String getCurrentAndReadNextLine() {
-    	String currentLine = currentLine();
-    	readNextLine();
+    public long getCurrentAndReadNextNumber() throws IOException {
+    	long currentNumber = mNumber;
+    	readNextNumber();
       
-    	return currentLine;
+    	return currentNumber;
     }
     
     /***
      * Perform some cleanup of the file buffer.
      */
     public void close() {
-    	try 
-    	{
-    		mFileBufferReader.close();
-    	} 
-        catch(IOException ex) {} 
+    	mRunFileReader.close();
     }    
 }
@@ -9,15 +9,10 @@ import java.util.Comparator;
  */
 class SplitFileQueueComparator implements Comparator<SplitBufferFileWrapper>
 {
-	SimpleStringComparator mSimpleNumberComparator = null;
-	
-	public SplitFileQueueComparator()
-	{
-		mSimpleNumberComparator = new SimpleStringComparator();		
-	}
-	
 	@Override
 	public int compare(SplitBufferFileWrapper file1, SplitBufferFileWrapper file2) {
-		return mSimpleNumberComparator.compare(file1.currentLine(), file2.currentLine());
+		long number1 = file1.currentNumber();
+		long number2 = file2.currentNumber();
+		return (number1 < number2) ? -1 : ((number1 == number2) ? 0 : 1);
 	}
-}
\ No newline at end of file
+}
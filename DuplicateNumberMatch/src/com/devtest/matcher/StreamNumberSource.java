@@ -0,0 +1,79 @@
+package com.devtest.matcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/***
+ * Number source reading the input numbers, one number per line, from a stream or channel such as a pipe, 
+ * standard input or a decompressing stream. The stream is read once and closed when the input is closed,
+ * so the numbers are matched in a single pass without being staged on disk first.
+ */
+public class StreamNumberSource implements NumberSource
+{
+	private ReadableByteChannel mReadableChannel;
+	private String mName;
+	private boolean mOpened;
+	
+	/***
+	 * Called to create a source reading the numbers from standard input.
+	 * 
+	 * @return The number source.
+	 */
+	public static StreamNumberSource standardInput()
+	{
+		return new StreamNumberSource(Channels.newChannel(System.in), "stdin");
+	}
+	
+	/***
+	 * Constructor to create a new source reading the numbers from an input stream.
+	 * 
+	 * @param pInputStream The stream holding the input numbers.
+	 * @param pName The name of the stream reported in the logs and metrics.
+	 */
+	public StreamNumberSource(InputStream pInputStream, String pName)
+	{
+		this(Channels.newChannel(pInputStream), pName);
+	}
+	
+	/***
+	 * Constructor to create a new source reading the numbers from a channel.
+	 * 
+	 * @param pReadableChannel The channel holding the input numbers.
+	 * @param pName The name of the channel reported in the logs and metrics.
+	 */
+	public StreamNumberSource(ReadableByteChannel pReadableChannel, String pName)
+	{
+		mReadableChannel = pReadableChannel;
+		mName = pName;
+	}
+	
+	@Override
+	public synchronized NumberInput open() throws IOException
+	{
+		if (mOpened)
+			throw new IOException("The input " + mName + " can only be read once");
+		
+		mOpened = true;
+		return new NumberScanner(mReadableChannel);
+	}
+	
+	@Override
+	public boolean isRepeatable()
+	{
+		return false;
+	}
+	
+	@Override
+	public long getLength()
+	{
+		return -1;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return mName;
+	}
+}
@@ -0,0 +1,83 @@
+package com.devtest.matcher;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+/***
+ * Run reader to read back a sorted run stored as one decimal number per line. Each line is parsed once
+ * when it is read.
+ */
+class TextRunFileReader implements RunFileReader
+{
+	public static final int BUFFERSIZE = 1024;
+	
+	private BufferedReader mFileBufferReader;
+	private File mFile;
+	private String mNextLine;
+	
+	/***
+	 * Constructor to create a new text run reader using the default buffer size.
+	 * 
+	 * @param pFile The file to read the run from.
+	 * @throws IOException Error thrown on file access.
+	 */
+	public TextRunFileReader(File pFile) throws IOException
+	{
+		this(pFile, BUFFERSIZE);
+	}
+	
+	/***
+	 * Constructor to create a new text run reader.
+	 * 
+	 * @param pFile The file to read the run from.
+	 * @param pBufferSize The size in characters of the block read from disk at a time.
+	 * @throws IOException Error thrown on file access.
+	 */
+	public TextRunFileReader(File pFile, int pBufferSize) throws IOException
+	{
+		mFile = pFile;
+		mFileBufferReader = new BufferedReader(new FileReader(pFile), Math.max(pBufferSize, BUFFERSIZE));
+		mNextLine = mFileBufferReader.readLine();
+	}
+	
+	@Override
+	public boolean hasNext()
+	{
+		return mNextLine != null;
+	}
+	
+	@Override
+	public long next() throws IOException
+	{
+		long number = Long.parseLong(mNextLine);
+		mNextLine = mFileBufferReader.readLine();
+		return number;
+	}
+	
+	@Override
+	public int read(long[] pBuffer, int pOffset, int pLength) throws IOException
+	{
+		int count = 0;
+		while (count < pLength && mNextLine != null)
+			pBuffer[pOffset + count++] = next();
+		return count;
+	}
+	
+	@Override
+	public File getFile()
+	{
+		return mFile;
+	}
+	
+	@Override
+	public void close()
+	{
+		try 
+		{
+			mFileBufferReader.close();
+		} 
+		catch(IOException ex) {} 
+	}
+}
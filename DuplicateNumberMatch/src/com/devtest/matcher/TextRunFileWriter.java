@@ -0,0 +1,47 @@
+package com.devtest.matcher;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/***
+ * Run writer to store a sorted run as one decimal number per line.
+ */
+class TextRunFileWriter implements RunFileWriter
+{
+	private BufferedWriter mFileBufferWriter;
+	private long mCount;
+	
+	/***
+	 * Constructor to create a new text run writer.
+	 * 
+	 * @param pFile The file to write the run to.
+	 * @throws IOException Error thrown on file access.
+	 */
+	public TextRunFileWriter(File pFile) throws IOException
+	{
+		mFileBufferWriter = new BufferedWriter(new FileWriter(pFile));
+		mCount = 0;
+	}
+	
+	@Override
+	public void write(long pNumber) throws IOException
+	{
+		mFileBufferWriter.write(Long.toString(pNumber));
+		mFileBufferWriter.newLine();
+		mCount++;
+	}
+	
+	@Override
+	public long getCount()
+	{
+		return mCount;
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		mFileBufferWriter.close();
+	}
+}
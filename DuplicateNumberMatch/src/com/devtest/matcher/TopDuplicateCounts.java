@@ -0,0 +1,158 @@
+package com.devtest.matcher;
+
+import java.io.IOException;
+
+/***
+ * Listener keeping the given count of duplicate numbers that occur most often. The numbers are held in a
+ * bounded min-heap ordered by count, so the root is the least frequent number kept and a new number only
+ * replaces it when it occurs more often. Each duplicate costs O(log n) and the memory used never grows
+ * past the size asked for, however many duplicates there are. Numbers with equal counts are ranked from
+ * least to most.
+ *
+ * -Dmatcher.topN=10     The count of most frequent duplicates to report, 0 for none.
+ */
+public class TopDuplicateCounts implements DuplicateCountListener
+{
+	public static final String TOPN_PROPERTY = "matcher.topN";
+
+	private long[] mNumbers;
+	private long[] mCounts;
+	private int mSize;
+
+	/***
+	 * Constructor to create a new empty set of the most frequent duplicates.
+	 *
+	 * @param pLimit The count of most frequent duplicates to keep.
+	 * @throws IllegalArgumentException Error thrown if the limit is less than 1.
+	 */
+	public TopDuplicateCounts(int pLimit)
+	{
+		if (pLimit < 1)
+			throw new IllegalArgumentException("The count of duplicates to keep must be at least 1: " + pLimit);
+
+		mNumbers = new long[pLimit];
+		mCounts = new long[pLimit];
+		mSize = 0;
+	}
+
+	@Override
+	public void duplicateCounted(long pNumber, long pCount)
+	{
+		if (mSize < mNumbers.length)
+		{
+			mNumbers[mSize] = pNumber;
+			mCounts[mSize] = pCount;
+			siftUp(mSize++);
+		}
+		else if (isLess(mNumbers[0], mCounts[0], pNumber, pCount))
+		{
+			mNumbers[0] = pNumber;
+			mCounts[0] = pCount;
+			siftDown(0, mSize);
+		}
+	}
+
+	/***
+	 * @return The count of duplicates kept, which is less than the limit if fewer duplicates were found.
+	 */
+	public int size()
+	{
+		return mSize;
+	}
+
+	/***
+	 * Called to pass the duplicates kept to a listener, from the most frequent to the least.
+	 *
+	 * @param pDuplicateCountListener The listener.
+	 * @throws IOException Error thrown by the listener.
+	 */
+	public void deliverTo(DuplicateCountListener pDuplicateCountListener) throws IOException
+	{
+		// Heap sort a copy of the heap, each least entry removed from the root goes to the end
+		long[] numbers = mNumbers.clone();
+		long[] counts = mCounts.clone();
+		TopDuplicateCounts sorted = new TopDuplicateCounts(numbers, counts, mSize);
+		for (int last=mSize - 1; last>0; last--)
+		{
+			sorted.swap(0, last);
+			sorted.siftDown(0, last);
+		}
+
+		for (int i=0; i<mSize; i++)
+			pDuplicateCountListener.duplicateCounted(numbers[i], counts[i]);
+	}
+
+	/***
+	 * Constructor to wrap the arrays of an existing heap.
+	 */
+	private TopDuplicateCounts(long[] pNumbers, long[] pCounts, int pSize)
+	{
+		mNumbers = pNumbers;
+		mCounts = pCounts;
+		mSize = pSize;
+	}
+
+	/***
+	 * Helper method to compare two duplicates, where the less frequent is less and of equal counts the
+	 * greater number is less so it is the first to be dropped.
+	 */
+	private static boolean isLess(long pNumberA, long pCountA, long pNumberB, long pCountB)
+	{
+		if (pCountA != pCountB)
+			return pCountA < pCountB;
+		return pNumberA > pNumberB;
+	}
+
+	/***
+	 * Helper method to move the entry at the given position up the heap until its parent is not greater.
+	 */
+	private void siftUp(int pPosition)
+	{
+		int position = pPosition;
+		while (position > 0)
+		{
+			int parent = (position - 1) >>> 1;
+			if (!isLess(mNumbers[position], mCounts[position], mNumbers[parent], mCounts[parent]))
+				break;
+			swap(position, parent);
+			position = parent;
+		}
+	}
+
+	/***
+	 * Helper method to move the entry at the given position down the first entries of the heap until
+	 * neither child is less.
+	 */
+	private void siftDown(int pPosition, int pSize)
+	{
+		int position = pPosition;
+		while (true)
+		{
+			int least = position;
+			int left = 2 * position + 1;
+			int right = left + 1;
+			if (left < pSize && isLess(mNumbers[left], mCounts[left], mNumbers[least], mCounts[least]))
+				least = left;
+			if (right < pSize && isLess(mNumbers[right], mCounts[right], mNumbers[least], mCounts[least]))
+				least = right;
+			if (least == position)
+				return;
+			swap(position, least);
+			position = least;
+		}
+	}
+
+	/***
+	 * Helper method to swap two entries of the heap.
+	 */
+	private void swap(int pPositionA, int pPositionB)
+	{
+		long number = mNumbers[pPositionA];
+		mNumbers[pPositionA] = mNumbers[pPositionB];
+		mNumbers[pPositionB] = number;
+
+		long count = mCounts[pPositionA];
+		mCounts[pPositionA] = mCounts[pPositionB];
+		mCounts[pPositionB] = count;
+	}
+}
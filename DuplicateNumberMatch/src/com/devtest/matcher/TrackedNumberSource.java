@@ -0,0 +1,127 @@
+package com.devtest.matcher;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/***
+ * Number source wrapping the source of a job to keep track of the numbers and bytes read by every input
+ * it opened, for the job metrics. Inputs parsed from bytes report their own counts, any other input is 
+ * wrapped to count its numbers. Every input is also held to the key type of the job, the inputs parsed 
+ * from bytes by checking each line and any other input by checking each value.
+ */
+class TrackedNumberSource implements NumberSource
+{
+	private NumberSource mNumberSource;
+	private NumberKeyType mKeyType;
+	private ArrayList<NumberScanner> mScannerList = new ArrayList<NumberScanner>();
+	private ArrayList<CountingNumberInput> mCountingInputList = new ArrayList<CountingNumberInput>();
+	
+	/***
+	 * Constructor to create a new tracked source.
+	 * 
+	 * @param pNumberSource The source to track.
+	 * @param pKeyType The type of key the numbers are read as.
+	 */
+	public TrackedNumberSource(NumberSource pNumberSource, NumberKeyType pKeyType)
+	{
+		mNumberSource = pNumberSource;
+		mKeyType = pKeyType;
+	}
+	
+	@Override
+	public synchronized NumberInput open() throws IOException
+	{
+		NumberInput numberInput = mNumberSource.open();
+		if (numberInput instanceof NumberScanner)
+		{
+			((NumberScanner) numberInput).setKeyType(mKeyType);
+			mScannerList.add((NumberScanner) numberInput);
+			return numberInput;
+		}
+		
+		CountingNumberInput countingInput = new CountingNumberInput(numberInput, mKeyType);
+		mCountingInputList.add(countingInput);
+		return countingInput;
+	}
+	
+	@Override
+	public boolean isRepeatable()
+	{
+		return mNumberSource.isRepeatable();
+	}
+	
+	@Override
+	public long getLength()
+	{
+		return mNumberSource.getLength();
+	}
+	
+	/***
+	 * @return The count of numbers read by all the inputs opened.
+	 */
+	public synchronized long getNumbersRead()
+	{
+		long numbersRead = 0;
+		for (NumberScanner numberScanner : mScannerList)
+			numbersRead += numberScanner.getNumberCount();
+		for (CountingNumberInput countingInput : mCountingInputList)
+			numbersRead += countingInput.mCount;
+		return numbersRead;
+	}
+	
+	/***
+	 * @return The count of bytes read by all the inputs opened, where known.
+	 */
+	public synchronized long getBytesRead()
+	{
+		long bytesRead = 0;
+		for (NumberScanner numberScanner : mScannerList)
+			bytesRead += numberScanner.getBytesRead();
+		return bytesRead;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return mNumberSource.toString();
+	}
+	
+	/***
+	 * Number input counting the numbers read from another input and checking each is within the range
+	 * of the key type.
+	 */
+	private static class CountingNumberInput implements NumberInput
+	{
+		private NumberInput mNumberInput;
+		private NumberKeyType mKeyType;
+		private long mCount;
+		
+		public CountingNumberInput(NumberInput pNumberInput, NumberKeyType pKeyType)
+		{
+			mNumberInput = pNumberInput;
+			mKeyType = pKeyType;
+		}
+		
+		@Override
+		public boolean hasNext() throws IOException
+		{
+			return mNumberInput.hasNext();
+		}
+		
+		@Override
+		public long next() throws IOException
+		{
+			long number = mNumberInput.next();
+			if (number < mKeyType.getMinValue() || number > mKeyType.getMaxValue())
+				throw new IOException("Number " + number + " out of range of key type " + mKeyType + " at position " + mCount);
+			mCount++;
+			return number;
+		}
+		
+		@Override
+		public void close()
+		{
+			mNumberInput.close();
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package com.devtest.matcher;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/***
+ * Number sink gathering the merged numbers into blocks and writing each full block to another sink, such
+ * as a run writer, on an I/O thread while the merge fills the next block. The numbers are encoded and
+ * written to disk behind the merge, and the merge only waits when it fills a block before the previous
+ * block has been written.
+ *
+ * The underlying sink is never closed by this sink, {@link #flush()} must be called once the last number
+ * has been written, or {@link #discard()} if the merge failed, before the underlying sink is closed.
+ */
+class WriteBehindNumberSink implements NumberSink
+{
+	private NumberSink mNumberSink;
+	private RunIoService mRunIoService;
+	private long[] mBlock;
+	private long[] mSpareBlock;
+	private int mPosition;
+	private Future<Integer> mPendingWrite;
+
+	/***
+	 * Constructor to create a new write behind sink.
+	 *
+	 * @param pNumberSink The sink the blocks of numbers are written to.
+	 * @param pBlockSize The count of numbers in each block.
+	 * @param pRunIoService The I/O threads used to write the blocks.
+	 */
+	public WriteBehindNumberSink(NumberSink pNumberSink, int pBlockSize, RunIoService pRunIoService)
+	{
+		mNumberSink = pNumberSink;
+		mRunIoService = pRunIoService;
+		mBlock = new long[Math.max(pBlockSize, 1)];
+		mSpareBlock = new long[mBlock.length];
+		mPosition = 0;
+	}
+
+	@Override
+	public void write(long pNumber) throws IOException
+	{
+		mBlock[mPosition++] = pNumber;
+		if (mPosition == mBlock.length)
+			writeBlock();
+	}
+
+	/***
+	 * Called to write any numbers left in the current block and wait until all the blocks have been
+	 * written to the underlying sink.
+	 *
+	 * @throws IOException Error thrown on file access by the underlying sink.
+	 */
+	public void flush() throws IOException
+	{
+		if (mPosition > 0)
+			writeBlock();
+		awaitPendingWrite();
+	}
+
+	/***
+	 * Called when the merge fails to drop any numbers not yet written and wait for the block being written
+	 * so the underlying sink can be closed safely.
+	 */
+	public void discard()
+	{
+		if (mPendingWrite != null)
+		{
+			RunIoService.awaitQuietly(mPendingWrite);
+			mPendingWrite = null;
+		}
+		mPosition = 0;
+	}
+
+	/***
+	 * Helper method to wait for the previous block to be written, then hand the current block over to an
+	 * I/O thread and carry on filling the block just written.
+	 */
+	private void writeBlock() throws IOException
+	{
+		awaitPendingWrite();
+
+		final long[] block = mBlock;
+		final int length = mPosition;
+		mBlock = mSpareBlock;
+		mSpareBlock = block;
+		mPosition = 0;
+		mPendingWrite = mRunIoService.submit(new Callable<Integer>() {
+			@Override
+			public Integer call() throws IOException
+			{
+				for (int i=0; i<length; i++)
+					mNumberSink.write(block[i]);
+				return Integer.valueOf(length);
+			}
+		});
+	}
+
+	/***
+	 * Helper method to wait for the block being written, passing on any error it reported.
+	 */
+	private void awaitPendingWrite() throws IOException
+	{
+		if (mPendingWrite != null)
+		{
+			Future<Integer> pendingWrite = mPendingWrite;
+			mPendingWrite = null;
+			RunIoService.await(pendingWrite);
+		}
+	}
+}